@@ -17,6 +17,8 @@ public class ServerParams {
     // params
     public static final String COMMAND = "cmd";
     public static final String DO_JSONP = "doJsonp";
+    public static final String RESPONSE_FORMAT = "responseFormat";
+    public static final String BINARY = "binary";
     public static final String RED_REQUEST = "red";
     public static final String GREEN_REQUEST = "green";
     public static final String BLUE_REQUEST = "blue";
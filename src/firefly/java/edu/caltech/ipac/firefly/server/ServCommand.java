@@ -1,12 +1,23 @@
 package edu.caltech.ipac.firefly.server;
 
 import edu.caltech.ipac.firefly.data.ServerParams;
+import edu.caltech.ipac.firefly.server.util.Logger;
 import edu.caltech.ipac.firefly.util.BrowserInfo;
+import edu.caltech.ipac.util.AppProperties;
 import edu.caltech.ipac.util.StringUtils;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Date: 10/24/16
@@ -14,6 +25,8 @@ import javax.servlet.http.HttpServletResponse;
  * @version $Id: $
  */
 public abstract class ServCommand extends ServerCommandAccess.HttpCommand {
+    private static final Logger.LoggerImpl LOG = Logger.getLogger();
+    private static final boolean STREAM_GZIP = AppProperties.getBooleanProperty("ServCommand.stream.gzip", false);
 
     @Override
     public void processRequest(HttpServletRequest req, HttpServletResponse res, SrvParam sp) throws Exception {
@@ -23,6 +36,22 @@ public abstract class ServCommand extends ServerCommandAccess.HttpCommand {
 
         String jsonData;
         try {
+            if (ServerParams.BINARY.equals(sp.getOptional(ServerParams.RESPONSE_FORMAT))) {
+                BinaryWriter binaryWriter = getBinaryWriter(new SrvParam(sp.getParamMap()));
+                if (binaryWriter != null) {
+                    res.setContentType("application/octet-stream");
+                    writeBinary(req, res, binaryWriter);
+                    return;
+                }
+            }
+
+            JsonWriter jsonWriter = getJsonWriter(new SrvParam(sp.getParamMap()));
+            if (jsonWriter != null) {
+                setContentType(req, res, doJsonp);
+                writeJson(req, res, jsonWriter, doJsonp ? callback : null);
+                return;
+            }
+
             String result = doCommand(new SrvParam(sp.getParamMap()));
 
             if (getCanCreateJson()) {
@@ -69,6 +98,47 @@ public abstract class ServCommand extends ServerCommandAccess.HttpCommand {
             retval = jsonData;
         }
 
+        setContentType(req, res, doJsonp);
+        res.setContentLength(retval.length());
+        ServletOutputStream out = res.getOutputStream();
+        out.write(retval.getBytes());
+        out.close();
+    }
+
+    public boolean getCanCreateJson() { return true; }
+    public abstract String doCommand(SrvParam params) throws Exception;
+
+    /**
+     * Commands returning large JSON, i.e. table pages, may override this to write their JSON directly
+     * to the response instead of building it as a String in doCommand.
+     * Everything that may fail should be done here, before the JsonWriter is returned;
+     * once part of the response is sent, an error can no longer be reported to the client, and the response is left incomplete.
+     * @return a JsonWriter, or null to use doCommand
+     */
+    public JsonWriter getJsonWriter(SrvParam params) throws Exception { return null; }
+
+    public interface JsonWriter {
+        void write(Writer writer) throws IOException;
+    }
+
+    /**
+     * Commands may override this to support a binary response, requested with responseFormat=binary.
+     * Same as getJsonWriter, everything that may fail should be done before the BinaryWriter is returned.
+     * Errors are returned as JSON, so the client should check the content type of the response.
+     * An error after part of the response is sent can not be reported; the response is left incomplete.
+     * @return a BinaryWriter, or null if this command only returns JSON
+     */
+    public BinaryWriter getBinaryWriter(SrvParam params) throws Exception { return null; }
+
+    public interface BinaryWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+//====================================================================
+//
+//====================================================================
+
+    private static void setContentType(HttpServletRequest req, HttpServletResponse res, boolean doJsonp) {
         BrowserInfo b= new BrowserInfo(req.getHeader("user-agent"));
         if ((b.isIE() && b.getMajorVersion()<=9)) {
             res.setContentType("text/html");
@@ -80,14 +150,100 @@ public abstract class ServCommand extends ServerCommandAccess.HttpCommand {
                 res.setContentType("application/json");
             }
         }
-        res.setContentLength(retval.length());
-        ServletOutputStream out = res.getOutputStream();
-        out.write(retval.getBytes());
-        out.close();
     }
 
-    public boolean getCanCreateJson() { return true; }
-    public abstract String doCommand(SrvParam params) throws Exception;
+    /**
+     * write the JSON to the response as it is generated.  the content length is not known, so the response is chunked.
+     * if it fails before anything is sent, the error is thrown so that it's returned as the usual error JSON.
+     * otherwise, the error is logged and the response is left incomplete, so the client fails to parse it instead of
+     * getting an error appended to the partial JSON.
+     */
+    private static void writeJson(HttpServletRequest req, HttpServletResponse res, JsonWriter jsonWriter, String callback) throws IOException {
+        Writer writer = new AsciiFilterWriter(new BufferedWriter(new OutputStreamWriter(getOutputStream(req, res), StandardCharsets.US_ASCII), 32*1024));
+        try {
+            if (callback != null) writer.write(callback + "(");
+            jsonWriter.write(writer);
+            if (callback != null) writer.write(");");
+            writer.close();
+        } catch (IOException | RuntimeException e) {
+            if (!res.isCommitted()) {
+                res.reset();
+                throw e;
+            }
+            LOG.error(e, "Error while writing JSON response; it is incomplete");
+        }
+    }
+
+    /**
+     * write the binary response as it is generated.  if it fails before anything is sent, the error is thrown so that it's
+     * returned as JSON.  otherwise, the error is logged and the response is left incomplete; the client fails to read it.
+     */
+    private static void writeBinary(HttpServletRequest req, HttpServletResponse res, BinaryWriter binaryWriter) throws IOException {
+        OutputStream out = new BufferedOutputStream(getOutputStream(req, res), 32*1024);
+        try {
+            binaryWriter.write(out);
+            out.close();
+        } catch (IOException | RuntimeException e) {
+            if (!res.isCommitted()) {
+                res.reset();
+                throw e;
+            }
+            LOG.error(e, "Error while writing binary response; it is incomplete");
+        }
+    }
+
+    /**
+     * @return the output stream of the response, gzipped when ServCommand.stream.gzip is set and the client accepts it.
+     */
+    private static OutputStream getOutputStream(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        boolean gzip = STREAM_GZIP && acceptEncoding != null && acceptEncoding.contains("gzip");
+        OutputStream out = res.getOutputStream();
+        if (gzip) {
+            res.setHeader("Content-Encoding", "gzip");
+            out = new GZIPOutputStream(out, 8192);
+        }
+        return out;
+    }
+
+    /**
+     * drops the characters that are not printable ASCII, same as processRequest does to the String from doCommand.
+     */
+    private static class AsciiFilterWriter extends FilterWriter {
+
+        AsciiFilterWriter(Writer out) { super(out); }
+
+        private static boolean isPrintable(int c) { return c>31 && c<127; }
+
+        @Override
+        public void write(int c) throws IOException {
+            if (isPrintable(c)) out.write(c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            int start = off;
+            for (int i = off; i < off + len; i++) {
+                if (!isPrintable(cbuf[i])) {
+                    if (i > start) out.write(cbuf, start, i - start);
+                    start = i + 1;
+                }
+            }
+            if (off + len > start) out.write(cbuf, start, off + len - start);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            int start = off;
+            for (int i = off; i < off + len; i++) {
+                if (!isPrintable(str.charAt(i))) {
+                    if (i > start) out.write(str, start, i - start);
+                    start = i + 1;
+                }
+            }
+            if (off + len > start) out.write(str, start, off + len - start);
+        }
+    }
 }
 /*
 * THIS SOFTWARE AND ANY RELATED MATERIALS WERE CREATED BY THE CALIFORNIA
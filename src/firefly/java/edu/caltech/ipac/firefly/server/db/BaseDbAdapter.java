@@ -5,20 +5,33 @@ package edu.caltech.ipac.firefly.server.db;
 
 import edu.caltech.ipac.firefly.data.SortInfo;
 import edu.caltech.ipac.firefly.data.TableServerRequest;
+import edu.caltech.ipac.firefly.server.query.DecimationCache;
 import edu.caltech.ipac.firefly.server.util.Logger;
+import edu.caltech.ipac.util.AppProperties;
 import edu.caltech.ipac.util.DataType;
 import edu.caltech.ipac.util.StringUtils;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.springframework.dao.DataAccessResourceFailureException;
 
+import javax.sql.DataSource;
 import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static edu.caltech.ipac.firefly.data.TableServerRequest.INCL_COLUMNS;
@@ -29,9 +42,23 @@ import static edu.caltech.ipac.firefly.data.TableServerRequest.INCL_COLUMNS;
  */
 abstract public class BaseDbAdapter implements DbAdapter {
     private static long MAX_IDLE_TIME = 1000 * 60 * 15;      // will be purged up if idle more than 15 minutes.
-    private static Map<String, EmbeddedDbInstance> dbInstances = new HashMap<>();
+    private static final int MAX_OPEN_DBS = AppProperties.getIntProperty("EmbeddedDb.max.open", 100);
+    private static final long MAX_MEMORY = AppProperties.getLongProperty("EmbeddedDb.max.memory.mb", Runtime.getRuntime().maxMemory()/(1024*1024*2)) * 1024 * 1024;
+    private static final long MIN_IDLE_BEFORE_EVICT = 1000 * 10;    // a database used within the last 10 seconds will not be evicted.
+    private static final int MAX_POOL_SIZE = AppProperties.getIntProperty("EmbeddedDb.pool.max.active", 8);
+    private static final Map<String, EmbeddedDbInstance> dbInstances = new LinkedHashMap<>(16, .75f, true);     // access-ordered
     private static Logger.LoggerImpl LOGGER = Logger.getLogger();
 
+    private static final Map<String, Boolean> recentlyClosed = new LinkedHashMap<String, Boolean>() {      // used to identify reopens
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_OPEN_DBS * 10;
+        }
+    };
+    private static final AtomicLong evictions = new AtomicLong();
+    private static final AtomicLong opens = new AtomicLong();
+    private static final AtomicLong reopens = new AtomicLong();
+    private static final AtomicLong reopenTime = new AtomicLong();
+
     private static final String DD_INSERT_SQL = "insert into %s_dd values (?,?,?,?,?,?,?,?,?,?,?)";
     private static final String DD_CREATE_SQL = "create table %s_dd "+
             "(" +
@@ -142,6 +169,14 @@ abstract public class BaseDbAdapter implements DbAdapter {
         return String.format("CREATE TABLE %s AS %s", tblName, selectSql);
     }
 
+    public String dropTableSql(String tblName) {
+        return String.format("DROP TABLE IF EXISTS %s", tblName);
+    }
+
+    public String createIndexSql(String tblName, String indexName, String column) {
+        return String.format("CREATE INDEX IF NOT EXISTS %s ON %s (\"%s\")", indexName, tblName, column);
+    }
+
     public String translateSql(String sql) {
         return sql;
     }
@@ -173,46 +208,348 @@ abstract public class BaseDbAdapter implements DbAdapter {
     }
 
     public DbInstance getDbInstance(File dbFile, boolean create) {
-        EmbeddedDbInstance ins = dbInstances.get(dbFile.getPath());
-        if (ins == null && create) {
-            ins = createDbInstance(dbFile);
-            dbInstances.put(dbFile.getPath(), ins);
+        EmbeddedDbInstance ins;
+        List<EmbeddedDbInstance> toBeEvicted = null;
+        synchronized (dbInstances) {
+            ins = dbInstances.get(dbFile.getPath());
+            if (ins == null && create) {
+                ins = createDbInstance(dbFile);
+                dbInstances.put(dbFile.getPath(), ins);
+                toBeEvicted = findEvictable();
+            }
         }
         if (ins != null ) ins.touch();
+        if (toBeEvicted != null && toBeEvicted.size() > 0) {
+            LOGGER.info(String.format("There are currently %d databases open.  %d will be closed to stay within limits.", dbInstances.size(), toBeEvicted.size()));
+            toBeEvicted.forEach((db) -> {
+                if (evict(db)) evictions.incrementAndGet();
+            });
+        }
         return ins;
+    }
 
+    /**
+     * closes the database and release resources used by it.
+     * subclass should override shutdown and removeDbFiles to properly close the database and cleanup its files.
+     */
+    public void close(File dbFile, boolean deleteFile) {
+        EmbeddedDbInstance db;
+        synchronized (dbInstances) {
+            db = dbInstances.remove(dbFile.getPath());
+            if (db != null && !deleteFile) recentlyClosed.put(dbFile.getPath(), Boolean.TRUE);
+        }
+        if (db != null) {
+            db.markClosed(true);
+            closeDb(db);
+        }
+        if (deleteFile) {
+            removeDbFiles(dbFile);
+            DecimationCache.evict(dbFile, null);
+        }
+    }
+
+    /**
+     * close the given database only if it is still open and none of its connections are in use.
+     * @return true if the database was closed
+     */
+    private static boolean evict(EmbeddedDbInstance db) {
+        synchronized (dbInstances) {
+            if (dbInstances.get(db.dbFile.getPath()) != db || !db.markClosed(false)) return false;
+            dbInstances.remove(db.dbFile.getPath());
+            recentlyClosed.put(db.dbFile.getPath(), Boolean.TRUE);
+        }
+        ((BaseDbAdapter) DbAdapter.getAdapter(db.name)).closeDb(db);
+        return true;
+    }
+
+    private void closeDb(EmbeddedDbInstance db) {
+        if (db.isOpen()) {
+            try {
+                shutdown(db);
+            } catch (Exception e) {
+                LOGGER.warn(e, "Error while shutting down database: " + db.dbFile.getPath());
+            }
+            db.closePool();
+        }
     }
 
-    public void close(File dbFile, boolean deleteFile) {}          // subclass should override this to properly closes the database and cleanup resources.
+    /**
+     * shutdown the given database.  this is called before its connection pool is closed.
+     */
+    protected void shutdown(EmbeddedDbInstance db) {}
+
+    /**
+     * remove the files created by the database other than dbFile itself.
+     */
+    protected void removeDbFiles(File dbFile) {}
 
     protected abstract EmbeddedDbInstance createDbInstance(File dbFile);
 
-    public static Map<String, EmbeddedDbInstance> getDbInstances() { return dbInstances; }
+    /**
+     * @return a snapshot of the currently open databases, from least to most recently used.
+     */
+    public static Map<String, EmbeddedDbInstance> getDbInstances() {
+        synchronized (dbInstances) {
+            return new LinkedHashMap<>(dbInstances);
+        }
+    }
+
+    public static int getMaxOpenDbs() { return MAX_OPEN_DBS; }
+    public static long getMaxMemory() { return MAX_MEMORY; }
+    public static long getEvictions() { return evictions.get(); }
+    public static long getOpens() { return opens.get(); }
+    public static long getReopens() { return reopens.get(); }
+    public static long getReopenTime() { return reopenTime.get(); }
 
     public static void cleanup() {
         cleanup(false);
     }
 
     public static void cleanup(boolean force) {
-        List<EmbeddedDbInstance> toBeRemove = dbInstances.values().stream()
+        List<EmbeddedDbInstance> toBeRemove = getDbInstances().values().stream()
                                                     .filter((db) -> db.hasExpired() || force).collect(Collectors.toList());
         if (toBeRemove.size() > 0) {
             LOGGER.info(String.format("There are currently %d databases open.  Of which, %d will be closed.", dbInstances.size(), toBeRemove.size()));
             toBeRemove.forEach((db) -> {
-                DbAdapter.getAdapter(db.name).close(db.dbFile, false);
-                dbInstances.remove(db.dbFile.getPath());
+                if (force) {
+                    DbAdapter.getAdapter(db.name).close(db.dbFile, false);
+                } else {
+                    evict(db);
+                }
             });
         }
     }
 
+    /**
+     * must be called while holding the lock on dbInstances.
+     * @return the least recently used databases to close, so that the number of open databases and their estimated
+     * memory stay within EmbeddedDb.max.open and EmbeddedDb.max.memory.mb.  databases that are in use, or were used
+     * within the last few seconds, are never returned, so the limits may be exceeded for a short while.
+     */
+    private static List<EmbeddedDbInstance> findEvictable() {
+        List<EmbeddedDbInstance> toBeEvicted = new ArrayList<>();
+        int openCnt = dbInstances.size();
+        long memory = dbInstances.values().stream().mapToLong(EmbeddedDbInstance::estimateMemory).sum();
+        for (EmbeddedDbInstance db : dbInstances.values()) {
+            if (openCnt <= MAX_OPEN_DBS && memory <= MAX_MEMORY) break;
+            if (!db.isIdle()) continue;
+            if (openCnt <= MAX_OPEN_DBS && db.estimateMemory() == 0) continue;      // closing it would not free any memory
+            toBeEvicted.add(db);
+            openCnt--;
+            memory -= db.estimateMemory();
+        }
+        return toBeEvicted;
+    }
+
     public static class EmbeddedDbInstance extends DbInstance {
         long lastAccessed;
         File dbFile;
-
-        public EmbeddedDbInstance(String type, File dbFile, String dbUrl, String driver) {
+        ResultSetCache resultSets = new ResultSetCache();
+        ColumnIndexer indexer = new ColumnIndexer();
+        Map<String, Integer> rowCounts = new ConcurrentHashMap<>();     // tblName|wherePart -> row count
+
+        private final String[] fileSuffixes;
+        private BasicDataSource dataSource;
+        private DataSource inUseTracker;
+        private int inUse;              // number of connections currently borrowed from the pool
+        private boolean closed;
+        private final Object openLock = new Object();      // only one thread opens the database
+        private volatile long memory;
+        private volatile long memoryCheckedAt;
+
+        /**
+         * @param fileSuffixes  the suffixes of the files this database keeps next to dbFile.  they are used to estimate
+         *                      its memory.  when none are given, dbFile itself is used.
+         */
+        public EmbeddedDbInstance(String type, File dbFile, String dbUrl, String driver, String... fileSuffixes) {
             super(false, null, dbUrl, null, null, driver, type);
             lastAccessed = System.currentTimeMillis();
             this.dbFile = dbFile;
+            this.fileSuffixes = fileSuffixes.length == 0 ? new String[]{""} : fileSuffixes;
+        }
+
+        /**
+         * @return the connection pool of this database.  it is created, and the database opened, on first use.
+         * the database is not evicted while a connection from it is in use.
+         * the database is opened without holding this instance's lock, so that checking whether it can be evicted
+         * does not wait for it.
+         * @throws DataAccessResourceFailureException if this database has been closed.  get a new instance
+         *          from the DbAdapter instead.
+         */
+        public DataSource getDataSource() {
+            DataSource tracker = getOpenDataSource();
+            if (tracker != null) return tracker;
+
+            long elapsed;
+            synchronized (openLock) {
+                tracker = getOpenDataSource();
+                if (tracker != null) return tracker;
+
+                long start = System.currentTimeMillis();
+                BasicDataSource ds = new BasicDataSource();
+                ds.setDriverClassName(jdbcDriver);
+                ds.setUrl(dbUrl);
+                ds.setMaxActive(MAX_POOL_SIZE);
+                ds.setMaxIdle(MAX_POOL_SIZE);
+                try {
+                    ds.getConnection().close();         // open the database now, so the time it takes can be measured.
+                } catch (SQLException e) {
+                    LOGGER.error(e, "Unable to open database: " + dbUrl);
+                }
+                tracker = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                        (proxy, method, args) -> {
+                            if (!method.getName().equals("getConnection")) return invoke(ds, method, args);
+                            acquire();
+                            try {
+                                return trackClose((Connection) invoke(ds, method, args));
+                            } catch (Throwable e) {
+                                release();
+                                throw e;
+                            }
+                        });
+                boolean closedWhileOpening;
+                synchronized (this) {
+                    closedWhileOpening = closed;
+                    if (!closed) {
+                        dataSource = ds;
+                        inUseTracker = tracker;
+                    }
+                }
+                if (closedWhileOpening) {
+                    try {
+                        ds.close();
+                    } catch (SQLException e) {
+                        LOGGER.warn(e, "Error while closing connection pool: " + dbUrl);
+                    }
+                    throw new DataAccessResourceFailureException("Database has been closed: " + dbUrl);
+                }
+                updateMemory();
+                elapsed = System.currentTimeMillis() - start;
+            }
+
+            // done after leaving this instance's locks; dbInstances is locked before an instance's lock elsewhere.
+            opens.incrementAndGet();
+            synchronized (dbInstances) {
+                if (recentlyClosed.remove(dbFile.getPath()) != null) {
+                    reopens.incrementAndGet();
+                    reopenTime.addAndGet(elapsed);
+                }
+            }
+            return tracker;
+        }
+
+        /**
+         * @return the connection pool of this database if it is open, otherwise null
+         * @throws DataAccessResourceFailureException if this database has been closed.
+         */
+        private synchronized DataSource getOpenDataSource() {
+            if (closed) throw new DataAccessResourceFailureException("Database has been closed: " + dbUrl);
+            return inUseTracker;
+        }
+
+        public synchronized boolean isOpen() { return dataSource != null; }
+
+        /**
+         * @return true if none of this database's connections are in use and it has not been used in the last few seconds.
+         */
+        public synchronized boolean isIdle() {
+            return inUse == 0 && System.currentTimeMillis() - lastAccessed >= MIN_IDLE_BEFORE_EVICT;
+        }
+
+        /**
+         * mark this database as closed.  once closed, its connection pool can no longer be used.
+         * @param force  close it even when it is not idle
+         * @return true if it is now closed
+         */
+        synchronized boolean markClosed(boolean force) {
+            if (!force && !isIdle()) return false;
+            closed = true;
+            return true;
+        }
+
+        private synchronized void acquire() {
+            if (closed) throw new DataAccessResourceFailureException("Database has been closed: " + dbUrl);
+            inUse++;
+            touch();
+        }
+
+        private void release() {
+            synchronized (this) {
+                inUse--;
+                touch();
+            }
+            if (System.currentTimeMillis() - memoryCheckedAt > MIN_IDLE_BEFORE_EVICT) updateMemory();
+        }
+
+        /**
+         * @return a connection that releases itself from this database's in-use count when it is closed.
+         */
+        private Connection trackClose(Connection conn) {
+            AtomicBoolean released = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                            if (released.compareAndSet(false, true)) {
+                                try {
+                                    conn.close();
+                                } finally {
+                                    release();
+                                }
+                            }
+                            return null;
+                        }
+                        return invoke(conn, method, args);
+                    });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+
+        /**
+         * close all of the connections in this database's pool.
+         */
+        synchronized void closePool() {
+            if (dataSource != null) {
+                try {
+                    dataSource.close();
+                } catch (SQLException e) {
+                    LOGGER.warn(e, "Error while closing connection pool: " + dbUrl);
+                }
+                dataSource = null;
+                inUseTracker = null;
+                memory = 0;
+            }
+        }
+
+        /**
+         * used by adapters to shut down this database after it is closed.
+         * @return the connection pool of this database, or null if it was never opened.
+         */
+        synchronized DataSource getPool() {
+            return dataSource;
+        }
+
+        /**
+         * @return an estimate of the memory used by this database, based on the size of its files.  it is measured when
+         * the database is opened, and again when a connection is returned, at most once every few seconds.
+         * a database that is not open uses no memory.
+         */
+        public long estimateMemory() {
+            return memory;
+        }
+
+        private void updateMemory() {
+            memoryCheckedAt = System.currentTimeMillis();
+            long size = 0;
+            for (String suffix : fileSuffixes) {
+                size += new File(dbFile.getPath() + suffix).length();
+            }
+            memory = isOpen() ? size : 0;
         }
 
         @Override
@@ -237,6 +574,43 @@ abstract public class BaseDbAdapter implements DbAdapter {
             return dbFile;
         }
 
+        public ResultSetCache getResultSetCache() {
+            return resultSets;
+        }
+
+        public ColumnIndexer getColumnIndexer() {
+            return indexer;
+        }
+
+        /**
+         * @return the cached row count of the given table filtered by wherePart, or null if not cached
+         */
+        public Integer getRowCount(String tblName, String wherePart) {
+            return rowCounts.get(tblName.toLowerCase() + "|" + wherePart);
+        }
+
+        public void setRowCount(String tblName, String wherePart, int rowCount) {
+            rowCounts.put(tblName.toLowerCase() + "|" + wherePart, rowCount);
+        }
+
+        /**
+         * remove the cached row counts of the given table.  this should be called when the table is dropped or modified.
+         */
+        public void clearRowCounts(String tblName) {
+            String prefix = tblName.toLowerCase() + "|";
+            rowCounts.keySet().removeIf(k -> k.startsWith(prefix));
+        }
+
+        /**
+         * clear all information cached about the content of this database.  this should be called when the
+         * database file is recreated.
+         */
+        public void clearCache() {
+            resultSets = new ResultSetCache();
+            indexer = new ColumnIndexer();
+            rowCounts.clear();
+        }
+
         public void touch() {
             lastAccessed = System.currentTimeMillis();
         }
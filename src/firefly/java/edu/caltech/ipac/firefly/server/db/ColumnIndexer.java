@@ -0,0 +1,177 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.db;
+
+import edu.caltech.ipac.firefly.data.TableServerRequest;
+import edu.caltech.ipac.firefly.server.db.spring.JdbcFactory;
+import edu.caltech.ipac.firefly.server.util.Logger;
+import edu.caltech.ipac.util.AppProperties;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.jdbc.core.ConnectionCallback;
+
+import java.io.File;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Creates column indexes on demand for one embedded database.
+ * It counts how many times each column of a table is used to filter or sort it.  Once a column has been
+ * used EmbeddedDb.index.threshold times, and the table has at least EmbeddedDb.index.min.rows rows,
+ * an index is created for it in the background using the DbAdapter's createIndexSql.
+ * A column whose index is skipped or fails is counted again from zero.
+ */
+public class ColumnIndexer {
+    private static final Logger.LoggerImpl LOGGER = Logger.getLogger();
+    private static final int THRESHOLD = AppProperties.getIntProperty("EmbeddedDb.index.threshold", 3);
+    private static final int MIN_ROWS = AppProperties.getIntProperty("EmbeddedDb.index.min.rows", 50000);
+    private static final ExecutorService indexBuilder = Executors.newSingleThreadExecutor();
+    private static final Pattern QUOTED_COL = Pattern.compile("\"([^\"]+)\"");
+
+    private final Map<String, Integer> usage = new HashMap<>();         // tblName|column -> count
+    private final Set<String> pending = new HashSet<>();                // tblName|column of indexes being created
+    private final Set<String> indexed = new HashSet<>();                // tblName|column of indexes created
+
+    /**
+     * record the columns used by the filters and sort of the given request, and create indexes in the
+     * background for those that have crossed the threshold.
+     * @param dbAdapter DbAdapter of the database
+     * @param dbFile    database file
+     * @param tblName   the table being filtered or sorted
+     * @param treq      the request containing the filters and sort info
+     */
+    public void recordUsage(DbAdapter dbAdapter, File dbFile, String tblName, TableServerRequest treq) {
+        List<String> toIndex = recordUsage(tblName, getColumnsUsed(treq));
+        if (toIndex.size() == 0) return;
+
+        indexBuilder.submit(() -> {
+            boolean bigEnough = false;
+            try {
+                bigEnough = EmbeddedDbUtil.getRowCount(dbAdapter, dbFile, tblName, "") >= MIN_ROWS;
+            } catch (Exception e) {
+                LOGGER.warn(e, "Unable to count the rows of " + tblName + " for " + dbFile.getPath());
+            }
+            for (String col : toIndex) {
+                boolean created = false;
+                if (bigEnough) {
+                    try {
+                        String sql = dbAdapter.createIndexSql(tblName, makeIndexName(tblName, col), col);
+                        JdbcFactory.getSimpleTemplate(dbAdapter.getDbInstance(dbFile)).update(sql);
+                        created = true;
+                        LOGGER.info(String.format("Index created on %s.\"%s\" for %s", tblName, col, dbFile.getPath()));
+                    } catch (Exception e) {
+                        LOGGER.warn(e, String.format("Unable to create index on %s.\"%s\" for %s", tblName, col, dbFile.getPath()));
+                    }
+                }
+                indexDone(tblName, col, created);
+            }
+        });
+    }
+
+    /**
+     * @return the columns that crossed the threshold with this usage, and are neither indexed nor being indexed.
+     */
+    synchronized List<String> recordUsage(String tblName, Collection<String> cols) {
+        List<String> toIndex = new ArrayList<>();
+        for (String col : cols) {
+            String key = makeKey(tblName, col);
+            int count = usage.getOrDefault(key, 0) + 1;
+            usage.put(key, count);
+            if (count >= THRESHOLD && !indexed.contains(key) && pending.add(key)) {
+                toIndex.add(col);
+            }
+        }
+        return toIndex;
+    }
+
+    /**
+     * called once an index returned by recordUsage has been created, skipped or has failed.
+     * when it was not created, the column has to cross the threshold again before it is retried.
+     */
+    synchronized void indexDone(String tblName, String col, boolean created) {
+        String key = makeKey(tblName, col);
+        pending.remove(key);
+        if (created) {
+            indexed.add(key);
+        } else {
+            usage.remove(key);
+        }
+    }
+
+    /**
+     * @return the tblName|column of the indexes created by this indexer
+     */
+    public synchronized List<String> getIndexedColumns() {
+        return new ArrayList<>(indexed);
+    }
+
+    /**
+     * @return the columns referenced in the filters and sort info of the given request.
+     * only double-quoted names are recognized as columns in the filters.
+     */
+    public static Set<String> getColumnsUsed(TableServerRequest treq) {
+        Set<String> cols = new LinkedHashSet<>();
+        if (treq.getFilters() != null) {
+            for (String cond : treq.getFilters()) {
+                Matcher m = QUOTED_COL.matcher(cond);
+                while (m.find()) cols.add(m.group(1));
+            }
+        }
+        if (treq.getSortInfo() != null) {
+            for (String c : treq.getSortInfo().getSortColumns()) {
+                cols.add(c.replaceFirst("^\"(.+)\"$", "$1"));
+            }
+        }
+        return cols;
+    }
+
+    /**
+     * returns the indexes of the given table, as a map of index name to the columns it covers.
+     * @param dbAdapter DbAdapter of the database
+     * @param dbFile    database file
+     * @param tblName   the table
+     * @return a map of index name to column names
+     */
+    public static Map<String, List<String>> getIndexes(DbAdapter dbAdapter, File dbFile, String tblName) {
+        Map<String, List<String>> indexes = new HashMap<>();
+        JdbcFactory.getTemplate(dbAdapter.getDbInstance(dbFile)).execute((ConnectionCallback) conn -> {
+            DatabaseMetaData md = conn.getMetaData();
+            // names are stored in upper case by some databases, and as given by others.
+            for (String name : new LinkedHashSet<>(Arrays.asList(tblName, tblName.toUpperCase(), tblName.toLowerCase()))) {
+                try (ResultSet rs = md.getIndexInfo(null, null, name, false, true)) {
+                    while (rs.next()) {
+                        String idxName = rs.getString("INDEX_NAME");
+                        String colName = rs.getString("COLUMN_NAME");
+                        if (idxName != null) {
+                            indexes.computeIfAbsent(idxName, k -> new ArrayList<>()).add(colName);
+                        }
+                    }
+                }
+                if (indexes.size() > 0) break;
+            }
+            return null;
+        });
+        return indexes;
+    }
+
+    private static String makeKey(String tblName, String col) {
+        return tblName.toLowerCase() + "|" + col;
+    }
+
+    private static String makeIndexName(String tblName, String col) {
+        return String.format("%s_idx_%s", tblName, DigestUtils.md5Hex(col).substring(0, 8));
+    }
+}
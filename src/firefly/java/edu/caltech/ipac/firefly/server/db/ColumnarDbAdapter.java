@@ -0,0 +1,227 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.db;
+
+import edu.caltech.ipac.firefly.data.SortInfo;
+import edu.caltech.ipac.firefly.data.TableServerRequest;
+import edu.caltech.ipac.firefly.server.db.spring.JdbcFactory;
+import edu.caltech.ipac.firefly.server.util.Logger;
+import edu.caltech.ipac.firefly.server.util.ipactable.DataGroupPart;
+import edu.caltech.ipac.util.AppProperties;
+import edu.caltech.ipac.util.DataGroup;
+import edu.caltech.ipac.util.DataType;
+import edu.caltech.ipac.util.StringUtils;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A DbAdapter that keeps an in-memory, column-oriented copy(ColumnarTable) of the 'data' table of each database
+ * it pages through.
+ *
+ * The tables are stored in an HSQL database file like HsqlDbAdapter, which remains the source of truth
+ * for all SQL access.  The first time a table is paged, it is served by the database while a copy
+ * of it is loaded in the background.  Subsequent pages, filtered and sorted or not, are served from memory as long as
+ * their filters and sort can be evaluated by ColumnarTable.  EmbeddedDbProcessor then creates a result set table only
+ * when something queries it by SQL.
+ *
+ * Only tables of up to EmbeddedDb.columnar.max.rows rows are loaded, and the copies of all databases are kept under
+ * EmbeddedDb.columnar.max.memory.mb, least recently used first.  Tables that do not fit are served by the database.
+ *
+ * To use it, set DbAdapter.type to 'columnar'.
+ */
+public class ColumnarDbAdapter extends HsqlDbAdapter {
+    private static final Logger.LoggerImpl LOGGER = Logger.getLogger();
+    private static final int MAX_ROWS = AppProperties.getIntProperty("EmbeddedDb.columnar.max.rows", 1000000);
+    private static final long MAX_MEMORY = AppProperties.getLongProperty("EmbeddedDb.columnar.max.memory.mb", Runtime.getRuntime().maxMemory()/(1024*1024*4)) * 1024 * 1024;
+    private static final ExecutorService loader = Executors.newSingleThreadExecutor();
+
+    private static final LinkedHashMap<String, ColumnarTable> tables = new LinkedHashMap<>(16, .75f, true);     // access-ordered; dbFile|tblName -> table
+    private static final Map<String, Object> loading = new HashMap<>();       // key -> token of the load in progress
+    private static long memoryUsed = 0;
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+
+    public String getName() {
+        return COLUMNAR;
+    }
+
+    /**
+     * close the database.  if the file is deleted, the in-memory copies of its tables are removed as well.
+     */
+    public void close(File dbFile, boolean deleteFile) {
+        super.close(dbFile, deleteFile);
+        if (deleteFile) {
+            evict(dbFile, null);
+        }
+    }
+
+    /**
+     * Same as EmbeddedDbUtil.execRequestQuery, but served from the in-memory copy of the table.
+     * @param treq      request parameters used for select, where, order by, and limit
+     * @param dbFile    database file
+     * @param forTable  table to run the query on
+     * @return the requested page, or null if the table is not in memory or the request cannot be evaluated in memory.
+     */
+    public DataGroupPart execRequestQuery(TableServerRequest treq, File dbFile, String forTable) {
+        return forTable.equalsIgnoreCase("data") ? query(treq, dbFile, false) : null;
+    }
+
+    /**
+     * Serve a page of the result set of the given request, ie. the 'data' table filtered and sorted by it,
+     * from the in-memory copy of 'data' instead of from a result set table.  ROW_NUM is the row's position in
+     * the result set, the same as in a result set table.
+     * @param treq      request parameters used for select, where, order by, and limit
+     * @param dbFile    database file
+     * @return the requested page, or null if 'data' is not in memory or the request cannot be evaluated in memory.
+     */
+    public DataGroupPart getResultSetPage(TableServerRequest treq, File dbFile) {
+        return query(treq, dbFile, true);
+    }
+
+    /**
+     * remove the in-memory copy of the given table.  this should be called when the table is dropped or modified.
+     * @param dbFile    database file
+     * @param tblName   the table to remove, or null to remove all of the tables of this database
+     */
+    public static void evict(File dbFile, String tblName) {
+        String prefix = dbFile.getPath() + "|" + (tblName == null ? "" : tblName.toLowerCase());
+        synchronized (tables) {
+            for (Iterator<Map.Entry<String, ColumnarTable>> itr = tables.entrySet().iterator(); itr.hasNext(); ) {
+                Map.Entry<String, ColumnarTable> e = itr.next();
+                if (tblName == null ? e.getKey().startsWith(prefix) : e.getKey().equals(prefix)) {
+                    memoryUsed -= e.getValue().getMemoryUsed();
+                    itr.remove();
+                }
+            }
+            loading.keySet().removeIf(k -> tblName == null ? k.startsWith(prefix) : k.equals(prefix));
+        }
+    }
+
+    public static int getTableCount() {
+        synchronized (tables) {
+            return tables.size();
+        }
+    }
+
+    public static long getMemoryUsed() {
+        synchronized (tables) {
+            return memoryUsed;
+        }
+    }
+
+    public static long getMaxMemory() { return MAX_MEMORY; }
+    public static long getHits() { return hits.get(); }
+    public static long getMisses() { return misses.get(); }
+    public static long getEvictions() { return evictions.get(); }
+
+//====================================================================
+//
+//====================================================================
+
+    private DataGroupPart query(TableServerRequest treq, File dbFile, boolean renumber) {
+        ColumnarTable table = getTable(dbFile, "data");
+        if (table == null || !StringUtils.isEmpty(treq.getParam(TableServerRequest.INCL_COLUMNS))) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        int[] rows = null;
+        if (treq.getFilters() != null && treq.getFilters().size() > 0) {
+            rows = table.select(treq.getFilters());
+            if (rows == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        SortInfo sortInfo = treq.getSortInfo();
+        if (sortInfo != null) {
+            rows = rows == null ? table.select(null) : rows;
+            if (!table.sort(rows, sortInfo.getSortColumns(), sortInfo.getDirection() == SortInfo.Direction.DESC)) {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+        hits.incrementAndGet();
+
+        boolean paging = !StringUtils.isEmpty(pagingPart(treq));
+        int rowCnt = rows == null ? table.size() : rows.length;
+        int start = paging ? Math.max(treq.getStartIndex(), 0) : 0;
+        DataGroup data = paging ? table.getRows(rows, start, treq.getPageSize()) : table.getRows(rows, 0, rowCnt);
+
+        DataType rowNum = data.getDataDefintion(DataGroup.ROW_NUM);
+        if (renumber && rowNum != null) {
+            for (int i = 0; i < data.size(); i++) {
+                data.get(i).setDataElement(rowNum, start + i);
+            }
+        }
+
+        DataGroupPart page = EmbeddedDbUtil.toDataGroupPart(data, treq);
+        page.setRowCount(paging ? rowCnt : data.size());
+        if (!StringUtils.isEmpty(treq.getTblTitle())) {
+            page.getData().setTitle(treq.getTblTitle());  // set the datagroup's title to the request title.
+        }
+        return page;
+    }
+
+    /**
+     * @return the in-memory copy of the given table.  if it's not in memory, schedule it to be loaded and return null.
+     */
+    private ColumnarTable getTable(File dbFile, String tblName) {
+        String key = dbFile.getPath() + "|" + tblName.toLowerCase();
+        Object token = new Object();        // identifies this load, so that a load started before an evict cannot touch a newer one
+        synchronized (tables) {
+            ColumnarTable table = tables.get(key);
+            if (table != null || loading.putIfAbsent(key, token) != null) return table;
+        }
+        loader.submit(() -> {
+            try {
+                if (EmbeddedDbUtil.getRowCount(this, dbFile, tblName, "") > MAX_ROWS) return;     // too big; leave it in the database
+
+                DataGroup header = EmbeddedDbUtil.execQuery(this, dbFile, String.format("select * from %s where 1 = 0", tblName), tblName);
+                ColumnarTable table = (ColumnarTable) JdbcFactory.getTemplate(getDbInstance(dbFile)).query(
+                                        String.format("select * from %s", tblName), (ResultSetExtractor) rs -> ColumnarTable.load(rs, header));
+                add(key, token, table);
+            } catch (Exception e) {
+                LOGGER.warn(e, "Unable to load table into memory: " + tblName + " from " + dbFile.getPath());
+            } finally {
+                synchronized (tables) {
+                    loading.remove(key, token);
+                }
+            }
+        });
+        return null;
+    }
+
+    private static void add(String key, Object token, ColumnarTable table) {
+        long size = table.getMemoryUsed();
+        if (size > MAX_MEMORY) return;
+
+        synchronized (tables) {
+            if (loading.get(key) != token) return;      // evicted while being loaded
+            List<String> toBeEvicted = new ArrayList<>();
+            long total = memoryUsed + size;
+            for (Map.Entry<String, ColumnarTable> e : tables.entrySet()) {
+                if (total <= MAX_MEMORY) break;
+                toBeEvicted.add(e.getKey());
+                total -= e.getValue().getMemoryUsed();
+            }
+            toBeEvicted.forEach(k -> memoryUsed -= tables.remove(k).getMemoryUsed());
+            evictions.addAndGet(toBeEvicted.size());
+
+            tables.put(key, table);
+            memoryUsed += size;
+        }
+    }
+}
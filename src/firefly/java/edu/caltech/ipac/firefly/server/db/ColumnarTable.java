@@ -0,0 +1,594 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.db;
+
+import edu.caltech.ipac.util.DataGroup;
+import edu.caltech.ipac.util.DataObject;
+import edu.caltech.ipac.util.DataType;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A read-only, column-oriented copy of a table held in memory.
+ * Integer and floating point columns are stored as long[] and double[], and strings are dictionary-encoded.
+ *
+ * It answers the simple filter, sort and paging requests that make up most of table browsing without
+ * going through JDBC.  Filters are limited to one comparison per condition, ie.  "col" op literal,
+ * "col" [NOT] IN (literals), "col" [NOT] LIKE 'pattern', and "col" IS [NOT] NULL.  When a request cannot be
+ * evaluated, null is returned so the caller can hand it to the database instead.
+ *
+ * String comparisons ignore case to match the sql.ignore_case setting of the embedded HSQL database.
+ */
+public class ColumnarTable {
+    private static final Pattern COND = Pattern.compile(
+            "^\\s*(?:\"([^\"]+)\"|([A-Z_][A-Z0-9_]*))\\s*(<=|>=|<>|!=|=|<|>|(?:NOT\\s+)?LIKE|(?:NOT\\s+)?IN|IS\\s+(?:NOT\\s+)?NULL)\\s*(.*?)\\s*$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern NUMBER = Pattern.compile("[-+]?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?");
+    private static final Pattern INTEGER = Pattern.compile("[-+]?\\d+");
+
+    private final DataGroup header;         // column definitions and attributes, without data
+    private final Column[] columns;
+    private final int size;
+    private final long memoryUsed;
+
+    private ColumnarTable(DataGroup header, Column[] columns, int size) {
+        this.header = header;
+        this.columns = columns;
+        this.size = size;
+        memoryUsed = Arrays.stream(columns).mapToLong(c -> c.memory(size) + c.nulls.size()/8).sum();
+    }
+
+    /**
+     * load all of the rows from the given ResultSet.  values are read the same way DataGroupUtil.processResults does.
+     * @param rs        the rows to load
+     * @param header    a DataGroup without data describing the columns of rs, in the same order
+     * @return a new ColumnarTable
+     */
+    public static ColumnarTable load(ResultSet rs, DataGroup header) throws SQLException {
+        DataType[] dtypes = header.getDataDefinitions();
+        Column[] cols = makeColumns(dtypes);
+        int size = 0;
+        while (rs.next()) {
+            for (int i = 0; i < cols.length; i++) {
+                cols[i].add(size, readValue(rs, i + 1, dtypes[i].getDataType()));
+            }
+            size++;
+        }
+        return new ColumnarTable(header, cols, size);
+    }
+
+    /**
+     * @param dg the data to copy
+     * @return a new ColumnarTable containing the data and column definitions of the given DataGroup
+     */
+    public static ColumnarTable from(DataGroup dg) {
+        DataType[] dtypes = dg.getDataDefinitions();
+        Column[] cols = makeColumns(dtypes);
+        for (int r = 0; r < dg.size(); r++) {
+            DataObject row = dg.get(r);
+            for (int i = 0; i < cols.length; i++) {
+                cols[i].add(r, row.getDataElement(dtypes[i]));
+            }
+        }
+        return new ColumnarTable(dg.subset(0, 0), cols, dg.size());
+    }
+
+    public int size() { return size; }
+
+    /**
+     * @return an estimate of the number of bytes used by this table's data
+     */
+    public long getMemoryUsed() { return memoryUsed; }
+
+    /**
+     * @param filters   conditions to apply.  all of them must be true for a row to be selected.
+     * @return the indices of the matching rows in table order, or null if any of the filters cannot be evaluated.
+     */
+    public int[] select(List<String> filters) {
+        List<IntPredicate> preds = new ArrayList<>();
+        if (filters != null) {
+            for (String cond : filters) {
+                IntPredicate p = parseCondition(cond);
+                if (p == null) return null;
+                preds.add(p);
+            }
+        }
+        int[] rows = new int[size];
+        int cnt = 0;
+        for (int r = 0; r < size; r++) {
+            boolean match = true;
+            for (int i = 0; i < preds.size() && match; i++) {
+                match = preds.get(i).test(r);
+            }
+            if (match) rows[cnt++] = r;
+        }
+        return cnt == size ? rows : Arrays.copyOf(rows, cnt);
+    }
+
+    /**
+     * sort the given rows in place by the given columns.  nulls are sorted first in ascending order, and last
+     * in descending order.  rows with equal values keep their relative order.
+     * @param rows      indices of the rows to sort
+     * @param sortCols  names of the columns to sort by, with or without double-quotes
+     * @param desc      true to sort in descending order
+     * @return false if any of the columns does not exist.  rows are not modified in this case.
+     */
+    public boolean sort(int[] rows, List<String> sortCols, boolean desc) {
+        Column[] by = new Column[sortCols.size()];
+        for (int i = 0; i < by.length; i++) {
+            by[i] = getColumn(sortCols.get(i).replaceFirst("^\"(.+)\"$", "$1"));
+            if (by[i] == null) return false;
+        }
+        Integer[] boxed = new Integer[rows.length];
+        for (int i = 0; i < rows.length; i++) boxed[i] = rows[i];
+        Arrays.sort(boxed, (r1, r2) -> {
+            for (Column c : by) {
+                boolean n1 = c.nulls.get(r1), n2 = c.nulls.get(r2);
+                int v = n1 || n2 ? Boolean.compare(n2, n1) : c.compare(r1, r2);
+                if (v != 0) return desc ? -v : v;
+            }
+            return 0;
+        });
+        for (int i = 0; i < rows.length; i++) rows[i] = boxed[i];
+        return true;
+    }
+
+    /**
+     * @param rows  indices of the rows to return, or null for all rows in table order
+     * @param start index into rows of the first row to return
+     * @param count maximum number of rows to return
+     * @return a new DataGroup with the same columns and attributes as this table, containing the requested rows
+     */
+    public DataGroup getRows(int[] rows, int start, int count) {
+        DataType[] dtypes = Arrays.stream(header.getDataDefinitions()).map(DataType::copyOf).toArray(DataType[]::new);
+        DataGroup dg = new DataGroup(header.getTitle(), dtypes);
+        dg.setAttributes(header.getKeywords());
+
+        int total = rows == null ? size : rows.length;
+        int end = (int) Math.min(total, (long) start + count);
+        int[] widths = new int[columns.length];
+        for (int i = Math.max(start, 0); i < end; i++) {
+            int r = rows == null ? i : rows[i];
+            Object[] vals = new Object[columns.length];
+            for (int c = 0; c < columns.length; c++) {
+                vals[c] = columns[c].nulls.get(r) ? null : columns[c].get(r);
+                if (vals[c] instanceof String) {
+                    widths[c] = Math.max(widths[c], ((String) vals[c]).length());
+                }
+            }
+            DataObject row = new DataObject(dg);
+            row.setData(vals);
+            dg.add(row);
+        }
+        // same as DataGroupUtil.processResults; width of char columns are based on the returned data.
+        for (int c = 0; c < columns.length; c++) {
+            if (widths[c] > 0) dtypes[c].setMaxDataWidth(widths[c]);
+        }
+        return dg;
+    }
+
+//====================================================================
+//
+//====================================================================
+
+    private Column getColumn(String name) {
+        DataType[] dtypes = header.getDataDefinitions();
+        for (int i = 0; i < dtypes.length; i++) {
+            if (dtypes[i].getKeyName().equals(name)) return columns[i];
+        }
+        return null;
+    }
+
+    /**
+     * @return a predicate on row index for the given condition, or null if it cannot be evaluated.
+     */
+    private IntPredicate parseCondition(String cond) {
+        Matcher m = COND.matcher(cond);
+        if (!m.matches()) return null;
+
+        Column col = getColumn(m.group(1) != null ? m.group(1) : m.group(2));
+        if (col == null) return null;
+        String op = m.group(3).toUpperCase().replaceAll("\\s+", " ");
+        String rest = m.group(4);
+
+        if (op.startsWith("IS ")) {
+            if (rest.length() > 0) return null;
+            return op.equals("IS NULL") ? col.nulls::get : (r) -> !col.nulls.get(r);
+        }
+
+        List<Object> literals;
+        if (op.endsWith("IN")) {
+            if (!rest.startsWith("(") || !rest.endsWith(")")) return null;
+            literals = parseLiterals(rest.substring(1, rest.length() - 1));
+        } else {
+            literals = parseLiterals(rest);
+            if (literals != null && literals.size() != 1) return null;
+        }
+        if (literals == null || literals.size() == 0) return null;
+
+        IntPredicate p = col.matcher(op, literals);
+        return p == null ? null : (r) -> !col.nulls.get(r) && p.test(r);     // comparisons with null are never true
+    }
+
+    /**
+     * @return the comma-separated literals in s, as String, Long for integers that fit in a long, or Double,
+     * or null if s contains anything else.
+     */
+    static List<Object> parseLiterals(String s) {
+        List<Object> literals = new ArrayList<>();
+        int i = 0;
+        while (i < s.length()) {
+            while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+            if (i >= s.length()) return null;
+            if (s.charAt(i) == '\'') {
+                StringBuilder sb = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= s.length()) return null;                   // unterminated string
+                    char c = s.charAt(i++);
+                    if (c == '\'') {
+                        if (i < s.length() && s.charAt(i) == '\'') {
+                            sb.append('\'');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        sb.append(c);
+                    }
+                }
+                literals.add(sb.toString());
+            } else {
+                int end = i;
+                while (end < s.length() && s.charAt(end) != ',' && !Character.isWhitespace(s.charAt(end))) end++;
+                String num = s.substring(i, end);
+                if (!NUMBER.matcher(num).matches()) return null;
+                literals.add(parseNumber(num));
+                i = end;
+            }
+            while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+            if (i < s.length()) {
+                if (s.charAt(i) != ',') return null;
+                i++;
+                if (i >= s.length()) return null;                       // trailing comma
+            }
+        }
+        return literals;
+    }
+
+    /**
+     * integers are kept as long, so that long values above 2^53 are compared exactly
+     */
+    private static Number parseNumber(String num) {
+        if (INTEGER.matcher(num).matches()) {
+            try {
+                return Long.parseLong(num);
+            } catch (NumberFormatException e) {
+                // too big for a long
+            }
+        }
+        return Double.parseDouble(num);
+    }
+
+    private static Object readValue(ResultSet rs, int idx, Class<?> type) throws SQLException {
+        Object obj;
+        switch (type.getSimpleName()) {
+            case "Boolean":
+                obj = rs.getBoolean(idx);
+                break;
+            case "String":
+            case "HREF":
+                obj = rs.getString(idx);
+                break;
+            case "Double":
+                obj = rs.getDouble(idx);
+                break;
+            case "Float":
+                obj = rs.getFloat(idx);
+                break;
+            case "Integer":
+                obj = rs.getInt(idx);
+                break;
+            case "Short":
+                obj = rs.getShort(idx);
+                break;
+            case "Long":
+                obj = rs.getLong(idx);
+                break;
+            default:
+                obj = rs.getObject(idx);
+        }
+        return rs.wasNull() ? null : obj;
+    }
+
+    private static Column[] makeColumns(DataType[] dtypes) {
+        Column[] cols = new Column[dtypes.length];
+        for (int i = 0; i < dtypes.length; i++) {
+            Class<?> type = dtypes[i].getDataType();
+            if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class) {
+                cols[i] = new LongColumn(type);
+            } else if (type == Double.class || type == Float.class) {
+                cols[i] = new DoubleColumn(type);
+            } else if (type == String.class) {
+                cols[i] = new StringColumn();
+            } else {
+                cols[i] = new ObjectColumn();
+            }
+        }
+        return cols;
+    }
+
+    private static boolean isTrue(String op, int cmp) {
+        switch (op) {
+            case "=":   return cmp == 0;
+            case "!=":
+            case "<>":  return cmp != 0;
+            case "<":   return cmp < 0;
+            case "<=":  return cmp <= 0;
+            case ">":   return cmp > 0;
+            case ">=":  return cmp >= 0;
+            default:    return false;
+        }
+    }
+
+//====================================================================
+//  column storage
+//====================================================================
+
+    private static abstract class Column {
+        final BitSet nulls = new BitSet();
+
+        void add(int row, Object val) {
+            if (val == null) {
+                nulls.set(row);
+                ensureCapacity(row + 1);
+            } else {
+                set(row, val);
+            }
+        }
+
+        abstract void ensureCapacity(int size);
+        abstract void set(int row, Object val);
+        abstract Object get(int row);
+        abstract int compare(int r1, int r2);
+        abstract long memory(int size);
+
+        /**
+         * @return a predicate for the given operator and literals on non-null values, or null if it's not supported
+         */
+        abstract IntPredicate matcher(String op, List<Object> literals);
+    }
+
+    private static class LongColumn extends Column {
+        private final Class<?> type;
+        private long[] data = new long[1024];
+
+        LongColumn(Class<?> type) { this.type = type; }
+
+        void ensureCapacity(int size) {
+            if (size > data.length) data = Arrays.copyOf(data, Math.max(size, data.length * 2));
+        }
+
+        void set(int row, Object val) {
+            ensureCapacity(row + 1);
+            data[row] = ((Number) val).longValue();
+        }
+
+        Object get(int row) {
+            long v = data[row];
+            if (type == Integer.class) return (int) v;
+            if (type == Short.class) return (short) v;
+            if (type == Byte.class) return (byte) v;
+            return v;
+        }
+
+        int compare(int r1, int r2) { return Long.compare(data[r1], data[r2]); }
+
+        long memory(int size) { return size * 8L; }
+
+        IntPredicate matcher(String op, List<Object> literals) {
+            if (!literals.stream().allMatch(l -> l instanceof Number)) return null;
+            if (literals.stream().allMatch(l -> l instanceof Long)) {
+                // compared as long, doubles can not tell apart values above 2^53
+                long val = (Long) literals.get(0);
+                switch (op) {
+                    case "IN":
+                    case "NOT IN":
+                        long[] vals = literals.stream().mapToLong(l -> (Long) l).sorted().toArray();
+                        boolean in = op.equals("IN");
+                        return (r) -> (Arrays.binarySearch(vals, data[r]) >= 0) == in;
+                    case "LIKE":
+                    case "NOT LIKE":
+                        return null;
+                    default:
+                        return (r) -> isTrue(op, Long.compare(data[r], val));
+                }
+            }
+            double val = ((Number) literals.get(0)).doubleValue();
+            switch (op) {
+                case "IN":
+                case "NOT IN":
+                    double[] vals = literals.stream().mapToDouble(l -> ((Number) l).doubleValue()).sorted().toArray();
+                    boolean in = op.equals("IN");
+                    return (r) -> (Arrays.binarySearch(vals, (double) data[r]) >= 0) == in;
+                case "LIKE":
+                case "NOT LIKE":
+                    return null;
+                default:
+                    return (r) -> isTrue(op, Double.compare(data[r], val));
+            }
+        }
+    }
+
+    /**
+     * Float columns are stored as double.  the original type is restored when read.
+     */
+    private static class DoubleColumn extends Column {
+        private final Class<?> type;
+        private double[] data = new double[1024];
+
+        DoubleColumn(Class<?> type) { this.type = type; }
+
+        void ensureCapacity(int size) {
+            if (size > data.length) data = Arrays.copyOf(data, Math.max(size, data.length * 2));
+        }
+
+        void set(int row, Object val) {
+            ensureCapacity(row + 1);
+            data[row] = ((Number) val).doubleValue();
+        }
+
+        Object get(int row) {
+            if (type == Float.class) return (float) data[row];
+            return data[row];
+        }
+
+        int compare(int r1, int r2) { return Double.compare(data[r1], data[r2]); }
+
+        long memory(int size) { return size * 8L; }
+
+        IntPredicate matcher(String op, List<Object> literals) {
+            if (!literals.stream().allMatch(l -> l instanceof Number)) return null;
+            double val = ((Number) literals.get(0)).doubleValue();
+            switch (op) {
+                case "IN":
+                case "NOT IN":
+                    double[] vals = literals.stream().mapToDouble(l -> ((Number) l).doubleValue()).sorted().toArray();
+                    boolean in = op.equals("IN");
+                    return (r) -> (Arrays.binarySearch(vals, data[r]) >= 0) == in;
+                case "LIKE":
+                case "NOT LIKE":
+                    return null;
+                default:
+                    return (r) -> isTrue(op, Double.compare(data[r], val));
+            }
+        }
+    }
+
+    private static class StringColumn extends Column {
+        private int[] codes = new int[1024];
+        private final List<String> dict = new ArrayList<>();
+        private final Map<String, Integer> lookup = new HashMap<>();
+        private int[] rank;                     // rank of each dictionary entry in case-insensitive order
+
+        void ensureCapacity(int size) {
+            if (size > codes.length) codes = Arrays.copyOf(codes, Math.max(size, codes.length * 2));
+        }
+
+        void set(int row, Object val) {
+            ensureCapacity(row + 1);
+            String s = val.toString();
+            Integer code = lookup.get(s);
+            if (code == null) {
+                code = dict.size();
+                dict.add(s);
+                lookup.put(s, code);
+                rank = null;
+            }
+            codes[row] = code;
+        }
+
+        Object get(int row) { return dict.get(codes[row]); }
+
+        synchronized int[] getRank() {
+            if (rank == null) {
+                Integer[] order = new Integer[dict.size()];
+                for (int i = 0; i < order.length; i++) order[i] = i;
+                Arrays.sort(order, (c1, c2) -> String.CASE_INSENSITIVE_ORDER.compare(dict.get(c1), dict.get(c2)));
+                int[] r = new int[order.length];
+                for (int i = 0; i < order.length; i++) {
+                    // equal values share the same rank
+                    r[order[i]] = i > 0 && String.CASE_INSENSITIVE_ORDER.compare(dict.get(order[i]), dict.get(order[i-1])) == 0 ? r[order[i-1]] : i;
+                }
+                rank = r;
+            }
+            return rank;
+        }
+
+        int compare(int r1, int r2) {
+            int[] rank = getRank();
+            return Integer.compare(rank[codes[r1]], rank[codes[r2]]);
+        }
+
+        long memory(int size) {
+            return size * 4L + dict.stream().mapToLong(s -> 48 + s.length() * 2L).sum();
+        }
+
+        IntPredicate matcher(String op, List<Object> literals) {
+            if (!literals.stream().allMatch(l -> l instanceof String)) return null;
+
+            // evaluate the condition once for each distinct value
+            BitSet matches = new BitSet(dict.size());
+            String val = (String) literals.get(0);
+            Pattern like = op.endsWith("LIKE") ? Pattern.compile(likeToRegex(val), Pattern.CASE_INSENSITIVE | Pattern.DOTALL) : null;
+            for (int i = 0; i < dict.size(); i++) {
+                String s = dict.get(i);
+                boolean m;
+                switch (op) {
+                    case "IN":          m = literals.stream().anyMatch(l -> s.equalsIgnoreCase((String) l)); break;
+                    case "NOT IN":      m = literals.stream().noneMatch(l -> s.equalsIgnoreCase((String) l)); break;
+                    case "LIKE":        m = like.matcher(s).matches(); break;
+                    case "NOT LIKE":    m = !like.matcher(s).matches(); break;
+                    default:            m = isTrue(op, String.CASE_INSENSITIVE_ORDER.compare(s, val));
+                }
+                matches.set(i, m);
+            }
+            return (r) -> matches.get(codes[r]);
+        }
+
+        private static String likeToRegex(String pattern) {
+            StringBuilder sb = new StringBuilder();
+            for (char c : pattern.toCharArray()) {
+                if (c == '%') {
+                    sb.append(".*");
+                } else if (c == '_') {
+                    sb.append('.');
+                } else {
+                    sb.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * for the less common types, ie. Boolean and Date.  only IS [NOT] NULL is supported in filters.
+     */
+    private static class ObjectColumn extends Column {
+        private Object[] data = new Object[1024];
+
+        void ensureCapacity(int size) {
+            if (size > data.length) data = Arrays.copyOf(data, Math.max(size, data.length * 2));
+        }
+
+        void set(int row, Object val) {
+            ensureCapacity(row + 1);
+            data[row] = val;
+        }
+
+        Object get(int row) { return data[row]; }
+
+        @SuppressWarnings("unchecked")
+        int compare(int r1, int r2) {
+            Object v1 = data[r1], v2 = data[r2];
+            return v1 instanceof Comparable ? ((Comparable) v1).compareTo(v2) : String.valueOf(v1).compareTo(String.valueOf(v2));
+        }
+
+        long memory(int size) { return size * 24L; }
+
+        IntPredicate matcher(String op, List<Object> literals) {
+            return null;
+        }
+    }
+}
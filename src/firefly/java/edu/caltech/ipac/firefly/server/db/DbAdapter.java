@@ -19,6 +19,7 @@ public interface DbAdapter {
     String H2 = "h2";
     String SQLITE = "sqlite";
     String HSQL = "hsql";
+    String COLUMNAR = "columnar";
 
     /**
      * @return the name of this database
@@ -67,6 +68,8 @@ public interface DbAdapter {
     String pagingPart(TableServerRequest treq) ;
 
     String createTableFromSelect(String tblName, String selectSql);
+    String dropTableSql(String tblName);
+    String createIndexSql(String tblName, String indexName, String column);
     String translateSql(String sql);
 
 //====================================================================
@@ -88,6 +91,8 @@ public interface DbAdapter {
                 return new SqliteDbAdapter();
             case HSQL:
                 return new HsqlDbAdapter();
+            case COLUMNAR:
+                return new ColumnarDbAdapter();
             default:
                 return new HsqlDbAdapter();   // when an unrecognized type is given.
         }
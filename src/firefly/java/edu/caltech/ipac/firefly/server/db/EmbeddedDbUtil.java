@@ -10,18 +10,22 @@ import edu.caltech.ipac.firefly.server.ServerContext;
 import edu.caltech.ipac.firefly.server.db.spring.JdbcFactory;
 import edu.caltech.ipac.firefly.server.db.spring.mapper.DataGroupUtil;
 import edu.caltech.ipac.firefly.server.query.DataAccessException;
+import edu.caltech.ipac.firefly.server.query.DecimationCache;
 import edu.caltech.ipac.firefly.server.query.EmbeddedDbProcessor;
 import edu.caltech.ipac.firefly.server.query.SearchManager;
 import edu.caltech.ipac.firefly.server.query.SearchProcessor;
 import edu.caltech.ipac.firefly.server.util.Logger;
+import edu.caltech.ipac.firefly.server.util.StopWatch;
 import edu.caltech.ipac.firefly.server.util.ipactable.DataGroupPart;
 import edu.caltech.ipac.firefly.server.util.ipactable.IpacTableParser;
 import edu.caltech.ipac.firefly.server.util.ipactable.TableDef;
+import edu.caltech.ipac.util.AppProperties;
 import edu.caltech.ipac.util.DataGroup;
 import edu.caltech.ipac.util.DataObject;
 import edu.caltech.ipac.util.DataType;
 import edu.caltech.ipac.util.StringUtils;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
 import org.springframework.transaction.TransactionStatus;
@@ -34,10 +38,22 @@ import java.io.IOException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static edu.caltech.ipac.firefly.server.db.DbCustomFunctions.createCustomFunctions;
@@ -53,6 +69,16 @@ import static edu.caltech.ipac.util.IpacTableUtil.*;
  */
 public class EmbeddedDbUtil {
     private static final Logger.LoggerImpl logger = Logger.getLogger();
+    private static final int INGEST_BATCH_SIZE = AppProperties.getIntProperty("EmbeddedDb.ingest.batch.size", 10000);
+    private static final boolean INGEST_IN_PARALLEL = AppProperties.getBooleanProperty("EmbeddedDb.ingest.parallel", false);
+    private static final int INGEST_THREADS = AppProperties.getIntProperty("EmbeddedDb.ingest.threads", Runtime.getRuntime().availableProcessors());
+    // when all of the workers are busy, the rows are read on the loading thread instead.
+    private static final ThreadPoolExecutor ingestWorkers = new ThreadPoolExecutor(0, INGEST_THREADS, 60, TimeUnit.SECONDS,
+                                                                new SynchronousQueue<>(), (r) -> {
+                                                                    Thread t = new Thread(r, "ingest-worker");
+                                                                    t.setDaemon(true);
+                                                                    return t;
+                                                                });
 
     /**
      * setup a database
@@ -61,6 +87,8 @@ public class EmbeddedDbUtil {
      */
     public static void createDbFile(File dbFile, DbAdapter dbAdapter) throws IOException {
         dbAdapter.close(dbFile, true);              // in case database exists in memory, close it and remove all files related to it.
+        BaseDbAdapter.EmbeddedDbInstance dbInstance = BaseDbAdapter.getDbInstances().get(dbFile.getPath());
+        if (dbInstance != null) dbInstance.clearCache();        // cached info no longer valid
         dbFile.createNewFile();                     // creates the file
         createCustomFunctions(dbFile, dbAdapter);   // add custom functions
     }
@@ -86,6 +114,28 @@ public class EmbeddedDbUtil {
         return finfo;
     }
 
+    /**
+     * ingest the rows returned by the given iterator into a database file using the provided DbAdpater.
+     * Unlike ingestDataGroup, the rows are never held in memory all at once.  They are loaded and committed
+     * in chunks of EmbeddedDb.ingest.batch.size rows as they are read.  Once they are all read, the column widths
+     * are fit to the data, as DataGroupReader.read does, before the dd table is created.
+     * @param dbFile  the file to save the database to.
+     * @param tableDef a DataGroup containing the column definitions and meta of the table.  its rows are ignored.
+     * @param rows  the rows to ingest.  they must be bound to tableDef's column definitions.
+     * @param dbAdapter DbAdapter to use.. ie sqlite, h2, etc.
+     * @param forTable the name of the table to ingest to
+     * @return  a FileInfo with sizeInBytes representing to the number of rows.
+     */
+    public static FileInfo ingestDataGroup(File dbFile, DataGroup tableDef, Iterator<DataObject> rows, DbAdapter dbAdapter, String forTable) {
+
+        createDataTbl(dbFile, tableDef, rows, dbAdapter, forTable);
+        tableDef.shrinkToFitData();         // it has no rows; the widths of the data read are kept by its columns
+        createDDTbl(dbFile, tableDef, dbAdapter, forTable);
+        createMetaTbl(dbFile, tableDef, dbAdapter, forTable);
+        FileInfo finfo = new FileInfo(dbFile);
+        return finfo;
+    }
+
     public static void setDbMetaInfo(TableServerRequest treq, DbAdapter dbAdapter, File dbFile) {
         treq.setMeta(TBL_FILE_PATH, ServerContext.replaceWithPrefix(dbFile));
         treq.setMeta(TBL_FILE_TYPE, dbAdapter.getName());
@@ -98,29 +148,67 @@ public class EmbeddedDbUtil {
     }
 
     public static int createDataTbl(File dbFile, DataGroup dg, DbAdapter dbAdapter, String tblName) {
+        return createDataTbl(dbFile, dg, dg.iterator(), dbAdapter, tblName);
+    }
 
-        DataType[] colsAry = makeDbCols(dg);
-        int totalRows = dg.size();
+    /**
+     * create the data table, then load the rows returned by the given iterator into it in chunks.
+     * the table is created after the first row is read, so that column types unknown until then can be resolved.
+     * @param dbFile    database file
+     * @param tableDef  a DataGroup containing the column definitions of the table
+     * @param rows      the rows to load
+     * @param dbAdapter DbAdapter to use
+     * @param tblName   the name of the table to create
+     * @return the number of rows loaded
+     */
+    public static int createDataTbl(File dbFile, DataGroup tableDef, Iterator<DataObject> rows, DbAdapter dbAdapter, String tblName) {
+
+        boolean hasRows = rows.hasNext();           // resolves column types not given in the header
+        DataType[] colsAry = makeDbCols(tableDef);
 
         String createDataSql = dbAdapter.createDataSql(colsAry, tblName);
         JdbcFactory.getSimpleTemplate(dbAdapter.getDbInstance(dbFile)).update(createDataSql);
-        if (totalRows > 0) {
-            String[] var = new String[colsAry.length];
-            Arrays.fill(var , "?");
 
+        int totalRows = 0;
+        if (hasRows) {
             String insertDataSql = dbAdapter.insertDataSql(colsAry, tblName);
-
             JdbcTemplate jdbc = JdbcFactory.getTemplate(dbAdapter.getDbInstance(dbFile));
-            if (dbAdapter.useTxnDuringLoad()) {
-                TransactionTemplate txnJdbc = JdbcFactory.getTransactionTemplate(jdbc.getDataSource());
-                txnJdbc.execute(new TransactionCallbackWithoutResult() {
-                    public void doInTransactionWithoutResult(TransactionStatus status) {
-                        doTableLoad(jdbc, insertDataSql, dg);
+            TransactionTemplate txnJdbc = dbAdapter.useTxnDuringLoad() ? JdbcFactory.getTransactionTemplate(jdbc.getDataSource()) : null;
+            DataType[] srcCols = Arrays.copyOf(colsAry, colsAry.length - 2);
+            ParamBinder[] binders = Arrays.stream(srcCols).map(dt -> makeBinder(dt.getDataType())).toArray(ParamBinder[]::new);
+
+            // when loading in parallel, rows are read and parsed on a worker thread while this thread writes them.
+            Iterator<List<DataObject>> chunks = null;
+            if (INGEST_IN_PARALLEL) {
+                try {
+                    chunks = new PrefetchedChunks(rows, INGEST_BATCH_SIZE);
+                } catch (RejectedExecutionException e) {
+                    // no worker available
+                }
+            }
+            if (chunks == null) chunks = new Chunks(rows, INGEST_BATCH_SIZE);
+
+            String desc = "loadTable: " + dbFile.getName();
+            StopWatch.getInstance().start(desc);
+            try {
+                while (chunks.hasNext()) {
+                    List<DataObject> chunk = chunks.next();
+                    int startIdx = totalRows;
+                    if (txnJdbc != null) {
+                        txnJdbc.execute(new TransactionCallbackWithoutResult() {
+                            public void doInTransactionWithoutResult(TransactionStatus status) {
+                                doTableLoad(jdbc, insertDataSql, srcCols, binders, chunk, startIdx);
+                            }
+                        });
+                    } else {
+                        doTableLoad(jdbc, insertDataSql, srcCols, binders, chunk, startIdx);
                     }
-                });
-            } else {
-                doTableLoad(jdbc, insertDataSql, dg);
+                    totalRows += chunk.size();
+                }
+            } finally {
+                if (chunks instanceof PrefetchedChunks) ((PrefetchedChunks) chunks).close();
             }
+            StopWatch.getInstance().stop(desc).printRate(desc, totalRows, "rows");
         }
 
         return totalRows;
@@ -136,6 +224,11 @@ public class EmbeddedDbUtil {
      */
     public static DataGroupPart execRequestQuery(TableServerRequest treq, File dbFile, String forTable) {
         DbAdapter dbAdapter = DbAdapter.getAdapter(treq);
+        if (dbAdapter instanceof ColumnarDbAdapter) {
+            DataGroupPart page = ((ColumnarDbAdapter) dbAdapter).execRequestQuery(treq, dbFile, forTable);
+            if (page != null) return page;
+        }
+
         String selectPart = dbAdapter.selectPart(treq);
         String wherePart = dbAdapter.wherePart(treq);
         String orderByPart = dbAdapter.orderByPart(treq);
@@ -147,8 +240,11 @@ public class EmbeddedDbUtil {
         int rowCnt = data.size();
         if (!StringUtils.isEmpty(pagingPart)) {
             // fetch total row count for the query.. datagroup may contain partial results(paging)
-            String cntSql = String.format("select count(*) from %s %s", forTable, wherePart);
-            rowCnt = JdbcFactory.getSimpleTemplate(dbAdapter.getDbInstance(dbFile)).queryForInt(cntSql);
+            if (data.size() > 0 && data.size() < treq.getPageSize()) {
+                rowCnt = treq.getStartIndex() + data.size();        // this is the last page; no need to count.
+            } else {
+                rowCnt = getRowCount(dbAdapter, dbFile, forTable, wherePart);
+            }
         }
 
         DataGroupPart page = EmbeddedDbUtil.toDataGroupPart(data, treq);
@@ -222,7 +318,7 @@ public class EmbeddedDbUtil {
         String tblName = proc.getResultSetID(treq);
         String inRows = selRows != null && selRows.size() > 0 ? StringUtils.toString(selRows) : "-1";
 
-        if (!hasTable(treq, dbFile, tblName)) {
+        if (!hasTable(treq, dbFile, "data")) {
             try {
                 // data does not exists.. recreate it
                 new SearchManager().getDataGroup(treq);
@@ -231,8 +327,10 @@ public class EmbeddedDbUtil {
             }
         }
 
-        String sql = String.format("select %s from %s where %s in (%s)", selCols, tblName, DataGroup.ROW_NUM, inRows);
-        return EmbeddedDbUtil.execQuery(dbAdapter, dbFile, sql ,tblName);
+        try (ResultSetCache.Pin pin = proc.pinResultSetTable(treq, dbFile)) {
+            String sql = String.format("select %s from %s where %s in (%s)", selCols, tblName, DataGroup.ROW_NUM, inRows);
+            return EmbeddedDbUtil.execQuery(dbAdapter, dbFile, sql, pin.getResultSetID());
+        }
     }
 
     /**
@@ -407,29 +505,70 @@ public class EmbeddedDbUtil {
         return 0;
     }
 
-    private static void doTableLoad(JdbcTemplate jdbc, String insertDataSql, DataGroup data) {
+    private static void doTableLoad(JdbcTemplate jdbc, String insertDataSql, DataType[] cols, ParamBinder[] binders, List<DataObject> chunk, int startIdx) {
 
         jdbc.batchUpdate(insertDataSql, new BatchPreparedStatementSetter() {
             public void setValues(PreparedStatement ps, int i) throws SQLException {
-                Object[] row = data.get(i).getData();
-                Object[] rowWithIdx = new Object[ row.length + 2];
-                System.arraycopy(row, 0, rowWithIdx, 0, row.length);
-                rowWithIdx[row.length] = i;
-                rowWithIdx[row.length+1] = i;
-
-                for (int cidx = 0; cidx < rowWithIdx.length; cidx++) ps.setObject(cidx+1, rowWithIdx[cidx]);
+                Object[] row = chunk.get(i).getData();
+                for (int cidx = 0; cidx < cols.length; cidx++) {
+                    binders[cidx].bind(ps, cidx+1, row[cols[cidx].getColumnIdx()]);
+                }
+                ps.setInt(cols.length+1, startIdx + i);
+                ps.setInt(cols.length+2, startIdx + i);
             }
             public int getBatchSize() {
-                return data.size();
+                return chunk.size();
             }
         });
     }
 
+    /**
+     * returns a ParamBinder using the PreparedStatement setter matching the given column type.
+     * it falls back to setObject when the value is not of the expected type.
+     */
+    private static ParamBinder makeBinder(Class<?> type) {
+        if (type == null) {
+            return (ps, idx, v) -> ps.setObject(idx, v);
+        } else if (String.class.isAssignableFrom(type)) {
+            return (ps, idx, v) -> {
+                if (v == null) ps.setNull(idx, Types.VARCHAR);
+                else if (v instanceof String) ps.setString(idx, (String) v);
+                else ps.setObject(idx, v);
+            };
+        } else if (Integer.class.isAssignableFrom(type)) {
+            return (ps, idx, v) -> {
+                if (v == null) ps.setNull(idx, Types.INTEGER);
+                else if (v instanceof Integer) ps.setInt(idx, (Integer) v);
+                else ps.setObject(idx, v);
+            };
+        } else if (Long.class.isAssignableFrom(type)) {
+            return (ps, idx, v) -> {
+                if (v == null) ps.setNull(idx, Types.BIGINT);
+                else if (v instanceof Long) ps.setLong(idx, (Long) v);
+                else ps.setObject(idx, v);
+            };
+        } else if (Float.class.isAssignableFrom(type)) {
+            return (ps, idx, v) -> {
+                if (v == null) ps.setNull(idx, Types.REAL);
+                else if (v instanceof Float) ps.setFloat(idx, (Float) v);
+                else ps.setObject(idx, v);
+            };
+        } else if (Double.class.isAssignableFrom(type)) {
+            return (ps, idx, v) -> {
+                if (v == null) ps.setNull(idx, Types.DOUBLE);
+                else if (v instanceof Double) ps.setDouble(idx, (Double) v);
+                else ps.setObject(idx, v);
+            };
+        } else {
+            return (ps, idx, v) -> ps.setObject(idx, v);
+        }
+    }
+
     private static DataType[] makeDbCols(DataGroup dg) {
-        DataType[] cols = new DataType[dg.getDataDefinitions().length + 2];
         if (dg.getDataDefintion(ROW_IDX) != null) {
             logger.error("Datagroup should not have ROW_IDX in it at the start.");
         }
+        DataType[] cols = new DataType[dg.getDataDefinitions().length + 2];
         System.arraycopy(dg.getDataDefinitions(), 0, cols, 0, cols.length-2);
         cols[cols.length-2] = DataGroup.makeRowIdx();
         cols[cols.length-1] = DataGroup.makeRowNum();
@@ -449,6 +588,222 @@ public class EmbeddedDbUtil {
     }
 
 
+//====================================================================
+//  row loading helpers
+//====================================================================
+
+    /**
+     * binds a single value to the parameter at idx of a PreparedStatement
+     */
+    private interface ParamBinder {
+        void bind(PreparedStatement ps, int idx, Object val) throws SQLException;
+    }
+
+    /**
+     * groups the rows of the given iterator into lists of at most chunkSize rows
+     */
+    private static class Chunks implements Iterator<List<DataObject>> {
+        private final Iterator<DataObject> rows;
+        private final int chunkSize;
+
+        Chunks(Iterator<DataObject> rows, int chunkSize) {
+            this.rows = rows;
+            this.chunkSize = Math.max(1, chunkSize);
+        }
+
+        public boolean hasNext() {
+            return rows.hasNext();
+        }
+
+        public List<DataObject> next() {
+            List<DataObject> chunk = new ArrayList<>(chunkSize);
+            while (rows.hasNext() && chunk.size() < chunkSize) {
+                chunk.add(rows.next());
+            }
+            return chunk;
+        }
+    }
+
+    /**
+     * same as Chunks, except the rows are read on a worker thread ahead of the consumer.
+     * at most 2 chunks are held in the queue, so memory is still bounded by the chunk size.
+     * close must be called when the consumer is done, so that the worker is stopped before the rows' source is closed.
+     */
+    private static class PrefetchedChunks implements Iterator<List<DataObject>> {
+        private static final List<DataObject> END = new ArrayList<>();
+        private final BlockingQueue<List<DataObject>> queue = new ArrayBlockingQueue<>(2);
+        private final Future<?> reader;
+        private volatile boolean cancelled;
+        private List<DataObject> next;
+
+        PrefetchedChunks(Iterator<DataObject> rows, int chunkSize) {
+            int size = Math.max(1, chunkSize);
+            reader = ingestWorkers.submit(() -> {
+                try {
+                    while (!cancelled && rows.hasNext()) {
+                        List<DataObject> chunk = new ArrayList<>(size);
+                        while (!cancelled && chunk.size() < size && rows.hasNext()) {
+                            chunk.add(rows.next());
+                        }
+                        put(chunk);
+                    }
+                } finally {
+                    put(END);
+                }
+                return null;
+            });
+        }
+
+        /**
+         * wait for room in the queue, unless the consumer has gone away.
+         */
+        private void put(List<DataObject> chunk) throws InterruptedException {
+            while (!cancelled) {
+                if (queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) return;
+            }
+        }
+
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    close();
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while loading table data", e);
+                }
+            }
+            if (next == END) {
+                try {
+                    reader.get();       // rethrows any error encountered while reading
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() == null ? e : e.getCause();
+                    throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause.getMessage(), cause);
+                }
+                return false;
+            }
+            return true;
+        }
+
+        public List<DataObject> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            List<DataObject> chunk = next;
+            next = null;
+            return chunk;
+        }
+
+        /**
+         * stops the reader if it's still running, ie. when the consumer failed before reaching the end, and waits for
+         * it to finish its current row.  the rows are not read once this returns.
+         */
+        void close() {
+            cancelled = true;
+            queue.clear();
+            try {
+                reader.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // the consumer has already failed, or has read to the end and seen this error.
+            }
+        }
+    }
+
+    /**
+     * returns the number of rows in the given table matching wherePart.
+     * tables are not modified once created, so the count is cached until the table is dropped or the database is recreated.
+     * @param dbAdapter DbAdapter of the database
+     * @param dbFile    database file
+     * @param forTable  table to count
+     * @param wherePart the where clause of the query, or an empty string
+     * @return the number of rows
+     */
+    public static int getRowCount(DbAdapter dbAdapter, File dbFile, String forTable, String wherePart) {
+        DbInstance dbInstance = dbAdapter.getDbInstance(dbFile);
+        BaseDbAdapter.EmbeddedDbInstance embeddedDb = dbInstance instanceof BaseDbAdapter.EmbeddedDbInstance ? (BaseDbAdapter.EmbeddedDbInstance) dbInstance : null;
+
+        Integer rowCnt = embeddedDb == null ? null : embeddedDb.getRowCount(forTable, wherePart);
+        if (rowCnt == null) {
+            String cntSql = String.format("select count(*) from %s %s", forTable, wherePart);
+            rowCnt = JdbcFactory.getSimpleTemplate(dbInstance).queryForInt(cntSql);
+            if (embeddedDb != null) embeddedDb.setRowCount(forTable, wherePart, rowCnt);
+        }
+        return rowCnt;
+    }
+
+    /**
+     * drop the given table along with its _dd and _meta tables, and clear any information cached about it.
+     * @param dbAdapter DbAdapter of the database
+     * @param dbFile    database file
+     * @param tblName   table to drop
+     */
+    public static void dropTable(DbAdapter dbAdapter, File dbFile, String tblName) {
+        DbInstance dbInstance = dbAdapter.getDbInstance(dbFile);
+        SimpleJdbcTemplate jdbc = JdbcFactory.getSimpleTemplate(dbInstance);
+        jdbc.update(dbAdapter.dropTableSql(tblName));
+        jdbc.update(dbAdapter.dropTableSql(tblName + "_dd"));
+        jdbc.update(dbAdapter.dropTableSql(tblName + "_meta"));
+        if (dbInstance instanceof BaseDbAdapter.EmbeddedDbInstance) {
+            ((BaseDbAdapter.EmbeddedDbInstance) dbInstance).clearRowCounts(tblName);
+        }
+        if (dbAdapter instanceof ColumnarDbAdapter) {
+            ColumnarDbAdapter.evict(dbFile, tblName);
+        }
+        DecimationCache.evict(dbFile, tblName);
+    }
+
+    /**
+     * @param dbAdapter DbAdapter of the database
+     * @param dbFile    database file
+     * @return the ResultSetCache tracking the derived result set tables of the given database.  when the database
+     * is reopened, the result set tables already in it are registered the first time this is called.
+     */
+    public static ResultSetCache getResultSetCache(DbAdapter dbAdapter, File dbFile) {
+        DbInstance dbInstance = dbAdapter.getDbInstance(dbFile);
+        if (!(dbInstance instanceof BaseDbAdapter.EmbeddedDbInstance)) return new ResultSetCache();
+
+        ResultSetCache cache = ((BaseDbAdapter.EmbeddedDbInstance) dbInstance).getResultSetCache();
+        if (!cache.isSeeded()) {
+            Map<String, Long> existing = new LinkedHashMap<>();
+            try {
+                for (String tblName : getResultSetTables(dbInstance)) {
+                    existing.put(tblName, (long) getRowCount(dbAdapter, dbFile, tblName, ""));
+                }
+            } catch (Exception e) {
+                logger.warn(e, "Unable to find the existing result set tables of: " + dbFile.getPath());
+            }
+            cache.seed(existing);
+        }
+        return cache;
+    }
+
+    /**
+     * @return the names of the result set tables(data_[hash_id]) in the given database, in lower case
+     */
+    private static List<String> getResultSetTables(DbInstance dbInstance) {
+        List<String> tables = new ArrayList<>();
+        JdbcFactory.getTemplate(dbInstance).execute((ConnectionCallback) conn -> {
+            try (ResultSet rs = conn.getMetaData().getTables(null, null, "%", new String[]{"TABLE"})) {
+                while (rs.next()) {
+                    String name = rs.getString("TABLE_NAME").toLowerCase();
+                    if (name.matches("data_[0-9a-f]{32}")) tables.add(name);
+                }
+            }
+            return null;
+        });
+        return tables;
+    }
+
+    /**
+     * @param dbAdapter DbAdapter of the database
+     * @param dbFile    database file
+     * @return the ColumnIndexer creating indexes for the given database
+     */
+    public static ColumnIndexer getColumnIndexer(DbAdapter dbAdapter, File dbFile) {
+        DbInstance dbInstance = dbAdapter.getDbInstance(dbFile);
+        return dbInstance instanceof BaseDbAdapter.EmbeddedDbInstance ? ((BaseDbAdapter.EmbeddedDbInstance) dbInstance).getColumnIndexer() : new ColumnIndexer();
+    }
+
     /**
      * This function is to test if a table exists in the given database.
      * It's using a get count and catches exception to determine if the given table exists.
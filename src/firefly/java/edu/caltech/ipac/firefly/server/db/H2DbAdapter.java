@@ -19,7 +19,7 @@ public class H2DbAdapter extends BaseDbAdapter{
 
     protected EmbeddedDbInstance createDbInstance(File dbFile) {
         String dbUrl = String.format("jdbc:h2:%s;CACHE_SIZE=1048576;LOG=0;UNDO_LOG=0;MVCC=true", dbFile.getPath());
-        return new EmbeddedDbInstance(getName(), dbFile, dbUrl, "org.h2.Driver");
+        return new EmbeddedDbInstance(getName(), dbFile, dbUrl, "org.h2.Driver", ".h2.db", ".mv.db");
     }
 
     public String createTableFromSelect(String tblName, String selectSql) {
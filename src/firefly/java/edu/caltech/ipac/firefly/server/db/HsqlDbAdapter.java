@@ -3,7 +3,7 @@
  */
 package edu.caltech.ipac.firefly.server.db;
 
-import edu.caltech.ipac.firefly.server.db.spring.JdbcFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 import java.io.File;
 
@@ -20,23 +20,21 @@ public class HsqlDbAdapter extends BaseDbAdapter{
 
     protected EmbeddedDbInstance createDbInstance(File dbFile) {
         String dbUrl = String.format("jdbc:hsqldb:file:%s;hsqldb.log_size=1024;sql.syntax_ora=true;sql.ignore_case=true", dbFile.getPath());
-        return new EmbeddedDbInstance(getName(), dbFile, dbUrl, "org.hsqldb.jdbc.JDBCDriver");
+        return new EmbeddedDbInstance(getName(), dbFile, dbUrl, "org.hsqldb.jdbc.JDBCDriver", DB_FILES);
     }
 
     public String createTableFromSelect(String tblName, String selectSql) {
         return String.format("CREATE TABLE %s AS (%s) WITH DATA", tblName, selectSql);
     }
 
-    public void close(File dbFile, boolean deleteFile) {
-        DbInstance db = getDbInstance(dbFile, false);
-        if (db != null) {
-            JdbcFactory.getTemplate(db).execute("SHUTDOWN");
-        }
-        if (deleteFile) {
-            for(String fname : DB_FILES) {
-                File f = new File(dbFile + fname);
-                if (f.exists()) f.delete();
-            }
+    protected void shutdown(EmbeddedDbInstance db) {
+        new JdbcTemplate(db.getPool()).execute("SHUTDOWN");
+    }
+
+    protected void removeDbFiles(File dbFile) {
+        for(String fname : DB_FILES) {
+            File f = new File(dbFile + fname);
+            if (f.exists()) f.delete();
         }
     }
 
@@ -0,0 +1,185 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.db;
+
+import edu.caltech.ipac.util.AppProperties;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the derived result set tables(DATA_[hash_id]) created in one embedded database.
+ * A result set table is created for every new filter/sort combination.  This class decides which of them
+ * should be dropped, least recently used first, when there are more than EmbeddedDb.resultset.max.tables
+ * of them, or when their combined row count exceeds EmbeddedDb.resultset.max.rows.
+ *
+ * It only does the bookkeeping.  Dropping the tables is left to the caller.  Tables that are being read are pinned;
+ * a pinned table is never chosen to be dropped, and pinning a table waits for a drop of it already in progress.
+ * A table should be pinned before checking for its existence, and stay pinned until it's no longer read.
+ */
+public class ResultSetCache {
+    private static final int MAX_TABLES = AppProperties.getIntProperty("EmbeddedDb.resultset.max.tables", 20);
+    private static final long MAX_ROWS = AppProperties.getLongProperty("EmbeddedDb.resultset.max.rows", 10000000);
+
+    private static final AtomicLong totalHits = new AtomicLong();
+    private static final AtomicLong totalMisses = new AtomicLong();
+    private static final AtomicLong totalEvictions = new AtomicLong();
+
+    private final LinkedHashMap<String, Long> tables = new LinkedHashMap<>(16, .75f, true);     // access-ordered; resultSetID -> row count
+    private final Map<String, Integer> pins = new HashMap<>();         // resultSetID -> number of readers
+    private final Set<String> dropping = new HashSet<>();
+    private boolean seeded = false;
+    private long totalRows = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * record an access to the given result set table.
+     * @param resultSetID   the table accessed
+     * @param rowCount      the number of rows in this table
+     * @param created       true if the table was just created for this access.  this is counted as a miss.
+     * @return the IDs of the tables that should be dropped to stay within the limits.  never includes resultSetID.
+     */
+    public synchronized List<String> access(String resultSetID, long rowCount, boolean created) {
+        if (created) {
+            misses++;
+            totalMisses.incrementAndGet();
+        } else {
+            hits++;
+            totalHits.incrementAndGet();
+        }
+
+        Long prev = tables.put(resultSetID, rowCount);
+        totalRows += rowCount - (prev == null ? 0 : prev);
+
+        List<String> toBeDropped = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> lru = tables.entrySet().iterator();
+        while ((tables.size() > MAX_TABLES || totalRows > MAX_ROWS) && lru.hasNext()) {
+            Map.Entry<String, Long> e = lru.next();
+            if (e.getKey().equals(resultSetID) || pins.containsKey(e.getKey())) continue;       // never drop the ones being used
+            toBeDropped.add(e.getKey());
+            totalRows -= e.getValue();
+            lru.remove();
+        }
+        evictions += toBeDropped.size();
+        totalEvictions.addAndGet(toBeDropped.size());
+        return toBeDropped;
+    }
+
+    /**
+     * register the result set tables found in the database when it's opened.  they are considered
+     * less recently used than the ones accessed since.  this is done only once; later calls are ignored.
+     * @param existing  resultSetID -> row count of the existing tables
+     */
+    public synchronized void seed(Map<String, Long> existing) {
+        if (seeded) return;
+        seeded = true;
+        LinkedHashMap<String, Long> accessed = new LinkedHashMap<>(tables);
+        tables.clear();
+        existing.forEach((id, rowCount) -> {
+            if (!accessed.containsKey(id)) {
+                tables.put(id, rowCount);
+                totalRows += rowCount;
+            }
+        });
+        tables.putAll(accessed);
+    }
+
+    public synchronized boolean isSeeded() { return seeded; }
+
+    /**
+     * pin the given table, so that it will not be dropped while it's being read.  if it's being dropped, wait for it
+     * to finish.  The returned Pin must be closed when the table is no longer needed.
+     * @param resultSetID   the table to pin
+     * @return the Pin of this table
+     */
+    public synchronized Pin pin(String resultSetID) {
+        boolean interrupted = false;
+        while (dropping.contains(resultSetID)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        pins.merge(resultSetID, 1, Integer::sum);
+        return new Pin(resultSetID);
+    }
+
+    private synchronized void unpin(String resultSetID) {
+        pins.computeIfPresent(resultSetID, (k, v) -> v > 1 ? v - 1 : null);
+    }
+
+    /**
+     * must be called before dropping a table returned by #access.  The drop must be followed by #endDrop.
+     * @param resultSetID   the table to drop
+     * @return false if the table was pinned since, and should not be dropped
+     */
+    public synchronized boolean beginDrop(String resultSetID) {
+        if (pins.containsKey(resultSetID) || tables.containsKey(resultSetID)) return false;
+        dropping.add(resultSetID);
+        return true;
+    }
+
+    public synchronized void endDrop(String resultSetID) {
+        dropping.remove(resultSetID);
+        notifyAll();
+    }
+
+    /**
+     * @param resultSetID   the table in question
+     * @return true if the given table is currently tracked by this cache
+     */
+    public synchronized boolean contains(String resultSetID) {
+        return tables.containsKey(resultSetID);
+    }
+
+    public synchronized int getTableCount() { return tables.size(); }
+
+    public synchronized long getTotalRows() { return totalRows; }
+
+    public synchronized long getHits() { return hits; }
+
+    public synchronized long getMisses() { return misses; }
+
+    public synchronized long getEvictions() { return evictions; }
+
+    public static long getTotalHits() { return totalHits.get(); }
+
+    public static long getTotalMisses() { return totalMisses.get(); }
+
+    public static long getTotalEvictions() { return totalEvictions.get(); }
+
+    public class Pin implements AutoCloseable {
+        private final String resultSetID;
+        private boolean closed = false;
+
+        private Pin(String resultSetID) {
+            this.resultSetID = resultSetID;
+        }
+
+        public String getResultSetID() { return resultSetID; }
+
+        public void close() {
+            if (!closed) {
+                closed = true;
+                unpin(resultSetID);
+            }
+        }
+    }
+
+    public String toString() {
+        return String.format("tables: %d  rows: %d  hits: %d  misses: %d  evictions: %d",
+                        getTableCount(), getTotalRows(), getHits(), getMisses(), getEvictions());
+    }
+}
@@ -3,6 +3,7 @@
  */
 package edu.caltech.ipac.firefly.server.db.spring;
 
+import edu.caltech.ipac.firefly.server.db.BaseDbAdapter;
 import edu.caltech.ipac.firefly.server.db.DbInstance;
 import edu.caltech.ipac.firefly.server.util.Logger;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -107,6 +108,10 @@ public class JdbcFactory {
 
     public static DataSource getDataSource(DbInstance dbInstance) {
 
+        if (dbInstance instanceof BaseDbAdapter.EmbeddedDbInstance) {
+            // embedded databases manage their own connection pool; it is shared by all threads and closed with the database.
+            return ((BaseDbAdapter.EmbeddedDbInstance) dbInstance).getDataSource();
+        }
         try {
             DataSource ds = dataSourceMap.get().get(dbInstance);
             if (ds == null) {
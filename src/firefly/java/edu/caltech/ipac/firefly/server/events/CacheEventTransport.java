@@ -0,0 +1,76 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.events;
+
+import edu.caltech.ipac.firefly.data.ServerEvent;
+import edu.caltech.ipac.firefly.server.cache.EhcacheImpl;
+import edu.caltech.ipac.util.FileUtil;
+import edu.caltech.ipac.util.cache.Cache;
+import edu.caltech.ipac.util.cache.CacheManager;
+import edu.caltech.ipac.util.cache.StringKey;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListener;
+import net.sf.ehcache.event.NotificationScope;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * An EventBusWorker.Transport that uses the replicated PERM_SMALL cache to reach the other nodes.
+ * Unlike CacheEventWorker, it puts one entry per batch of events, and the entries expire shortly after.
+ */
+public class CacheEventTransport implements EventBusWorker.Transport {
+    private static final String NODE = FileUtil.getHostname() + "-" + System.nanoTime();
+    private static final int LIFESPAN_SECS = 60;
+    private static final AtomicLong seq = new AtomicLong();
+
+    private final Cache cache = CacheManager.getCache(Cache.TYPE_PERM_SMALL);
+    private Consumer<List<ServerEvent>> receiver;
+
+    public void publish(List<ServerEvent> events) {
+        cache.put(new StringKey("EventBatch-" + NODE + "-" + seq.incrementAndGet()), new Batch(NODE, events), LIFESPAN_SECS);
+    }
+
+    public void setReceiver(Consumer<List<ServerEvent>> receiver) {
+        this.receiver = receiver;
+        if (cache instanceof EhcacheImpl) {
+            Ehcache ehC = ((EhcacheImpl) cache).getEHcache();
+            ehC.getCacheEventNotificationService().registerListener(new BatchListener(), NotificationScope.REMOTE);
+        }
+    }
+
+    private static class Batch implements Serializable {
+        final String node;
+        final ArrayList<ServerEvent> events;
+
+        Batch(String node, List<ServerEvent> events) {
+            this.node = node;
+            this.events = new ArrayList<>(events);
+        }
+    }
+
+    private class BatchListener implements CacheEventListener {
+        public void notifyElementPut(Ehcache ehcache, Element element) throws CacheException {
+            if (element.getObjectValue() instanceof Batch) {
+                Batch batch = (Batch) element.getObjectValue();
+                if (!NODE.equals(batch.node) && receiver != null) {
+                    receiver.accept(batch.events);
+                }
+            }
+        }
+
+        public void notifyElementUpdated(Ehcache ehcache, Element element) throws CacheException { }
+        public void notifyElementRemoved(Ehcache ehcache, Element element) throws CacheException { }
+        public void notifyElementExpired(Ehcache ehcache, Element element) { }
+        public void notifyElementEvicted(Ehcache ehcache, Element element) { }
+        public void notifyRemoveAll(Ehcache ehcache) { }
+        public void dispose() { }
+        public Object clone() throws CloneNotSupportedException { return super.clone(); }
+    }
+}
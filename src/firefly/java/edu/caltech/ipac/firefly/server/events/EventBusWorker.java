@@ -0,0 +1,201 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.events;
+
+import edu.caltech.ipac.firefly.data.ServerEvent;
+import edu.caltech.ipac.firefly.server.util.Logger;
+import edu.caltech.ipac.util.AppProperties;
+import edu.caltech.ipac.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * An EventWorker that delivers events through an in-process ring buffer instead of a cache put.
+ *
+ * Events are added to a buffer of ServerEvent.bus.capacity events.  A single dispatcher thread takes them
+ * out in batches of up to ServerEvent.bus.batch.size events and hands them to ServerEventManager.processEvents,
+ * which looks up the queues once for consecutive events going to the same destination.
+ *
+ * On a single node, nothing else is needed.  For clusters, set ServerEvent.bus.transport to the class name of a
+ * Transport, e.g. edu.caltech.ipac.firefly.server.events.CacheEventTransport.  Each batch is then also published
+ * to the other nodes, and batches received from them are processed the same way as local ones.
+ *
+ * To use it, set ServerEvent.worker to 'bus'.
+ */
+public class EventBusWorker implements ServerEventManager.EventWorker {
+    private static final Logger.LoggerImpl LOG = Logger.getLogger();
+    private static final int CAPACITY = AppProperties.getIntProperty("ServerEvent.bus.capacity", 10000);
+    private static final int BATCH_SIZE = AppProperties.getIntProperty("ServerEvent.bus.batch.size", 100);
+    private static final long OFFER_TIMEOUT = AppProperties.getLongProperty("ServerEvent.bus.offer.timeout.ms", 1000);
+
+    private static final AtomicLong publishedCnt = new AtomicLong();
+    private static final AtomicLong receivedCnt = new AtomicLong();
+    private static final AtomicLong processedCnt = new AtomicLong();
+    private static final AtomicLong rejectedCnt = new AtomicLong();
+    private static final AtomicLong batchCnt = new AtomicLong();
+    private static final AtomicLong totalLag = new AtomicLong();           // in nanoseconds
+    private static final AtomicLong maxLag = new AtomicLong();
+    private static final long startTime = System.currentTimeMillis();
+
+    private final BlockingQueue<Entry> ring = new ArrayBlockingQueue<>(CAPACITY);
+    private final Transport transport;
+
+    public EventBusWorker() {
+        transport = makeTransport(AppProperties.getProperty("ServerEvent.bus.transport"));
+        if (transport != null) {
+            transport.setReceiver(this::receive);
+        }
+        Thread dispatcher = new Thread(this::dispatch, "ServerEventBus");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * add the event to the bus.  if the bus is full, wait up to ServerEvent.bus.offer.timeout.ms before discarding it.
+     */
+    public void deliver(ServerEvent sev) {
+        boolean added;
+        try {
+            added = ring.offer(new Entry(sev, false), OFFER_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            added = false;
+        }
+        if (added) {
+            publishedCnt.incrementAndGet();
+        } else {
+            rejectedCnt.incrementAndGet();
+            LOG.warn("Server event bus is full.  Event is discarded: " + sev);
+        }
+    }
+
+    /**
+     * events published by the other nodes
+     */
+    private void receive(List<ServerEvent> events) {
+        for (ServerEvent sev : events) {
+            if (ring.offer(new Entry(sev, true))) {
+                receivedCnt.incrementAndGet();
+            } else {
+                rejectedCnt.incrementAndGet();
+            }
+        }
+    }
+
+    private void dispatch() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        List<ServerEvent> events = new ArrayList<>(BATCH_SIZE);
+        List<ServerEvent> toPublish = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            try {
+                batch.add(ring.take());
+                ring.drainTo(batch, BATCH_SIZE - 1);
+                long now = System.nanoTime();
+                for (Entry e : batch) {
+                    events.add(e.event);
+                    if (!e.remote) toPublish.add(e.event);
+                    long lag = now - e.queuedAt;
+                    totalLag.addAndGet(lag);
+                    maxLag.accumulateAndGet(lag, Math::max);
+                }
+                if (transport != null && toPublish.size() > 0) {
+                    try {
+                        transport.publish(new ArrayList<>(toPublish));
+                    } catch (Exception e) {
+                        LOG.warn(e, "Fail to publish server events to other nodes");
+                    }
+                }
+                ServerEventManager.processEvents(events);
+                processedCnt.addAndGet(events.size());
+                batchCnt.incrementAndGet();
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                LOG.warn(e, "Unexpected exception while dispatching server events");
+            } finally {
+                batch.clear();
+                events.clear();
+                toPublish.clear();
+            }
+        }
+    }
+
+    private static Transport makeTransport(String className) {
+        if (StringUtils.isEmpty(className)) return null;
+        try {
+            return (Transport) Class.forName(className.trim()).newInstance();
+        } catch (Exception e) {
+            LOG.error(e, "Unable to create ServerEvent.bus.transport: " + className + ".  Events will not be sent to other nodes.");
+            return null;
+        }
+    }
+
+//====================================================================
+//  For stats
+//====================================================================
+
+    public static long getPublishedCnt() { return publishedCnt.get(); }
+    public static long getReceivedCnt() { return receivedCnt.get(); }
+    public static long getProcessedCnt() { return processedCnt.get(); }
+    public static long getRejectedCnt() { return rejectedCnt.get(); }
+    public static long getBatchCnt() { return batchCnt.get(); }
+
+    /**
+     * @return the average number of events processed per second since startup
+     */
+    public static double getThroughput() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        return elapsed == 0 ? 0 : processedCnt.get() * 1000.0 / elapsed;
+    }
+
+    /**
+     * @return the average time in milliseconds from an event being added to the bus to it being processed
+     */
+    public static double getAvgLag() {
+        long cnt = processedCnt.get();
+        return cnt == 0 ? 0 : totalLag.get() / cnt / 1e6;
+    }
+
+    /**
+     * @return the longest time in milliseconds from an event being added to the bus to it being processed
+     */
+    public static double getMaxLag() { return maxLag.get() / 1e6; }
+
+//====================================================================
+//
+//====================================================================
+
+    /**
+     * Sends batches of events to the other nodes of a cluster, and receives theirs.
+     * Implementations must have a public no-arg constructor.
+     */
+    public interface Transport {
+        /**
+         * send these events to the other nodes.  they should not be received back by this node.
+         * @param events the events, in the order they were fired
+         */
+        void publish(List<ServerEvent> events);
+
+        /**
+         * @param receiver called with the events published by the other nodes
+         */
+        void setReceiver(Consumer<List<ServerEvent>> receiver);
+    }
+
+    private static class Entry {
+        final ServerEvent event;
+        final boolean remote;
+        final long queuedAt = System.nanoTime();
+
+        Entry(ServerEvent event, boolean remote) {
+            this.event = event;
+            this.remote = remote;
+        }
+    }
+}
@@ -13,20 +13,32 @@ import edu.caltech.ipac.firefly.data.ServerEvent;
 import edu.caltech.ipac.firefly.server.ServerContext;
 import edu.caltech.ipac.firefly.server.util.Logger;
 import edu.caltech.ipac.firefly.util.event.Name;
+import edu.caltech.ipac.util.AppProperties;
 import edu.caltech.ipac.util.StringUtils;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.stream.Collectors;
 
 /**
  * @author Trey Roby
  */
 public class ServerEventManager {
 
-    private static final boolean USE_CACHE_EVENT_WORKER = true;
-    private static final EventWorker eventWorker = USE_CACHE_EVENT_WORKER ?
-                                                    new CacheEventWorker() : new SimpleEventWorker();
+    private static final String EVENT_WORKER = AppProperties.getProperty("ServerEvent.worker", "cache");     // cache, bus, or simple
+    private static final EventWorker eventWorker = makeEventWorker(EVENT_WORKER);
     private static final List<ServerEventQueue> evQueueList= new CopyOnWriteArrayList<ServerEventQueue>();
+    // routing indexes of evQueueList.  updated together with evQueueList.
+    private static final Map<String, Set<ServerEventQueue>> byConnID = new ConcurrentHashMap<>();
+    private static final Map<String, Set<ServerEventQueue>> byChannel = new ConcurrentHashMap<>();
+    private static final Map<String, Set<ServerEventQueue>> byUserKey = new ConcurrentHashMap<>();
     private static final Logger.LoggerImpl LOG = Logger.getLogger();
     private static long totalEventCnt;
     private static long deliveredEventCnt;
@@ -99,7 +111,12 @@ public class ServerEventManager {
 
     public static void addEventQueue(ServerEventQueue queue) {
         Logger.briefInfo("create new Queue for: "+ queue.getQueueID() );
-        evQueueList.add(queue);
+        synchronized (evQueueList) {
+            evQueueList.add(queue);
+            index(byConnID, queue.getConnID(), queue, true);
+            index(byChannel, queue.getChannel(), queue, true);
+            index(byUserKey, queue.getUserKey(), queue, true);
+        }
         repQueueList.setQueueListForNode(evQueueList);
     }
 
@@ -112,13 +129,40 @@ public class ServerEventManager {
     }
 
     static void processEvent(ServerEvent ev) {
+        processEvent(ev, getCandidates(ev));
+    }
+
+    /**
+     * process a batch of events, in order.  the queues are looked up once for each run of
+     * consecutive events going to the same destination.
+     * @param events    the events to process
+     */
+    static void processEvents(List<ServerEvent> events) {
+        String lastDest = null;
+        Collection<ServerEventQueue> candidates = null;
+        for (ServerEvent ev : events) {
+            String dest = getDestination(ev);
+            if (candidates == null || !dest.equals(lastDest)) {
+                candidates = getCandidates(ev);
+                lastDest = dest;
+            }
+            processEvent(ev, candidates);
+        }
+    }
+
+    private static void processEvent(ServerEvent ev, Collection<ServerEventQueue> candidates) {
         totalEventCnt++;
         boolean delivered = false;
-        for(ServerEventQueue queue : evQueueList) {
+        String message = null;
+        for(ServerEventQueue queue : candidates) {
             try {
                 if (queue.matches(ev)) {
                     try {
-                        queue.putEvent(ev);
+                        if (message == null) {
+                            message = ServerEventQueue.convertToJson(ev);      // once per event, not per queue
+                            if (message == null) break;
+                        }
+                        queue.putEvent(ev, message);     // only queued here; sent asynchronously by the queue
                         delivered = true;
                     } catch (Exception e) {
                         // queue is bad..  release it.
@@ -137,10 +181,64 @@ public class ServerEventManager {
     }
 
     public static void removeEventQueue(ServerEventQueue queue) {
-        evQueueList.remove(queue);
+        synchronized (evQueueList) {
+            evQueueList.remove(queue);
+            index(byConnID, queue.getConnID(), queue, false);
+            index(byChannel, queue.getChannel(), queue, false);
+            index(byUserKey, queue.getUserKey(), queue, false);
+        }
         repQueueList.setQueueListForNode(evQueueList);
     }
 
+    /**
+     * @return the queues that may match this event, looked up by its target.
+     * the queues still need to be checked with ServerEventQueue.matches.
+     */
+    static Collection<ServerEventQueue> getCandidates(ServerEvent ev) {
+        ServerEvent.EventTarget target = ev.getTarget();
+        ServerEvent.Scope scope = target == null ? null : target.getScope();
+        if (scope == ServerEvent.Scope.WORLD) return evQueueList;
+
+        Set<ServerEventQueue> candidates = new LinkedHashSet<>(byConnID.getOrDefault(ServerEvent.SERVER_CONN_ID, Collections.emptySet()));    // server's terminals get all the events
+        if (scope == ServerEvent.Scope.CHANNEL) {
+            candidates.addAll(lookup(byChannel, target.getChannel()));
+        } else if (scope == ServerEvent.Scope.USER) {
+            candidates.addAll(lookup(byUserKey, target.getUserKey()));
+        } else if (scope == ServerEvent.Scope.SELF) {
+            candidates.addAll(lookup(byConnID, target.getConnID()));
+        }
+        return candidates;
+    }
+
+    /**
+     * @return a key identifying the queues getCandidates would return for this event
+     */
+    private static String getDestination(ServerEvent ev) {
+        ServerEvent.EventTarget target = ev.getTarget();
+        ServerEvent.Scope scope = target == null ? null : target.getScope();
+        if (scope == ServerEvent.Scope.CHANNEL) return "CHANNEL:" + target.getChannel();
+        if (scope == ServerEvent.Scope.USER) return "USER:" + target.getUserKey();
+        if (scope == ServerEvent.Scope.SELF) return "SELF:" + target.getConnID();
+        return String.valueOf(scope);
+    }
+
+    private static Set<ServerEventQueue> lookup(Map<String, Set<ServerEventQueue>> index, String key) {
+        return StringUtils.isEmpty(key) ? Collections.emptySet() : index.getOrDefault(key, Collections.emptySet());
+    }
+
+    private static void index(Map<String, Set<ServerEventQueue>> index, String key, ServerEventQueue queue, boolean add) {
+        if (key == null) return;
+        if (add) {
+            index.computeIfAbsent(key, k -> new CopyOnWriteArraySet<>()).add(queue);
+        } else {
+            Set<ServerEventQueue> queues = index.get(key);
+            if (queues != null) {
+                queues.remove(queue);
+                if (queues.isEmpty()) index.remove(key);
+            }
+        }
+    }
+
 //====================================================================
 //  For stats
 //====================================================================
@@ -155,6 +253,17 @@ public class ServerEventManager {
         return cnt;
     }
 
+    /**
+     * @param max   the maximum number of queues to return
+     * @return the stats of the queues with the highest average latency, slowest first
+     */
+    public static List<String> getSlowestQueueStats(int max) {
+        return evQueueList.stream()
+                .sorted((q1, q2) -> Double.compare(q2.getAvgLatency(), q1.getAvgLatency()))
+                .limit(max)
+                .map(ServerEventQueue::getStats)
+                .collect(Collectors.toList());
+    }
 
     /**
      * bad logic.. removing good eventQueue(ws connetions)..
@@ -189,6 +298,16 @@ public class ServerEventManager {
 //
 //====================================================================
 
+    private static EventWorker makeEventWorker(String type) {
+        if ("bus".equalsIgnoreCase(type)) {
+            return new EventBusWorker();
+        } else if ("simple".equalsIgnoreCase(type)) {
+            return new SimpleEventWorker();
+        } else {
+            return new CacheEventWorker();
+        }
+    }
+
     public interface EventWorker {
         public void deliver(ServerEvent sev);
     }
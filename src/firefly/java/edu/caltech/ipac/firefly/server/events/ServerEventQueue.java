@@ -9,20 +9,49 @@ import edu.caltech.ipac.firefly.data.ServerEvent;
 import edu.caltech.ipac.firefly.server.util.Logger;
 import edu.caltech.ipac.firefly.server.util.QueryUtil;
 import edu.caltech.ipac.firefly.util.event.Name;
+import edu.caltech.ipac.util.AppProperties;
 import edu.caltech.ipac.util.StringUtils;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static edu.caltech.ipac.firefly.core.background.BackgroundStatus.BG_STATUS_ACTION;
 
 /**
+ * Events are not sent to the EventConnector by the thread delivering them.  They are added to this queue's
+ * outbound buffer, which is then drained asynchronously by a shared pool of ServerEvent.sender.threads threads,
+ * in the order they were added.  This way, a slow client only delays its own events.
+ *
+ * The buffer holds up to ServerEvent.queue.max.pending messages.  When it's full, ServerEvent.queue.overflow
+ * decides what happens to the new message.  See OverflowPolicy.
+ *
  * @author Trey Roby
  */
 public class ServerEventQueue implements Serializable {
     private static final transient Logger.LoggerImpl LOG = Logger.getLogger();
+    private static final int MAX_PENDING = AppProperties.getIntProperty("ServerEvent.queue.max.pending", 1000);
+    private static final int SEND_BATCH_SIZE = 100;         // messages sent before giving the thread to other queues
+    private static final OverflowPolicy OVERFLOW = OverflowPolicy.parse(AppProperties.getProperty("ServerEvent.queue.overflow"));
+    private static final ExecutorService senders = Executors.newFixedThreadPool(AppProperties.getIntProperty("ServerEvent.sender.threads", 8));
+
+    private static final AtomicLong totalDropped = new AtomicLong();
+    private static final AtomicLong totalOverflowDisconnects = new AtomicLong();
+
     private final transient EventConnector eventTerminal;
+    private final transient Deque<Pending> pending = new ArrayDeque<>();
+    private transient boolean draining;             // true when a drain task is scheduled or running.  guarded by pending.
+    private transient long sentCnt;
+    private transient long droppedCnt;
+    private transient int maxPendingCnt;
+    private transient long totalLatency;            // time from being queued to being sent, in nanoseconds
+    private transient long maxLatency;
     private String connID;
     private String channel;
     private String userKey;
@@ -89,14 +118,100 @@ public class ServerEventQueue implements Serializable {
 
     public String getUserKey() { return userKey; }
 
+    /**
+     * add the event to the outbound buffer of this queue.  it will be sent asynchronously.
+     * @param ev the event to send
+     * @throws Exception if this queue is no longer usable and should be removed
+     */
     public void putEvent(ServerEvent ev) throws Exception{
+        String message = convertToJson(ev);
+        if (message != null) {
+            putEvent(ev, message);
+        }
+    }
+
+    /**
+     * same as putEvent(ev), but with the event already converted to json.
+     * this allows an event sent to many queues to be converted only once.
+     * @param ev        the event to send
+     * @param message   the event as returned by convertToJson
+     * @throws Exception if this queue is no longer usable and should be removed
+     */
+    public void putEvent(ServerEvent ev, String message) throws Exception{
         if (eventTerminal ==null){
             throw new IllegalStateException("Event terminal is null.. should remove this queue.");
         }
-        String message = convertToJson(ev);
-        if (message != null) {
-            eventTerminal.send(message);
+        String key = ev.getData() instanceof BackgroundStatus ? ((BackgroundStatus) ev.getData()).getID() : message;
+        enqueue(new Pending(key, message));
+    }
+
+    void enqueue(Pending msg) {
+        synchronized (pending) {
+            if (pending.size() >= MAX_PENDING) {
+                if (OVERFLOW == OverflowPolicy.DISCONNECT) {
+                    totalOverflowDisconnects.incrementAndGet();
+                    throw new IllegalStateException("Outbound buffer is full: " + pending.size() + " messages pending");
+                }
+                if (OVERFLOW != OverflowPolicy.COALESCE || !removePending(msg.key)) {
+                    pending.pollFirst();
+                }
+                droppedCnt++;
+                totalDropped.incrementAndGet();
+            }
+            pending.addLast(msg);
+            maxPendingCnt = Math.max(maxPendingCnt, pending.size());
+            if (draining) return;
+            draining = true;
         }
+        senders.submit(this::drain);
+    }
+
+    /**
+     * send up to SEND_BATCH_SIZE pending messages, then reschedule itself if there are more.
+     * only one drain task is scheduled per queue at a time, so messages are sent in order.
+     */
+    private void drain() {
+        try {
+            for (int i = 0; i < SEND_BATCH_SIZE; i++) {
+                Pending msg;
+                synchronized (pending) {
+                    msg = pending.pollFirst();
+                    if (msg == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                eventTerminal.send(msg.message);
+                long latency = System.nanoTime() - msg.queuedAt;
+                synchronized (pending) {
+                    sentCnt++;
+                    totalLatency += latency;
+                    maxLatency = Math.max(maxLatency, latency);
+                }
+            }
+            senders.submit(this::drain);
+        } catch (Exception e) {
+            // queue is bad..  release it.
+            LOG.warn("Event queue is bad.. releasing it:" + getQueueID() + " - " + e.getMessage());
+            synchronized (pending) {
+                droppedCnt += pending.size();
+                totalDropped.addAndGet(pending.size());
+                pending.clear();
+                draining = false;
+            }
+            eventTerminal.close();
+            ServerEventManager.removeEventQueue(this);
+        }
+    }
+
+    private boolean removePending(String key) {
+        for (Iterator<Pending> itr = pending.iterator(); itr.hasNext(); ) {
+            if (itr.next().key.equals(key)) {
+                itr.remove();
+                return true;
+            }
+        }
+        return false;
     }
 
     public EventConnector getEventConnector() {
@@ -137,6 +252,53 @@ public class ServerEventQueue implements Serializable {
         return false;
     }
 
+//====================================================================
+//  For stats
+//====================================================================
+
+    public int getPendingCnt() {
+        synchronized (pending) { return pending.size(); }
+    }
+
+    public long getSentCnt() {
+        synchronized (pending) { return sentCnt; }
+    }
+
+    public long getDroppedCnt() {
+        synchronized (pending) { return droppedCnt; }
+    }
+
+    public int getMaxPendingCnt() {
+        synchronized (pending) { return maxPendingCnt; }
+    }
+
+    /**
+     * @return the average time in milliseconds from an event being queued to it being sent
+     */
+    public double getAvgLatency() {
+        synchronized (pending) { return sentCnt == 0 ? 0 : totalLatency / sentCnt / 1e6; }
+    }
+
+    /**
+     * @return the longest time in milliseconds from an event being queued to it being sent
+     */
+    public double getMaxLatency() {
+        synchronized (pending) { return maxLatency / 1e6; }
+    }
+
+    public String getStats() {
+        return String.format("%s  pending: %d  max-pending: %d  sent: %d  dropped: %d  avg-latency: %.1fms  max-latency: %.1fms",
+                getQueueID(), getPendingCnt(), getMaxPendingCnt(), getSentCnt(), getDroppedCnt(), getAvgLatency(), getMaxLatency());
+    }
+
+    public static long getTotalDroppedCnt() { return totalDropped.get(); }
+
+    public static long getTotalOverflowDisconnects() { return totalOverflowDisconnects.get(); }
+
+    public static OverflowPolicy getOverflowPolicy() { return OVERFLOW; }
+
+    public static int getMaxPending() { return MAX_PENDING; }
+
     @Override
     public String toString() {
         return connID+"--"+channel+"--"+userKey;
@@ -152,6 +314,39 @@ public class ServerEventQueue implements Serializable {
         return this.toString().equals(o!=null ? o.toString() : "");
     }
 
+    /**
+     * What to do when a message is added to a full outbound buffer.
+     */
+    public enum OverflowPolicy {
+        /** discard the oldest pending message */
+        DROP_OLDEST,
+        /** discard the pending message this one supersedes, i.e. an identical message, or an earlier
+         *  status of the same background job.  if there isn't one, discard the oldest pending message. */
+        COALESCE,
+        /** close the connection.  the client is expected to reconnect and resync */
+        DISCONNECT;
+
+        static OverflowPolicy parse(String s) {
+            try {
+                return StringUtils.isEmpty(s) ? DROP_OLDEST : valueOf(s.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Unknown ServerEvent.queue.overflow: " + s + ".  Using " + DROP_OLDEST);
+                return DROP_OLDEST;
+            }
+        }
+    }
+
+    static class Pending {
+        final String key;
+        final String message;
+        final long queuedAt = System.nanoTime();
+
+        Pending(String key, String message) {
+            this.key = key;
+            this.message = message;
+        }
+    }
+
     public static interface EventConnector {
         public void send(String message) throws Exception;
         public boolean isOpen();
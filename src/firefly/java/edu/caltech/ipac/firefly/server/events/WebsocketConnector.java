@@ -8,6 +8,7 @@ import edu.caltech.ipac.firefly.data.ServerEvent;
 import edu.caltech.ipac.firefly.server.ServerContext;
 import edu.caltech.ipac.firefly.server.util.Logger;
 import edu.caltech.ipac.firefly.util.event.Name;
+import edu.caltech.ipac.util.AppProperties;
 import edu.caltech.ipac.util.StringUtils;
 
 import javax.websocket.CloseReason;
@@ -21,12 +22,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @ServerEndpoint(value = "/sticky/firefly/events")
 public class WebsocketConnector implements ServerEventQueue.EventConnector {
     public static final String CHANNEL_ID = "channelID";
     public static final Logger.LoggerImpl LOG = Logger.getLogger();
     private static final String CONN_UPDATED = "app_data.wsConnUpdated";
+    private static final long SEND_TIMEOUT = AppProperties.getLongProperty("ServerEvent.send.timeout.ms", 30000);
     private Session session;
     private String channelID;
     private String userKey;
@@ -84,7 +87,8 @@ public class WebsocketConnector implements ServerEventQueue.EventConnector {
         if (session == null) {
             throw new IOException("No longer available");
         }
-        session.getBasicRemote().sendText(message);
+        // a client that stops reading would block the sender forever.  give up on it after SEND_TIMEOUT.
+        session.getAsyncRemote().sendText(message).get(SEND_TIMEOUT, TimeUnit.MILLISECONDS);
     }
 
     public boolean isOpen() {
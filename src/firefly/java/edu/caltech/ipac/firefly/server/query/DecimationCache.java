@@ -0,0 +1,117 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.query;
+
+import edu.caltech.ipac.util.AppProperties;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the x and y values of the tables recently decimated, so that the same table can be decimated again
+ * with different limits or number of points(i.e. when the plot is zoomed or panned) without reading it
+ * from the database again.
+ *
+ * The values are keyed by database file, table name and x/y columns or expressions.  Result set tables never change
+ * once created, so an entry stays valid until its table is dropped or its database file is removed.  The entries
+ * of all databases are kept under decimation.cache.max.memory.mb, least recently used first.
+ */
+public class DecimationCache {
+    private static final long MAX_MEMORY = AppProperties.getLongProperty("decimation.cache.max.memory.mb", Runtime.getRuntime().maxMemory()/(1024*1024*8)) * 1024 * 1024;
+
+    private static final LinkedHashMap<String, double[][]> xyValues = new LinkedHashMap<>(16, .75f, true);     // access-ordered; dbFile|tblName|x|y -> {xs, ys}
+    private static long memoryUsed = 0;
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @return the x and y values of the given table as {xs, ys}, or null if they are not cached.
+     */
+    public static double[][] get(File dbFile, String tblName, String xColOrExpr, String yColOrExpr) {
+        double[][] xy;
+        synchronized (xyValues) {
+            xy = xyValues.get(makeKey(dbFile, tblName, xColOrExpr, yColOrExpr));
+        }
+        (xy == null ? misses : hits).incrementAndGet();
+        return xy;
+    }
+
+    /**
+     * cache the x and y values of the given table.  least recently used entries are removed to stay within the limit.
+     * @param xy    {xs, ys}, indexed by row
+     */
+    public static void put(File dbFile, String tblName, String xColOrExpr, String yColOrExpr, double[][] xy) {
+        long size = sizeOf(xy);
+        if (size > MAX_MEMORY) return;
+
+        synchronized (xyValues) {
+            double[][] prev = xyValues.put(makeKey(dbFile, tblName, xColOrExpr, yColOrExpr), xy);
+            memoryUsed += size - (prev == null ? 0 : sizeOf(prev));
+
+            List<String> toBeEvicted = new ArrayList<>();
+            long total = memoryUsed;
+            for (Map.Entry<String, double[][]> e : xyValues.entrySet()) {
+                if (total <= MAX_MEMORY) break;
+                if (e.getValue() == xy) continue;       // never remove the one just added
+                toBeEvicted.add(e.getKey());
+                total -= sizeOf(e.getValue());
+            }
+            toBeEvicted.forEach(k -> memoryUsed -= sizeOf(xyValues.remove(k)));
+            evictions.addAndGet(toBeEvicted.size());
+        }
+    }
+
+    /**
+     * remove the cached values of the given table.  this should be called when the table is dropped.
+     * @param dbFile    database file
+     * @param tblName   the table to remove, or null to remove all of the tables of this database
+     */
+    public static void evict(File dbFile, String tblName) {
+        String prefix = dbFile.getPath() + "|" + (tblName == null ? "" : tblName.toLowerCase() + "|");
+        synchronized (xyValues) {
+            for (Iterator<Map.Entry<String, double[][]>> itr = xyValues.entrySet().iterator(); itr.hasNext(); ) {
+                Map.Entry<String, double[][]> e = itr.next();
+                if (e.getKey().startsWith(prefix)) {
+                    memoryUsed -= sizeOf(e.getValue());
+                    itr.remove();
+                }
+            }
+        }
+    }
+
+    public static int getEntryCount() {
+        synchronized (xyValues) {
+            return xyValues.size();
+        }
+    }
+
+    public static long getMemoryUsed() {
+        synchronized (xyValues) {
+            return memoryUsed;
+        }
+    }
+
+    public static long getMaxMemory() { return MAX_MEMORY; }
+    public static long getHits() { return hits.get(); }
+    public static long getMisses() { return misses.get(); }
+    public static long getEvictions() { return evictions.get(); }
+
+//====================================================================
+//
+//====================================================================
+
+    private static String makeKey(File dbFile, String tblName, String xColOrExpr, String yColOrExpr) {
+        return dbFile.getPath() + "|" + tblName.toLowerCase() + "|" + xColOrExpr + "|" + yColOrExpr;
+    }
+
+    private static long sizeOf(double[][] xy) {
+        return (long) (xy[0].length + xy[1].length) * Double.BYTES;
+    }
+}
@@ -7,12 +7,25 @@ import edu.caltech.ipac.firefly.data.DecimateInfo;
 import edu.caltech.ipac.firefly.data.ServerRequest;
 import edu.caltech.ipac.firefly.data.TableServerRequest;
 import edu.caltech.ipac.firefly.server.db.DbAdapter;
+import edu.caltech.ipac.firefly.server.db.EmbeddedDbUtil;
+import edu.caltech.ipac.firefly.server.db.ResultSetCache;
+import edu.caltech.ipac.firefly.server.db.spring.JdbcFactory;
 import edu.caltech.ipac.firefly.server.util.QueryUtil;
+import edu.caltech.ipac.firefly.server.util.ipactable.DataGroupPart;
+import edu.caltech.ipac.util.AppProperties;
 import edu.caltech.ipac.util.DataGroup;
+import edu.caltech.ipac.util.DataObjectUtil;
+import edu.caltech.ipac.util.DataType;
 import edu.caltech.ipac.util.expr.Expression;
+import org.springframework.jdbc.core.ResultSetExtractor;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -20,6 +33,8 @@ import java.util.stream.Collectors;
 @SearchProcessorImpl(id = "DecimateTable")
 public class DecimationProcessor extends TableFunctionProcessor {
     public static final String DECIMATE_INFO = "decimate";
+    // tables with at least this many rows are read without loading them into a DataGroup.  -1 to disable.
+    private static final int SQL_MIN_ROWS = AppProperties.getIntProperty("decimation.sql.min.rows", 1000000);
 
 
     protected String getResultSetTablePrefix() {
@@ -30,6 +45,28 @@ public class DecimationProcessor extends TableFunctionProcessor {
 
         DecimateInfo decimateInfo = getDecimateInfo(treq);
         TableServerRequest sreq = getSearchRequest(treq);
+        if (decimateInfo != null) {
+            DataGroup retval = decimateFromCache(sreq, decimateInfo, dbFile, dbAdapter);
+            if (retval != null) return retval;
+        }
+        DataGroup dg = fetchXYData(sreq, decimateInfo);
+
+        if (decimateInfo != null) {
+            DataGroup retval = QueryUtil.doDecimation(dg, decimateInfo);
+            dg.getAttributeKeys().stream().forEach(k -> {
+                retval.addAttribute(k, dg.getAttribute(k).getValue());
+            });
+            return retval;
+        } else {
+            return dg;
+        }
+    }
+
+    /**
+     * @return all rows of the search results, with only the columns needed for x and y
+     */
+    private DataGroup fetchXYData(TableServerRequest sreq, DecimateInfo decimateInfo) throws DataAccessException {
+        sreq = (TableServerRequest) sreq.cloneRequest();
         sreq.setPageSize(Integer.MAX_VALUE);        // we want all of the data.  no paging
 
         // only read in the required columns
@@ -42,18 +79,105 @@ public class DecimationProcessor extends TableFunctionProcessor {
         }
         requestedCols = requestedCols.stream().map(c -> "\"" + c + "\"").collect(Collectors.toSet());      // column name need to be in quotes
         sreq.setInclColumns(requestedCols.toArray(new String[requestedCols.size()]));
-        DataGroup dg = new SearchManager().getDataGroup(sreq).getData();
+        return new SearchManager().getDataGroup(sreq).getData();
+    }
 
+    /**
+     * Decimate the x and y values kept in DecimationCache.  If they are not cached, read them first.
+     * Tables of at least decimation.sql.min.rows rows whose x and y are numeric columns, or expressions of them,
+     * are read straight from the database into arrays, without loading them into a DataGroup.
+     * @return the decimated results, or null if the search results are not stored in a result set table.
+     */
+    private DataGroup decimateFromCache(TableServerRequest sreq, DecimateInfo decimateInfo, File dbFile, DbAdapter dbAdapter) throws DataAccessException {
+        // only the first row is needed.  this ensures the result set table exists and tells its size and columns.
+        TableServerRequest req = (TableServerRequest) sreq.cloneRequest();
+        req.setPageSize(1);
+        DataGroupPart page = new SearchManager().getDataGroup(req);
+        DataGroup.Attribute resultSetID = page.getTableDef().getAttribute(TableServerRequest.RESULTSET_ID);
+        if (resultSetID == null) return null;
+
+        DataGroup tableDef = page.getData();
+        String tbl = resultSetID.getValue();
+        String xColOrExpr = decimateInfo.getxColumnName();
+        String yColOrExpr = decimateInfo.getyColumnName();
+        double[][] xy = DecimationCache.get(dbFile, tbl, xColOrExpr, yColOrExpr);
+        if (xy == null) {
+            if (SQL_MIN_ROWS >= 0 && page.getRowCount() >= SQL_MIN_ROWS) {
+                try (ResultSetCache.Pin pin = getSearchProcessor(sreq).pinResultSetTable(sreq, dbFile)) {
+                    xy = readXYValues(decimateInfo, dbAdapter, dbFile, pin.getResultSetID(), tableDef);
+                }
+            }
+            if (xy == null) {
+                xy = QueryUtil.getXYValues(fetchXYData(sreq, decimateInfo), decimateInfo);
+            }
+            DecimationCache.put(dbFile, tbl, xColOrExpr, yColOrExpr, xy);
+        }
 
-        if (decimateInfo != null) {
-            DataGroup retval = QueryUtil.doDecimation(dg, decimateInfo);
-            dg.getAttributeKeys().stream().forEach(k -> {
-                retval.addAttribute(k, dg.getAttribute(k).getValue());
-            });
-            return retval;
-        } else {
-            return dg;
+        DataGroup retval = QueryUtil.doDecimation(tableDef, xy[0], xy[1], decimateInfo);
+        tableDef.getAttributeKeys().forEach(k -> retval.addAttribute(k, tableDef.getAttribute(k).getValue()));
+        return retval;
+    }
+
+    /**
+     * read the x and y values of the given table straight from the database.  Only the columns used by x and y are read;
+     * expressions are evaluated a column at a time.
+     * @param decimateInfo  DecimateInfo object
+     * @param dbAdapter     DbAdapter of the database
+     * @param dbFile        database file
+     * @param tbl           the table to read.  it must have a ROW_NUM column.
+     * @param tableDef      the table's columns
+     * @return {xs, ys} indexed by ROW_NUM, or null if x or y is neither a numeric column nor an expression of numeric columns
+     */
+    static double[][] readXYValues(DecimateInfo decimateInfo, DbAdapter dbAdapter, File dbFile, String tbl, DataGroup tableDef) {
+        String[] colOrExprs = {decimateInfo.getxColumnName(), decimateInfo.getyColumnName()};
+        Expression[] exprs = new Expression[2];         // null when it's a column
+        List<String> cols = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            DataType dt = tableDef.getDataDefintion(colOrExprs[i]);
+            if (dt != null) {
+                if (!isNumeric(dt)) return null;
+                if (!cols.contains(colOrExprs[i])) cols.add(colOrExprs[i]);
+            } else {
+                exprs[i] = new Expression(colOrExprs[i], DataObjectUtil.getNumericCols(tableDef.getDataDefinitions()));
+                if (!exprs[i].isValid()) return null;
+                for (String v : exprs[i].getParsedVariables()) {
+                    if (tableDef.getDataDefintion(v) != null && !cols.contains(v)) cols.add(v);     // skip constants like pi
+                }
+            }
         }
+        if (cols.isEmpty()) return null;
+
+        int rowCount = EmbeddedDbUtil.getRowCount(dbAdapter, dbFile, tbl, "");
+        double[][] colValues = new double[cols.size()][rowCount];
+        Map<String, double[]> values = new HashMap<>(cols.size());
+        for (int c = 0; c < colValues.length; c++) {
+            Arrays.fill(colValues[c], Double.NaN);
+            values.put(cols.get(c), colValues[c]);
+        }
+
+        String sql = String.format("select %s, %s from %s", DataGroup.ROW_NUM,
+                                    cols.stream().map(c -> "\"" + c + "\"").collect(Collectors.joining(", ")), tbl);
+        JdbcFactory.getTemplate(dbAdapter.getDbInstance(dbFile)).query(sql, (ResultSetExtractor) rs -> {
+            while (rs.next()) {
+                int idx = rs.getInt(1);         // rowidx is the row's position in the table
+                if (idx < 0 || idx >= rowCount) continue;
+                for (int c = 0; c < colValues.length; c++) {
+                    double v = rs.getDouble(c + 2);
+                    colValues[c][idx] = rs.wasNull() ? Double.NaN : v;
+                }
+            }
+            return null;
+        });
+
+        double[][] xy = new double[2][];
+        for (int i = 0; i < 2; i++) {
+            xy[i] = exprs[i] == null ? values.get(colOrExprs[i]) : exprs[i].getValues(values, rowCount);
+        }
+        return xy;
+    }
+
+    private static boolean isNumeric(DataType dt) {
+        return dt != null && Number.class.isAssignableFrom(dt.getDataType());
     }
 
     public static DecimateInfo getDecimateInfo(ServerRequest req) {
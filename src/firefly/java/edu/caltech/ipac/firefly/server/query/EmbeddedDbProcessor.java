@@ -11,10 +11,13 @@ import edu.caltech.ipac.firefly.data.TableServerRequest;
 import edu.caltech.ipac.firefly.data.table.SelectionInfo;
 import edu.caltech.ipac.firefly.data.table.TableMeta;
 import edu.caltech.ipac.firefly.server.ServerContext;
+import edu.caltech.ipac.firefly.server.db.ColumnarDbAdapter;
 import edu.caltech.ipac.firefly.server.db.DbAdapter;
 import edu.caltech.ipac.firefly.server.db.DbInstance;
 import edu.caltech.ipac.firefly.server.db.EmbeddedDbUtil;
+import edu.caltech.ipac.firefly.server.db.ResultSetCache;
 import edu.caltech.ipac.firefly.server.db.spring.JdbcFactory;
+import edu.caltech.ipac.firefly.server.util.Logger;
 import edu.caltech.ipac.firefly.server.util.QueryUtil;
 import edu.caltech.ipac.firefly.server.util.StopWatch;
 import edu.caltech.ipac.firefly.server.util.ipactable.DataGroupPart;
@@ -65,6 +68,9 @@ import static edu.caltech.ipac.firefly.server.db.EmbeddedDbUtil.execRequestQuery
  *   1. paging is much faster, since it does not need to re-run the query to get at the results.
  *   2. storing the original ROW_IDX of DATA in relation to the results.
  *   [hash_id] is an MD5 hex of the filter/sort parameters.
+ *   These tables are tracked per database by a ResultSetCache.  The least recently used ones are dropped
+ *   when there are too many of them, or when they hold too many rows.  They will be recreated when needed.
+ *   A table is pinned while it's being read, see #pinResultSetTable, so it's not dropped from under its readers.
  *
  * - All column names must be enclosed in double-quotes(") to avoid reserved keywords clashes.
  *   This applies to inputs used by the database component, ie.  INCL_COLUMNS, FILTERS, SORT_INFO, etc
@@ -72,6 +78,7 @@ import static edu.caltech.ipac.firefly.server.db.EmbeddedDbUtil.execRequestQuery
 abstract public class EmbeddedDbProcessor implements SearchProcessor<DataGroupPart>, CanGetDataFile {
     private static final Map<String, ReentrantLock> activeRequests = new HashMap<>();
     private static final ReentrantLock lockChecker = new ReentrantLock();
+    private static final Logger.LoggerImpl LOGGER = Logger.getLogger();
 
 
     /**
@@ -250,45 +257,39 @@ abstract public class EmbeddedDbProcessor implements SearchProcessor<DataGroupPa
         String resultSetID = getResultSetID(treq);
 
         DbAdapter dbAdapter = DbAdapter.getAdapter(treq);
-        DbInstance dbInstance = dbAdapter.getDbInstance(dbFile);
 
-        if (!EmbeddedDbUtil.hasTable(treq, dbFile, resultSetID)) {
-            // does not exists.. create table from original 'data' table
-            List<String> cols = StringUtils.isEmpty(treq.getInclColumns()) ? getColumnNames(dbInstance, "DATA")
-                    : StringUtils.asList(treq.getInclColumns(), ",");
-            String wherePart = dbAdapter.wherePart(treq);
-            String orderBy = dbAdapter.orderByPart(treq);
-
-            cols = cols.stream().filter((s) -> {
-                s = s.replaceFirst("^\"(.+)\"$", "$1");
-                return !(s.equals(DataGroup.ROW_IDX) || s.equals(DataGroup.ROW_NUM));
-            }).collect(Collectors.toList());   // remove this cols because it will be automatically added
-
-            // copy data
-            String datasetSql = String.format("select %s, %s from data %s %s", StringUtils.toString(cols), DataGroup.ROW_IDX, wherePart, orderBy);
-            String datasetSqlWithIdx = String.format("select b.*, (ROWNUM-1) as %s from (%s) as b", DataGroup.ROW_NUM, datasetSql);
-            String sql = dbAdapter.createTableFromSelect(resultSetID, datasetSqlWithIdx);
-            JdbcFactory.getSimpleTemplate(dbInstance).update(sql);
-
-            // copy dd
-            String ddSql = "select * from data_dd";
-            ddSql = dbAdapter.createTableFromSelect(resultSetID + "_dd", ddSql);
-            JdbcFactory.getSimpleTemplate(dbInstance).update(ddSql);
-
-            // copy meta
-            String metaSql = "select * from data_meta";
-            metaSql = dbAdapter.createTableFromSelect(resultSetID + "_meta", metaSql);
-            JdbcFactory.getSimpleTemplate(dbInstance).update(metaSql);
+        DataGroupPart page = null;
+        if (dbAdapter instanceof ColumnarDbAdapter && !resultSetID.equals("data") && !hasSelectedRows(treq)
+                && !EmbeddedDbUtil.hasTable(treq, dbFile, resultSetID)) {
+            // filter and sort the in-memory copy of 'data'.  the result set table is created only when it's queried by SQL.
+            page = ((ColumnarDbAdapter) dbAdapter).getResultSetPage(treq, dbFile);
+            if (page != null) {
+                setResultSetInfo(treq, dbAdapter, dbFile, resultSetID, page);
+                return page;
+            }
         }
 
-        // resultSetID is a table created with sort and filter in consideration.  no need to re-apply.
-        TableServerRequest nreq = (TableServerRequest) treq.cloneRequest();
-        nreq.setFilters(null);
-        nreq.setSortInfo(null);
-        nreq.setInclColumns(new String[0]);
+        ResultSetCache resultSets = EmbeddedDbUtil.getResultSetCache(dbAdapter, dbFile);
+        try (ResultSetCache.Pin pin = resultSets.pin(resultSetID)) {
+            boolean created = createResultSetTable(treq, dbFile, pin.getResultSetID());
+
+            // resultSetID is a table created with sort and filter in consideration.  no need to re-apply.
+            TableServerRequest nreq = (TableServerRequest) treq.cloneRequest();
+            nreq.setFilters(null);
+            nreq.setSortInfo(null);
+            nreq.setInclColumns(new String[0]);
 
-        DataGroupPart page = execRequestQuery(nreq, dbFile, resultSetID);
+            page = execRequestQuery(nreq, dbFile, resultSetID);
+            setResultSetInfo(treq, dbAdapter, dbFile, resultSetID, page);
 
+            if (!resultSetID.equals("data")) {
+                dropResultSets(dbAdapter, dbFile, resultSets, resultSets.access(resultSetID, page.getRowCount(), created));
+            }
+        }
+        return page;
+    }
+
+    private void setResultSetInfo(TableServerRequest treq, DbAdapter dbAdapter, File dbFile, String resultSetID, DataGroupPart page) {
         // save information needed to recreated this resultset
         page.getTableDef().setAttribute(TableServerRequest.RESULTSET_REQ, makeResultSetReqStr(treq));
         page.getTableDef().setAttribute(TableServerRequest.RESULTSET_ID, resultSetID);
@@ -299,8 +300,82 @@ abstract public class EmbeddedDbProcessor implements SearchProcessor<DataGroupPa
         SelectionInfo selectInfo = getSelectInfoForThisResultSet(treq, dbAdapter, dbFile, resultSetID, page.getRowCount());
         page.getTableDef().setSelectInfo(selectInfo);
         treq.setSelectInfo(null);
+    }
 
-        return page;
+    /**
+     * make sure the result set table of the given request exists, so that it can be queried by SQL.
+     * with ColumnarDbAdapter, pages may be served from memory without creating it.
+     * The table is pinned, so that it's not dropped while in use.  The returned Pin must be closed when done.
+     * @param treq      the search request
+     * @param dbFile    database file of the search
+     * @return the Pin of the result set table.  its ID is the name of the table.
+     */
+    public ResultSetCache.Pin pinResultSetTable(TableServerRequest treq, File dbFile) {
+        String resultSetID = getResultSetID(treq);
+        DbAdapter dbAdapter = DbAdapter.getAdapter(treq);
+        ResultSetCache resultSets = EmbeddedDbUtil.getResultSetCache(dbAdapter, dbFile);
+        ResultSetCache.Pin pin = resultSets.pin(resultSetID);
+        try {
+            boolean created = createResultSetTable(treq, dbFile, resultSetID);
+            if (!resultSetID.equals("data")) {
+                int rowCnt = EmbeddedDbUtil.getRowCount(dbAdapter, dbFile, resultSetID, "");
+                dropResultSets(dbAdapter, dbFile, resultSets, resultSets.access(resultSetID, rowCnt, created));
+            }
+        } catch (RuntimeException e) {
+            pin.close();
+            throw e;
+        }
+        return pin;
+    }
+
+    /**
+     * create the result set table of the given request from the 'data' table, if it does not exist.
+     * @return true if the table was created
+     */
+    private boolean createResultSetTable(TableServerRequest treq, File dbFile, String resultSetID) {
+        if (EmbeddedDbUtil.hasTable(treq, dbFile, resultSetID)) return false;
+
+        DbAdapter dbAdapter = DbAdapter.getAdapter(treq);
+        DbInstance dbInstance = dbAdapter.getDbInstance(dbFile);
+
+        // does not exists.. create table from original 'data' table
+        List<String> cols = StringUtils.isEmpty(treq.getInclColumns()) ? getColumnNames(dbInstance, "DATA")
+                : StringUtils.asList(treq.getInclColumns(), ",");
+        String wherePart = dbAdapter.wherePart(treq);
+        String orderBy = dbAdapter.orderByPart(treq);
+
+        cols = cols.stream().filter((s) -> {
+            s = s.replaceFirst("^\"(.+)\"$", "$1");
+            return !(s.equals(DataGroup.ROW_IDX) || s.equals(DataGroup.ROW_NUM));
+        }).collect(Collectors.toList());   // remove this cols because it will be automatically added
+
+        // columns filtered or sorted on often enough will be indexed
+        EmbeddedDbUtil.getColumnIndexer(dbAdapter, dbFile).recordUsage(dbAdapter, dbFile, "data", treq);
+
+        // copy data
+        String datasetSql = String.format("select %s, %s from data %s %s", StringUtils.toString(cols), DataGroup.ROW_IDX, wherePart, orderBy);
+        String datasetSqlWithIdx = String.format("select b.*, (ROWNUM-1) as %s from (%s) as b", DataGroup.ROW_NUM, datasetSql);
+        String sql = dbAdapter.createTableFromSelect(resultSetID, datasetSqlWithIdx);
+        JdbcFactory.getSimpleTemplate(dbInstance).update(sql);
+
+        // copy dd
+        String ddSql = "select * from data_dd";
+        ddSql = dbAdapter.createTableFromSelect(resultSetID + "_dd", ddSql);
+        JdbcFactory.getSimpleTemplate(dbInstance).update(ddSql);
+
+        // copy meta
+        String metaSql = "select * from data_meta";
+        metaSql = dbAdapter.createTableFromSelect(resultSetID + "_meta", metaSql);
+        JdbcFactory.getSimpleTemplate(dbInstance).update(metaSql);
+        return true;
+    }
+
+    /**
+     * @return true if rows of the previous result set are selected.  the selection is remapped to the new one by SQL.
+     */
+    private static boolean hasSelectedRows(TableServerRequest treq) {
+        SelectionInfo selectInfo = treq.getSelectInfo();
+        return selectInfo != null && selectInfo.getSelectedCount() > 0;
     }
 
     private String makeResultSetReqStr(TableServerRequest treq) {
@@ -318,31 +393,48 @@ abstract public class EmbeddedDbProcessor implements SearchProcessor<DataGroupPa
 //
 //====================================================================
 
+    /**
+     * drop the given result set tables.  failures are logged, but otherwise ignored.
+     */
+    private static void dropResultSets(DbAdapter dbAdapter, File dbFile, ResultSetCache resultSets, List<String> resultSetIDs) {
+        if (resultSetIDs.size() == 0) return;
+
+        for (String id : resultSetIDs) {
+            if (!resultSets.beginDrop(id)) continue;      // in use again
+            try {
+                EmbeddedDbUtil.dropTable(dbAdapter, dbFile, id);
+            } catch (Exception e) {
+                LOGGER.warn(e, "Unable to drop result set table: " + id);
+            } finally {
+                resultSets.endDrop(id);
+            }
+        }
+    }
+
     private static List<String> getColumnNames(DbInstance dbInstance, String forTable) {
         List<String> cols = JdbcFactory.getSimpleTemplate(dbInstance).query(String.format("select cname from %s_DD", forTable), (rs, i) -> "\"" + rs.getString(1) + "\"");
         return cols;
     }
 
-    private String ensurePrevResultSetIfExists(TableServerRequest treq, File dbFile) {
+    /**
+     * @return the Pin of the previous result set table, recreating it if needed.  null if there is none.
+     */
+    private ResultSetCache.Pin pinPrevResultSetIfExists(TableServerRequest treq, File dbFile) {
 
         String prevResultSetID = treq.getMeta().get(TableServerRequest.RESULTSET_ID);
-        if (!StringUtils.isEmpty(prevResultSetID)) {
-            if (!EmbeddedDbUtil.hasTable(treq, dbFile, prevResultSetID)) {
+        if (StringUtils.isEmpty(prevResultSetID)) return null;
+
+        String resultSetRequest = treq.getMeta().get(TableServerRequest.RESULTSET_REQ);
+        if (!StringUtils.isEmpty(resultSetRequest)) {
+            try {
                 // does not exists.. create table from original 'data' table
-                String resultSetRequest = treq.getMeta().get(TableServerRequest.RESULTSET_REQ);
-                if (!StringUtils.isEmpty(resultSetRequest)) {
-                    try {
-                        TableServerRequest req = QueryUtil.convertToServerRequest(resultSetRequest);
-                        DataGroupPart page = getResultSet(req, dbFile);
-                        prevResultSetID = page.getTableDef().getAttribute(TableServerRequest.RESULTSET_ID).getValue();
-                    } catch (DataAccessException e1) {
-                        // can ignore for now.
-                    }
-                    return prevResultSetID;
-                }
+                TableServerRequest req = QueryUtil.convertToServerRequest(resultSetRequest);
+                return pinResultSetTable(req, dbFile);
+            } catch (RuntimeException e1) {
+                // can ignore for now.
             }
         }
-        return prevResultSetID;
+        return EmbeddedDbUtil.getResultSetCache(DbAdapter.getAdapter(treq), dbFile).pin(prevResultSetID);
     }
 
     private SelectionInfo getSelectInfoForThisResultSet(TableServerRequest treq, DbAdapter dbAdapter, File dbFile, String forTable, int rowCnt) {
@@ -357,7 +449,8 @@ abstract public class EmbeddedDbProcessor implements SearchProcessor<DataGroupPa
 
         if ( selectInfo.getSelectedCount() > 0 && !String.valueOf(prevResultSetID).equals(String.valueOf(forTable)) ) {
             // there were row(s) selected from previous resultset.. make sure selectInfo is remapped to new resultset
-            prevResultSetID = ensurePrevResultSetIfExists(treq, dbFile);
+            ResultSetCache.Pin prevPin = pinPrevResultSetIfExists(treq, dbFile);
+            if (prevPin != null) prevResultSetID = prevPin.getResultSetID();
 
             String rowNums = StringUtils.toString(selectInfo.getSelected());
             SimpleJdbcTemplate jdbc = JdbcFactory.getSimpleTemplate(dbAdapter.getDbInstance(dbFile));
@@ -368,6 +461,8 @@ abstract public class EmbeddedDbProcessor implements SearchProcessor<DataGroupPa
                 newRowNums = jdbc.query(String.format("Select ROW_NUM from %s where ROW_IDX in (%s)", forTable, origRowIds), (rs, idx) -> rs.getInt(1));
             } catch (Exception ex) {
                 // unable to collect previous select info.  we'll treat it
+            } finally {
+                if (prevPin != null) prevPin.close();
             }
             selectInfo = newRowNums.size() == rowCnt ? new SelectionInfo(true, null, rowCnt) : new SelectionInfo(false, newRowNums, rowCnt);
         }
@@ -3,8 +3,6 @@
  */
 package edu.caltech.ipac.firefly.server.query;
 
-import edu.caltech.ipac.astro.IpacTableException;
-import edu.caltech.ipac.astro.IpacTableReader;
 import edu.caltech.ipac.firefly.data.FileInfo;
 import edu.caltech.ipac.firefly.data.ServerRequest;
 import edu.caltech.ipac.firefly.data.TableServerRequest;
@@ -14,6 +12,7 @@ import edu.caltech.ipac.firefly.server.db.EmbeddedDbUtil;
 import edu.caltech.ipac.firefly.server.util.Logger;
 import edu.caltech.ipac.firefly.server.util.StopWatch;
 import edu.caltech.ipac.firefly.server.util.ipactable.DataGroupPart;
+import edu.caltech.ipac.firefly.server.util.ipactable.DataGroupReader;
 import edu.caltech.ipac.util.DataGroup;
 import edu.caltech.ipac.util.DataType;
 
@@ -44,16 +43,20 @@ public class EmbeddedDbProcessorWrapper extends EmbeddedDbProcessor {
             TableServerRequest nreq = (TableServerRequest) treq.cloneRequest();
             StopWatch.getInstance().start("getBaseData: " + treq.getRequestId());
             File dataFile = processor.loadDataFile(nreq);       // this should fetch the data directly without any caching, sorting, filtering, etc.
-            DataGroup dg = IpacTableReader.readIpacTable(dataFile, "temp");
             StopWatch.getInstance().stop("getBaseData: " + treq.getRequestId()).printLog("getBaseData: " + treq.getRequestId());
 
-            setupMeta(dg, treq);
+            // stream the rows into the database instead of reading the whole table into memory first.
+            try (DataGroupReader.RowIterator rows = DataGroupReader.iterate(dataFile, true)) {
+                DataGroup dg = rows.getTableDef();
+                dg.setTitle("temp");
+                setupMeta(dg, treq);
 
-            FileInfo finfo = EmbeddedDbUtil.ingestDataGroup(dbFile, dg, dbAdapter, "data");
-            return finfo;
+                FileInfo finfo = EmbeddedDbUtil.ingestDataGroup(dbFile, dg, rows, dbAdapter, "data");
+                return finfo;
+            }
         } catch (DataAccessException ex) {
             throw ex;
-        } catch (IpacTableException | IOException ex) {
+        } catch (IOException | IllegalStateException ex) {
             throw new DataAccessException(ex);
         }
     }
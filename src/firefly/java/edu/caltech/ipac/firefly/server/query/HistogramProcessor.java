@@ -221,16 +221,16 @@ public class HistogramProcessor extends IpacTablePartProcessor {
         DataGroup HistogramTable;
 
         if (columnData.length > 0) {
-            if (!sortedColData) {
-                //sort the data in ascending order, thus, index 0 has the minimum and the last index has the maximum
-                Arrays.sort(columnData);
-            }
-
             //calculate three arrays, numInBin, binMix and binMax
             Object[] obj;
             if (algorithm != null && algorithm.equalsIgnoreCase(FIXED_SIZE_ALGORITHM)) {
+                // fixed size bins only need the min and max, not sorted data
                 obj = calculateFixedBinSizeDataArray(columnData);
             } else {
+                if (!sortedColData) {
+                    //sort the data in ascending order, thus, index 0 has the minimum and the last index has the maximum
+                    Arrays.parallelSort(columnData);
+                }
                 obj = calculateVariableBinSizeDataArray(columnData);
 
             }
@@ -258,16 +258,23 @@ public class HistogramProcessor extends IpacTablePartProcessor {
     /**
      * Calculate the numInBin, binMin and binMax arrays
      *
-     * @param columnData a sorted array of doubles
+     * @param columnData an array of doubles, not necessarily sorted
      * @return an array of 3 arrays: numInBin[], min[], max[]
      */
     private Object[] calculateFixedBinSizeDataArray(double[] columnData) {
 
-        if (Double.isNaN(min)) {
-            min = columnData[0];
-        }
-        if (Double.isNaN(max)) {
-            max = columnData[columnData.length - 1];
+        if (Double.isNaN(min) || Double.isNaN(max)) {
+            double dataMin = Double.POSITIVE_INFINITY, dataMax = Double.NEGATIVE_INFINITY;
+            for (double d : columnData) {
+                if (d < dataMin) dataMin = d;
+                if (d > dataMax) dataMax = d;
+            }
+            if (Double.isNaN(min)) {
+                min = dataMin;
+            }
+            if (Double.isNaN(max)) {
+                max = dataMax;
+            }
         }
 
 
@@ -346,19 +353,13 @@ public class HistogramProcessor extends IpacTablePartProcessor {
     }
 
     private double[] getColumnData(DataGroup dg) throws DataAccessException {
-        List<DataObject> objList = dg.values();
-        int nRow = objList.size();
         DataType[] dataTypes=dg.getDataDefinitions();
         DataObjectUtil.DoubleValueGetter dGetter = new DataObjectUtil.DoubleValueGetter(dataTypes, columnExpression);
         if (!dGetter.isValid()) {
             throw new DataAccessException("Invalid column or expression: "+columnExpression);
         }
 
-        double[] data = new double[nRow];
-        for (int i = 0; i < nRow; i++) {
-            DataObject row = objList.get(i);
-            data[i] = dGetter.getValue(row);
-        }
+        double[] data = dGetter.getValues(dg.values());
         return Arrays.stream(data).filter(d -> !Double.isNaN(d)).toArray();
     }
 
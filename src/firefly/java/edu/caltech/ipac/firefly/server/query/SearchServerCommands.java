@@ -19,6 +19,7 @@ import edu.caltech.ipac.firefly.server.db.EmbeddedDbUtil;
 import edu.caltech.ipac.firefly.server.packagedata.BackgroundInfoCacher;
 import edu.caltech.ipac.firefly.server.rpc.SearchServicesImpl;
 import edu.caltech.ipac.firefly.server.util.QueryUtil;
+import edu.caltech.ipac.firefly.server.util.ipactable.BinaryTableUtil;
 import edu.caltech.ipac.firefly.server.util.ipactable.DataGroupPart;
 import edu.caltech.ipac.firefly.server.util.ipactable.JsonTableUtil;
 import edu.caltech.ipac.firefly.server.SrvParam;
@@ -46,11 +47,41 @@ public class SearchServerCommands {
             JSONObject json = JsonTableUtil.toJsonTableModel(dgp, tsr);
             return json.toJSONString();
         }
+
+        public JsonWriter getJsonWriter(SrvParam params) throws Exception {
+            TableServerRequest tsr = params.getTableServerRequest();
+            DataGroupPart dgp = new SearchManager().getDataGroup(tsr);
+            return writer -> JsonTableUtil.writeJsonTableModel(writer, dgp, tsr);
+        }
+
+        public BinaryWriter getBinaryWriter(SrvParam params) throws Exception {
+            TableServerRequest tsr = params.getTableServerRequest();
+            DataGroupPart dgp = new SearchManager().getDataGroup(tsr);
+            return out -> BinaryTableUtil.writeBinaryTableModel(out, dgp, tsr);
+        }
     }
 
     public static class QueryTable extends ServCommand {
 
         public String doCommand(SrvParam params) throws Exception {
+            TableServerRequest treq = makeRequest(params);
+            DataGroupPart page = new SearchManager().getDataGroup(treq);
+            return JsonTableUtil.toJsonTableModel(page, treq).toJSONString();
+        }
+
+        public JsonWriter getJsonWriter(SrvParam params) throws Exception {
+            TableServerRequest treq = makeRequest(params);
+            DataGroupPart page = new SearchManager().getDataGroup(treq);
+            return writer -> JsonTableUtil.writeJsonTableModel(writer, page, treq);
+        }
+
+        public BinaryWriter getBinaryWriter(SrvParam params) throws Exception {
+            TableServerRequest treq = makeRequest(params);
+            DataGroupPart page = new SearchManager().getDataGroup(treq);
+            return out -> BinaryTableUtil.writeBinaryTableModel(out, page, treq);
+        }
+
+        private static TableServerRequest makeRequest(SrvParam params) {
             TableServerRequest treq = (TableServerRequest) params.getTableServerRequest().cloneRequest();
             treq.setParam(TableServerRequest.INCL_COLUMNS, params.getOptional(TableServerRequest.INCL_COLUMNS));
             treq.setFilters(StringUtils.asList(params.getOptional(TableServerRequest.FILTERS), ","));
@@ -58,9 +89,7 @@ public class SearchServerCommands {
             if (!StringUtils.isEmpty(sortInfo)) {
                 treq.setSortInfo(SortInfo.parse(sortInfo));
             }
-
-            DataGroupPart page = new SearchManager().getDataGroup(treq);
-            return JsonTableUtil.toJsonTableModel(page, treq).toJSONString();
+            return treq;
         }
     }
 
@@ -70,15 +99,33 @@ public class SearchServerCommands {
             String requestJson = params.getRequired(ServerParams.REQUEST);
             TableServerRequest treq = QueryUtil.convertToServerRequest(requestJson);
             try {
-                List<String> cols = StringUtils.asList(params.getRequired("columnNames"), ",");
-                String[] colsAry = cols == null ? null : cols.toArray(new String[cols.size()]);
-                List<Integer> rows = StringUtils.convertToListInteger(params.getRequired("selectedRows"), ",");
-                DataGroupPart page = EmbeddedDbUtil.getSelectedDataAsDGPart(treq, rows, colsAry);
+                DataGroupPart page = getSelectedData(params, treq);
                 return JsonTableUtil.toJsonTableModel(page, treq).toJSONString();
             } catch (IOException e) {
                 throw new DataAccessException("Unable to resolve a search processor for this request.  SelectedValues aborted.");
             }
         }
+
+        public JsonWriter getJsonWriter(SrvParam params) throws Exception {
+            String requestJson = params.getRequired(ServerParams.REQUEST);
+            TableServerRequest treq = QueryUtil.convertToServerRequest(requestJson);
+            DataGroupPart page = getSelectedData(params, treq);
+            return writer -> JsonTableUtil.writeJsonTableModel(writer, page, treq);
+        }
+
+        public BinaryWriter getBinaryWriter(SrvParam params) throws Exception {
+            String requestJson = params.getRequired(ServerParams.REQUEST);
+            TableServerRequest treq = QueryUtil.convertToServerRequest(requestJson);
+            DataGroupPart page = getSelectedData(params, treq);
+            return out -> BinaryTableUtil.writeBinaryTableModel(out, page, treq);
+        }
+
+        private static DataGroupPart getSelectedData(SrvParam params, TableServerRequest treq) throws Exception {
+            List<String> cols = StringUtils.asList(params.getRequired("columnNames"), ",");
+            String[] colsAry = cols == null ? null : cols.toArray(new String[cols.size()]);
+            List<Integer> rows = StringUtils.convertToListInteger(params.getRequired("selectedRows"), ",");
+            return EmbeddedDbUtil.getSelectedDataAsDGPart(treq, rows, colsAry);
+        }
     }
 
     public static class JsonSearch extends ServCommand {
@@ -6,28 +6,37 @@ import edu.caltech.ipac.astro.IpacTableWriter;
 import edu.caltech.ipac.firefly.data.ServerParams;
 import edu.caltech.ipac.firefly.data.TableServerRequest;
 import edu.caltech.ipac.firefly.server.db.DbAdapter;
-import edu.caltech.ipac.firefly.server.db.DbInstance;
 import edu.caltech.ipac.firefly.server.db.EmbeddedDbUtil;
+import edu.caltech.ipac.firefly.server.db.ResultSetCache;
 import edu.caltech.ipac.firefly.server.db.spring.JdbcFactory;
 import edu.caltech.ipac.firefly.server.util.QueryUtil;
+import edu.caltech.ipac.firefly.server.util.ipactable.DataGroupPart;
 import edu.caltech.ipac.firefly.server.util.ipactable.DataGroupWriter;
 import edu.caltech.ipac.util.DataGroup;
 import edu.caltech.ipac.util.DataObject;
 import edu.caltech.ipac.util.DataType;
 import edu.caltech.ipac.util.StringUtils;
+import edu.caltech.ipac.util.stats.ColumnStats;
+import org.springframework.jdbc.core.ResultSetExtractor;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Created by zhang on 10/14/15.
  * This class calculates the statistics of a IpacTable Data.
+ *
+ * All of the numeric columns are read in a single scan of the search's result set table.  The values are passed on
+ * in chunks, and each column's ColumnStats is updated in parallel with the others.
  */
 
 @SearchProcessorImpl(id = "StatisticsProcessor")
 public class StatisticsProcessor extends TableFunctionProcessor {
+    private static final int CHUNK_SIZE = 8192;
     private static DataType[] columns = new DataType[]{
             new DataType("columnName", String.class),
             new DataType("description", String.class),
@@ -35,6 +44,11 @@ public class StatisticsProcessor extends TableFunctionProcessor {
             new DataType("min", Double.class),
             new DataType("max", Double.class),
             new DataType("numPoints", Long.class),
+            new DataType("mean", Double.class),
+            new DataType("stdev", Double.class),
+            new DataType("p25", Double.class),
+            new DataType("median", Double.class),
+            new DataType("p75", Double.class),
     };
 
     protected String getResultSetTablePrefix() {
@@ -42,23 +56,19 @@ public class StatisticsProcessor extends TableFunctionProcessor {
     }
 
     protected DataGroup fetchData(TableServerRequest treq, File dbFile, DbAdapter dbAdapter) throws DataAccessException {
-        EmbeddedDbProcessor proc = getSearchProcessor(getSearchRequest(treq));
-        String origDataTblName = proc.getResultSetID(treq);
-        // check to see if a resultset table exists... if not, use orginal data table.
-        DbInstance dbInstance = dbAdapter.getDbInstance(dbFile);
-        String tblExists = String.format("select count(*) from %s", origDataTblName);
-        try {
-            JdbcFactory.getSimpleTemplate(dbInstance).queryForInt(tblExists);
-        } catch (Exception e) {
-            origDataTblName = "data";
+        TableServerRequest sreq = getSearchRequest(treq);
+        try (ResultSetCache.Pin pin = materializeSearchResults(sreq, dbFile)) {
+            return makeStats(dbAdapter, dbFile, pin.getResultSetID());
         }
+    }
+
+    private DataGroup makeStats(DbAdapter dbAdapter, File dbFile, String origDataTblName) {
 
         // get all cols from dd table
         DataGroup dd = EmbeddedDbUtil.execQuery(dbAdapter, dbFile, String.format("select * from data_dd"), null);
 
-        //generate one sql for all the columns.  each as cname_min, cname_max, cname_count
         DataGroup stats = new DataGroup("stats", columns);
-        List<String> sqlCols = new ArrayList<>();
+        List<String> cnames = new ArrayList<>();
         for (int i = 0; i < dd.size(); i++) {
             DataObject col = dd.get(i);
             String type = (String) col.getDataElement("TYPE");
@@ -71,33 +81,92 @@ public class StatisticsProcessor extends TableFunctionProcessor {
                 row.setDataElement(columns[0], cname);
                 row.setDataElement(columns[1], desc);
                 row.setDataElement(columns[2], units);
-                sqlCols.add(String.format("min(\"%1$s\") as \"%1$s_min\"", cname));
-                sqlCols.add(String.format("max(\"%1$s\") as \"%1$s_max\"", cname));
-                sqlCols.add(String.format("count(\"%1$s\") as \"%1$s_count\"", cname));
+                cnames.add(cname);
                 stats.add(row);
             }
 
         }
-        if (sqlCols.size() > 0) {
-            DataObject data = EmbeddedDbUtil.execQuery(dbAdapter, dbFile, String.format("select %s from %s",StringUtils.toString(sqlCols), origDataTblName), null).get(0);
+        if (cnames.size() > 0) {
+            ColumnStats[] colStats = computeStats(dbAdapter, dbFile, origDataTblName, cnames);
             for (int i = 0; i < stats.size(); i++) {
                 DataObject col = stats.get(i);
-                String cname = col.getStringData("columnName");
-                col.setDataElement(columns[3], getDouble(data.getDataElement(cname + "_min")));
-                col.setDataElement(columns[4], getDouble(data.getDataElement(cname + "_max")));
-                col.setDataElement(columns[5], data.getDataElement(cname + "_count"));
+                ColumnStats cs = colStats[i];
+                double[] quantiles = cs.getQuantiles(.25, .5, .75);
+                col.setDataElement(columns[3], toDouble(cs.getMin()));
+                col.setDataElement(columns[4], toDouble(cs.getMax()));
+                col.setDataElement(columns[5], cs.getCount());
+                col.setDataElement(columns[6], toDouble(cs.getMean()));
+                col.setDataElement(columns[7], toDouble(cs.getStdDev()));
+                col.setDataElement(columns[8], toDouble(quantiles[0]));
+                col.setDataElement(columns[9], toDouble(quantiles[1]));
+                col.setDataElement(columns[10], toDouble(quantiles[2]));
             }
         }
         return stats;
     }
 
-    private Double getDouble(Object v) {
-        if (v instanceof Double) {
-            return (Double) v;
+    /**
+     * the order of the rows does not change the statistics, so the search results are materialized without sorting.
+     * only the first row is fetched.  this ensures the database exists, then the result set table is created if
+     * the page was served without it.
+     * @return the Pin of the table holding the search results.  it must be closed when done.
+     */
+    private ResultSetCache.Pin materializeSearchResults(TableServerRequest sreq, File dbFile) throws DataAccessException {
+        TableServerRequest req = (TableServerRequest) sreq.cloneRequest();
+        req.setSortInfo(null);
+        req.setPageSize(1);
+        DataGroupPart page = new SearchManager().getDataGroup(req);
+        DataGroup.Attribute resultSetID = page.getTableDef().getAttribute(TableServerRequest.RESULTSET_ID);
+        if (resultSetID != null) {
+            return getSearchProcessor(req).pinResultSetTable(req, dbFile);
+        } else if (req.getFilters() == null || req.getFilters().isEmpty()) {
+            return EmbeddedDbUtil.getResultSetCache(DbAdapter.getAdapter(req), dbFile).pin("data");
         } else {
-            return v == null ? null : Double.valueOf(v.toString());
+            throw new DataAccessException("Unable to find the filtered results of: " + req.getRequestId());
         }
     }
+
+    /**
+     * compute the statistics of the given columns in one scan of the table.
+     * @param dbAdapter DbAdapter of the database
+     * @param dbFile    database file
+     * @param tblName   the table to scan
+     * @param cnames    numeric columns of the table
+     * @return the statistics of each column, in the same order as cnames
+     */
+    static ColumnStats[] computeStats(DbAdapter dbAdapter, File dbFile, String tblName, List<String> cnames) {
+        int nCols = cnames.size();
+        ColumnStats[] colStats = new ColumnStats[nCols];
+        for (int c = 0; c < nCols; c++) colStats[c] = new ColumnStats();
+
+        String sql = String.format("select %s from %s",
+                        cnames.stream().map(c -> "\"" + c + "\"").collect(Collectors.joining(", ")), tblName);
+        JdbcFactory.getTemplate(dbAdapter.getDbInstance(dbFile)).query(sql, (ResultSetExtractor) rs -> {
+            double[][] chunk = new double[nCols][CHUNK_SIZE];
+            int n = 0;
+            while (rs.next()) {
+                for (int c = 0; c < nCols; c++) {
+                    double v = rs.getDouble(c + 1);
+                    chunk[c][n] = rs.wasNull() ? Double.NaN : v;
+                }
+                if (++n == CHUNK_SIZE) {
+                    addChunk(colStats, chunk, n);
+                    n = 0;
+                }
+            }
+            addChunk(colStats, chunk, n);
+            return null;
+        });
+        return colStats;
+    }
+
+    private static void addChunk(ColumnStats[] colStats, double[][] chunk, int n) {
+        IntStream.range(0, colStats.length).parallel().forEach(c -> colStats[c].addAll(chunk[c], n));
+    }
+
+    private static Double toDouble(double v) {
+        return Double.isNaN(v) ? null : v;
+    }
 }
 
 
@@ -158,6 +158,11 @@ class XYGenericProcessorImpl extends IpacTablePartProcessor {
         DataType   dt;
         int        numCols = cols.length;
 
+        double[][] values = new double[numCols][];
+        for (int c = 0; c < numCols ; c++) {
+            values[c] = cols[c].getter.getValues(dg.values());
+        }
+
         for (int rIdx = 0; rIdx < dg.size(); rIdx++) {
             DataObject row = dg.get(rIdx);
             retRow = new DataObject(retVal);
@@ -167,7 +172,7 @@ class XYGenericProcessorImpl extends IpacTablePartProcessor {
                 XYGenericProcessor.Col col = cols[c];
                 double val;
 
-                val = col.getter.getValue(row);
+                val = values[c][rIdx];
                 if (Double.isNaN(val) && !col.canBeNaN) {
                     retRow = null;
                     break;
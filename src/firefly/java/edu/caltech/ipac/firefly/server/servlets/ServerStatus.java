@@ -5,7 +5,12 @@ package edu.caltech.ipac.firefly.server.servlets;
 
 import edu.caltech.ipac.firefly.server.cache.EhcacheProvider;
 import edu.caltech.ipac.firefly.server.db.BaseDbAdapter;
+import edu.caltech.ipac.firefly.server.db.ColumnarDbAdapter;
+import edu.caltech.ipac.firefly.server.db.ResultSetCache;
+import edu.caltech.ipac.firefly.server.events.EventBusWorker;
 import edu.caltech.ipac.firefly.server.events.ServerEventManager;
+import edu.caltech.ipac.firefly.server.events.ServerEventQueue;
+import edu.caltech.ipac.firefly.server.query.DecimationCache;
 import edu.caltech.ipac.firefly.server.packagedata.PackagingController;
 import edu.caltech.ipac.firefly.server.Counters;
 import edu.caltech.ipac.util.StringUtils;
@@ -119,11 +124,29 @@ public class ServerStatus extends BaseHttpServlet {
     private static void showDatabaseStatus(PrintWriter writer) {
         writer.println("DATABASE INFORMATION");
         writer.println("--------------------");
-        writer.println("Open: " + BaseDbAdapter.getDbInstances().size());
+        writer.println(String.format("Open: %d  (max: %d, memory max: %dMB)",
+                        BaseDbAdapter.getDbInstances().size(), BaseDbAdapter.getMaxOpenDbs(), BaseDbAdapter.getMaxMemory()/(1024 * 1024)));
+        long reopens = BaseDbAdapter.getReopens();
+        writer.println(String.format("Opened: %d  evictions: %d  reopens: %d  avg reopen time: %dms",
+                        BaseDbAdapter.getOpens(), BaseDbAdapter.getEvictions(), reopens, reopens == 0 ? 0 : BaseDbAdapter.getReopenTime()/reopens));
+        writer.println(String.format("Result sets:  hits: %d  misses: %d  evictions: %d",
+                        ResultSetCache.getTotalHits(), ResultSetCache.getTotalMisses(), ResultSetCache.getTotalEvictions()));
+        writer.println(String.format("Columnar tables: %d  memory: %dMB (max: %dMB)  hits: %d  misses: %d  evictions: %d",
+                        ColumnarDbAdapter.getTableCount(), ColumnarDbAdapter.getMemoryUsed()/(1024 * 1024), ColumnarDbAdapter.getMaxMemory()/(1024 * 1024),
+                        ColumnarDbAdapter.getHits(), ColumnarDbAdapter.getMisses(), ColumnarDbAdapter.getEvictions()));
+        writer.println(String.format("Decimation cache: %d  memory: %dMB (max: %dMB)  hits: %d  misses: %d  evictions: %d",
+                        DecimationCache.getEntryCount(), DecimationCache.getMemoryUsed()/(1024 * 1024), DecimationCache.getMaxMemory()/(1024 * 1024),
+                        DecimationCache.getHits(), DecimationCache.getMisses(), DecimationCache.getEvictions()));
         writer.println("Details: idle time is in (mm:ss)");
         Collections.unmodifiableCollection(BaseDbAdapter.getDbInstances().values()).stream()
                     .sorted((db1, db2) -> Long.compare(db2.getLastAccessed(), db1.getLastAccessed()))
-                    .forEach((db) -> writer.println(String.format("\tidled: %2$tM:%2$tS %s", db.getDbFile().getPath(), System.currentTimeMillis() - db.getLastAccessed())));
+                    .forEach((db) -> {
+                        writer.println(String.format("\tidled: %2$tM:%2$tS %s  [%3$s]", db.getDbFile().getPath(), System.currentTimeMillis() - db.getLastAccessed(), db.getResultSetCache()));
+                        List<String> indexed = db.getColumnIndexer().getIndexedColumns();
+                        if (indexed.size() > 0) {
+                            writer.println("\t\tindexed: " + StringUtils.toString(indexed, ", "));
+                        }
+                    });
     }
 
     private static String getStats(Ehcache c) {
@@ -150,6 +173,14 @@ public class ServerStatus extends BaseHttpServlet {
         w.println("  - Total events fired:" + ServerEventManager.getTotalEventCnt());
         w.println("  - Total events delivered:" + ServerEventManager.getDeliveredEventCnt());
         w.println("  - Total active queues:" + ServerEventManager.getActiveQueueCnt());
+        w.println("  - Outbound buffer:" + ServerEventQueue.getMaxPending() + " messages  Overflow policy:" + ServerEventQueue.getOverflowPolicy() +
+                    "  Dropped:" + ServerEventQueue.getTotalDroppedCnt() + "  Disconnected:" + ServerEventQueue.getTotalOverflowDisconnects());
+        ServerEventManager.getSlowestQueueStats(10).forEach(s -> w.println("      " + s));
+        if (EventBusWorker.getPublishedCnt() + EventBusWorker.getReceivedCnt() > 0) {
+            w.println(String.format("  - Event bus:  published:%d  received:%d  processed:%d  rejected:%d  batches:%d  throughput:%.1f/s  avg-lag:%.2fms  max-lag:%.1fms",
+                        EventBusWorker.getPublishedCnt(), EventBusWorker.getReceivedCnt(), EventBusWorker.getProcessedCnt(), EventBusWorker.getRejectedCnt(),
+                        EventBusWorker.getBatchCnt(), EventBusWorker.getThroughput(), EventBusWorker.getAvgLag(), EventBusWorker.getMaxLag()));
+        }
     }
 
     private static void showPackagingStatus(PrintWriter w) {
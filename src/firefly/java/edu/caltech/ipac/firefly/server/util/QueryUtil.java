@@ -27,6 +27,7 @@ import edu.caltech.ipac.firefly.server.util.ipactable.JsonTableUtil;
 import edu.caltech.ipac.firefly.server.util.ipactable.TableDef;
 import edu.caltech.ipac.util.*;
 import edu.caltech.ipac.util.decimate.DecimateKey;
+import edu.caltech.ipac.util.decimate.XYSampler;
 import org.apache.commons.httpclient.URIException;
 import org.apache.commons.httpclient.util.URIUtil;
 import org.json.simple.JSONArray;
@@ -640,8 +641,17 @@ public class QueryUtil {
      * @return decimated data group
      */
     public static DataGroup doDecimation(DataGroup dg, DecimateInfo decimateInfo) throws DataAccessException {
+        double[][] xy = getXYValues(dg, decimateInfo);
+        return doDecimation(dg, xy[0], xy[1], decimateInfo);
+    }
 
-        double xMax = Double.NEGATIVE_INFINITY, xMin = Double.POSITIVE_INFINITY, yMax = Double.NEGATIVE_INFINITY, yMin = Double.POSITIVE_INFINITY;
+    /**
+     * read the x and y values of all rows.  decimation works on these arrays.
+     * @param dg data group
+     * @param decimateInfo DecimateInfo object
+     * @return {xs, ys}.  a value is NaN if not available.
+     */
+    public static double[][] getXYValues(DataGroup dg, DecimateInfo decimateInfo) throws DataAccessException {
 
         DataType [] dataTypes = dg.getDataDefinitions();
         String xColOrExpr = decimateInfo.getxColumnName();
@@ -653,12 +663,32 @@ public class QueryUtil {
             System.out.println("QueryUtil.doDecimation: invalid x or y column.");
             throw new DataAccessException("Invalid column or expression");
         }
+
+        return new double[][]{xValGetter.getValues(dg.values()), yValGetter.getValues(dg.values())};
+    }
+
+    /**
+     * same as doDecimation(dg, decimateInfo), but with the x and y values already extracted.
+     * @param tableDef  the columns and attributes of the input table.  its rows are not used.
+     * @param xs        the x values of the input rows.  NaN if not available.
+     * @param ys        the y values of the input rows.  NaN if not available.
+     * @param decimateInfo DecimateInfo object
+     * @return decimated data group
+     */
+    public static DataGroup doDecimation(DataGroup tableDef, double[] xs, double[] ys, DecimateInfo decimateInfo) {
+
+        double xMax = Double.NEGATIVE_INFINITY, xMin = Double.POSITIVE_INFINITY, yMax = Double.NEGATIVE_INFINITY, yMin = Double.POSITIVE_INFINITY;
+
+        String xColOrExpr = decimateInfo.getxColumnName();
+        String yColOrExpr = decimateInfo.getyColumnName();
+        boolean xIsExpr = tableDef.getDataDefintion(xColOrExpr) == null;
+        boolean yIsExpr = tableDef.getDataDefintion(yColOrExpr) == null;
         boolean sameXY = xColOrExpr.equals(yColOrExpr);
 
         int maxPoints = decimateInfo.getMaxPoints() == 0 ? DECI_DEF_MAX_POINTS : decimateInfo.getMaxPoints();
 
         int deciEnableSize = decimateInfo.getDeciEnableSize() > -1 ? decimateInfo.getDeciEnableSize() : DECI_ENABLE_SIZE;
-        boolean doDecimation = dg.size() >= deciEnableSize;
+        boolean doDecimation = xs.length >= deciEnableSize;
 
         DataType[] columns = new DataType[doDecimation ? 5 : 3];
         Class xColClass = Double.class;
@@ -666,18 +696,18 @@ public class QueryUtil {
 
         ArrayList<DataGroup.Attribute> colMeta = new ArrayList<>();
         try {
-            if (xValGetter.isExpression() || sameXY) {
+            if (xIsExpr || sameXY) {
                 columns[0] = new DataType("x", "x", xColClass, DataType.Importance.HIGH, "", false);
             } else {
-                columns[0] = dg.getDataDefintion(decimateInfo.getxColumnName()).copyWithNoColumnIdx(0);
-                colMeta.addAll(IpacTableUtil.getAllColMeta(dg.getAttributes().values(), decimateInfo.getxColumnName()));
+                columns[0] = tableDef.getDataDefintion(decimateInfo.getxColumnName()).copyWithNoColumnIdx(0);
+                colMeta.addAll(IpacTableUtil.getAllColMeta(tableDef.getAttributes().values(), decimateInfo.getxColumnName()));
             }
 
-            if (yValGetter.isExpression() || sameXY) {
+            if (yIsExpr || sameXY) {
                 columns[1] = new DataType("y", "y", yColClass, DataType.Importance.HIGH, "", false);
             } else {
-                columns[1] = dg.getDataDefintion(decimateInfo.getyColumnName()).copyWithNoColumnIdx(1);
-                colMeta.addAll(IpacTableUtil.getAllColMeta(dg.getAttributes().values(), decimateInfo.getyColumnName()));
+                columns[1] = tableDef.getDataDefintion(decimateInfo.getyColumnName()).copyWithNoColumnIdx(1);
+                colMeta.addAll(IpacTableUtil.getAllColMeta(tableDef.getAttributes().values(), decimateInfo.getyColumnName()));
             }
 
             columns[2] = new DataType("rowidx", Integer.class); // need it to tie highlighted and selected to table
@@ -702,12 +732,11 @@ public class QueryUtil {
         if (!Double.isNaN(decimateInfo.getXMax())) { xDeciMax = decimateInfo.getXMax(); checkDeciLimits = true; }
         if (!Double.isNaN(decimateInfo.getYMin())) { yDeciMin = decimateInfo.getYMin(); checkDeciLimits = true; }
         if (!Double.isNaN(decimateInfo.getYMax())) { yDeciMax = decimateInfo.getYMax(); checkDeciLimits = true; }
-        int outRows = dg.size();
-        for (int rIdx = 0; rIdx < dg.size(); rIdx++) {
-            DataObject row = dg.get(rIdx);
-
-            double xval = xValGetter.getValue(row);
-            double yval = yValGetter.getValue(row);
+        int nRows = xs.length;
+        int outRows = nRows;
+        for (int rIdx = 0; rIdx < nRows; rIdx++) {
+            double xval = xs[rIdx];
+            double yval = ys[rIdx];
 
             if (Double.isNaN(xval) || Double.isNaN(yval)) {
                 outRows--;
@@ -762,16 +791,11 @@ public class QueryUtil {
                 retval = new DataGroup("decimated results", new DataType[]{columns[0],columns[1],columns[2]});
                 retval.setAttributes(attributes);
 
-                for (int rIdx = 0; rIdx < dg.size(); rIdx++) {
-                    DataObject row = dg.get(rIdx);
-
-                    double xval = xValGetter.getValue(row);
-                    double yval = yValGetter.getValue(row);
+                for (int rIdx = 0; rIdx < nRows; rIdx++) {
+                    double xval = xs[rIdx];
+                    double yval = ys[rIdx];
 
-                    if (Double.isNaN(xval) || Double.isNaN(yval)) {
-                        outRows--;
-                        continue;
-                    }
+                    if (Double.isNaN(xval) || Double.isNaN(yval)) { continue; }
 
                     if (checkLimits && (xval<xMin || xval>xMax || yval<yMin || yval>yMax)) { continue; }
                     DataObject retrow = new DataObject(retval);
@@ -797,53 +821,23 @@ public class QueryUtil {
 
                 DecimateKey decimateKey = new DecimateKey(xMin, yMin, nXs, nYs, xUnit, yUnit);
 
-                HashMap<String, SamplePoint> samples = new HashMap<>();
                 // decimating the data now....
-                for (int idx = 0; idx < dg.size(); idx++) {
-                    DataObject row = dg.get(idx);
-
-                    double xval = xValGetter.getValue(row);
-                    double yval = yValGetter.getValue(row);
-
-                    if (Double.isNaN(xval) || Double.isNaN(yval)) { continue; }
-
-                    if (checkLimits && (xval<xMin || xval>xMax || yval<yMin || yval>yMax)) { continue; }
-
-                    String key = decimateKey.getKey(xval, yval);
-
-                    if (samples.containsKey(key)) {
-                        SamplePoint pt = samples.get(key);
-                        // representative sample point is a random point from the bin
-                        int numRepRows = pt.getRepresentedRows()+1;
-                        if (Math.random() < 1d/(double)numRepRows) {
-                            String xvalFormatted = xValGetter.getFormattedValue(row);
-                            String yvalFormatted = yValGetter.getFormattedValue(row);
-                            SamplePoint replacePt = new SamplePoint(xval, xvalFormatted, yval, yvalFormatted, idx, numRepRows);
-                            samples.put(key, replacePt);
-                        } else {
-                            pt.addRepresentedRow();
-                        }
-                    } else {
-                        String xvalFormatted = xValGetter.getFormattedValue(row);
-                        String yvalFormatted = yValGetter.getFormattedValue(row);
-                        SamplePoint pt = new SamplePoint(xval, xvalFormatted, yval, yvalFormatted, idx);
-                        samples.put(key, pt);
-                    }
-                }
+                double[] limits = checkLimits ? new double[]{xMin, xMax, yMin, yMax} : null;
+                XYSampler.Samples samples = XYSampler.sample(xs, ys, nRows, decimateKey, limits);
 
                 int minWeight=samples.size(), maxWeight=1, weight;
-                for(String key : samples.keySet()) {
-                    SamplePoint pt = samples.get(key);
+                for (int i = 0; i < samples.size(); i++) {
+                    int rowIdx = samples.getRowIdx(i);
                     DataObject row = new DataObject(retval);
-                    weight = pt.getRepresentedRows();
+                    weight = samples.getWeight(i);
                     if (weight<minWeight) minWeight = weight;
                     if (weight>maxWeight) maxWeight = weight;
 
-                    row.setDataElement(columns[0], convertData(xColClass, pt.getX()));
-                    row.setDataElement(columns[1], convertData(yColClass, pt.getY()));
-                    row.setDataElement(columns[2], pt.getRowIdx());
+                    row.setDataElement(columns[0], convertData(xColClass, xs[rowIdx]));
+                    row.setDataElement(columns[1], convertData(yColClass, ys[rowIdx]));
+                    row.setDataElement(columns[2], rowIdx);
                     row.setDataElement(columns[3], weight);
-                    row.setDataElement(columns[4], key);
+                    row.setDataElement(columns[4], samples.getKey(i));
                     retval.add(row);
                 }
                 String decimateInfoStr = decimateInfo.toString();
@@ -863,7 +857,7 @@ public class QueryUtil {
         }
 
 
-        if (xValGetter.isExpression() || sameXY) {
+        if (xIsExpr || sameXY) {
             DataType.FormatInfo fi = columns[0].getFormatInfo();
             fi.setDataFormat(getFormatterString(xMin, xMax, 6));
             columns[0].setFormatInfo(fi);
@@ -871,7 +865,7 @@ public class QueryUtil {
             retval.addAttribute(DecimateInfo.DECIMATE_TAG + ".X-COL", "x");
         }
 
-        if (yValGetter.isExpression() || sameXY) {
+        if (yIsExpr || sameXY) {
             DataType.FormatInfo fi = columns[1].getFormatInfo();
             fi.setDataFormat(getFormatterString(xMin, xMax, 6));
             columns[1].setFormatInfo(fi);
@@ -976,37 +970,4 @@ public class QueryUtil {
             e.printStackTrace();
         }
     }
-
-    private static class SamplePoint {
-        double x;
-        double y;
-        String formattedX;
-        String formattedY;
-        int rowIdx;
-        int representedRows;
-
-        public SamplePoint(double x, String formattedX, double y, String formattedY, int rowIdx) {
-            this(x, formattedX, y, formattedY, rowIdx, 1);
-        }
-
-
-        public SamplePoint(double x, String formattedX, double y, String formattedY, int rowIdx, int representedRows) {
-            this.x = x;
-            this.y = y;
-            this.formattedX = formattedX;
-            this.formattedY = formattedY;
-            this.rowIdx = rowIdx;
-            this.representedRows = representedRows;
-        }
-
-        public void addRepresentedRow() { representedRows++; }
-        public int getRepresentedRows() { return representedRows; }
-
-        public int getRowIdx() { return rowIdx; }
-        public double getX() { return x; }
-        public double getY() { return y; }
-        public String getFormattedX() { return formattedX; }
-        public String getFormattedY() { return formattedY; }
-
-    }
 }
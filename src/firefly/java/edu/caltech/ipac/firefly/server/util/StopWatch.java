@@ -82,6 +82,27 @@ public class StopWatch {
         return this;
     }
 
+    /**
+     * log the elapsed time of the given tracker along with the processing rate of count items.
+     * @param desc  tracker's description
+     * @param count the number of items processed during the elapsed time
+     * @param itemName  the name of the items, ie. rows
+     * @return this StopWatch
+     */
+    public StopWatch printRate(String desc, long count, String itemName) {
+
+        if (!DEBUG_MODE) return this;        // if not running in debug mode, ignore StopWatch logging
+
+        Tracker t = getTracker(desc);
+        if (t != null) {
+            if (t.isRunning) t.stops();
+            double secs = t.getElapsedTime(Unit.SECONDS);
+            double rate = secs > 0 ? count / secs : count;
+            Logger.getLogger("StopWatch").info(String.format("%s processed %d %s in %.4f SECONDS (%.0f %s/sec)", desc, count, itemName, secs, rate, itemName));
+        }
+        return this;
+    }
+
     public Tracker getTracker(String desc) {
         return logs.get(desc);
     }
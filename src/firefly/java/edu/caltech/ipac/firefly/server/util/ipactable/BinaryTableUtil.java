@@ -0,0 +1,159 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.util.ipactable;
+
+import edu.caltech.ipac.firefly.data.TableServerRequest;
+import edu.caltech.ipac.util.DataGroup;
+import edu.caltech.ipac.util.DataType;
+import org.json.simple.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a table page in a binary, column oriented format.  Numeric columns are sent as typed values instead of
+ * formatted strings, so that they do not have to be formatted on the server and parsed again by the client.
+ * The client reads it with tables/BinaryTableReader.js.
+ *
+ * The layout is similar to Arrow's. All numbers are little-endian, and every section is padded to a multiple of 8 bytes,
+ * so that a typed array can be created directly on each column buffer:
+ * <pre>
+ *   "FFTB"             magic
+ *   int32              version
+ *   int32              number of rows
+ *   int32              length of the header
+ *   header             UTF-8 JSON.  same as the JSON TableModel, except that tableData has no data.
+ *                      each of tableData.columns also has:
+ *                        encoding: one of float64, float32, int64, int32 or utf8
+ *                        format:   the display format, if any, i.e. %.3f.  utf8 values are already formatted.
+ *   for each column, in the order of tableData.columns:
+ *     validity         one bit per row, least significant bit first.  the bit is 0 when the value is null.
+ *     values           fixed size values by encoding; a null value is 0.  for utf8, int32 offsets[rows+1]
+ *                      followed by the bytes of all of the values, each section padded.
+ * </pre>
+ */
+public class BinaryTableUtil {
+    public static final String MAGIC = "FFTB";
+    public static final int VERSION = 1;
+
+    public static final String FLOAT64 = "float64";
+    public static final String FLOAT32 = "float32";
+    public static final String INT64 = "int64";
+    public static final String INT32 = "int32";
+    public static final String UTF8 = "utf8";
+
+    /**
+     * write the given page in binary format.
+     *
+     * @param out       the stream to write to.  it is not closed.
+     * @param page
+     * @param request
+     * @throws IOException
+     */
+    public static void writeBinaryTableModel(OutputStream out, DataGroupPart page, TableServerRequest request) throws IOException {
+
+        DataGroup data = page.getData();
+        List<DataType> columns = new ArrayList<>();
+        JSONObject tableModel = JsonTableUtil.toJsonTableModel(page, request, columns);
+
+        int rows = data == null ? 0 : data.size();
+        byte[] header = tableModel.toJSONString().getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer prefix = allocate(16);
+        prefix.put(MAGIC.getBytes(StandardCharsets.US_ASCII));
+        prefix.putInt(VERSION);
+        prefix.putInt(rows);
+        prefix.putInt(header.length);
+        out.write(prefix.array());
+        out.write(header);
+        out.write(new byte[padding(header.length)]);
+
+        for (DataType dt : columns) {
+            writeColumn(out, data, dt, getEncoding(dt), rows);
+        }
+    }
+
+    /**
+     * @return the encoding of the given column's values.  columns of types without a binary encoding are sent as formatted strings.
+     */
+    static String getEncoding(DataType dt) {
+        Class<?> type = dt == null ? null : dt.getDataType();
+        if (type == Double.class) {
+            return FLOAT64;
+        } else if (type == Float.class) {
+            return FLOAT32;
+        } else if (type == Long.class) {
+            return INT64;
+        } else if (type == Integer.class || type == Short.class || type == Byte.class) {
+            return INT32;
+        } else {
+            return UTF8;
+        }
+    }
+
+//====================================================================
+//
+//====================================================================
+
+    private static void writeColumn(OutputStream out, DataGroup data, DataType dt, String encoding, int rows) throws IOException {
+
+        ByteBuffer validity = allocate(padded((rows + 7) / 8));
+        byte[] bits = validity.array();
+
+        if (encoding.equals(UTF8)) {
+            byte[][] values = new byte[rows][];
+            ByteBuffer offsets = allocate(padded((rows + 1) * 4));
+            int offset = 0;
+            offsets.putInt(offset);
+            for (int r = 0; r < rows; r++) {
+                Object v = dt == null ? null : data.get(r).getDataElement(dt);
+                if (v != null) {
+                    bits[r >> 3] |= 1 << (r & 7);
+                    values[r] = dt.getFormatInfo().formatDataOnly(v).getBytes(StandardCharsets.UTF_8);
+                    offset += values[r].length;
+                }
+                offsets.putInt(offset);
+            }
+            out.write(bits);
+            out.write(offsets.array());
+            for (byte[] v : values) {
+                if (v != null) out.write(v);
+            }
+            out.write(new byte[padding(offset)]);
+        } else {
+            int size = encoding.equals(FLOAT64) || encoding.equals(INT64) ? 8 : 4;
+            ByteBuffer values = allocate(padded(rows * size));
+            for (int r = 0; r < rows; r++) {
+                Object v = data.get(r).getDataElement(dt);
+                Number n = v instanceof Number ? (Number) v : null;
+                if (n != null) bits[r >> 3] |= 1 << (r & 7);
+                switch (encoding) {
+                    case FLOAT64:   values.putDouble(n == null ? 0 : n.doubleValue());  break;
+                    case FLOAT32:   values.putFloat(n == null ? 0 : n.floatValue());    break;
+                    case INT64:     values.putLong(n == null ? 0 : n.longValue());      break;
+                    default:        values.putInt(n == null ? 0 : n.intValue());
+                }
+            }
+            out.write(bits);
+            out.write(values.array());
+        }
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int padding(int size) {
+        return (8 - size % 8) % 8;
+    }
+
+    private static int padded(int size) {
+        return size + padding(size);
+    }
+}
@@ -112,6 +112,20 @@ public class DataGroupReader {
         return  doRead(bufferedReader, tableDef, isFixedLength, readAsString, saveFormattedData, onlyColumns);
     }
 
+    /**
+     * Returns an iterator over the rows of the given IPAC table file.  Rows are parsed as they are requested,
+     * so the table is never fully loaded into memory.  The returned iterator must be closed when done.
+     * @param inf   the IPAC table file
+     * @param isFixedLength true if all columns are given.  line with missing columns will throws exception.
+     * @return a RowIterator positioned at the first row of the table
+     * @throws IOException
+     */
+    public static RowIterator iterate(File inf, boolean isFixedLength) throws IOException {
+        TableDef tableDef = IpacTableUtil.getMetaInfo(inf);
+        BufferedReader bufferedReader = new BufferedReader(new FileReader(inf), IpacTableUtil.FILE_IO_BUFFER_SIZE);
+        return new RowIterator(bufferedReader, tableDef, isFixedLength);
+    }
+
     public static DataGroup getEnumValues(File inf, int cutoffPoint)  throws IOException {
 
         TableDef tableMeta = IpacTableUtil.getMetaInfo(inf);
@@ -343,6 +357,61 @@ public class DataGroupReader {
 //
 //====================================================================
 
+    /**
+     * A forward-only iterator over the rows of an IPAC table.
+     * getTableDef() returns a DataGroup with the column definitions and meta of the table, but without any rows.
+     * Rows returned by next() are bound to that DataGroup, but they are not added to it.
+     */
+    public static class RowIterator implements Iterator<DataObject>, Closeable {
+        private final BufferedReader reader;
+        private final DataGroup tableDef;
+        private final boolean isFixedLength;
+        private DataObject nextRow;
+        private String line;
+        private int lineNum;
+
+        RowIterator(BufferedReader reader, TableDef tableDef, boolean isFixedLength) throws IOException {
+            this.reader = reader;
+            this.isFixedLength = isFixedLength;
+            this.tableDef = new DataGroup(null, tableDef.getCols());
+            this.tableDef.setAttributes(tableDef.getAllAttributes());
+            lineNum = tableDef.getExtras() == null ? 0 : tableDef.getExtras().getKey();
+            line = tableDef.getExtras() == null ? reader.readLine() : tableDef.getExtras().getValue();
+            lineNum++;
+        }
+
+        public DataGroup getTableDef() {
+            return tableDef;
+        }
+
+        public boolean hasNext() {
+            try {
+                while (nextRow == null && line != null) {
+                    nextRow = IpacTableUtil.parseRow(tableDef, line, isFixedLength);
+                    line = reader.readLine();
+                    lineNum++;
+                }
+            } catch (Exception e) {
+                String msg = e.getMessage()+"<br>on line "+lineNum+": " + line;
+                if (msg.length()>128) msg = msg.substring(0,128)+"...";
+                logger.error(e, "on line "+lineNum+": " + line);
+                throw new IllegalStateException(msg, e);
+            }
+            return nextRow != null;
+        }
+
+        public DataObject next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            DataObject row = nextRow;
+            nextRow = null;
+            return row;
+        }
+
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
     public static enum Format { TSV(CSVFormat.TDF), CSV(CSVFormat.DEFAULT), IPACTABLE(), UNKNOWN(), FIXEDTARGETS(), FITS(), JSON(), VO_TABLE();
         CSVFormat type;
         Format() {}
@@ -11,8 +11,10 @@ import edu.caltech.ipac.util.DataType;
 import edu.caltech.ipac.util.IpacTableUtil;
 import edu.caltech.ipac.util.StringUtils;
 import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -33,6 +35,21 @@ public class JsonTableUtil {
      * @throws IOException
      */
     public static JSONObject toJsonTableModel(DataGroupPart page, TableServerRequest request) throws IOException {
+        return toJsonTableModel(page, request, null);
+    }
+
+    /**
+     * convert data to JSON TableModel.  when binaryCols is given, tableData only has the columns, and the data
+     * is sent separately by BinaryTableUtil.  each column also has the encoding of its values, and its display format.
+     * their widths only fit the headers.
+     *
+     * @param page
+     * @param request
+     * @param binaryCols    if not null, the columns of tableData are added to it, in the same order
+     * @return
+     * @throws IOException
+     */
+    static JSONObject toJsonTableModel(DataGroupPart page, TableServerRequest request, List<DataType> binaryCols) throws IOException {
 
         TableDef meta = mergeAttributes(page.getTableDef(), page.getData());
 
@@ -55,7 +72,7 @@ public class JsonTableUtil {
         tableModel.put("totalRows", page.getRowCount());
 
         if (page.getData() != null ) {
-            tableModel.put("tableData", toJsonTableData(page.getData(), meta));
+            tableModel.put("tableData", binaryCols == null ? toJsonTableData(page.getData(), meta) : toJsonTableColumns(page.getData(), meta, binaryCols));
         }
         
 
@@ -76,6 +93,58 @@ public class JsonTableUtil {
         return tableModel;
     }
 
+    /**
+     * Same as toJsonTableModel(page, request).toJSONString(), but written to the given writer as it is generated.
+     * The rows of the page are formatted and written one at a time, instead of being collected first.
+     *
+     * @param writer  the writer to write the JSON to.  it is not closed.
+     * @param page
+     * @param request
+     * @throws IOException
+     */
+    public static void writeJsonTableModel(Writer writer, DataGroupPart page, TableServerRequest request) throws IOException {
+
+        TableDef meta = mergeAttributes(page.getTableDef(), page.getData());
+
+        if (request != null && request.getMeta() != null) {
+            for (String key : request.getMeta().keySet()) {
+                if (!meta.contains(key)) {
+                    meta.setAttribute(key, request.getMeta(key));
+                }
+            }
+        }
+
+        JsonObjectWriter tableModel = new JsonObjectWriter(writer);
+        if (!StringUtils.isEmpty(request.getTblId())) {
+            tableModel.put("tbl_id",  request.getTblId());
+        } else if (meta.contains(TableServerRequest.TBL_ID)) {
+            tableModel.put("tbl_id",  meta.getAttribute(TableServerRequest.TBL_ID).getValue());
+        }
+        tableModel.put("title", page.getData().getTitle());
+        tableModel.put("type", guessType(meta));
+        tableModel.put("totalRows", page.getRowCount());
+
+        if (page.getData() != null ) {
+            tableModel.key("tableData");
+            writeJsonTableData(writer, page.getData(), meta);
+        }
+
+        if (meta != null) {
+            if (meta.getSelectInfo() != null ){
+                tableModel.put("selectInfo", meta.getSelectInfo().toString());
+                meta.setSelectInfo(null);
+            }
+            tableModel.put("tableMeta", toJsonTableMeta(meta));
+        }
+        if (request != null ){
+            tableModel.put("request", toJsonTableRequest(request));
+        }
+        if (!StringUtils.isEmpty(page.getErrorMsg())) {
+            tableModel.put("error", page.getErrorMsg());
+        }
+        tableModel.end();
+    }
+
     /**
      * convert to JSON TableRequest
      *
@@ -132,23 +201,8 @@ public class JsonTableUtil {
     public static JSONObject toJsonTableData(DataGroup data, TableDef tableDef) {
 
         tableDef = mergeAttributes(tableDef, data);
-
-        // set display format if exists.  this modifies DataType directly because it assumes it will no longer be used.
-        // if that is not the case, DataType will have to be cloned.
-        // also set flag to recalculate the max width of column's data
-        boolean formatChanged = false;
+        boolean formatChanged = applyDisplayFormats(data, tableDef);
         DataType[] columns = data.getDataDefinitions();
-        for (int colIdx = 0; colIdx < columns.length; colIdx++) {
-            DataType dt = columns[colIdx];
-            String fkey = IpacTableUtil.makeAttribKey(IpacTableUtil.FORMAT_DISP_TAG, dt.getKeyName());
-            if (tableDef.contains(fkey)) {
-                dt.getFormatInfo().setDataFormat(tableDef.getAttribute(fkey).getValue());
-                String[] headers = new String[] {dt.getKeyName(), dt.getTypeDesc(), dt.getDataUnit(), dt.getNullString()};
-                int maxLength =  Arrays.stream(headers).mapToInt(s -> s == null ? 0 : s.length()).max().getAsInt();
-                dt.getFormatInfo().setWidth(maxLength);
-                formatChanged = true;
-            }
-        }
 
         List<List<String>> tableData = new ArrayList<>();
         for (int i = 0; i < data.size(); i++) {
@@ -158,13 +212,8 @@ public class JsonTableUtil {
             String[] rowData = data.get(i).getFormatedData();
             for (int colIdx = 0; colIdx < rowData.length; colIdx++) {
                 row.add(rowData[colIdx]);
-                if (formatChanged) {
-                    DataType.FormatInfo fi = columns[colIdx].getFormatInfo();
-                    int dlength = rowData[colIdx].length();
-                    if (fi.getWidth() < dlength) fi.setWidth(dlength);
-                }
-
             }
+            if (formatChanged) updateWidths(columns, rowData);
             tableData.add(row);
         }
 
@@ -175,6 +224,55 @@ public class JsonTableUtil {
         return tdata;
     }
 
+    private static JSONObject toJsonTableColumns(DataGroup data, TableDef tableDef, List<DataType> binaryCols) {
+        tableDef = mergeAttributes(tableDef, data);
+        applyDisplayFormats(data, tableDef);
+        List<JSONObject> cols = toJsonTableColumn(data, tableDef);
+        for (JSONObject c : cols) {
+            DataType dt = data.getDataDefintion((String) c.get("name"));
+            c.put("encoding", BinaryTableUtil.getEncoding(dt));
+            if (dt != null && dt.getFormatInfo().getDataFormatStr() != null) {
+                c.put("format", dt.getFormatInfo().getDataFormatStr());
+            }
+            binaryCols.add(dt);
+        }
+        JSONObject tdata = new JSONObject();
+        tdata.put("columns", cols);
+        return tdata;
+    }
+
+    /**
+     * Same as toJsonTableData(data, tableDef), but written to the given writer one row at a time.
+     * The columns are written after the data, because their widths may depend on it.
+     *
+     * @param writer
+     * @param data
+     * @param tableDef
+     * @throws IOException
+     */
+    public static void writeJsonTableData(Writer writer, DataGroup data, TableDef tableDef) throws IOException {
+
+        tableDef = mergeAttributes(tableDef, data);
+        boolean formatChanged = applyDisplayFormats(data, tableDef);
+        DataType[] columns = data.getDataDefinitions();
+
+        writer.write("{\"data\":[");
+        for (int i = 0; i < data.size(); i++) {
+            if (i > 0) writer.write(',');
+            writer.write('[');
+            String[] rowData = data.get(i).getFormatedData();
+            for (int colIdx = 0; colIdx < rowData.length; colIdx++) {
+                if (colIdx > 0) writer.write(',');
+                JSONValue.writeJSONString(rowData[colIdx], writer);
+            }
+            writer.write(']');
+            if (formatChanged) updateWidths(columns, rowData);
+        }
+        writer.write("],\"columns\":");
+        JSONValue.writeJSONString(toJsonTableColumn(data, tableDef), writer);
+        writer.write('}');
+    }
+
     /**
      * convert to JSON TableMeta
      *
@@ -271,6 +369,66 @@ public class JsonTableUtil {
         return cols;
     }
 
+    /**
+     * set display format if exists.  this modifies DataType directly because it assumes it will no longer be used.
+     * if that is not the case, DataType will have to be cloned.
+     * the width of these columns is reset to fit their headers; use updateWidths to fit their data.
+     * @return true if the format of any column changed
+     */
+    private static boolean applyDisplayFormats(DataGroup data, TableDef tableDef) {
+        boolean formatChanged = false;
+        DataType[] columns = data.getDataDefinitions();
+        for (int colIdx = 0; colIdx < columns.length; colIdx++) {
+            DataType dt = columns[colIdx];
+            String fkey = IpacTableUtil.makeAttribKey(IpacTableUtil.FORMAT_DISP_TAG, dt.getKeyName());
+            if (tableDef.contains(fkey)) {
+                dt.getFormatInfo().setDataFormat(tableDef.getAttribute(fkey).getValue());
+                String[] headers = new String[] {dt.getKeyName(), dt.getTypeDesc(), dt.getDataUnit(), dt.getNullString()};
+                int maxLength =  Arrays.stream(headers).mapToInt(s -> s == null ? 0 : s.length()).max().getAsInt();
+                dt.getFormatInfo().setWidth(maxLength);
+                formatChanged = true;
+            }
+        }
+        return formatChanged;
+    }
+
+    private static void updateWidths(DataType[] columns, String[] rowData) {
+        for (int colIdx = 0; colIdx < rowData.length; colIdx++) {
+            DataType.FormatInfo fi = columns[colIdx].getFormatInfo();
+            int dlength = rowData[colIdx].length();
+            if (fi.getWidth() < dlength) fi.setWidth(dlength);
+        }
+    }
+
+    /**
+     * writes the fields of a JSON object, in the same format as JSONObject.toJSONString
+     */
+    private static class JsonObjectWriter {
+        private final Writer writer;
+        private boolean first = true;
+
+        JsonObjectWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write('{');
+        }
+
+        void key(String key) throws IOException {
+            if (!first) writer.write(',');
+            first = false;
+            JSONValue.writeJSONString(key, writer);
+            writer.write(':');
+        }
+
+        void put(String key, Object value) throws IOException {
+            key(key);
+            JSONValue.writeJSONString(value, writer);
+        }
+
+        void end() throws IOException {
+            writer.write('}');
+        }
+    }
+
     private static String getColAttr(TableDef meta, String tag, String cname) {
         DataGroup.Attribute att = meta.getAttribute(IpacTableUtil.makeAttribKey(tag, cname));
         return (att == null) ? "" : att.getValue();
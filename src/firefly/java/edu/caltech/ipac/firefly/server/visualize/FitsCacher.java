@@ -7,6 +7,7 @@ package edu.caltech.ipac.firefly.server.visualize;
 import edu.caltech.ipac.firefly.server.ServerContext;
 import edu.caltech.ipac.firefly.server.cache.ObjectSizeEngineWrapper;
 import edu.caltech.ipac.firefly.server.util.Logger;
+import edu.caltech.ipac.util.AppProperties;
 import edu.caltech.ipac.util.FileUtil;
 import edu.caltech.ipac.util.UTCTimeUtil;
 import edu.caltech.ipac.util.cache.Cache;
@@ -31,6 +32,7 @@ public class FitsCacher {
     private static Cache memCache= CacheManager.getCache(Cache.TYPE_VIS_SHARED_MEM);
     private static final Map<CacheKey, Object> activeRequest = new ConcurrentHashMap<>(61);
     private static final Logger.LoggerImpl _log = Logger.getLogger();
+    private static final boolean LAZY_READ = AppProperties.getBooleanProperty("FitsCacher.read.lazy", true);
 
     static FitsRead[] readFits(File fitsFile) throws FitsException, FailedRequestException, IOException {
         return readFits(fitsFile,true, false);
@@ -61,9 +63,19 @@ public class FitsCacher {
                                 memCache.put(key, new ObjectSizeEngineWrapper.BluffSize(fitsFile.length()));
                                 memCache.put(key, null);
                             }
-                            fits= new Fits(fitsFile.getPath());
                             long start = System.currentTimeMillis();
-                            frAry = FitsRead.createFitsReadArray(fits, clearHdu);
+                            if (LAZY_READ) {
+                                // only the headers are read, the pixels of each image are read when it is plotted
+                                frAry = FitsRead.createFitsReadArray(fitsFile, clearHdu);
+                                CacheResizer resizer = new CacheResizer(fitsFile, key, frAry);
+                                for (FitsRead fr : frAry) {
+                                    if (fr.isReadLazily()) fr.setPixelLoadListener(resizer);
+                                }
+                            }
+                            else {
+                                fits= new Fits(fitsFile.getPath());
+                                frAry = FitsRead.createFitsReadArray(fits, clearHdu);
+                            }
                             if (memCache != null) memCache.put(key, frAry);
                             long elapse = System.currentTimeMillis() - start;
                             String timeStr = UTCTimeUtil.getHMSFromMills(elapse);
@@ -72,16 +84,9 @@ public class FitsCacher {
                                     ": " + fitsFile.getName());
                             return frAry;
                         } catch (FitsException e) {
-                            File dir= fitsFile.getParentFile();
-                            if ( dir.equals(ServerContext.getVisCacheDir()) ||      // if in cache or upload dir, rename the file
-                                    dir.equals(ServerContext.getVisUploadDir()) ) {
-                                String newF= fitsFile.getAbsolutePath()+"--bad-file";
-                                fitsFile.renameTo(new File(newF));
-                                throw new FitsException("bad fits file renamed to: "+newF,e);
-                            }
-                            else {
-                                throw e;
-                            }
+                            String newF= renameBadFile(fitsFile);
+                            if (newF!=null) throw new FitsException("bad fits file renamed to: "+newF,e);
+                            else            throw e;
                         } finally {
                             if (fits!=null) fits.getStream().close();
                         }
@@ -93,6 +98,50 @@ public class FitsCacher {
         }
     }
 
+    /**
+     * if the file is in the cache or upload dir, rename it so that it is not used again
+     * @return the new name of the file, or null if it was not renamed
+     */
+    private static String renameBadFile(File fitsFile) {
+        File dir= fitsFile.getParentFile();
+        if ( dir.equals(ServerContext.getVisCacheDir()) ||
+                dir.equals(ServerContext.getVisUploadDir()) ) {
+            String newF= fitsFile.getAbsolutePath()+"--bad-file";
+            fitsFile.renameTo(new File(newF));
+            return newF;
+        }
+        return null;
+    }
+
+    /**
+     * Keeps the cache entry of a lazily read file in sync with the pixels read since it was cached.
+     * The entry is put again each time the pixels of one of its images are read, so that the cache recomputes its size.
+     * When the pixels can not be read, the file is handled the same as a file that fails when it is read:
+     * it's removed from the cache, and renamed if it's in the cache or upload dir.
+     */
+    private static class CacheResizer implements FitsRead.PixelLoadListener {
+        private final File fitsFile;
+        private final CacheKey key;
+        private final FitsRead[] frAry;
+
+        CacheResizer(File fitsFile, CacheKey key, FitsRead[] frAry) {
+            this.fitsFile = fitsFile;
+            this.key = key;
+            this.frAry = frAry;
+        }
+
+        public void pixelsLoaded(FitsRead fr) {
+            if (memCache!=null && getFromCache(key)==frAry) memCache.put(key, frAry);
+        }
+
+        public void pixelsFailed(FitsRead fr, Exception e) {
+            if (memCache!=null && getFromCache(key)==frAry) memCache.put(key, null);
+            String newF= renameBadFile(fitsFile);
+            _log.warn("Could not read the pixels of: " + fitsFile.getPath() + ": " + e.getMessage(),
+                      newF!=null ? "bad fits file renamed to: "+newF : "");
+        }
+    }
+
     private static FitsRead[] getFromCache(CacheKey key) {
         FitsRead[] frAry= null;
         if (memCache!=null && memCache.isCached(key)) {  // check first with out any locking
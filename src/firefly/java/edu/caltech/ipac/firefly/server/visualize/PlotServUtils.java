@@ -459,14 +459,20 @@ public class PlotServUtils {
     }
 
     private static void writeImage(BufferedImage image, File f) throws IOException {
-        OutputStream chistOut= new BufferedOutputStream( new FileOutputStream(f),4096);
+        OutputStream chistOut= new BufferedOutputStream( new FileOutputStream(f),64*1024);
         Iterator writers = ImageIO.getImageWritersByFormatName("png");
         ImageWriter writer = (ImageWriter)writers.next();
         ImageOutputStream ios = ImageIO.createImageOutputStream(chistOut);
-        writer.setOutput(ios);
-        ImageWriteParam param= writer.getDefaultWriteParam();
-        param.setDestinationType(new ImageTypeSpecifier(image));
-        writer.write(image);
+        try {
+            writer.setOutput(ios);
+            ImageWriteParam param= writer.getDefaultWriteParam();
+            param.setDestinationType(new ImageTypeSpecifier(image));
+            writer.write(image);
+        } finally {
+            writer.dispose();
+            FileUtil.silentClose(ios);
+            FileUtil.silentClose(chistOut);
+        }
     }
 
 
@@ -6,7 +6,9 @@ package edu.caltech.ipac.util;
 import edu.caltech.ipac.util.expr.Expression;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -111,6 +113,31 @@ public class DataObjectUtil {
             return val;
         }
 
+        /**
+         * same as calling getValue on each row, but an expression is evaluated one column at a time.
+         * @param rows  the rows to get the values of
+         * @return the value of each row
+         */
+        public double[] getValues(List<DataObject> rows) {
+            if (colExpr == null) {
+                return getDoubles(rows, col);
+            } else {
+                Map<String, double[]> columns = new HashMap<>(colDataTypes.size());
+                for (DataType dt : colDataTypes) {
+                    columns.put(dt.getKeyName(), getDoubles(rows, dt));
+                }
+                return colExpr.getValues(columns, rows.size());
+            }
+        }
+
+        private static double[] getDoubles(List<DataObject> rows, DataType dt) {
+            double[] vals = new double[rows.size()];
+            for (int i = 0; i < vals.length; i++) {
+                vals[i] = getDouble(rows.get(i).getDataElement(dt));
+            }
+            return vals;
+        }
+
         public String getFormattedValue(DataObject row) {
             String val;
             if (colExpr == null) {
@@ -0,0 +1,183 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.util.decimate;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Decimates xy points into the cells of a DecimateKey grid, keeping one randomly chosen point per cell
+ * along with the number of points it represents.
+ *
+ * The points are given as primitive arrays, and cells are identified by a long index in an open-addressing map,
+ * so no object is created per point.  Large inputs are split into chunks that are sampled in parallel
+ * on the common fork/join pool.  The samples of two chunks are merged by keeping either point with a probability
+ * proportional to the number of points it represents, so every point of a cell is equally likely to be chosen.
+ */
+public class XYSampler {
+    private static final int MIN_CHUNK_SIZE = 100000;
+
+    /**
+     * @param xs            x values.  NaN values are skipped.
+     * @param ys            y values.  NaN values are skipped.
+     * @param n             the number of points to use from xs and ys
+     * @param decimateKey   the grid to sample into
+     * @param limits        xMin, xMax, yMin, yMax of the points to include, or null to include all of them
+     * @return one sample per non-empty cell
+     */
+    public static Samples sample(double[] xs, double[] ys, int n, DecimateKey decimateKey, double[] limits) {
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, n / (ForkJoinPool.getCommonPoolParallelism() * 4) + 1);
+        SampleTask task = new SampleTask(xs, ys, 0, n, chunkSize, decimateKey, limits, new SplittableRandom());
+        return n <= chunkSize ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+    }
+
+    /**
+     * The sampled cells.  Use size() and getXIdx/getYIdx/getRowIdx/getWeight to iterate over them.
+     */
+    public static class Samples {
+        private static final int EMPTY = 0;     // a slot with no represented rows is empty
+
+        private long[] cells;
+        private int[] rows;
+        private int[] weights;
+        private int[] used;         // the slots in use, in order of insertion
+        private int size;
+
+        Samples(int capacity) {
+            int cap = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) * 2;
+            cells = new long[cap];
+            rows = new int[cap];
+            weights = new int[cap];
+            used = new int[cap / 2];
+        }
+
+        public int size() { return size; }
+
+        public int getXIdx(int i) { return (int) (cells[used[i]] >> 32); }
+
+        public int getYIdx(int i) { return (int) cells[used[i]]; }
+
+        public int getRowIdx(int i) { return rows[used[i]]; }
+
+        public int getWeight(int i) { return weights[used[i]]; }
+
+        /**
+         * @return the key of the i-th cell, as returned by DecimateKey.getKey
+         */
+        public String getKey(int i) { return getXIdx(i) + DecimateKey.XY_SEPARATOR + getYIdx(i); }
+
+        /**
+         * add a point to its cell.  it replaces the cell's sample with a probability of 1/(number of points in the cell)
+         */
+        void add(long cell, int rowIdx, SplittableRandom random) {
+            int slot = find(cell);
+            if (weights[slot] == EMPTY) {
+                insert(slot, cell, rowIdx, 1);
+            } else {
+                int weight = ++weights[slot];
+                if (random.nextInt(weight) == 0) rows[slot] = rowIdx;
+            }
+        }
+
+        /**
+         * merge the samples of another chunk into this one.
+         */
+        void merge(Samples other, SplittableRandom random) {
+            for (int i = 0; i < other.size; i++) {
+                int oslot = other.used[i];
+                int slot = find(other.cells[oslot]);
+                if (weights[slot] == EMPTY) {
+                    insert(slot, other.cells[oslot], other.rows[oslot], other.weights[oslot]);
+                } else {
+                    int weight = weights[slot] + other.weights[oslot];
+                    if (random.nextInt(weight) < other.weights[oslot]) rows[slot] = other.rows[oslot];
+                    weights[slot] = weight;
+                }
+            }
+        }
+
+        private void insert(int slot, long cell, int rowIdx, int weight) {
+            cells[slot] = cell;
+            rows[slot] = rowIdx;
+            weights[slot] = weight;
+            used[size++] = slot;
+            if (size == used.length) rehash();
+        }
+
+        private int find(long cell) {
+            int mask = cells.length - 1;
+            int slot = hash(cell) & mask;
+            while (weights[slot] != EMPTY && cells[slot] != cell) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void rehash() {
+            long[] oCells = cells;
+            int[] oRows = rows, oWeights = weights, oUsed = used;
+            int oSize = size;
+            cells = new long[oCells.length * 2];
+            rows = new int[cells.length];
+            weights = new int[cells.length];
+            used = new int[cells.length / 2];
+            size = 0;
+            for (int i = 0; i < oSize; i++) {
+                int oslot = oUsed[i];
+                insert(find(oCells[oslot]), oCells[oslot], oRows[oslot], oWeights[oslot]);
+            }
+        }
+
+        private static int hash(long cell) {
+            long h = cell * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+//====================================================================
+//
+//====================================================================
+
+    private static class SampleTask extends RecursiveTask<Samples> {
+        private final double[] xs, ys, limits;
+        private final int from, to, chunkSize;
+        private final DecimateKey decimateKey;
+        private final SplittableRandom random;
+
+        SampleTask(double[] xs, double[] ys, int from, int to, int chunkSize, DecimateKey decimateKey, double[] limits, SplittableRandom random) {
+            this.xs = xs;
+            this.ys = ys;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.decimateKey = decimateKey;
+            this.limits = limits;
+            this.random = random;
+        }
+
+        protected Samples compute() {
+            if (to - from > chunkSize) {
+                int mid = (from + to) >>> 1;
+                SampleTask left = new SampleTask(xs, ys, from, mid, chunkSize, decimateKey, limits, random.split());
+                left.fork();
+                Samples right = new SampleTask(xs, ys, mid, to, chunkSize, decimateKey, limits, random.split()).compute();
+                Samples merged = left.join();
+                merged.merge(right, random);
+                return merged;
+            }
+
+            Samples samples = new Samples(Math.min(to - from, 4096));      // grows as needed
+            for (int i = from; i < to; i++) {
+                double x = xs[i], y = ys[i];
+                if (Double.isNaN(x) || Double.isNaN(y)) continue;
+                if (limits != null && (x < limits[0] || x > limits[1] || y < limits[2] || y > limits[3])) continue;
+
+                long cell = ((long) decimateKey.getXIdx(x) << 32) | (decimateKey.getYIdx(y) & 0xFFFFFFFFL);
+                samples.add(cell, i, random);
+            }
+            return samples;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.util.expr;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates an Expr over whole columns instead of one row at a time.
+ *
+ * The expression tree is compiled into a tree of nodes that each compute a block of rows into a buffer.
+ * Variables are bound to column arrays, so no variable is set per row, and the operator of each node
+ * is dispatched once per block instead of once per row.  Large columns are split into chunks evaluated in parallel
+ * on the common fork/join pool; each chunk compiles its own nodes, so evaluation never shares state between threads.
+ */
+class ColumnEvaluator {
+    private static final int BLOCK_SIZE = 1024;
+    private static final int MIN_CHUNK_SIZE = 100000;
+
+    /**
+     * @param expr      the expression to evaluate
+     * @param columns   column values by variable name.  variables not in it keep their current value, i.e. pi
+     * @param n         the number of rows to evaluate
+     * @return the value of the expression for each row
+     */
+    static double[] evaluate(Expr expr, Map<String, double[]> columns, int n) {
+        double[] results = new double[n];
+        if (n <= MIN_CHUNK_SIZE) {
+            evaluate(expr, columns, 0, n, results);
+        } else {
+            int chunkSize = Math.max(MIN_CHUNK_SIZE, n / (ForkJoinPool.getCommonPoolParallelism() * 4) + 1);
+            ForkJoinPool.commonPool().invoke(new EvalTask(expr, columns, 0, n, chunkSize, results));
+        }
+        return results;
+    }
+
+    private static void evaluate(Expr expr, Map<String, double[]> columns, int from, int to, double[] results) {
+        Node node = compile(expr, columns);
+        double[] buf = new double[BLOCK_SIZE];
+        for (int i = from; i < to; i += BLOCK_SIZE) {
+            int len = Math.min(BLOCK_SIZE, to - i);
+            node.eval(i, len, buf);
+            System.arraycopy(buf, 0, results, i, len);
+        }
+    }
+
+    private static Node compile(Expr expr, Map<String, double[]> columns) {
+        if (expr instanceof Variable) {
+            double[] col = columns.get(expr.toString());
+            return col == null ? new LiteralNode(expr.value()) : new ColumnNode(col);
+        } else if (expr instanceof UnaryExpr) {
+            UnaryExpr u = (UnaryExpr) expr;
+            return new UnaryNode(u.rator, compile(u.rand, columns));
+        } else if (expr instanceof BinaryExpr) {
+            BinaryExpr b = (BinaryExpr) expr;
+            return new BinaryNode(b.rator, compile(b.rand0, columns), compile(b.rand1, columns));
+        } else if (expr instanceof ConditionalExpr) {
+            ConditionalExpr c = (ConditionalExpr) expr;
+            return new ConditionalNode(compile(c.test, columns), compile(c.consequent, columns), compile(c.alternative, columns));
+        } else {
+            return new LiteralNode(expr.value());     // literals, and anything else that does not depend on a column
+        }
+    }
+
+//====================================================================
+//  nodes
+//====================================================================
+
+    private static abstract class Node {
+        /**
+         * compute rows [from, from+len) into out[0, len)
+         */
+        abstract void eval(int from, int len, double[] out);
+    }
+
+    private static class LiteralNode extends Node {
+        final double v;
+        LiteralNode(double v) { this.v = v; }
+        void eval(int from, int len, double[] out) {
+            Arrays.fill(out, 0, len, v);
+        }
+    }
+
+    private static class ColumnNode extends Node {
+        final double[] col;
+        ColumnNode(double[] col) { this.col = col; }
+        void eval(int from, int len, double[] out) {
+            System.arraycopy(col, from, out, 0, len);
+        }
+    }
+
+    private static class UnaryNode extends Node {
+        final int rator;
+        final Node rand;
+
+        UnaryNode(int rator, Node rand) {
+            this.rator = rator;
+            this.rand = rand;
+        }
+
+        void eval(int from, int len, double[] out) {
+            rand.eval(from, len, out);
+            switch (rator) {
+                case Expr.ABS:   for (int i = 0; i < len; i++) out[i] = Math.abs(out[i]);   break;
+                case Expr.ACOS:  for (int i = 0; i < len; i++) out[i] = Math.acos(out[i]);  break;
+                case Expr.ASIN:  for (int i = 0; i < len; i++) out[i] = Math.asin(out[i]);  break;
+                case Expr.ATAN:  for (int i = 0; i < len; i++) out[i] = Math.atan(out[i]);  break;
+                case Expr.CEIL:  for (int i = 0; i < len; i++) out[i] = Math.ceil(out[i]);  break;
+                case Expr.COS:   for (int i = 0; i < len; i++) out[i] = Math.cos(out[i]);   break;
+                case Expr.EXP:   for (int i = 0; i < len; i++) out[i] = Math.exp(out[i]);   break;
+                case Expr.FLOOR: for (int i = 0; i < len; i++) out[i] = Math.floor(out[i]); break;
+                case Expr.LOG:
+                case Expr.LN:    for (int i = 0; i < len; i++) out[i] = Math.log(out[i]);   break;
+                case Expr.LOG10:
+                case Expr.LG:    for (int i = 0; i < len; i++) out[i] = Math.log10(out[i]); break;
+                case Expr.NEG:   for (int i = 0; i < len; i++) out[i] = -out[i];            break;
+                case Expr.ROUND: for (int i = 0; i < len; i++) out[i] = Math.rint(out[i]);  break;
+                case Expr.SIN:   for (int i = 0; i < len; i++) out[i] = Math.sin(out[i]);   break;
+                case Expr.SQRT:  for (int i = 0; i < len; i++) out[i] = Math.sqrt(out[i]);  break;
+                case Expr.TAN:   for (int i = 0; i < len; i++) out[i] = Math.tan(out[i]);   break;
+                default: throw new RuntimeException("BUG: bad rator");
+            }
+        }
+    }
+
+    private static class BinaryNode extends Node {
+        final int rator;
+        final Node rand0, rand1;
+        final double[] arg1 = new double[BLOCK_SIZE];
+
+        BinaryNode(int rator, Node rand0, Node rand1) {
+            this.rator = rator;
+            this.rand0 = rand0;
+            this.rand1 = rand1;
+        }
+
+        void eval(int from, int len, double[] out) {
+            rand0.eval(from, len, out);
+            rand1.eval(from, len, arg1);
+            double[] b = arg1;
+            switch (rator) {
+                case Expr.ADD:   for (int i = 0; i < len; i++) out[i] = out[i] + b[i];                      break;
+                case Expr.SUB:   for (int i = 0; i < len; i++) out[i] = out[i] - b[i];                      break;
+                case Expr.MUL:   for (int i = 0; i < len; i++) out[i] = out[i] * b[i];                      break;
+                case Expr.DIV:   for (int i = 0; i < len; i++) out[i] = out[i] / b[i];                      break;
+                case Expr.POW:   for (int i = 0; i < len; i++) out[i] = Math.pow(out[i], b[i]);             break;
+                case Expr.ATAN2: for (int i = 0; i < len; i++) out[i] = Math.atan2(out[i], b[i]);           break;
+                case Expr.MAX:   for (int i = 0; i < len; i++) out[i] = out[i] < b[i] ? b[i] : out[i];      break;
+                case Expr.MIN:   for (int i = 0; i < len; i++) out[i] = out[i] < b[i] ? out[i] : b[i];      break;
+                case Expr.LT:    for (int i = 0; i < len; i++) out[i] = out[i] <  b[i] ? 1.0 : 0.0;         break;
+                case Expr.LE:    for (int i = 0; i < len; i++) out[i] = out[i] <= b[i] ? 1.0 : 0.0;         break;
+                case Expr.EQ:    for (int i = 0; i < len; i++) out[i] = out[i] == b[i] ? 1.0 : 0.0;         break;
+                case Expr.NE:    for (int i = 0; i < len; i++) out[i] = out[i] != b[i] ? 1.0 : 0.0;         break;
+                case Expr.GE:    for (int i = 0; i < len; i++) out[i] = out[i] >= b[i] ? 1.0 : 0.0;         break;
+                case Expr.GT:    for (int i = 0; i < len; i++) out[i] = out[i] >  b[i] ? 1.0 : 0.0;         break;
+                case Expr.AND:   for (int i = 0; i < len; i++) out[i] = out[i] != 0 && b[i] != 0 ? 1.0 : 0.0; break;
+                case Expr.OR:    for (int i = 0; i < len; i++) out[i] = out[i] != 0 || b[i] != 0 ? 1.0 : 0.0; break;
+                default: throw new RuntimeException("BUG: bad rator");
+            }
+        }
+    }
+
+    /**
+     * both branches are computed for the whole block.  expressions have no side effects, so the results are the same.
+     */
+    private static class ConditionalNode extends Node {
+        final Node test, consequent, alternative;
+        final double[] cond = new double[BLOCK_SIZE];
+        final double[] alt = new double[BLOCK_SIZE];
+
+        ConditionalNode(Node test, Node consequent, Node alternative) {
+            this.test = test;
+            this.consequent = consequent;
+            this.alternative = alternative;
+        }
+
+        void eval(int from, int len, double[] out) {
+            test.eval(from, len, cond);
+            consequent.eval(from, len, out);
+            alternative.eval(from, len, alt);
+            for (int i = 0; i < len; i++) {
+                if (cond[i] == 0) out[i] = alt[i];
+            }
+        }
+    }
+
+//====================================================================
+//
+//====================================================================
+
+    private static class EvalTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Expr expr;
+        private final Map<String, double[]> columns;
+        private final int from, to, chunkSize;
+        private final double[] results;
+
+        EvalTask(Expr expr, Map<String, double[]> columns, int from, int to, int chunkSize, double[] results) {
+            this.expr = expr;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.results = results;
+        }
+
+        protected void compute() {
+            if (to - from > chunkSize) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new EvalTask(expr, columns, from, mid, chunkSize, results),
+                          new EvalTask(expr, columns, mid, to, chunkSize, results));
+            } else {
+                evaluate(expr, columns, from, to, results);
+            }
+        }
+    }
+}
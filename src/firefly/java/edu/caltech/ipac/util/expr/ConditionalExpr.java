@@ -0,0 +1,19 @@
+// An if-then-else expression; see Expr.makeIfThenElse.
+// Copyright 2002 by Darius Bacon <darius@wry.me>
+// Altered
+
+package edu.caltech.ipac.util.expr;
+
+class ConditionalExpr extends Expr {
+    Expr test, consequent, alternative;
+
+    ConditionalExpr(Expr test, Expr consequent, Expr alternative) {
+        this.test = test;
+        this.consequent = consequent;
+        this.alternative = alternative;
+    }
+
+    public double value() {
+        return test.value() != 0 ? consequent.value() : alternative.value();
+    }
+}
@@ -5,6 +5,7 @@ package edu.caltech.ipac.util.expr;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -72,4 +73,16 @@ public class Expression {
     public double getValue() {
         return expr.value();
     }
+
+    /**
+     * Evaluate this expression for many rows at once.  Unlike setVariableValue/getValue, it does not modify
+     * the variables, and it is safe to call from multiple threads.
+     * @param columns   the values of the parsed variables by name, each with at least n values.
+     *                  variables not in it keep their current value, i.e. pi
+     * @param n         the number of rows
+     * @return the value of this expression for each row
+     */
+    public double[] getValues(Map<String, double[]> columns, int n) {
+        return ColumnEvaluator.evaluate(expr, columns, n);
+    }
 }
@@ -0,0 +1,11 @@
+// A literal number; see Expr.makeLiteral.
+// Copyright 2002 by Darius Bacon <darius@wry.me>
+// Altered
+
+package edu.caltech.ipac.util.expr;
+
+class LiteralExpr extends Expr {
+    double v;
+    LiteralExpr(double v) { this.v = v; }
+    public double value() { return v; }
+}
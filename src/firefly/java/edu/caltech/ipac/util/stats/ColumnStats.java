@@ -0,0 +1,89 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.util.stats;
+
+/**
+ * Descriptive statistics of a column, computed in a single pass over its values.
+ *
+ * Mean and variance are updated with Welford's method, which stays accurate when the values are large
+ * compared to their spread.  Quantiles are estimated with a QuantileSketch.  Statistics of separate parts of
+ * a column can be merged, i.e. when the parts are computed in parallel.
+ */
+public class ColumnStats {
+    private long count;
+    private double mean;
+    private double m2;                  // sum of squared differences from the mean
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private final QuantileSketch sketch = new QuantileSketch();
+
+    /**
+     * add a value.  NaN values, i.e. nulls, are ignored.
+     */
+    public void add(double v) {
+        if (Double.isNaN(v)) return;
+        count++;
+        double delta = v - mean;
+        mean += delta / count;
+        m2 += delta * (v - mean);
+        if (v < min) min = v;
+        if (v > max) max = v;
+        sketch.add(v);
+    }
+
+    /**
+     * add the first n values of the given array
+     */
+    public void addAll(double[] vals, int n) {
+        for (int i = 0; i < n; i++) add(vals[i]);
+    }
+
+    /**
+     * add the statistics of another part of the column to this one.
+     */
+    public void merge(ColumnStats other) {
+        if (other.count == 0) return;
+        if (count == 0) {
+            mean = other.mean;
+            m2 = other.m2;
+        } else {
+            long n = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / n;
+            m2 += other.m2 + delta * delta * count * other.count / n;
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sketch.merge(other.sketch);
+    }
+
+    /**
+     * @return the number of values, not counting NaN
+     */
+    public long getCount() { return count; }
+
+    public double getMin() { return count == 0 ? Double.NaN : min; }
+
+    public double getMax() { return count == 0 ? Double.NaN : max; }
+
+    public double getMean() { return count == 0 ? Double.NaN : mean; }
+
+    /**
+     * @return the sample standard deviation, or NaN if there are less than 2 values
+     */
+    public double getStdDev() { return count < 2 ? Double.NaN : Math.sqrt(m2 / (count - 1)); }
+
+    /**
+     * @param q a fraction between 0 and 1, i.e. .5 for the median
+     * @return the estimated value at the given quantile
+     */
+    public double getQuantile(double q) { return sketch.getQuantile(q); }
+
+    /**
+     * @param qs fractions between 0 and 1
+     * @return the estimated values at the given quantiles
+     */
+    public double[] getQuantiles(double... qs) { return sketch.getQuantiles(qs); }
+}
@@ -0,0 +1,156 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.util.stats;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * A streaming, mergeable sketch of the distribution of a set of values, used to estimate quantiles
+ * without keeping all of the values.
+ *
+ * Values are kept in levels.  A value at level h stands for 2^h of the original values.  When a level is full,
+ * it is sorted and every other value is promoted to the next level, starting at a random offset.  This keeps
+ * the memory to O(k log(n/k)) values, and the rank error of a quantile to a small fraction of n for the default k.
+ * Two sketches are merged by combining their levels the same way.
+ */
+public class QuantileSketch {
+    public static final int DEF_K = 200;
+
+    private final int capacity;         // of each level
+    private double[][] levels = new double[1][];
+    private int[] sizes = new int[1];
+    private long count;
+    private final SplittableRandom random = new SplittableRandom();
+
+    public QuantileSketch() { this(DEF_K); }
+
+    /**
+     * @param k the accuracy parameter.  each level keeps up to 2k values.
+     */
+    public QuantileSketch(int k) {
+        capacity = 2 * Math.max(k, 4);
+        levels[0] = new double[capacity];
+    }
+
+    /**
+     * add a value.  NaN values are ignored.
+     */
+    public void add(double v) {
+        if (Double.isNaN(v)) return;
+        levels[0][sizes[0]++] = v;
+        count++;
+        if (sizes[0] >= capacity) compact(0);
+    }
+
+    /**
+     * add all of the values of another sketch to this one.
+     */
+    public void merge(QuantileSketch other) {
+        for (int h = 0; h < other.levels.length; h++) {
+            append(h, other.levels[h], 0, other.sizes[h]);
+        }
+        count += other.count;
+        for (int h = 0; h < levels.length; h++) {
+            if (sizes[h] >= capacity) compact(h);
+        }
+    }
+
+    /**
+     * @return the number of values added, not counting NaN
+     */
+    public long getCount() { return count; }
+
+    /**
+     * @param q a fraction between 0 and 1, i.e. .5 for the median
+     * @return the estimated value at the given quantile, or NaN if there are no values
+     */
+    public double getQuantile(double q) {
+        return getQuantiles(q)[0];
+    }
+
+    /**
+     * @param qs fractions between 0 and 1
+     * @return the estimated values at the given quantiles, or NaN if there are no values
+     */
+    public double[] getQuantiles(double... qs) {
+        double[] results = new double[qs.length];
+        if (count == 0) {
+            Arrays.fill(results, Double.NaN);
+            return results;
+        }
+
+        // pack the values with their level so that they can be sorted together
+        int n = Arrays.stream(sizes).sum();
+        double[] vals = new double[n];
+        int[] lvls = new int[n];
+        Integer[] order = new Integer[n];
+        for (int h = 0, i = 0; h < levels.length; h++) {
+            for (int j = 0; j < sizes[h]; j++, i++) {
+                vals[i] = levels[h][j];
+                lvls[i] = h;
+                order[i] = i;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(vals[a], vals[b]));
+        long total = 0;
+        for (int i = 0; i < n; i++) total += 1L << lvls[i];
+
+        for (int qi = 0; qi < qs.length; qi++) {
+            double rank = Math.min(Math.max(qs[qi], 0), 1) * total;
+            long cum = 0;
+            results[qi] = vals[order[n - 1]];
+            for (int i = 0; i < n; i++) {
+                cum += 1L << lvls[order[i]];
+                if (cum >= rank) {
+                    results[qi] = vals[order[i]];
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+//====================================================================
+//
+//====================================================================
+
+    /**
+     * sort level h and promote every other value to level h+1.  if the number of values is odd, one stays behind.
+     */
+    private void compact(int h) {
+        if (h + 1 == levels.length) {
+            levels = Arrays.copyOf(levels, h + 2);
+            sizes = Arrays.copyOf(sizes, h + 2);
+            levels[h + 1] = new double[capacity];
+        }
+        double[] level = levels[h];
+        int size = sizes[h];
+        Arrays.sort(level, 0, size);
+        int keep = size % 2;                // the largest value stays if odd
+        int offset = random.nextInt(2);
+        int promoted = 0;
+        for (int i = offset; i < size - keep; i += 2) {
+            level[promoted++] = level[i];
+        }
+        append(h + 1, level, 0, promoted);
+        if (keep == 1) level[0] = level[size - 1];
+        sizes[h] = keep;
+        if (sizes[h + 1] >= capacity) compact(h + 1);
+    }
+
+    private void append(int h, double[] src, int from, int len) {
+        if (h >= levels.length) {
+            int oldLen = levels.length;
+            levels = Arrays.copyOf(levels, h + 1);
+            sizes = Arrays.copyOf(sizes, h + 1);
+            for (int i = oldLen; i <= h; i++) levels[i] = new double[capacity];
+        }
+        if (sizes[h] + len > levels[h].length) {
+            levels[h] = Arrays.copyOf(levels[h], Math.max(levels[h].length * 2, sizes[h] + len));
+        }
+        System.arraycopy(src, from, levels[h], sizes[h], len);
+        sizes[h] += len;
+    }
+}
@@ -1,6 +1,7 @@
 package edu.caltech.ipac.visualize.plot;
 
 import edu.caltech.ipac.astro.IpacTableWriter;
+import edu.caltech.ipac.util.AppProperties;
 import edu.caltech.ipac.util.DataGroup;
 import edu.caltech.ipac.util.DataObject;
 import edu.caltech.ipac.util.DataType;
@@ -9,6 +10,8 @@ import nom.tam.fits.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -18,14 +21,25 @@ import java.util.Map;
  * Provide a getter to return a FitsRead when the fits extension and the 3rd WCS index are chosen.
  * Provide a getter to return a data group when the fits extension and an image point are chosen. The data group contains naxis3 data objects.
  *      Each data object is composed of the 3rd wcs value and the image data value at that image point.
+ *
+ * When created with FitsRead.createFitsImageCube(File), only the headers are read.  The FitsRead of a plane is created
+ * when it is requested, and reads its pixels from the file when they are used.  The planes requested most recently
+ * are kept, up to FitsImageCube.planeCache.size of them.  getDataGroup reads the pixel of every plane at once,
+ * without creating the planes.
  */
 public class FitsImageCube {
 
+    private static final int PLANE_CACHE_SIZE = AppProperties.getIntProperty("FitsImageCube.planeCache.size", 8);
+
     //private variables:
     private Map <String, FitsRead[]> fitsReadMap;
     private Map <String, DataType[]> dataTypeMap;
     private String[] extNames;
     private Fits fits;
+    private File file;                                      // when the planes are read on demand
+    private Map <String, FitsRead.FileHdu> fileHduMap;      // when the planes are read on demand
+    private Map <String, FitsRead> planeCache;              // when the planes are read on demand, the recent planes
+    private Map <String, FitsRead> firstPlanes;             // when the planes are read on demand, to read a pixel of every plane
 
 
     //Constructor(s):
@@ -91,6 +105,50 @@ public class FitsImageCube {
         }
     }
 
+    /**
+     * Input the headers of a fits file.  The FitsRead of a plane is only created when it is requested.
+     * @param file the fits file
+     * @param fileHdus the hdus of the file, from FitsRead.readFileHdus
+     * @throws FitsException
+     */
+    FitsImageCube(File file, List<FitsRead.FileHdu> fileHdus)
+        throws FitsException {
+
+        this.file = file;
+
+        fileHduMap = new HashMap<String, FitsRead.FileHdu>();
+        dataTypeMap = new HashMap<String, DataType[]>();
+        extNames = new String[fileHdus.size()];
+        planeCache = new LinkedHashMap<String, FitsRead>(PLANE_CACHE_SIZE * 2, .75F, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, FitsRead> eldest) {
+                return size() > PLANE_CACHE_SIZE;
+            }
+        };
+        firstPlanes = new HashMap<String, FitsRead>();
+
+        for (int j = 0; j < fileHdus.size(); j++){
+            Header header = fileHdus.get(j).header;
+            int naxis = header.getIntValue("NAXIS", -1);
+            int naxis3 = header.getIntValue("NAXIS3", -1);
+
+            if (!ImageHDU.isHeader(header) || naxis <3 || naxis3 < 1 || !FitsRead.isImageGood(header)) {
+                continue;   //ignore non-image, non-cube and empty extensions
+            }
+
+            String extName = header.getStringValue("EXTNAME") != null ?
+                                   header.getStringValue("EXTNAME") : "The " + String.valueOf(j) + "th extension";
+            extNames[j] = extName;
+
+            String wcs3Name = header.getStringValue("CTYPE3") != null ? header.getStringValue("CTYPE3") : "WCS3";
+
+            fileHduMap.put(extName, fileHdus.get(j));
+            dataTypeMap = getDataTypeMap(extName, wcs3Name, header, dataTypeMap);
+        }
+        if (fileHduMap.size() == 0){
+            throw new FitsException("The FITS has no image cubes.");
+        }
+    }
+
 
     /**
      * Build the data type map for one HDU
@@ -131,17 +189,43 @@ public class FitsImageCube {
     }
 
     public Object[] getMapKeys(){
-        return fitsReadMap.keySet().toArray();
+        return file != null ? fileHduMap.keySet().toArray() : fitsReadMap.keySet().toArray();
     }
 
     /**
-     *
+     * When the planes are read on demand, this creates the FitsRead of every plane.  Their pixels are still read
+     * only when used.
      * @return fitsReadMap
      */
     public Map<String, FitsRead[]> getFitsReadMap(){
+        if (file != null && fitsReadMap == null) {
+            Map<String, FitsRead[]> map = new HashMap<String, FitsRead[]>();
+            try {
+                for (String extName : fileHduMap.keySet()) {
+                    FitsRead[] fitsReadAry = new FitsRead[getNumOfPlanes(extName)];
+                    for (int z = 0; z < fitsReadAry.length; z++) fitsReadAry[z] = createPlane(extName, z);
+                    map.put(extName, fitsReadAry);
+                }
+            } catch (FitsException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            fitsReadMap = map;
+        }
         return fitsReadMap;
     }
 
+    /**
+     * @param extName: extension name
+     * @return the number of planes of the cube in that extension
+     */
+    public int getNumOfPlanes(String extName) {
+        if (file != null) {
+            FitsRead.FileHdu fileHdu = fileHduMap.get(extName);
+            return fileHdu.isCube() ? fileHdu.getNaxis3() : 1;
+        }
+        return fitsReadMap.get(extName).length;
+    }
+
     /**
      * Return a single FitsRead when the extension name and the 3rd index of the cube are given.
      * @param extName: extension name
@@ -149,7 +233,50 @@ public class FitsImageCube {
      * @return: A single FitsRead of the image in that extension at zth index.
      */
     public FitsRead getFitsRead(String extName, int z) {
-        return fitsReadMap.get(extName)[z];
+        if (file != null && fitsReadMap == null) {
+            synchronized (planeCache) {
+                String key = extName + "-" + z;
+                FitsRead fr = planeCache.get(key);
+                if (fr == null) {
+                    try {
+                        fr = createPlane(extName, z);
+                    } catch (FitsException e) {
+                        throw new IllegalArgumentException(e.getMessage(), e);
+                    }
+                    planeCache.put(key, fr);
+                }
+                return fr;
+            }
+        }
+        return getFitsReadMap().get(extName)[z];
+    }
+
+    /**
+     * create the FitsRead of a plane, when the planes are read on demand
+     */
+    private FitsRead createPlane(String extName, int z) throws FitsException {
+        FitsRead.FileHdu fileHdu = fileHduMap.get(extName);
+        if (z < 0 || z >= getNumOfPlanes(extName)) {
+            throw new ArrayIndexOutOfBoundsException("plane " + z + " is not in " + extName);
+        }
+        if (fileHdu.isCube()) return FitsRead.createCubePlane(file, fileHdu, z);
+
+        return FitsRead.createFitsRead(file, fileHdu, 0);  // a cube of one plane, same as the whole hdu
+    }
+
+    /**
+     * the first plane of an extension, when the planes are read on demand.  Its pixels are never read, it is only used
+     * to read a pixel of all of the planes at once.
+     */
+    private FitsRead getFirstPlane(String extName) throws FitsException {
+        synchronized (firstPlanes) {
+            FitsRead fr = firstPlanes.get(extName);
+            if (fr == null) {
+                fr = createPlane(extName, 0);
+                firstPlanes.put(extName, fr);
+            }
+            return fr;
+        }
     }
 
     /**
@@ -170,15 +297,23 @@ public class FitsImageCube {
         // Initialize the dataGroup:
         DataGroup dataGroup = new DataGroup(mapKey, dataTypeAry);
 
-        // Get the fitsReadAry for this extension:
-        FitsRead[] fitsReadAry = fitsReadMap.get(mapKey);
-        int numOfFitsReads = fitsReadAry.length;
+        int numOfFitsReads = getNumOfPlanes(mapKey);
+
+        // when the planes are read on demand, only the pixel at imagePt of each plane is read, all at once.
+        // the planes have the same header, but for SPOT_PL.
+        double[] fluxes = null;
+        Header onDemandHeader = null;
+        if (file != null && fitsReadMap == null) {
+            FitsRead firstPlane = getFirstPlane(mapKey);
+            fluxes = firstPlane.getFluxOfPlanes(imagePt, numOfFitsReads);
+            onDemandHeader = firstPlane.getHeader();
+        }
 
         for (int z = 0; z < numOfFitsReads; z ++) {
             // For each image, set the dataObj: the 3rd WCS (wavelength or frequency or time) and the data value (eg. flux).
 
-            FitsRead fitsRead = fitsReadAry[z];
-            Header header = fitsRead.getHeader();
+            FitsRead fitsRead = fluxes != null ? null : getFitsReadMap().get(mapKey)[z];
+            Header header = fluxes != null ? onDemandHeader : fitsRead.getHeader();
 
             DataObject dataObj = new DataObject(dataGroup);
 
@@ -199,7 +334,7 @@ public class FitsImageCube {
             dataObj.setDataElement(dataTypeAry[0], wcs3Val);
 
             // Get the image value at the zth image and the imagePt:
-            double imgVal = fitsRead.getFlux(imagePt);
+            double imgVal = fluxes != null ? fluxes[z] : fitsRead.getFlux(imagePt);
 
             // Set the image data value at the zth image and the imagePt to the second value of the dataObj:
             dataObj.setDataElement(dataTypeAry[1], imgVal);
@@ -210,6 +345,9 @@ public class FitsImageCube {
         return dataGroup;
     }
 
+    /**
+     * @return the fits, or null when the planes are read on demand
+     */
     public Fits getFits() {
         return (fits);
     }
@@ -0,0 +1,165 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.visualize.plot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the pixels of one image plane of a FITS file into a float array.  The plane is memory mapped
+ * and converted from its BITPIX in a single pass, instead of reading the data into an array of its own type and then
+ * converting and flattening it.  Like the values read through nom.tam, the values are raw: BSCALE and BZERO
+ * are not applied, and BITPIX 8 values are signed.
+ */
+public class FitsPixelReader implements Serializable {
+
+    private static final int MAX_MAP_SIZE = 256 * 1024 * 1024;
+
+    private final File file;
+    private final long dataOffset;
+    private final int bitpix;
+    private final int naxis1;
+    private final int naxis2;
+
+    /**
+     * @param file          the FITS file
+     * @param dataOffset    the offset in the file of the first pixel of the plane
+     * @param bitpix        BITPIX of the HDU: 8, 16, 32, 64, -32 or -64
+     * @param naxis1        number of pixels in a line
+     * @param naxis2        number of lines
+     */
+    public FitsPixelReader(File file, long dataOffset, int bitpix, int naxis1, int naxis2) {
+        this.file = file;
+        this.dataOffset = dataOffset;
+        this.bitpix = bitpix;
+        this.naxis1 = naxis1;
+        this.naxis2 = naxis2;
+    }
+
+    public File getFile() { return file; }
+
+    /**
+     * @param bitpix
+     * @return true if the pixels of the given BITPIX can be read
+     */
+    public static boolean isSupported(int bitpix) {
+        switch (bitpix) {
+            case 8: case 16: case 32: case 64: case -32: case -64: return true;
+            default: return false;
+        }
+    }
+
+    /**
+     * read the plane
+     * @param flipY if true, the lines are returned in reverse order, the last line of the file first
+     * @return the raw pixels of the plane, naxis1 * naxis2 values
+     * @throws IOException
+     */
+    public float[] read(boolean flipY) throws IOException {
+        int bytesPerPixel = Math.abs(bitpix) / 8;
+        long lineSize = (long) naxis1 * bytesPerPixel;
+        int linesPerMap = (int) Math.max(1, MAX_MAP_SIZE / lineSize);
+        float[] float1d = new float[naxis1 * naxis2];
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int startLine = 0; startLine < naxis2; startLine += linesPerMap) {
+                int lines = Math.min(linesPerMap, naxis2 - startLine);
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                   dataOffset + startLine * lineSize, lines * lineSize);
+                for (int i = 0; i < lines; i++) {
+                    int y = startLine + i;
+                    int destIdx = (flipY ? naxis2 - y - 1 : y) * naxis1;
+                    buf.position((int) (i * lineSize));
+                    readLine(buf, float1d, destIdx);
+                }
+            }
+        }
+        return float1d;
+    }
+
+    /**
+     * read one pixel, without reading the plane
+     * @param x the pixel in the line
+     * @param y the line, as in the file
+     * @return the raw value of the pixel
+     * @throws IOException
+     */
+    public float readPixel(int x, int y) throws IOException {
+        return readPixelOfPlanes(x, y, 1)[0];
+    }
+
+    /**
+     * read one pixel of this plane and of the planes that follow it in the file, i.e. the planes of a cube,
+     * without reading the planes.  The file is opened once for all of them.
+     * @param x the pixel in the line
+     * @param y the line, as in the file
+     * @param planes the number of planes, starting with this one
+     * @return the raw value of the pixel in each plane
+     * @throws IOException
+     */
+    public float[] readPixelOfPlanes(int x, int y, int planes) throws IOException {
+        int bytesPerPixel = Math.abs(bitpix) / 8;
+        long planeSize = (long) naxis1 * naxis2 * bytesPerPixel;
+        float[] values = new float[planes];
+        ByteBuffer buf = ByteBuffer.allocate(bytesPerPixel);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long pos = dataOffset + ((long) y * naxis1 + x) * bytesPerPixel;
+            for (int z = 0; z < planes; z++, pos += planeSize) {
+                buf.clear();
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf, pos + buf.position()) < 0) throw new IOException("unexpected end of file");
+                }
+                buf.flip();
+                values[z] = getValue(buf);
+            }
+        }
+        return values;
+    }
+
+    private float getValue(ByteBuffer buf) {
+        switch (bitpix) {
+            case 8:   return buf.get();
+            case 16:  return buf.getShort();
+            case 32:  return buf.getInt();
+            case 64:  return buf.getLong();
+            case -32: return buf.getFloat();
+            case -64: return (float) buf.getDouble();
+            default:  throw new IllegalArgumentException("Unimplemented bitpix = " + bitpix);
+        }
+    }
+
+    /**
+     * convert one line, starting at the position of buf, FITS data is always big endian, the default order of ByteBuffer
+     */
+    private void readLine(ByteBuffer buf, float[] float1d, int destIdx) {
+        int end = destIdx + naxis1;
+        switch (bitpix) {
+            case -32:
+                buf.asFloatBuffer().get(float1d, destIdx, naxis1);
+                break;
+            case 8:
+                for (int i = destIdx; i < end; i++) float1d[i] = buf.get();
+                break;
+            case 16:
+                for (int i = destIdx; i < end; i++) float1d[i] = buf.getShort();
+                break;
+            case 32:
+                for (int i = destIdx; i < end; i++) float1d[i] = buf.getInt();
+                break;
+            case 64:
+                for (int i = destIdx; i < end; i++) float1d[i] = buf.getLong();
+                break;
+            case -64:
+                for (int i = destIdx; i < end; i++) float1d[i] = (float) buf.getDouble();
+                break;
+            default:
+                throw new IllegalArgumentException("Unimplemented bitpix = " + bitpix);
+        }
+    }
+}
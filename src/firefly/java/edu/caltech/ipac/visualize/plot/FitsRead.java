@@ -13,16 +13,21 @@ import nom.tam.fits.HeaderCard;
 import nom.tam.fits.ImageData;
 import nom.tam.fits.ImageHDU;
 import nom.tam.util.ArrayFuncs;
+import nom.tam.util.BufferedFile;
 import nom.tam.util.Cursor;
 import nom.tam.image.compression.hdu.*;
 
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.nio.Buffer;
 
 
@@ -72,13 +77,20 @@ public class FitsRead implements Serializable {
     private final int planeNumber;
     private final int extension_number;
     private BasicHDU hdu;
-    private float[] float1d;
+    private volatile float[] float1d;
     private ImageHeader imageHeader;
     private Header header;
     private int indexInFile = -1;  // -1 unknown, >=0 index in file
     private Histogram hist;
     private  double defBetaValue= Double.NaN;
     private boolean tileCompress = false;
+    private FitsPixelReader pixelReader;  // when read from a file lazily, reads float1d on first use
+    private int hduPos = -1;              // when read from a file lazily, the position of the hdu in the file
+    private boolean flipY = false;        // when read from a file lazily, true if the lines are read in reverse order
+    private boolean hduCleared = false;
+    private transient PixelLoadListener pixelLoadListener;
+
+    private static final ForkJoinPool STRETCH_POOL = ImagePlot.getCoreCnt() > 1 ? new ForkJoinPool(ImagePlot.getCoreCnt()) : null;
 
     private static ArrayList<Integer> SUPPORTED_BIT_PIXS = new ArrayList<Integer>(Arrays.asList(8, 16, 32, -32, -64));
 
@@ -91,20 +103,9 @@ public class FitsRead implements Serializable {
      */
     private FitsRead( ImageHDU imageHdu, boolean clearHdu) throws FitsException {
 
+        this(imageHdu.getHeader(), imageHdu.getFileOffset());
 
         hdu = imageHdu;
-        header = imageHdu.getHeader();
-
-        planeNumber = header.getIntValue("SPOT_PL", 0);
-        extension_number = header.getIntValue("SPOT_EXT", -1);
-        checkHeader();
-        long HDUOffset = getHDUOffset(imageHdu);
-        imageHeader = new ImageHeader(header, HDUOffset, planeNumber);
-
-
-        if (!SUPPORTED_BIT_PIXS.contains(new Integer(imageHeader.bitpix))) {
-            System.out.println("Unimplemented bitpix = " + imageHeader.bitpix);
-        }
 
         //convert the data to float to do all the calculations
         float1d = getImageHDUDataInFloatArray(imageHdu);
@@ -113,7 +114,7 @@ public class FitsRead implements Serializable {
             imageHdu= null;
         }
 
-        hist= computeHistogram();
+        hist= computeHistogram(float1d);
         /* The error in asinh algorithm is
          *  V(mu) = [ a * sigma^2)/(4b^2+f^2)] where f is a flux
          *  When f=0, the error reaches it maximum, if we choose beta = 2b = sigma,
@@ -124,9 +125,110 @@ public class FitsRead implements Serializable {
 
     }
 
+    /**
+     * a private constructor for an image of a Fits file that is read lazily.  Only the header is used,
+     * the pixels are read by the pixelReader the first time that they are needed.
+     *
+     * @param header the header of the image, same as the header of the ImageHDU in the eager case
+     * @param fileOffset the offset of the hdu in the file
+     * @param pixelReader reads the pixels of the image
+     * @param hduPos the position of the hdu in the file, or -1 if the image is a plane of a cube
+     * @throws FitsException
+     */
+    private FitsRead(Header header, long fileOffset, FitsPixelReader pixelReader, int hduPos) throws FitsException {
+
+        this(header, fileOffset);
+
+        this.pixelReader = pixelReader;
+        this.hduPos = hduPos;
+        flipY = imageHeader.cdelt2 < 0;
+        if (flipY) flipImageHeaderY();
+    }
+
+    private FitsRead(Header header, long fileOffset) throws FitsException {
+        this.header = header;
+
+        planeNumber = header.getIntValue("SPOT_PL", 0);
+        extension_number = header.getIntValue("SPOT_EXT", -1);
+        checkHeader();
+        long HDUOffset = getHDUOffset(fileOffset);
+        imageHeader = new ImageHeader(header, HDUOffset, planeNumber);
+
+
+        if (!SUPPORTED_BIT_PIXS.contains(new Integer(imageHeader.bitpix))) {
+            System.out.println("Unimplemented bitpix = " + imageHeader.bitpix);
+        }
+    }
+
+    /**
+     * @return the raw pixels, reading them if this FitsRead was read lazily and they have not been read yet
+     */
+    private float[] getRawData() {
+        float[] data = float1d;
+        return (data == null && pixelReader != null) ? loadPixels() : data;
+    }
+
+    private float[] loadPixels() {
+        float[] data;
+        boolean loaded = false;
+        IOException failure = null;
+        synchronized (this) {
+            data = float1d;
+            if (data == null && pixelReader != null) {
+                try {
+                    long start = System.currentTimeMillis();
+                    data = pixelReader.read(flipY);
+                    hist = computeHistogram(data);
+                    float1d = data;
+                    loaded = true;
+                    if (SUTDebug.isDebug()) {
+                        System.out.println("read pixels of " + pixelReader.getFile().getName() + " in " +
+                                           (System.currentTimeMillis() - start) + " ms");
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+        // the listener is called without the lock, the same as when the pixels are loaded
+        if (failure != null) {
+            if (pixelLoadListener != null) pixelLoadListener.pixelsFailed(this, failure);
+            throw new IllegalStateException("Could not read the pixels of " + pixelReader.getFile().getPath(), failure);
+        }
+        if (loaded && pixelLoadListener != null) pixelLoadListener.pixelsLoaded(this);
+        return data;
+    }
+
+    /**
+     * Notified when the pixels or the hdu of a FitsRead that was read lazily are read from the file.
+     */
+    public interface PixelLoadListener {
+        /**
+         * called after the pixels or the hdu were read, so their size can be accounted for
+         */
+        void pixelsLoaded(FitsRead fr);
+
+        /**
+         * called when they could not be read, before the error is thrown to the caller
+         */
+        void pixelsFailed(FitsRead fr, Exception e);
+    }
+
+    /**
+     * @param listener notified when the pixels are read, only used when this FitsRead was read lazily
+     */
+    public void setPixelLoadListener(PixelLoadListener listener) {
+        pixelLoadListener = listener;
+    }
+
+    /**
+     * @return true if this FitsRead was read lazily, and its pixels are read on first use
+     */
+    public boolean isReadLazily() { return pixelReader != null; }
+
     public double getDefaultBeta() {
         if (Double.isNaN(this.defBetaValue)) {
-            this.defBetaValue= computeSigma(float1d, imageHeader);
+            this.defBetaValue= computeSigma(getRawData(), imageHeader);
         }
         return this.defBetaValue;
     }
@@ -177,6 +279,164 @@ public class FitsRead implements Serializable {
     }
 
 
+    /**
+     * read a fits file with extensions or cube data to create a list of the FitsRead object, without reading
+     * the pixels.  Only the headers are read.  The pixels of an image are memory mapped and read in one pass
+     * the first time that they are used, so that only the images that are plotted are read.
+     * The hdu of an image is read again from the file if getHDU is called.
+     * Files with tile compressed images, or that can not be read this way, are read with createFitsReadArray(Fits, boolean).
+     *
+     * @param file the fits file
+     * @param clearHdu only used when the file is not read lazily, the hdu of a lazily read image is only read on demand
+     * @return
+     * @throws FitsException
+     * @throws IOException
+     */
+    public static FitsRead[] createFitsReadArray(File file, boolean clearHdu)
+            throws FitsException, IOException {
+
+        List<FileHdu> fileHdus = readFileHdus(file);
+        if (fileHdus == null) {
+            Fits fits = new Fits(file);
+            try {
+                return createFitsReadArray(fits, clearHdu);
+            } finally {
+                fits.getStream().close();
+            }
+        }
+
+        ArrayList<FitsRead> frList = new ArrayList<>();
+        boolean hasExtension = fileHdus.size() > 1;
+        for (FileHdu fileHdu : fileHdus) {
+            Header header = fileHdu.header;
+            if (!ImageHDU.isHeader(header) || !isImageGood(header)) continue;
+
+            if (hasExtension) updateHeader(header, fileHdu.pos, fileHdu.hduOffset);
+
+            if (fileHdu.isCube()) { //it is a cube data, each plane is the same as from splitFitsCube
+                for (int i = 0; i < fileHdu.getNaxis3(); i++) {
+                    frList.add(createCubePlane(file, fileHdu, i));
+                }
+            } else {
+                frList.add(createFitsRead(file, fileHdu, frList.size()));
+            }
+        }
+
+        if (frList.size() == 0)
+            throw new FitsException("No image headers in FITS file");
+
+        FitsRead[] fitsReadAry = frList.toArray(new FitsRead[frList.size()]);
+        for (int i = 0; i < fitsReadAry.length; i++) {
+            fitsReadAry[i].indexInFile = i;
+        }
+        return fitsReadAry;
+    }
+
+    /**
+     * The header of a hdu of a fits file, and where it is in the file
+     */
+    static class FileHdu {
+        final Header header;
+        final int pos;          // position of the hdu in the file
+        final long hduOffset;
+        final long dataOffset;
+
+        FileHdu(Header header, int pos, long hduOffset, long dataOffset) {
+            this.header = header;
+            this.pos = pos;
+            this.hduOffset = hduOffset;
+            this.dataOffset = dataOffset;
+        }
+
+        int getNaxis3() { return header.getIntValue("NAXIS3", -1); }
+
+        boolean isCube() { return header.getIntValue("NAXIS", -1) > 2 && getNaxis3() > 1; }
+    }
+
+    /**
+     * read the headers of all of the hdus of a fits file, without reading the data
+     * @param file the fits file
+     * @return the hdus, or null if the images of the file can not be read directly from the file, i.e. when it is compressed
+     * or it has tile compressed images
+     * @throws IOException
+     */
+    static List<FileHdu> readFileHdus(File file) throws IOException {
+        ArrayList<FileHdu> fileHdus = new ArrayList<>();
+
+        try (BufferedFile bf = new BufferedFile(file, "r")) {
+            long fileLength = bf.length();
+            while (bf.getFilePointer() < fileLength) {
+                long hduOffset = bf.getFilePointer();
+                Header header;
+                try {
+                    header = Header.readHeader(bf);
+                } catch (FitsException | IOException e) {
+                    // not a fits file that can be read directly, i.e. compressed, or junk at the end of the file
+                    if (fileHdus.isEmpty()) return null;
+                    break;
+                }
+                if (header == null) break;
+
+                long dataOffset = bf.getFilePointer();
+                if (CompressedImageHDU.isHeader(header)) return null;
+                if (ImageHDU.isHeader(header)) {
+                    if (!FitsPixelReader.isSupported(header.getIntValue("BITPIX", 0)) ||
+                            dataOffset + getImageDataSize(header) > fileLength) {
+                        return null;
+                    }
+                }
+                fileHdus.add(new FileHdu(header, fileHdus.size(), hduOffset, dataOffset));
+                bf.seek(dataOffset + header.getDataSize());
+            }
+        }
+        return fileHdus;
+    }
+
+    /**
+     * create a FitsRead of an image hdu that is not a cube, that reads its pixels from the file on first use
+     */
+    static FitsRead createFitsRead(File file, FileHdu fileHdu, int indexInFile) throws FitsException {
+        Header header = fileHdu.header;
+        FitsPixelReader reader = new FitsPixelReader(file, fileHdu.dataOffset, header.getIntValue("BITPIX", -1),
+                                                     header.getIntValue("NAXIS1", 0), header.getIntValue("NAXIS2", 1));
+        FitsRead fr = new FitsRead(header, fileHdu.hduOffset, reader, fileHdu.pos);
+        fr.indexInFile = indexInFile;
+        return fr;
+    }
+
+    /**
+     * create the FitsRead of a plane of a cube, that reads its pixels from the file on first use.
+     * It is the same as the FitsRead of the plane from splitFitsCube.
+     * @param file the fits file
+     * @param fileHdu the hdu of the cube
+     * @param z the index of the plane
+     * @return
+     * @throws FitsException
+     */
+    static FitsRead createCubePlane(File file, FileHdu fileHdu, int z) throws FitsException {
+        Header header = fileHdu.header;
+        int bitpix = header.getIntValue("BITPIX", -1);
+        int naxis1 = header.getIntValue("NAXIS1", 0);
+        int naxis2 = header.getIntValue("NAXIS2", 1);
+        long planeSize = (long) naxis1 * naxis2 * Math.abs(bitpix) / 8;
+
+        Header planeHeader = makePlaneHeader(header, naxis1, naxis2);
+        if (z > 0) planeHeader.addValue("SPOT_PL", z, "PLANE OF FITS CUBE (IN SPOT)");
+        FitsPixelReader reader = new FitsPixelReader(file, fileHdu.dataOffset + z * planeSize, bitpix, naxis1, naxis2);
+        FitsRead fr = new FitsRead(planeHeader, -1, reader, -1);
+        fr.indexInFile = z;
+        return fr;
+    }
+
+    private static long getImageDataSize(Header header) {
+        int naxis = header.getIntValue("NAXIS", 0);
+        long size = naxis > 0 ? Math.abs(header.getIntValue("BITPIX", 0)) / 8 : 0;
+        for (int i = 1; i <= naxis; i++) {
+            size *= header.getIntValue("NAXIS" + i, 0);
+        }
+        return size;
+    }
+
     /**
      * This method is used by FitsImageCube only
      * @param fits
@@ -223,6 +483,27 @@ public class FitsRead implements Serializable {
 
         return new FitsImageCube(fits);
     }
+
+    /**
+     * This method will return a FitsImageCube object that only reads the headers of the file.  The FitsRead of a plane
+     * is created when it is requested, so the time and memory to open a cube do not depend on the number of planes.
+     * Files that can not be read that way, i.e. compressed files, are read with createFitsImageCube(Fits).
+     * @param file
+     * @return
+     * @throws FitsException
+     * @throws IOException
+     */
+    public static FitsImageCube createFitsImageCube(File file)throws FitsException, IOException {
+        List<FileHdu> fileHdus = readFileHdus(file);
+        if (fileHdus != null) return new FitsImageCube(file, fileHdus);
+
+        Fits fits = new Fits(file);
+        try {
+            return new FitsImageCube(fits);
+        } finally {
+            fits.getStream().close();
+        }
+    }
     /**
      * Flip an image left to right so that pixels read backwards
      *
@@ -512,7 +793,7 @@ public class FitsRead implements Serializable {
         return fitsRead;
     }
 
-    private static boolean isImageGood(Header aHeader) {
+    static boolean isImageGood(Header aHeader) {
 
         int naxis = aHeader.getIntValue("NAXIS", -1);
         boolean goodImage = true;
@@ -651,8 +932,18 @@ public class FitsRead implements Serializable {
      */
     private static ImageHDU makeHDU(ImageHDU hdu, float[][] pixels)
             throws FitsException {
-        Header header = hdu.getHeader();
+        Header newHeader = makePlaneHeader(hdu.getHeader(), pixels[0].length, pixels.length);
 
+        ImageData new_image_data = new ImageData(pixels);
+        hdu = new ImageHDU(newHeader, new_image_data);
+        return hdu;
+    }
+
+    /**
+     * Creates the header of a plane of a cube, for 2-dim float data
+     */
+    private static Header makePlaneHeader(Header header, int naxis1, int naxis2)
+            throws FitsException {
         Header newHeader = cloneHeaderFrom(header);
 
         newHeader.deleteKey("BITPIX");
@@ -660,26 +951,23 @@ public class FitsRead implements Serializable {
         newHeader.deleteKey("NAXIS");
         newHeader.setNaxes(2);
         newHeader.deleteKey("NAXIS1");
-        newHeader.setNaxis(1, pixels[0].length);
+        newHeader.setNaxis(1, naxis1);
         newHeader.deleteKey("NAXIS2");
-        newHeader.setNaxis(2, pixels.length);
+        newHeader.setNaxis(2, naxis2);
 
         newHeader.deleteKey("DATAMAX");
         newHeader.deleteKey("DATAMIN");
         newHeader.deleteKey("NAXIS3");
         newHeader.deleteKey("NAXIS4");
         newHeader.deleteKey("BLANK");
-
-        ImageData new_image_data = new ImageData(pixels);
-        hdu = new ImageHDU(newHeader, new_image_data);
-        return hdu;
+        return newHeader;
     }
 
 
-    private long getHDUOffset(ImageHDU image_hdu) {
+    private long getHDUOffset(long fileOffset) {
         long HDU_offset;
         if (extension_number == -1) {
-            HDU_offset = image_hdu.getFileOffset();
+            HDU_offset = fileOffset;
         } else {
             HDU_offset = header.getIntValue("SPOT_OFF", 0);
         }
@@ -723,14 +1011,18 @@ public class FitsRead implements Serializable {
                 }
             }
             float1d = temp;
-            imageHeader.cdelt2 = -imageHeader.cdelt2;
-            imageHeader.crpix2 =
-                    imageHeader.naxis2 - imageHeader.crpix2 + 1;
+            flipImageHeaderY();
 
         }
         return float1d;
     }
 
+    private void flipImageHeaderY() {
+        imageHeader.cdelt2 = -imageHeader.cdelt2;
+        imageHeader.crpix2 =
+                imageHeader.naxis2 - imageHeader.crpix2 + 1;
+    }
+
     private float[] getImageHDUDataInFloatArray(ImageHDU imageHDU) throws FitsException {
 
         float[]  float1d =
@@ -758,16 +1050,36 @@ public class FitsRead implements Serializable {
         return ret;
     }
 
-    public synchronized void doStretch(RangeValues rangeValues,
+    /**
+     * Stretch a range of the image into pixelData.  The pixels are only read, so this is not synchronized, and
+     * several ranges of the same image can be stretched at the same time.  A large range is split across the
+     * threads of STRETCH_POOL.  For 8 and 16 bit images, each possible value is stretched once into a lookup table.
+     */
+    public void doStretch(RangeValues rangeValues,
                                        byte[] pixelData,
                                        boolean mapBlankToZero,
                                        int startPixel,
                                        int lastPixel,
                                        int startLine,
                                        int lastLine){
+        doStretch(rangeValues, pixelData, mapBlankToZero, startPixel, lastPixel, startLine, lastLine, STRETCH_POOL);
+    }
 
+    /**
+     * @param pool the pool to split a large range across, or null to stretch on the calling thread only
+     */
+    void doStretch(RangeValues rangeValues,
+                   byte[] pixelData,
+                   boolean mapBlankToZero,
+                   int startPixel,
+                   int lastPixel,
+                   int startLine,
+                   int lastLine,
+                   ForkJoinPool pool){
 
 
+        float[] float1d = getRawData();
+        Histogram hist = this.hist;
 
 
         double slow = getSlow(rangeValues, float1d, imageHeader, hist);
@@ -775,11 +1087,18 @@ public class FitsRead implements Serializable {
 
         byte blank_pixel_value = mapBlankToZero ? 0 : (byte) 255;
 
+        PixelStretch stretch = makePixelStretch(imageHeader, hist, blank_pixel_value, float1d, rangeValues, slow, shigh);
+        long pixelCnt = (long) (lastPixel - startPixel + 1) * (lastLine - startLine + 1);
+        stretch = makeLookupStretch(stretch, imageHeader.bitpix, pixelCnt);
 
-        stretchPixels(startPixel, lastPixel, startLine, lastLine,imageHeader.naxis1, imageHeader, hist,
-                blank_pixel_value, float1d, pixelData, rangeValues, slow, shigh);
-
-
+        StretchTask task = new StretchTask(stretch, float1d, pixelData, imageHeader.naxis1,
+                                           startPixel, lastPixel, startLine, lastLine, startLine);
+        if (pool != null && pixelCnt >= 2 * StretchTask.MIN_PIXELS) {
+            pool.invoke(task);
+        }
+        else {
+            task.compute();
+        }
     }
 
 
@@ -814,38 +1133,48 @@ public class FitsRead implements Serializable {
                                       double slow,
                                       double shigh) {
 
+        PixelStretch stretch = makePixelStretch(imageHeader, hist, blank_pixel_value, float1dArray, rangeValues, slow, shigh);
+        new StretchTask(stretch, float1dArray, pixeldata, naxis1, startPixel, lastPixel, startLine, lastLine, startLine).compute();
+    }
 
+    /**
+     * The stretch of one raw pixel value to a screen pixel value
+     */
+    private interface PixelStretch {
+        byte stretch(float raw_dn);
+    }
 
+    /**
+     * Everything that does not depend on the value of the pixel, i.e. the table of the non linear stretches, the
+     * range of the asinh and power law gamma stretches and the bias and contrast, is computed here once.
+     */
+    private static PixelStretch makePixelStretch(ImageHeader imageHeader,
+                                                 Histogram hist,
+                                                 byte blank_pixel_value,
+                                                 float[] float1dArray,
+                                                 RangeValues rangeValues,
+                                                 double slow,
+                                                 double shigh) {
 
-
-        /*
-         * This loop will go through all the pixels and assign them new values based on the
-         * stretch algorithm
-         */
         if (rangeValues.getStretchAlgorithm()==RangeValues.STRETCH_ASINH) {
-            stretchPixelsUsingAsin( startPixel, lastPixel,startLine,lastLine, naxis1, imageHeader,
-               float1dArray, pixeldata, rangeValues,slow,shigh);
-
+            double beta = rangeValues.getBetaValue();
+            // Here we use flux instead of data since the original paper is using flux. But I don't think it is matter.
+            // flux = raw_dn * imageHeader.bscale + imageHeader.bzero, when bscale=1 and bzero=0, flux=raw_dn
+            double maxFlux = getFlux(shigh, imageHeader);
+            double minFlux = getFlux(slow, imageHeader);
+            if (Double.isNaN(minFlux) || Double.isInfinite((minFlux))){
+                double[] minMax=getMinMaxData(float1dArray);
+                minFlux = getFlux(minMax[0],imageHeader);
+            }
 
+            if ( Double.isNaN(maxFlux) || Double.isInfinite((maxFlux)) ) {
+                double[] minMax=getMinMaxData(float1dArray);
+                minFlux = getFlux(minMax[1], imageHeader);
+            }
+            double minFluxValue = minFlux;
+            double diff = asinh( (maxFlux-minFlux)/beta );
+            return raw_dn -> (byte) getASinhStretchedPixelValue(getFlux(raw_dn, imageHeader), minFluxValue, beta, diff);
         }
-        else {
-            stretchPixelsUsingOtherAlgorithms(startPixel, lastPixel, startLine, lastLine,imageHeader.naxis1, hist,
-                    blank_pixel_value,float1dArray, pixeldata, rangeValues, slow, shigh);
-        }
-    }
-
-    private static void stretchPixelsUsingOtherAlgorithms(int startPixel,
-                                                         int lastPixel,
-                                                         int startLine,
-                                                         int lastLine,
-                                                          int naxis1,
-                                                         Histogram hist,
-                                                         byte blank_pixel_value,
-                                                         float[] float1dArray,
-                                                         byte[] pixeldata,
-                                                         RangeValues rangeValues,
-                                                         double slow,
-                                                         double shigh){
 
         double sdiff = slow == shigh ? 1.0 : shigh - slow;
 
@@ -863,75 +1192,109 @@ public class FitsRead implements Serializable {
         else if( rangeValues.getStretchAlgorithm() == RangeValues.STRETCH_SQRT) {
             dtbl = getSquaredDbl(sdiff, slow, rangeValues);
         }
+        double[] nonLinearTbl = dtbl;
         int deltasav = sdiff > 0 ? 64 : -64;
 
-        double gamma=rangeValues.getGammaValue();
-        int pixelCount = 0;
-        for (int line = startLine; line <= lastLine; line++) {
-            int start_index = line * naxis1 + startPixel;
-            int last_index = line * naxis1 + lastPixel;
-
-            for (int index = start_index; index <= last_index; index++) {
-
-                if (Double.isNaN(float1dArray[index])) { //original pixel value is NaN, assign it to blank
-                    pixeldata[pixelCount] = blank_pixel_value;
-                } else {   // stretch each pixel
-                    if (rangeValues.getStretchAlgorithm() == RangeValues.STRETCH_LINEAR) {
-
-                        double dRunval = ((float1dArray[index] - slow) * 254 / sdiff);
-                        pixeldata[pixelCount] = getLinearStrectchedPixelValue(dRunval);
-
-                    } else if (rangeValues.getStretchAlgorithm() == RangeValues.STRETCH_POWERLAW_GAMMA) {
-
-                        pixeldata[pixelCount] = (byte) getPowerLawGammaStretchedPixelValue(float1dArray[index], gamma, slow, shigh);
-                    } else {
-
-                        pixeldata[pixelCount] = (byte) getNoneLinerStretchedPixelValue(float1dArray[index], dtbl, deltasav);
-                    }
-                    pixeldata[pixelCount] = rangeValues.computeBiasAndContrast(pixeldata[pixelCount]);
-                }
-                pixelCount++;
+        byte[] biasAndContrast = new byte[256];
+        for (int i = 0; i < 256; i++) biasAndContrast[i] = rangeValues.computeBiasAndContrast((byte) i);
+
+        switch (rangeValues.getStretchAlgorithm()) {
+            case RangeValues.STRETCH_LINEAR:
+                return raw_dn -> Double.isNaN(raw_dn) ? blank_pixel_value :
+                        biasAndContrast[getLinearStrectchedPixelValue((raw_dn - slow) * 254 / sdiff) & 0xff];
+            case RangeValues.STRETCH_POWERLAW_GAMMA:
+                double invGamma = 1.0 / rangeValues.getGammaValue();
+                double range = Math.pow(shigh - slow, invGamma);
+                return raw_dn -> Double.isNaN(raw_dn) ? blank_pixel_value :
+                        biasAndContrast[(byte) getPowerLawGammaStretchedPixelValue(raw_dn, invGamma, slow, range) & 0xff];
+            default:
+                return raw_dn -> Double.isNaN(raw_dn) ? blank_pixel_value :
+                        biasAndContrast[getNoneLinerStretchedPixelValue(raw_dn, nonLinearTbl, deltasav) & 0xff];
+        }
+    }
 
-            }
+    /**
+     * For an 8 or 16 bit image, stretch each possible value once into a table, when that is less work than
+     * stretching each pixel.  The pixels of these images are integers, so the result is the same.
+     * @return a stretch by table lookup, or the given stretch
+     */
+    private static PixelStretch makeLookupStretch(PixelStretch stretch, int bitpix, long pixelCnt) {
+        int min;
+        int size;
+        if (bitpix == 8) {
+            min = Byte.MIN_VALUE;
+            size = 256;
+        }
+        else if (bitpix == 16) {
+            min = Short.MIN_VALUE;
+            size = 65536;
+        }
+        else {
+            return stretch;
         }
+        if (pixelCnt < 2L * size) return stretch;
 
+        byte[] lut = new byte[size];
+        for (int i = 0; i < size; i++) lut[i] = stretch.stretch(min + i);
+        return raw_dn -> {
+            int idx = (int) raw_dn - min;
+            return (idx >= 0 && idx < size && idx + min == raw_dn) ? lut[idx] : stretch.stretch(raw_dn);
+        };
     }
-    private static void stretchPixelsUsingAsin(int startPixel,
-                                      int lastPixel,
-                                      int startLine,
-                                      int lastLine,
-                                      int naxis1,
-                                      ImageHeader imageHeader,
-                                      float[] float1dArray,
-                                      byte[] pixeldata,
-                                      RangeValues rangeValues,
-                                      double slow,
-                                      double shigh){
 
-        double beta = rangeValues.getBetaValue();
-        // Here we use flux instead of data since the original paper is using flux. But I don't think it is matter.
-        // flux = raw_dn * imageHeader.bscale + imageHeader.bzero, when bscale=1 and bzero=0, flux=raw_dn
-        double maxFlux = getFlux(shigh, imageHeader);
-        double minFlux = getFlux(slow, imageHeader);
-        if (Double.isNaN(minFlux) || Double.isInfinite((minFlux))){
-            double[] minMax=getMinMaxData(float1dArray);
-            minFlux = getFlux(minMax[0],imageHeader);
+    /**
+     * Stretch a range of lines.  While the range is large and it runs in the fork join pool, it is split in halves.
+     */
+    private static class StretchTask extends RecursiveAction {
+        static final int MIN_PIXELS = 64 * 1024;
+
+        private final PixelStretch stretch;
+        private final float[] float1dArray;
+        private final byte[] pixeldata;
+        private final int naxis1;
+        private final int startPixel;
+        private final int lastPixel;
+        private final int startLine;
+        private final int lastLine;
+        private final int firstLine;      // the line of the whole range, that is at pixeldata[0]
+
+        StretchTask(PixelStretch stretch, float[] float1dArray, byte[] pixeldata, int naxis1,
+                    int startPixel, int lastPixel, int startLine, int lastLine, int firstLine) {
+            this.stretch = stretch;
+            this.float1dArray = float1dArray;
+            this.pixeldata = pixeldata;
+            this.naxis1 = naxis1;
+            this.startPixel = startPixel;
+            this.lastPixel = lastPixel;
+            this.startLine = startLine;
+            this.lastLine = lastLine;
+            this.firstLine = firstLine;
         }
 
-        if ( Double.isNaN(maxFlux) || Double.isInfinite((maxFlux)) ) {
-            double[] minMax=getMinMaxData(float1dArray);
-            minFlux = getFlux(minMax[1], imageHeader);
-        }
-        int pixelCount = 0;
-        for (int line = startLine; line <= lastLine; line++) {
-            int start_index = line * naxis1 + startPixel;
-            int last_index = line * naxis1 + lastPixel;
-            for (int index = start_index; index <= last_index; index++) {
-                pixeldata[pixelCount] =(byte)  getASinhStretchedPixelValue(getFlux(float1dArray[index], imageHeader), maxFlux, minFlux, beta);
-                pixelCount++;
+        @Override
+        protected void compute() {
+            int width = lastPixel - startPixel + 1;
+            int lines = lastLine - startLine + 1;
+            if (lines > 1 && (long) width * lines >= 2 * MIN_PIXELS && inForkJoinPool()) {
+                int mid = startLine + lines / 2;
+                invokeAll(new StretchTask(stretch, float1dArray, pixeldata, naxis1, startPixel, lastPixel, startLine, mid - 1, firstLine),
+                          new StretchTask(stretch, float1dArray, pixeldata, naxis1, startPixel, lastPixel, mid, lastLine, firstLine));
+                return;
             }
-        }
 
+            /*
+             * This loop will go through all the pixels and assign them new values based on the
+             * stretch algorithm
+             */
+            int pixelCount = (startLine - firstLine) * width;
+            for (int line = startLine; line <= lastLine; line++) {
+                int start_index = line * naxis1 + startPixel;
+                int last_index = line * naxis1 + lastPixel;
+                for (int index = start_index; index <= last_index; index++) {
+                    pixeldata[pixelCount++] = stretch.stretch(float1dArray[index]);
+                }
+            }
+        }
     }
 
     /**
@@ -962,7 +1325,7 @@ public class FitsRead implements Serializable {
 
 
         stretchPixels(startPixel, lastPixel, startLine, lastLine, imageHeader.naxis1,
-                        blank_pixel_value, float1d, masks, pixelData, pixelhist, lsstMasks);
+                        blank_pixel_value, getRawData(), masks, pixelData, pixelhist, lsstMasks);
 
 
     }
@@ -1124,10 +1487,14 @@ public class FitsRead implements Serializable {
     }
 
 
-    private static double getPowerLawGammaStretchedPixelValue(double x, double gamma, double zp, double mp){
+    /**
+     * @param invGamma 1/gamma
+     * @param range Math.pow(mp - zp, 1.0 / gamma)
+     */
+    private static double getPowerLawGammaStretchedPixelValue(double x, double invGamma, double zp, double range){
 
         double  rd =  x-zp;
-        double  nsd = Math.pow(rd, 1.0 / gamma)/ Math.pow(mp - zp, 1.0 / gamma);
+        double  nsd = Math.pow(rd, invGamma)/ range;
         double pixValue = 255*nsd;
 
         return pixValue;
@@ -1145,9 +1512,10 @@ public class FitsRead implements Serializable {
      *   Since  mu_0 and a are constant, we can use just:
      *     mu =  asinh( flux/(2.0*b)) ) = asin(x/beta); where beta=2*b;
      * @param beta
+     * @param diff asinh( (maxFlux-minFlux)/beta ), the range of the values
      * @return
      */
-    private static double  getASinhStretchedPixelValue(double flux, double maxFlux, double minFlux, double beta)  {
+    private static double  getASinhStretchedPixelValue(double flux, double minFlux, double beta, double diff)  {
 
         /*
          Since the data range is from minFlux to maxFlux, we can shift the data to  the range [0 - (maxFlux-minFlux)].
@@ -1163,7 +1531,6 @@ public class FitsRead implements Serializable {
 
         //normalize to 0 - 255:  (nCorlor-1 )*(x - Min)/(Max - Min), 8 bit nCorlor=256
         //this formula is referred from IDL function: BYTSCL
-        double diff =   asinh ( (maxFlux-minFlux)/beta );
         return  255* asinhMagnitude/ diff ;
 
     }
@@ -1358,6 +1725,7 @@ public class FitsRead implements Serializable {
             hist_bin_values[i] = (float) hist.getDNfromBin(i);
         }
 
+        float[] float1d = getRawData();
         double slow = getSlow(rangeValues, float1d, imageHeader,hist);
         double shigh = getShigh(rangeValues, float1d, imageHeader, hist);
 
@@ -1421,11 +1789,52 @@ public class FitsRead implements Serializable {
 
         int index = yint * imageHeader.naxis1 + xint;
 
-        double raw_dn = float1d[index];
+        float[] data = float1d;
+        double raw_dn;
+        if (data == null && pixelReader != null) {
+            // the pixels have not been read, i.e. a plane of a cube that is not plotted, read only this one
+            try {
+                raw_dn = pixelReader.readPixel(xint, flipY ? imageHeader.naxis2 - yint - 1 : yint);
+            } catch (IOException e) {
+                throw new PixelValueException("could not read the pixel: " + e.getMessage());
+            }
+        }
+        else {
+            raw_dn = getRawData()[index];
+        }
         return getFlux(raw_dn, imageHeader);
 
     }
 
+    /**
+     * Get the flux at the given point of this plane of a cube and of the planes that follow it in the file, only
+     * reading that pixel of each plane.  Used by FitsImageCube, this FitsRead must read its pixels from the file lazily.
+     *
+     * @param ipt ImagePt coordinates
+     * @param planes the number of planes, starting with this one
+     */
+    double[] getFluxOfPlanes(ImagePt ipt, int planes)
+            throws PixelValueException {
+
+        int xint = (int) Math.round(ipt.getX() - 0.5);
+        int yint = (int) Math.round(ipt.getY() - 0.5);
+
+        if ((xint < 0) || (xint >= imageHeader.naxis1) ||
+                (yint < 0) || (yint >= imageHeader.naxis2)) {
+            throw new PixelValueException("location not on the image");
+        }
+
+        float[] raw;
+        try {
+            raw = pixelReader.readPixelOfPlanes(xint, flipY ? imageHeader.naxis2 - yint - 1 : yint, planes);
+        } catch (IOException e) {
+            throw new PixelValueException("could not read the pixel: " + e.getMessage());
+        }
+        double[] fluxes = new double[planes];
+        for (int z = 0; z < planes; z++) fluxes[z] = getFlux(raw[z], imageHeader);
+        return fluxes;
+    }
+
     /**
      *
      * @param raw_dn
@@ -1596,13 +2005,51 @@ public class FitsRead implements Serializable {
         return result;
     }
 
-    public boolean hasHdu() { return hdu!=null;}
+    public boolean hasHdu() { return hdu!=null || (pixelReader!=null && !hduCleared);}
 
     public BasicHDU getHDU() {
-        if (hdu==null) {
-            throw new IllegalArgumentException("HDU has been cleared, there is not longer access to it.");
+        BasicHDU retval;
+        boolean loaded= false;
+        Exception failure= null;
+        synchronized (this) {
+            if (hdu==null && pixelReader!=null && !hduCleared) {
+                try {
+                    hdu= readHDU();
+                    loaded= true;
+                } catch (FitsException|IOException e) {
+                    failure= e;
+                }
+            }
+            if (hdu==null && failure==null) {
+                throw new IllegalArgumentException("HDU has been cleared, there is not longer access to it.");
+            }
+            retval= hdu;
+        }
+        if (failure!=null) {
+            if (pixelLoadListener!=null) pixelLoadListener.pixelsFailed(this, failure);
+            throw new IllegalArgumentException("Could not read the HDU from "+ pixelReader.getFile().getPath(), failure);
+        }
+        if (loaded && pixelLoadListener!=null) pixelLoadListener.pixelsLoaded(this);
+        return retval;
+    }
+
+    /**
+     * read the hdu of an image that was read lazily, the same as the hdu from createFitsReadArray(Fits, boolean)
+     */
+    private ImageHDU readHDU() throws FitsException, IOException {
+        if (hduPos<0) { // a plane of a cube, its pixels as float
+            float[][] pixels= (float[][]) ArrayFuncs.curl(pixelReader.read(false),
+                                                          new int[] {imageHeader.naxis2, imageHeader.naxis1});
+            return new ImageHDU(header, new ImageData(pixels));
+        }
+        Fits fits= new Fits(pixelReader.getFile());
+        try {
+            ImageData data= (ImageData) fits.getHDU(hduPos).getData();
+            data.getData();   // read the data while the file is open
+            return new ImageHDU(header, data);
+        } finally {
+            fits.getStream().close();
         }
-        return hdu;
     }
 
 
@@ -1631,7 +2078,7 @@ public class FitsRead implements Serializable {
     }
 
 
-    private Histogram  computeHistogram() {
+    private Histogram  computeHistogram(float[] float1d) {
 
 
         double bscale = imageHeader.bscale;
@@ -1642,6 +2089,7 @@ public class FitsRead implements Serializable {
 
     }
     Histogram getHistogram() {
+     getRawData();
      return hist;
     }
 
@@ -1701,6 +2149,7 @@ public class FitsRead implements Serializable {
      */
     public float[] getDataFloat() {
 
+        float[] float1d = getRawData();
         float[] fData = new float[float1d.length];
 
         for (int i = 0; i < float1d.length; i++) {
@@ -1713,6 +2162,7 @@ public class FitsRead implements Serializable {
 
     public void freeResources() {
         float1d = null;
+        pixelReader = null;
         imageHeader = null;
         header = null;
 
@@ -1743,15 +2193,18 @@ public class FitsRead implements Serializable {
         createNewFits().write(new DataOutputStream(stream));
     }
 
-    public void clearHDU() { this.hdu= null; }
+    public synchronized void clearHDU() {
+        this.hdu= null;
+        this.hduCleared= true;
+    }
 
     public Fits createNewFits() throws FitsException, IOException {
 
         Fits outputFits = new Fits();
-        if (hdu==null) {
+        if (!hasHdu()) {
             throw new IOException("HDU has been clear, this FitsRead no longer supports re-writing the FITS file");
         }
-        outputFits.addHDU(hdu);
+        outputFits.addHDU(getHDU());
         return outputFits;
     }
 
@@ -1793,7 +2246,7 @@ public class FitsRead implements Serializable {
         Fits output_fits = new Fits();
         for(FitsRead fr : fitsReadAry) {
              BasicHDU  refHdu = refFits.getHDU(0);
-             ImageHDU imageHDU = new ImageHDU(refHdu.getHeader(),  fr.getImageData(refHdu, fr.float1d) );
+             ImageHDU imageHDU = new ImageHDU(refHdu.getHeader(),  fr.getImageData(refHdu, fr.getRawData()) );
             output_fits.addHDU(imageHDU);
         }
         output_fits.write(new DataOutputStream(stream));
@@ -20,6 +20,12 @@ import edu.caltech.ipac.visualize.plot.projection.Projection;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
 
 
 public class Geom {
@@ -68,6 +74,7 @@ public class Geom {
     double override_crota2;
     boolean n_override_crota2 = false;
     boolean progress_info = false;
+    ForkJoinPool pool = GEOM_POOL;     // the pool to compute on, or null to compute on the calling thread only
 
     /* fids */
     //int in_fid, out_fid, ref_fid;
@@ -121,20 +128,17 @@ public class Geom {
     /* buffers & such */
     private float blank_val = Float.NaN;
     //int stat;
-    private int n2;
     private Projection in_proj;
     private Projection out_proj;
     private CoordinateSys in_coordinate_sys;
     private CoordinateSys out_coordinate_sys;
     private float in_data[];
-    private double x_val[];
-    private double y_val[];
-    private double x_next[];
-    private double y_next[];
-    private double x_dd[];
-    private double y_dd[];
     private float out_data[];
-    float glop5;
+    private double tie_x[][];        // the input image coordinates of the tie points, by tie point line and pixel
+    private double tie_y[][];
+
+    private static final ForkJoinPool GEOM_POOL = ImagePlot.getCoreCnt() > 1 ? new ForkJoinPool(ImagePlot.getCoreCnt()) : null;
+    private static final Object CONVERT_LOCK = new Object();
 
 
     ImageHeader open_in(FitsRead inFitsRead) throws
@@ -766,58 +770,277 @@ public class Geom {
     }
 
 
-    int next_n2 = 0;
+    /**
+     * The rows of the output image, computed in order from the tie point lines.  Each GeomRows has its own
+     * buffers, so that several ranges of rows can be computed at the same time.
+     */
+    private class GeomRows {
+        private int n2;
+        private int next_n2 = 0;
+        private final double x_val[] = new double[out_naxis1];
+        private final double y_val[] = new double[out_naxis1];
+        private final double x_next[] = new double[out_naxis1];
+        private final double y_next[] = new double[out_naxis1];
+        private final double x_dd[] = new double[out_naxis1];
+        private final double y_dd[] = new double[out_naxis1];
+        float glop5;
+
+        /**
+         * compute and bin the rows first_n2 to end_n2-1.
+         * @param first_n2  0 or a tie point line that is more than one line after the tie point line before it
+         * @param end_n2    the row after the last one
+         * @param x_stale   if first_n2 is not 0, what x_next had before the tie point line at first_n2 was computed
+         *                  into it, see get_stale_lines
+         */
+        void compute_rows(int first_n2, int end_n2, double x_stale[]) {
+            if (first_n2 > 0) {
+                // the state compute_geom_line had when it got to first_n2, from the beginning
+                System.arraycopy(x_stale, 0, x_next, 0, out_naxis1);
+                compute_a_line(first_n2, x_next, y_next);
+                next_n2 = first_n2;
+            }
+            for (n2 = first_n2; n2 < end_n2; n2++) {
+                compute_geom_line();
 
-    private void compute_geom_line() {
-        float n2_interp;
-        int n1;
+                if (interp_flag)
+                    bin_bilinear();
+                else
+                    bin_nearest_neighbor();
+            }
+        }
 
-        if (n2 == 0) next_n2 = 0;
 
-        if (n2 == next_n2) {
-            if (n2 != 0) {
-                System.arraycopy(x_next, 0, x_val, 0, out_naxis1);
-                System.arraycopy(y_next, 0, y_val, 0, out_naxis1);
-            } else
-                compute_a_line(0, x_val, y_val);
-        }
+        private void compute_geom_line() {
+            float n2_interp;
+            int n1;
+
+            if (n2 == 0) next_n2 = 0;
 
-        if (n2 > next_n2) {
-            next_n2 += tie_skip;
-            if (next_n2 >= out_naxis2) next_n2 = out_naxis2 - 1;
-            compute_a_line(next_n2, x_next, y_next);
-            n2_interp = next_n2 - n2 + 1;
-            if (n2_interp > 0) for (n1 = 0; n1 < out_naxis1; n1++) {
-                if (x_val[n1] == x_val[n1] && x_next[n1] == x_next[n1]) {
-                    x_dd[n1] = (x_next[n1] - x_val[n1]) / n2_interp;
-                    y_dd[n1] = (y_next[n1] - y_val[n1]) / n2_interp;
-                    glop5 = n2_interp;  // this is here to combat an optimizer bug
-                } else x_dd[n1] = blank_val;
+            if (n2 == next_n2) {
+                if (n2 != 0) {
+                    System.arraycopy(x_next, 0, x_val, 0, out_naxis1);
+                    System.arraycopy(y_next, 0, y_val, 0, out_naxis1);
+                } else
+                    compute_a_line(0, x_val, y_val);
             }
-        }
 
-        if (n2 < next_n2) {
-            for (n1 = 0; n1 < out_naxis1; n1++)
-                if (x_dd[n1] == x_dd[n1]) {
-                    x_val[n1] = x_val[n1] + x_dd[n1];
-                    y_val[n1] = y_val[n1] + y_dd[n1];
+            if (n2 > next_n2) {
+                next_n2 += tie_skip;
+                if (next_n2 >= out_naxis2) next_n2 = out_naxis2 - 1;
+                compute_a_line(next_n2, x_next, y_next);
+                n2_interp = next_n2 - n2 + 1;
+                if (n2_interp > 0) for (n1 = 0; n1 < out_naxis1; n1++) {
+                    if (x_val[n1] == x_val[n1] && x_next[n1] == x_next[n1]) {
+                        x_dd[n1] = (x_next[n1] - x_val[n1]) / n2_interp;
+                        y_dd[n1] = (y_next[n1] - y_val[n1]) / n2_interp;
+                        glop5 = n2_interp;  // this is here to combat an optimizer bug
+                    } else x_dd[n1] = blank_val;
                 }
-        }
+            }
+
+            if (n2 < next_n2) {
+                for (n1 = 0; n1 < out_naxis1; n1++)
+                    if (x_dd[n1] == x_dd[n1]) {
+                        x_val[n1] = x_val[n1] + x_dd[n1];
+                        y_val[n1] = y_val[n1] + y_dd[n1];
+                    }
+            }
+
+        } /* end compute_geom_line */
+
+
+        private void bin_nearest_neighbor() {
+            double del_x, del_y;
+            int x_coord, y_coord;
+            int n1;
+            int index;
+            int out_index;
 
-    } /* end compute_geom_line */
+            del_x = in_crpix1 - 0.5;
+            del_y = in_crpix2 - 0.5;
 
+            for (n1 = 0; n1 < out_naxis1; n1++) {
 
+                out_index = n1 + n2 * out_naxis1;
+
+                if (x_val[n1] != x_val[n1]) {
+                    out_data[out_index] = blank_val;
+                    continue;
+                }
+                x_coord = (int) (x_val[n1] + del_x);
+                if (x_coord < 0 || x_coord >= in_naxis1) {
+                    out_data[out_index] = blank_val;
+                    continue;
+                }
+                y_coord = (int) (y_val[n1] + del_y);
+                if (y_coord < 0 || y_coord >= in_naxis2) {
+                    out_data[out_index] = blank_val;
+                    continue;
+                }
+                index = x_coord + y_coord * in_naxis1;
+                //System.out.println("x_coord = " + x_coord + "  y_coord = " + y_coord +
+                //    "   index = " + index + "  n1 = " + n1
+                //    + "  out_index = " + out_index);
+
+                out_data[out_index] = in_data[index];
+
+            } /* end for n1 */
+        } /* end bin_nearest_neighbor */
+
+
+        private void bin_bilinear() {
+            double min_x_inside, min_y_inside;
+            double max_x_inside, max_y_inside;
+            double del_x, del_y;
+            double x_float, y_float;
+            double x_frac, y_frac;
+            int x_coord, y_coord;
+            //float *ptr_00, *ptr_10, *ptr_01, *ptr_11;
+            int ptr_00, ptr_10, ptr_01, ptr_11;
+            double wgt_00, wgt_10, wgt_01, wgt_11;
+            double weight;
+            double sum;
+            int n1;
+            int index;
+            int out_index;
+   
+       /* compute constants */
+            min_x_inside = min_wgt - in_crpix1;
+            min_y_inside = min_wgt - in_crpix2;
+            max_x_inside = 1.0 + in_naxis1 - min_wgt - in_crpix1;
+            max_y_inside = 1.0 + in_naxis2 - min_wgt - in_crpix2;
+
+            del_x = in_crpix1 - 1.0;
+            del_y = in_crpix2 - 1.0;
+
+            for (n1 = 0; n1 < out_naxis1; n1++) {
+
+                out_index = n1 + n2 * out_naxis1;
+
+                if (x_val[n1] != x_val[n1]) {
+                    out_data[out_index] = blank_val;
+                    continue;
+                }
+                if (x_val[n1] < min_x_inside || x_val[n1] > max_x_inside) {
+                    out_data[out_index] = blank_val;
+                    continue;
+                }
+                if (y_val[n1] < min_y_inside || y_val[n1] > max_y_inside) {
+                    out_data[out_index] = blank_val;
+                    continue;
+                }
+
+                x_float = x_val[n1] + del_x;
+                if (x_float > 0) x_coord = (int) x_float;
+                else x_coord = (int) x_float + 1;
+                x_frac = x_float - x_coord;
+
+                y_float = y_val[n1] + del_y;
+                if (y_float > 0) y_coord = (int) y_float;
+                else y_coord = (int) y_float + 1;
+                y_frac = y_float - y_coord;
+
+                index = x_coord + y_coord * in_naxis1;
+                ptr_00 = index;
+                ptr_10 = ptr_00 + 1;
+                ptr_01 = ptr_00 + in_naxis1;
+                ptr_11 = ptr_01 + 1;
+
+                wgt_11 = x_frac * y_frac;
+                wgt_01 = y_frac - wgt_11;
+                wgt_10 = x_frac - wgt_11;
+                wgt_00 = 1.0 - y_frac - wgt_10;
+
+                if (x_coord < 0) {
+                    ptr_00 = -1;
+                    ptr_01 = -1;
+                } else if (x_coord >= in_naxis1) {
+                    ptr_10 = -1;
+                    ptr_11 = -1;
+                }
+                if (y_coord < 0) {
+                    ptr_00 = -1;
+                    ptr_10 = -1;
+                } else if (y_coord >= in_naxis2) {
+                    ptr_01 = -1;
+                    ptr_11 = -1;
+                }
+
+                try {
+                    if ((ptr_00 < 0) || (ptr_00 >= in_data.length) ||
+                            (Double.isNaN(in_data[ptr_00])))
+                        ptr_00 = -1;
+                    if ((ptr_01 < 0) || (ptr_01 >= in_data.length) ||
+                            (Double.isNaN(in_data[ptr_01])))
+                        ptr_01 = -1;
+                    if ((ptr_10 < 0) || (ptr_10 >= in_data.length) ||
+                            (Double.isNaN(in_data[ptr_10])))
+                        ptr_10 = -1;
+                    if ((ptr_11 < 0) || (ptr_11 >= in_data.length) ||
+                            (Double.isNaN(in_data[ptr_11])))
+                        ptr_11 = -1;
+                } catch (ArrayIndexOutOfBoundsException ae) {
+                    if (SUTDebug.isDebug()) {
+                        System.out.println("ArrayIndexOutOfBoundsException index = " +
+                                index + "  ptr_01 = " + ptr_01);
+                    }
+                    throw ae;
+                }
+
+                sum = 0.0;
+                weight = 1.0;
+                if (ptr_00 >= 0) sum += in_data[ptr_00] * wgt_00;
+                else weight -= wgt_00;
+                if (ptr_10 >= 0) sum += in_data[ptr_10] * wgt_10;
+                else weight -= wgt_10;
+                if (ptr_01 >= 0) sum += in_data[ptr_01] * wgt_01;
+                else weight -= wgt_01;
+                if (ptr_11 >= 0) sum += in_data[ptr_11] * wgt_11;
+                else weight -= wgt_11;
+
+                if (weight >= min_wgt) out_data[out_index] = (float) (sum / weight);
+                else out_data[out_index] = blank_val;
+
+
+    /* +++++++++++++++++++++++++++++++++++++
+    if (n1==0)  {
+    printf("n1= %d  n2=%d\n",n1,n2);
+    printf("x_val[n1] = %f   y_val[n1] = %f\n",x_val[n1],y_val[n1]);
+    printf("x_float = %f   y_float = %f\n",x_float,y_float);
+    printf("x_coord = %d   y_coord = %d\n",x_coord,y_coord);
+    printf("x_frac = %f   y_frac = %f\n",x_frac,y_frac);
+    printf("ptr_00=%d  ptr_01=%d  ptr_10=%d  ptr_11=%d\n",
+      ptr_00,ptr_01,ptr_10,ptr_11);
+    printf("*ptr_00=%g  *ptr_01=%g  *ptr_10=%g  *ptr_11=%g\n",
+      *ptr_00,*ptr_01,*ptr_10,*ptr_11);
+    printf("wgt_00=%f  wgt_01=%f  wgt_10=%f  wgt_11=%f\n",
+      wgt_00,wgt_01,wgt_10,wgt_11);
+    printf("sum = %g   weight = %f   out_data[n1] = %g\n",
+       sum, weight, out_data[n1]);
+    }
+    ++++++++++++++++++++++++++++++++ */
+
+
+            } /* end for n1 */
+
+        } /* end bin_bilinear */
+    }
+
+
+    /**
+     * Fill a line from its tie points, interpolating the pixels between them.
+     * Note that the test of local_x_dd[n1] below is done before local_x_dd[n1] is set, so the line depends on
+     * the values that were in the array before, i.e. on the line that was computed into it before.
+     * See get_stale_lines.
+     */
     private void compute_a_line(int local_n2,
                                 double local_x_dd[], double local_y_dd[]) {
         int next_n1;
         int n1;
-        int stat;
+        int tie_n1;
+        int tie_n2 = tie_index(local_n2);
         double x_del = Double.NaN, y_del = Double.NaN;
         double n1_interp;
-        double tmp_x, tmp_y;
-        double lon, lat;
-        ProjectionPt image_pt;
-        WorldPt world_pt;
 
         next_n1 = -tie_skip;
         for (n1 = 0; n1 < out_naxis1; n1++) {
@@ -826,43 +1049,10 @@ public class Geom {
 	    /* compute via map functions */
                 next_n1 += tie_skip;
                 if (next_n1 >= out_naxis1) next_n1 = out_naxis1 - 1;
-                tmp_x = next_n1 + 1;
-                tmp_y = local_n2 + 1;
-
-                try {
-                    //System.out.println("in = " + tmp_x + "," + tmp_y);
-                    world_pt = out_proj.getWorldCoords(tmp_x - 1, tmp_y - 1);
-                    //System.out.println("RBH PRE lon = " + world_pt.getX()
-                    //    + "  lat = " + world_pt.getY());
-                    //System.out.println(
-                    //    "RBH out_coordinate_sys = " + out_coordinate_sys +
-                    //    "  in_coordinate_sys = " + in_coordinate_sys);
-                    if (!out_coordinate_sys.equals(in_coordinate_sys)) {
-                        world_pt = Plot.convert(world_pt, in_coordinate_sys);
-                    }
-                    lon = world_pt.getX();
-                    lat = world_pt.getY();
-                    //System.out.println("RBH POST lon = " + lon + "  lat = " + lat);
-                    image_pt = in_proj.getImageCoords(lon, lat);
-                    tmp_x = image_pt.getFsamp() + 1;
-                    tmp_y = image_pt.getFline() + 1;
-                    stat = 0;
-                    //System.out.println("out = " + tmp_x + "," + tmp_y);
-                } catch (ProjectionException pe) {
-                    if (SUTDebug.isDebug()) {
-                        System.out.println("got ProjectionException: " +
-                                pe.getMessage());
-                    }
-                    stat = 1;
-                }
-	    /* printf(" out=%f,%f stat=%d\n",tmp_x,tmp_y,stat); */
-                if (stat == 0) {
-                    local_x_dd[next_n1] = tmp_x;
-                    local_y_dd[next_n1] = tmp_y;
-                } else {
-                    local_x_dd[next_n1] = blank_val;
-                    local_y_dd[next_n1] = blank_val;
-                }
+                /* the tie point, computed by compute_tie_line */
+                tie_n1 = tie_index(next_n1);
+                local_x_dd[next_n1] = tie_x[tie_n2][tie_n1];
+                local_y_dd[next_n1] = tie_y[tie_n2][tie_n1];
 
                 n1_interp = next_n1 - n1 + 1; /* compute delt pix-to-pix */
                 if ((n1_interp > 0.0) && (n1 > 0)) {
@@ -892,181 +1082,112 @@ public class Geom {
     } /* END OF compute_a_line */
 
 
-    private void bin_nearest_neighbor() {
-        double del_x, del_y;
-        int x_coord, y_coord;
-        int n1;
-        int index;
-        int out_index;
-
-        del_x = in_crpix1 - 0.5;
-        del_y = in_crpix2 - 0.5;
-
-        for (n1 = 0; n1 < out_naxis1; n1++) {
-
-            out_index = n1 + n2 * out_naxis1;
-
-            if (x_val[n1] != x_val[n1]) {
-                out_data[out_index] = blank_val;
-                continue;
-            }
-            x_coord = (int) (x_val[n1] + del_x);
-            if (x_coord < 0 || x_coord >= in_naxis1) {
-                out_data[out_index] = blank_val;
-                continue;
-            }
-            y_coord = (int) (y_val[n1] + del_y);
-            if (y_coord < 0 || y_coord >= in_naxis2) {
-                out_data[out_index] = blank_val;
-                continue;
-            }
-            index = x_coord + y_coord * in_naxis1;
-            //System.out.println("x_coord = " + x_coord + "  y_coord = " + y_coord +
-            //    "   index = " + index + "  n1 = " + n1
-            //    + "  out_index = " + out_index);
-
-            out_data[out_index] = in_data[index];
-
-        } /* end for n1 */
-    } /* end bin_nearest_neighbor */
-
-
-    private void bin_bilinear() {
-        double min_x_inside, min_y_inside;
-        double max_x_inside, max_y_inside;
-        double del_x, del_y;
-        double x_float, y_float;
-        double x_frac, y_frac;
-        int x_coord, y_coord;
-        //float *ptr_00, *ptr_10, *ptr_01, *ptr_11;
-        int ptr_00, ptr_10, ptr_01, ptr_11;
-        double wgt_00, wgt_10, wgt_01, wgt_11;
-        double weight;
-        double sum;
-        int n1;
-        int index;
-        int out_index;
-   
-   /* compute constants */
-        min_x_inside = min_wgt - in_crpix1;
-        min_y_inside = min_wgt - in_crpix2;
-        max_x_inside = 1.0 + in_naxis1 - min_wgt - in_crpix1;
-        max_y_inside = 1.0 + in_naxis2 - min_wgt - in_crpix2;
-
-        del_x = in_crpix1 - 1.0;
-        del_y = in_crpix2 - 1.0;
-
-        for (n1 = 0; n1 < out_naxis1; n1++) {
-
-            out_index = n1 + n2 * out_naxis1;
+    /**
+     * Compute the input image coordinates of the tie points of a tie point line.  A tie point is every tie_skip'th
+     * pixel of every tie_skip'th line of the output image, plus the last pixel and the last line.
+     * The projections keep no state between calls, so several lines can be computed at the same time.
+     * The coordinate conversions keep state in static fields, so they are done one at a time.
+     */
+    private void compute_tie_line(int tie_n2) {
+        int local_n2 = tie_position(tie_n2, out_naxis2);
+        boolean convert = !out_coordinate_sys.equals(in_coordinate_sys);
+        double tmp_x, tmp_y;
+        ProjectionPt image_pt;
+        WorldPt world_pt;
 
-            if (x_val[n1] != x_val[n1]) {
-                out_data[out_index] = blank_val;
-                continue;
-            }
-            if (x_val[n1] < min_x_inside || x_val[n1] > max_x_inside) {
-                out_data[out_index] = blank_val;
-                continue;
-            }
-            if (y_val[n1] < min_y_inside || y_val[n1] > max_y_inside) {
-                out_data[out_index] = blank_val;
-                continue;
+        for (int tie_n1 = 0; tie_n1 < tie_x[tie_n2].length; tie_n1++) {
+            tmp_x = tie_position(tie_n1, out_naxis1) + 1;
+            tmp_y = local_n2 + 1;
+            try {
+                world_pt = out_proj.getWorldCoords(tmp_x - 1, tmp_y - 1);
+                if (convert) {
+                    synchronized (CONVERT_LOCK) {
+                        world_pt = Plot.convert(world_pt, in_coordinate_sys);
+                    }
+                }
+                image_pt = in_proj.getImageCoords(world_pt.getX(), world_pt.getY());
+                tie_x[tie_n2][tie_n1] = image_pt.getFsamp() + 1;
+                tie_y[tie_n2][tie_n1] = image_pt.getFline() + 1;
+            } catch (ProjectionException pe) {
+                if (SUTDebug.isDebug()) {
+                    System.out.println("got ProjectionException: " +
+                            pe.getMessage());
+                }
+                tie_x[tie_n2][tie_n1] = blank_val;
+                tie_y[tie_n2][tie_n1] = blank_val;
             }
+        }
+    }
 
-            x_float = x_val[n1] + del_x;
-            if (x_float > 0) x_coord = (int) x_float;
-            else x_coord = (int) x_float + 1;
-            x_frac = x_float - x_coord;
-
-            y_float = y_val[n1] + del_y;
-            if (y_float > 0) y_coord = (int) y_float;
-            else y_coord = (int) y_float + 1;
-            y_frac = y_float - y_coord;
-
-            index = x_coord + y_coord * in_naxis1;
-            ptr_00 = index;
-            ptr_10 = ptr_00 + 1;
-            ptr_01 = ptr_00 + in_naxis1;
-            ptr_11 = ptr_01 + 1;
-
-            wgt_11 = x_frac * y_frac;
-            wgt_01 = y_frac - wgt_11;
-            wgt_10 = x_frac - wgt_11;
-            wgt_00 = 1.0 - y_frac - wgt_10;
-
-            if (x_coord < 0) {
-                ptr_00 = -1;
-                ptr_01 = -1;
-            } else if (x_coord >= in_naxis1) {
-                ptr_10 = -1;
-                ptr_11 = -1;
-            }
-            if (y_coord < 0) {
-                ptr_00 = -1;
-                ptr_10 = -1;
-            } else if (y_coord >= in_naxis2) {
-                ptr_01 = -1;
-                ptr_11 = -1;
+    /**
+     * Split the rows into blocks to compute at the same time.  A block starts at line 0 or at a tie point line
+     * more than one line after the one before it, where compute_geom_line starts over from the new tie point line.
+     * @return the index of the first tie point line of each block
+     */
+    private int[] get_block_starts(int tie_lines) {
+        int blocks = pool == null ? 1 : Math.min(tie_lines, pool.getParallelism() * 4);
+        int tie_lines_per_block = (tie_lines + blocks - 1) / blocks;
+        int starts[] = new int[blocks];
+        int cnt = 0;
+        for (int tie_n2 = 0; tie_n2 < tie_lines; tie_n2 += tie_lines_per_block) {
+            if (tie_n2 == 0 ||
+                    tie_position(tie_n2, out_naxis2) - tie_position(tie_n2 - 1, out_naxis2) > 1) {
+                starts[cnt++] = tie_n2;
             }
+        }
+        return Arrays.copyOf(starts, cnt);
+    }
 
-            try {
-                if ((ptr_00 < 0) || (ptr_00 >= in_data.length) ||
-                        (Double.isNaN(in_data[ptr_00])))
-                    ptr_00 = -1;
-                if ((ptr_01 < 0) || (ptr_01 >= in_data.length) ||
-                        (Double.isNaN(in_data[ptr_01])))
-                    ptr_01 = -1;
-                if ((ptr_10 < 0) || (ptr_10 >= in_data.length) ||
-                        (Double.isNaN(in_data[ptr_10])))
-                    ptr_10 = -1;
-                if ((ptr_11 < 0) || (ptr_11 >= in_data.length) ||
-                        (Double.isNaN(in_data[ptr_11])))
-                    ptr_11 = -1;
-            } catch (ArrayIndexOutOfBoundsException ae) {
-                if (SUTDebug.isDebug()) {
-                    System.out.println("ArrayIndexOutOfBoundsException index = " +
-                            index + "  ptr_01 = " + ptr_01);
-                }
-                throw ae;
+    /**
+     * Sequentially, as compute_geom_line would, compute the tie point lines into one array, to get what the array
+     * has before the first tie point line of each block is computed.  This is cheap next to the projections and
+     * the binning.  Line 0 is computed into x_val and line 1 into a new x_next, so both start from zeros.
+     */
+    private double[][] get_stale_lines(int block_starts[]) {
+        double x_stale[][] = new double[block_starts.length][];
+        double x_line[] = new double[out_naxis1];
+        double y_line[] = new double[out_naxis1];
+        int tie_n2 = 1;
+        for (int i = 0; i < block_starts.length; i++) {
+            if (block_starts[i] == 0) continue;
+            for (; tie_n2 < block_starts[i]; tie_n2++) {
+                compute_a_line(tie_position(tie_n2, out_naxis2), x_line, y_line);
             }
+            x_stale[i] = x_line.clone();
+        }
+        return x_stale;
+    }
 
-            sum = 0.0;
-            weight = 1.0;
-            if (ptr_00 >= 0) sum += in_data[ptr_00] * wgt_00;
-            else weight -= wgt_00;
-            if (ptr_10 >= 0) sum += in_data[ptr_10] * wgt_10;
-            else weight -= wgt_10;
-            if (ptr_01 >= 0) sum += in_data[ptr_01] * wgt_01;
-            else weight -= wgt_01;
-            if (ptr_11 >= 0) sum += in_data[ptr_11] * wgt_11;
-            else weight -= wgt_11;
-
-            if (weight >= min_wgt) out_data[out_index] = (float) (sum / weight);
-            else out_data[out_index] = blank_val;
-
-
-/* +++++++++++++++++++++++++++++++++++++
-if (n1==0)  {
-printf("n1= %d  n2=%d\n",n1,n2);
-printf("x_val[n1] = %f   y_val[n1] = %f\n",x_val[n1],y_val[n1]);
-printf("x_float = %f   y_float = %f\n",x_float,y_float);
-printf("x_coord = %d   y_coord = %d\n",x_coord,y_coord);
-printf("x_frac = %f   y_frac = %f\n",x_frac,y_frac);
-printf("ptr_00=%d  ptr_01=%d  ptr_10=%d  ptr_11=%d\n",
-  ptr_00,ptr_01,ptr_10,ptr_11);
-printf("*ptr_00=%g  *ptr_01=%g  *ptr_10=%g  *ptr_11=%g\n",
-  *ptr_00,*ptr_01,*ptr_10,*ptr_11);
-printf("wgt_00=%f  wgt_01=%f  wgt_10=%f  wgt_11=%f\n",
-  wgt_00,wgt_01,wgt_10,wgt_11);
-printf("sum = %g   weight = %f   out_data[n1] = %g\n",
-   sum, weight, out_data[n1]);
-}
-++++++++++++++++++++++++++++++++ */
+    /**
+     * @return the index of the tie point line or pixel at n, which is a multiple of tie_skip or the last one
+     */
+    private int tie_index(int n) {
+        return (n + tie_skip - 1) / tie_skip;
+    }
 
+    private int tie_position(int tie_index, int naxis) {
+        return Math.min(tie_index * tie_skip, naxis - 1);
+    }
 
-        } /* end for n1 */
+    private int tie_count(int naxis) {
+        return tie_index(naxis - 1) + 1;
+    }
 
-    } /* end bin_bilinear */
+    /**
+     * call task for 0 to cnt-1, at the same time in pool if there is one
+     */
+    private void run_all(int cnt, IntConsumer task) {
+        if (pool == null || cnt < 2) {
+            for (int i = 0; i < cnt; i++) task.accept(i);
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(cnt);
+        for (int i = 0; i < cnt; i++) {
+            int idx = i;
+            tasks.add(ForkJoinTask.adapt(() -> task.accept(idx)));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
 
 
     /**
@@ -1574,24 +1695,21 @@ printf("sum = %g   weight = %f   out_data[n1] = %g\n",
         out_proj = out_header.createProjection(out_coordinate_sys);
 
         out_data = new float[out_naxis1 * out_naxis2];
-        x_val = new double[out_naxis1];
-        y_val = new double[out_naxis1];
-        x_next = new double[out_naxis1];
-        y_next = new double[out_naxis1];
-        x_dd = new double[out_naxis1];
-        y_dd = new double[out_naxis1];
 
-
-        for (n2 = 0; n2 < out_naxis2; n2++) {
-            compute_geom_line();
-
-            if (interp_flag)
-                bin_bilinear();
-            else
-                bin_nearest_neighbor();
-
-            //im_wpix_r(out_fid, out_data, out_naxis1);
-        }
+        /* project the tie points, then bin blocks of rows, both on all of the cores */
+        int tie_lines = tie_count(out_naxis2);
+        tie_x = new double[tie_lines][tie_count(out_naxis1)];
+        tie_y = new double[tie_lines][tie_count(out_naxis1)];
+        run_all(tie_lines, this::compute_tie_line);
+
+        int block_starts[] = get_block_starts(tie_lines);
+        double x_stale[][] = get_stale_lines(block_starts);
+        run_all(block_starts.length, i -> {
+            int end_n2 = i + 1 < block_starts.length ? tie_position(block_starts[i + 1], out_naxis2) : out_naxis2;
+            new GeomRows().compute_rows(tie_position(block_starts[i], out_naxis2), end_n2, x_stale[i]);
+        });
+        tie_x = null;
+        tie_y = null;
 
         Fits newFits = write_pixels();
 
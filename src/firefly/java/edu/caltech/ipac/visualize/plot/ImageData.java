@@ -3,6 +3,7 @@
  */
 package edu.caltech.ipac.visualize.plot;
 
+import edu.caltech.ipac.util.AppProperties;
 import edu.caltech.ipac.util.Assert;
 import nom.tam.fits.FitsException;
 
@@ -13,7 +14,10 @@ import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.io.Serializable;
+import java.lang.ref.SoftReference;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -45,7 +49,13 @@ public class ImageData implements Serializable {
 
     private WritableRaster  _raster; // currently only used with 24 bit images
 
-   
+    /**
+     * The last few stretches of each band, keyed by band index and RangeValues, so that going back to a recent
+     * stretch only copies the bytes.  The values are soft references, so they are dropped when memory is short.
+     */
+    private static final int STRETCH_CACHE_SIZE= AppProperties.getIntProperty("ImageData.stretchCache.size", 4);
+    private transient Map<String,SoftReference<byte[]>> stretchCache;
+
 
     public ImageData(FitsRead fitsReadAry[],
                      ImageType imageType,
@@ -121,6 +131,7 @@ public class ImageData implements Serializable {
         _bufferedImage= null;
         _raster= null;
         _imageOutOfDate= true;
+        clearStretchCache();
     }
 
     public int getX() { return _x;}
@@ -144,7 +155,13 @@ public class ImageData implements Serializable {
     public void setColorModel(IndexColorModel color_model) {
         _colorTableID= -1;
         _cm=color_model;
-        _imageOutOfDate=true;
+        if (_raster==null && _bufferedImage!=null && !_imageOutOfDate) {
+            // the stretched bytes of an 8 bit image do not depend on the color model, only the image is replaced
+            _bufferedImage= new BufferedImage(_cm, _bufferedImage.getRaster(), false, null);
+        }
+        else {
+            _imageOutOfDate=true;
+        }
     }
 
     public int getColorTableId() { return _colorTableID; }
@@ -163,6 +180,7 @@ public class ImageData implements Serializable {
 
     public void markImageOutOfDate() {
         _imageOutOfDate= true;
+        clearStretchCache(); // the bands may have changed
     }
 
     public boolean isImageOutOfDate() { return _imageOutOfDate; }
@@ -190,19 +208,57 @@ public class ImageData implements Serializable {
             _idx = idx;
 
             if (force) {
-                fitsReadAry[idx].doStretch(rangeValues, getDataArray(idx),
-                             mapBlankPixelToZero, _x, _lastPixel, _y, _lastLine);
+                stretch(fitsReadAry[idx], idx, rangeValues, getDataArray(idx), mapBlankPixelToZero);
             }
         }
         else {
-            fitsReadAry[idx].doStretch(updatedRangeValues, getDataArray(idx),
-                                       mapBlankPixelToZero, _x, _lastPixel, _y, _lastLine);
+            stretch(fitsReadAry[idx], idx, updatedRangeValues, getDataArray(idx), mapBlankPixelToZero);
         }
         inUseCnt.decrementAndGet();
     }
 
 
 
+    /**
+     * Stretch a band into pixelData, or copy the bytes of the same stretch from the cache.
+     */
+    private void stretch(FitsRead fr, int idx, RangeValues rv, byte[] pixelData, boolean mapBlankPixelToZero) {
+        String key= idx + ":" + rv.serialize() + "," + rv.getBias() + "," + rv.getContrast();
+        byte[] cached= null;
+        synchronized (this) {
+            SoftReference<byte[]> ref= getStretchCache().get(key);
+            if (ref!=null) cached= ref.get();
+        }
+        if (cached!=null && cached.length==pixelData.length) {
+            System.arraycopy(cached, 0, pixelData, 0, pixelData.length);
+            return;
+        }
+        fr.doStretch(rv, pixelData, mapBlankPixelToZero, _x, _lastPixel, _y, _lastLine);
+        if (STRETCH_CACHE_SIZE>0) {
+            byte[] copy= pixelData.clone();
+            synchronized (this) {
+                getStretchCache().put(key, new SoftReference<>(copy));
+            }
+        }
+    }
+
+    private synchronized Map<String,SoftReference<byte[]>> getStretchCache() {
+        if (stretchCache==null) {
+            stretchCache= new LinkedHashMap<String,SoftReference<byte[]>>(16, .75F, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String,SoftReference<byte[]>> eldest) {
+                    return size() > STRETCH_CACHE_SIZE;
+                }
+            };
+        }
+        return stretchCache;
+    }
+
+    private synchronized void clearStretchCache() {
+        if (stretchCache!=null) stretchCache.clear();
+    }
+
+
    // Testing Mask 07/16/16 LZ
     /**
      * Build a dynamic IndexColorModel which contains the colors defined in the imageMask array plus a white background color.
@@ -261,7 +317,7 @@ public class ImageData implements Serializable {
 
                 _bufferedImage = new BufferedImage(_width, _height,
                 BufferedImage.TYPE_BYTE_INDEXED, _cm);
-                fitsReadAry[0].doStretch(rangeValues, getDataArray(0), false, _x, _lastPixel, _y, _lastLine);
+                stretch(fitsReadAry[0], 0, rangeValues, getDataArray(0), false);
 
 
             }
@@ -274,7 +330,7 @@ public class ImageData implements Serializable {
                 if (i!=_idx) continue;
                 byte array[]= getDataArray(i);
                 if(fitsReadAry[i]!=null) {
-                    fitsReadAry[i].doStretch(rangeValues, array,true, _x,_lastPixel, _y, _lastLine);
+                    stretch(fitsReadAry[i], i, rangeValues, array, true);
                 }
                 else {
                     for(int j=0; j<array.length; j++) array[j]= 0;
@@ -238,6 +238,11 @@ public class ImagePlot extends Plot implements Serializable {
         g2.setTransform(saveStuff._trans);
     }
 
+    /**
+     * @return the number of threads to use for cpu bound work on a plot, such as creating its images
+     */
+    public static int getCoreCnt() { return CORE_CNT; }
+
     public void preProcessImageTiles(final ActiveFitsReadGroup frGroup) {
         if (_imageData.isUpToDate()) return;
         synchronized (this) {
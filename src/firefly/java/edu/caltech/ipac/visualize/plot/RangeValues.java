@@ -229,6 +229,9 @@ public class RangeValues implements Cloneable, Serializable {
 
     public int getStretchAlgorithm() { return _algorithm; }
 
+    public double getBias() { return _bias; }
+    public double getContrast() { return _contrast; }
+
     public byte computeBiasAndContrast(byte data) {
         short value = data>=0?data:(short)(2*(Byte.MAX_VALUE+1)+data);
         short offset = (short)(Byte.MAX_VALUE*(_bias-0.5)*-4);
@@ -0,0 +1,295 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.visualize.plot.output;
+
+import edu.caltech.ipac.util.AppProperties;
+import edu.caltech.ipac.util.StringUtils;
+
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes 8 bit, indexed color images, i.e. the tiles of a plot, as PNG.
+ *
+ * This does less than the ImageIO PNG writer: no metadata, no interlacing and only images of TYPE_BYTE_INDEXED.
+ * The palette is written from the image's IndexColorModel, with a tRNS chunk if the color model has alpha.
+ * The deflate level and the row filter can be set, and each thread reuses its own Deflater.
+ *
+ * The defaults come from the properties PlotOutput.png.deflate.level (0-9) and PlotOutput.png.filter
+ * (NONE, SUB, UP, AVERAGE, PAETH or ADAPTIVE), values that are not valid are ignored.  The color tables of plots
+ * are mostly ramps, so neighboring indices usually have similar colors, and UP compresses tiles better than no filter,
+ * which PNG recommends for indexed images.
+ */
+public class IndexedPngEncoder {
+
+    public enum Filter {NONE, SUB, UP, AVERAGE, PAETH, ADAPTIVE}
+
+    public static final int DEF_LEVEL = toLevel(AppProperties.getIntProperty("PlotOutput.png.deflate.level", 4));
+    public static final Filter DEF_FILTER = toFilter(AppProperties.getProperty("PlotOutput.png.filter"));
+
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int IDAT_SIZE = 64 * 1024;
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(Deflater::new);
+
+    private final int level;
+    private final Filter filter;
+
+    public IndexedPngEncoder() { this(DEF_LEVEL, DEF_FILTER); }
+
+    /**
+     * @param level     deflate level, 0 (none) to 9 (best compression)
+     * @param filter    the filter applied to each row before it is compressed
+     */
+    public IndexedPngEncoder(int level, Filter filter) {
+        this.level = level;
+        this.filter = filter;
+    }
+
+    /**
+     * @return the given deflate level, or 4 if it is not between 0 and 9
+     */
+    static int toLevel(int level) {
+        return level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION ? level : 4;
+    }
+
+    /**
+     * @return the filter of the given name, in any case, or UP if there is no such filter
+     */
+    static Filter toFilter(String name) {
+        return StringUtils.getEnum(name == null ? null : name.trim().toUpperCase(), Filter.UP);
+    }
+
+    /**
+     * @return true if the image can be encoded by this class
+     */
+    public static boolean canEncode(BufferedImage image) {
+        return image.getType() == BufferedImage.TYPE_BYTE_INDEXED &&
+               image.getColorModel() instanceof IndexColorModel &&
+               image.getColorModel().getPixelSize() == 8;
+    }
+
+    /**
+     * Convert an RGB image whose pixels all have colors of the given color model, i.e. a tile of an 8 bit plot
+     * drawn without overlays, to an indexed image of that color model.  Each color is mapped to its exact
+     * index, so no color is changed.
+     * @param image     an image of TYPE_INT_RGB
+     * @param cm        the color model of the plot
+     * @return the indexed image, or null if a pixel has a color that is not an opaque color of cm
+     */
+    public static BufferedImage toIndexedImage(BufferedImage image, IndexColorModel cm) {
+        if (cm.getPixelSize() != 8 || image.getType() != BufferedImage.TYPE_INT_RGB) {
+            return null;
+        }
+
+        // open addressing table of rgb -> index, for the opaque colors of cm
+        int[] keys = new int[1024];
+        int[] values = new int[1024];
+        Arrays.fill(keys, -1);
+        for (int i = cm.getMapSize() - 1; i >= 0; i--) {        // so that the first of duplicate colors is kept
+            if (cm.getAlpha(i) != 255) continue;
+            int rgb = cm.getRGB(i) & 0xffffff;
+            int slot = hash(rgb);
+            while (keys[slot] != -1 && keys[slot] != rgb) slot = (slot + 1) & (keys.length - 1);
+            keys[slot] = rgb;
+            values[slot] = i;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage indexed = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, cm);
+        int[] rgbRow = new int[width];
+        byte[] idxRow = new byte[width];
+        Raster src = image.getRaster();
+        int lastRgb = -1;
+        int lastIdx = 0;
+        for (int y = 0; y < height; y++) {
+            src.getDataElements(0, y, width, 1, rgbRow);
+            for (int x = 0; x < width; x++) {
+                int rgb = rgbRow[x] & 0xffffff;
+                if (rgb != lastRgb) {
+                    int slot = hash(rgb);
+                    while (keys[slot] != rgb) {
+                        if (keys[slot] == -1) return null;
+                        slot = (slot + 1) & (keys.length - 1);
+                    }
+                    lastRgb = rgb;
+                    lastIdx = values[slot];
+                }
+                idxRow[x] = (byte) lastIdx;
+            }
+            indexed.getRaster().setDataElements(0, y, width, 1, idxRow);
+        }
+        return indexed;
+    }
+
+    /**
+     * write the image as PNG.
+     * @param image     an image of TYPE_BYTE_INDEXED
+     * @param out       the stream to write to.  it is not closed.
+     * @throws IOException
+     */
+    public void write(BufferedImage image, OutputStream out) throws IOException {
+        if (!canEncode(image)) {
+            throw new IllegalArgumentException("image must be TYPE_BYTE_INDEXED with an 8 bit IndexColorModel");
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        IndexColorModel cm = (IndexColorModel) image.getColorModel();
+
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.write(SIGNATURE);
+
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(IDAT_SIZE);
+        DataOutputStream cout = new DataOutputStream(chunk);
+        cout.writeInt(width);
+        cout.writeInt(height);
+        cout.writeByte(8);          // bit depth
+        cout.writeByte(3);          // color type: indexed
+        cout.writeByte(0);          // compression
+        cout.writeByte(0);          // filter method
+        cout.writeByte(0);          // no interlace
+        writeChunk(dout, "IHDR", chunk.toByteArray(), chunk.size());
+
+        int mapSize = cm.getMapSize();
+        chunk.reset();
+        for (int i = 0; i < mapSize; i++) {
+            chunk.write(cm.getRed(i));
+            chunk.write(cm.getGreen(i));
+            chunk.write(cm.getBlue(i));
+        }
+        writeChunk(dout, "PLTE", chunk.toByteArray(), chunk.size());
+
+        if (cm.getTransparency() != Transparency.OPAQUE) {
+            int last = -1;                      // trailing opaque entries can be left out
+            for (int i = 0; i < mapSize; i++) {
+                if (cm.getAlpha(i) != 255) last = i;
+            }
+            if (last >= 0) {
+                chunk.reset();
+                for (int i = 0; i <= last; i++) chunk.write(cm.getAlpha(i));
+                writeChunk(dout, "tRNS", chunk.toByteArray(), chunk.size());
+            }
+        }
+
+        writeImageData(dout, image.getRaster(), width, height);
+        writeChunk(dout, "IEND", new byte[0], 0);
+        dout.flush();
+    }
+
+//====================================================================
+//
+//====================================================================
+
+    private void writeImageData(DataOutputStream out, Raster raster, int width, int height) throws IOException {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setStrategy(filter == Filter.NONE ? Deflater.DEFAULT_STRATEGY : Deflater.FILTERED);
+
+        byte[] prev = new byte[width];
+        byte[] curr = new byte[width];
+        byte[] filtered = new byte[width + 1];
+        byte[] trial = filter == Filter.ADAPTIVE ? new byte[width + 1] : null;
+        byte[] idat = new byte[IDAT_SIZE];
+        int idatLen = 0;
+
+        for (int y = 0; y < height; y++) {
+            raster.getDataElements(0, y, width, 1, curr);
+            if (filter == Filter.ADAPTIVE) {
+                long best = Long.MAX_VALUE;
+                for (Filter f : new Filter[] {Filter.NONE, Filter.SUB, Filter.UP, Filter.AVERAGE, Filter.PAETH}) {
+                    long sum = filterRow(f, curr, prev, trial, width);
+                    if (sum < best) {
+                        best = sum;
+                        System.arraycopy(trial, 0, filtered, 0, width + 1);
+                    }
+                }
+            } else {
+                filterRow(filter, curr, prev, filtered, width);
+            }
+
+            deflater.setInput(filtered, 0, width + 1);
+            while (!deflater.needsInput()) {
+                idatLen += deflater.deflate(idat, idatLen, idat.length - idatLen);
+                if (idatLen == idat.length) {
+                    writeChunk(out, "IDAT", idat, idatLen);
+                    idatLen = 0;
+                }
+            }
+            byte[] tmp = prev;
+            prev = curr;
+            curr = tmp;
+        }
+
+        deflater.finish();
+        while (!deflater.finished()) {
+            idatLen += deflater.deflate(idat, idatLen, idat.length - idatLen);
+            if (idatLen == idat.length) {
+                writeChunk(out, "IDAT", idat, idatLen);
+                idatLen = 0;
+            }
+        }
+        if (idatLen > 0) writeChunk(out, "IDAT", idat, idatLen);
+    }
+
+    /**
+     * filter a row into out[0, width], with the filter type at out[0].
+     * @return the sum of the absolute values of the filtered bytes as signed; the smaller, the better it usually compresses
+     */
+    private static long filterRow(Filter f, byte[] curr, byte[] prev, byte[] out, int width) {
+        out[0] = (byte) (f == Filter.ADAPTIVE ? 0 : f.ordinal());
+        long sum = 0;
+        for (int i = 0; i < width; i++) {
+            int x = curr[i] & 0xff;
+            int a = i > 0 ? curr[i - 1] & 0xff : 0;
+            int b = prev[i] & 0xff;
+            int c = i > 0 ? prev[i - 1] & 0xff : 0;
+            int v;
+            switch (f) {
+                case SUB:       v = x - a;                  break;
+                case UP:        v = x - b;                  break;
+                case AVERAGE:   v = x - ((a + b) >> 1);     break;
+                case PAETH:     v = x - paeth(a, b, c);     break;
+                default:        v = x;
+            }
+            out[i + 1] = (byte) v;
+            sum += Math.abs((byte) v);
+        }
+        return sum;
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) return a;
+        return pb <= pc ? b : c;
+    }
+
+    private static int hash(int rgb) {
+        return (rgb * 0x9E3779B1 >>> 22);           // top 10 bits, for a table of 1024
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data, int len) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, len);
+        out.writeInt(len);
+        out.write(typeBytes);
+        out.write(data, 0, len);
+        out.writeInt((int) crc.getValue());
+    }
+}
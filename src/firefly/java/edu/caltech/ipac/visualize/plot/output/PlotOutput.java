@@ -4,6 +4,7 @@
 package edu.caltech.ipac.visualize.plot.output;
 
 
+import edu.caltech.ipac.util.AppProperties;
 import edu.caltech.ipac.util.Assert;
 import edu.caltech.ipac.util.FileUtil;
 import edu.caltech.ipac.visualize.draw.FixedObjectGroup;
@@ -28,10 +29,16 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PlotOutput {
 
@@ -39,9 +46,16 @@ public class PlotOutput {
     public static final int PNG=  84;
     public static final int BMP=  82;
 
-    public enum Quality {HIGH, MEDIUM, LOW}
+    /**
+     * HIGH: ARGB, MEDIUM: 16 bit RGB, LOW: the plot's color model,
+     * PALETTE: drawn in RGB, then saved with the plot's color model when every color is in it.
+     */
+    public enum Quality {HIGH, MEDIUM, LOW, PALETTE}
+    private static final boolean USE_PALETTE= AppProperties.getBooleanProperty("PlotOutput.png.palette", true);
     private static final int _trySizes[]= {512,640,500,630,748,760,494,600,700,420,800,825,650};
     public static final int CREATE_ALL= -1;
+    private static final ForkJoinPool TILE_POOL= ImagePlot.getCoreCnt() > 1 ? new ForkJoinPool(ImagePlot.getCoreCnt()) : null;
+    ForkJoinPool pool= TILE_POOL;     // the pool to write tiles on, or null to write them on the calling thread only
     private final ImagePlot _plot;
     private final ActiveFitsReadGroup _frGroup;
     private GridLayer _gridLayer;
@@ -247,7 +261,7 @@ public class PlotOutput {
             retval= new ArrayList<TileFileInfo>(1);
             int width= _plot.getScreenWidth();
             int height= _plot.getScreenHeight();
-            BufferedImage image= createImage(width,height, requiresTransparency?Quality.HIGH:Quality.MEDIUM);
+            BufferedImage image= createImage(width,height, getQuality(requiresTransparency));
             File f= getTileFile(dir,baseName,0,0,getExt(outType));
             if (createTile) {
                 writeTile(f,outType,requiresTransparency,0,0,width,height,image);
@@ -289,19 +303,16 @@ public class PlotOutput {
 
 
         ImagePlot plot= _plot;
-        PlotContainerImpl container= new PlotContainerImpl();
-        container.getPlotList().add(_plot);
 
 
         Assert.tst(outType == JPEG || outType == BMP  || outType == PNG);
         int width= defTileSize;
         int height;
         File file;
-        BufferedImage defImage= createImage(defTileSize,defTileSize, requiresTransparency?Quality.HIGH:Quality.MEDIUM);
 
         ImageDataGroup imageDataGrp= plot.getImageData();
         List<TileFileInfo> retList= new ArrayList<TileFileInfo>(imageDataGrp.size());
-        BufferedImage image;
+        List<TileFileInfo> toWrite= new ArrayList<TileFileInfo>();
         int screenWidth= plot.getScreenWidth();
         int screenHeight= plot.getScreenHeight();
         int totalCreated= 0;
@@ -312,15 +323,9 @@ public class PlotOutput {
             for(int y= 0; (y<screenHeight);  y+=height) {
                 width= ((x+defTileSize) > screenWidth-defTileSize) ? screenWidth - x : defTileSize;
                 height= ((y+defTileSize) > screenHeight-defTileSize) ? screenHeight - y : defTileSize;
-                if (width==defTileSize && height==defTileSize) {
-                    image= defImage;
-                }
-                else {
-                    image= createImage(width,height, requiresTransparency?Quality.HIGH:Quality.MEDIUM);
-                }
                 file= getTileFile(dir,baseName,x,y,ext);
                 if (createTile) {
-                    writeTile(file,outType,requiresTransparency,x,y,width,height,image);
+                    toWrite.add(new TileFileInfo(x,y,width, height, file,true));
                     totalCreated++;
                     createTile= (totalCreated<createOnly || createOnly==CREATE_ALL);
                 }
@@ -328,9 +333,76 @@ public class PlotOutput {
             }
         }
 
+        // stretch the image data once, before the tiles share it
+        plot.preProcessImageTiles(_frGroup);
+
+        int threadCnt= pool==null ? 1 : Math.min(pool.getParallelism(), toWrite.size());
+        if (threadCnt<2 || hasOverlays()) {
+            new TileWriter(toWrite, new AtomicInteger(0), outType, requiresTransparency, defTileSize).call();
+        }
+        else {
+            // the overlays are not thread safe, so only the image tiles are written in parallel
+            AtomicInteger next= new AtomicInteger(0);
+            List<TileWriter> workers= new ArrayList<TileWriter>(threadCnt);
+            for(int i= 0; i<threadCnt; i++) {
+                workers.add(new TileWriter(toWrite, next, outType, requiresTransparency, defTileSize));
+            }
+            try {
+                for(Future<Void> f : pool.invokeAll(workers)) f.get();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("writing tiles was interrupted");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+                throw new IOException(e.getCause());
+            }
+        }
+
         return retList;
     }
 
+    private boolean hasOverlays() {
+        return (_fogList!=null && _fogList.size()>0) || _gridLayer!=null ||
+               (_vectorList!=null && _vectorList.size()>0) || (_scaleList!=null && _scaleList.size()>0);
+    }
+
+    /**
+     * Writes tiles from a shared list until there are none left.  Each TileWriter reuses its own image for the tiles
+     * of the default size, while the stretched image data of the plot is shared read-only.
+     */
+    private class TileWriter implements Callable<Void> {
+        private final List<TileFileInfo> tiles;
+        private final AtomicInteger next;
+        private final int outType;
+        private final boolean requiresTransparency;
+        private final int defTileSize;
+
+        TileWriter(List<TileFileInfo> tiles, AtomicInteger next, int outType, boolean requiresTransparency, int defTileSize) {
+            this.tiles= tiles;
+            this.next= next;
+            this.outType= outType;
+            this.requiresTransparency= requiresTransparency;
+            this.defTileSize= defTileSize;
+        }
+
+        public Void call() throws IOException {
+            BufferedImage defImage= null;
+            for(int i= next.getAndIncrement(); i<tiles.size(); i= next.getAndIncrement()) {
+                TileFileInfo tile= tiles.get(i);
+                BufferedImage image;
+                if (tile.getWidth()==defTileSize && tile.getHeight()==defTileSize) {
+                    if (defImage==null) defImage= createImage(defTileSize,defTileSize, getQuality(requiresTransparency));
+                    image= defImage;
+                }
+                else {
+                    image= createImage(tile.getWidth(),tile.getHeight(), getQuality(requiresTransparency));
+                }
+                writeTile(tile.getFile(),outType,requiresTransparency,tile.getX(),tile.getY(),tile.getWidth(),tile.getHeight(),image);
+            }
+            return null;
+        }
+    }
+
 
     public static List<TileFileInfo> defineTiles(File dir,
                                                  float zfact,
@@ -370,11 +442,24 @@ public class PlotOutput {
     public void writeThumbnail(File f, int outType ) throws IOException {
         int screenWidth= _plot.getScreenWidth();
         int screenHeight= _plot.getScreenHeight();
-        BufferedImage image= createImage(screenWidth,screenHeight, Quality.MEDIUM);
+        BufferedImage image= createImage(screenWidth,screenHeight, getQuality(false));
         writeTile(f,outType,false, 0,0,screenWidth,screenHeight,image);
     }
 
 
+    /**
+     * Tiles of an 8 bit plot without overlays only have colors of the plot's color model, so they can be saved as
+     * indexed PNG, which is smaller and faster to encode.  They are drawn in RGB first, since drawing directly
+     * to an indexed image may change the colors.
+     */
+    private Quality getQuality(boolean requiresTransparency) {
+        if (requiresTransparency) return Quality.HIGH;
+        boolean usePalette= USE_PALETTE && !_plot.isThreeColor() && !_plot.isUseForMask() &&
+                            _plot.getPercentOpaque()==1F && !hasOverlays() &&
+                            _plot.getImageData().getColorModel()!=null;
+        return usePalette ? Quality.PALETTE : Quality.MEDIUM;
+    }
+
     private BufferedImage createImage(int width, int height, Quality quality) {
         BufferedImage retval;
 
@@ -389,6 +474,9 @@ public class PlotOutput {
             case MEDIUM:
                 retval= new BufferedImage(width,height, BufferedImage.TYPE_USHORT_565_RGB);
                 break;
+            case PALETTE:
+                retval= new BufferedImage(width,height, BufferedImage.TYPE_INT_RGB);
+                break;
             default :
                 Assert.argTst(false, "quality must be HIGH, MEDIUM, or LOW");
                 retval= null;
@@ -408,7 +496,7 @@ public class PlotOutput {
                            int width,
                            int height,
                            BufferedImage image ) throws IOException {
-        if (image==null)  image= createImage(width,height, requiresTransparency?Quality.HIGH:Quality.MEDIUM);
+        if (image==null)  image= createImage(width,height, getQuality(requiresTransparency));
         Graphics2D g2= image.createGraphics();
         g2.setComposite(AlphaComposite.Clear);
         g2.fillRect(0, 0, width, height);
@@ -460,7 +548,7 @@ public class PlotOutput {
                            int outType) throws IOException {
         BufferedOutputStream stream= null;
         try {
-            stream= new BufferedOutputStream( new FileOutputStream(f),4096);
+            stream= new BufferedOutputStream( new FileOutputStream(f),64*1024);
             saveImage(image,outType,stream);
         } finally {
             FileUtil.silentClose(stream);
@@ -472,6 +560,14 @@ public class PlotOutput {
         if (outType == BMP) {
             ImageIO.write(image, "bmp", out);
         }
+        else if (outType == PNG && image.getType()==BufferedImage.TYPE_INT_RGB && getQuality(false)==Quality.PALETTE) {
+            BufferedImage indexed= IndexedPngEncoder.toIndexedImage(image, _plot.getImageData().getColorModel());
+            if (indexed!=null) new IndexedPngEncoder().write(indexed, out);
+            else               ImageIO.write(image, "png", out);
+        }
+        else if (outType == PNG && IndexedPngEncoder.canEncode(image)) {
+            new IndexedPngEncoder().write(image, out);
+        }
         else if (outType == PNG) {
 //            ImageIO.write(image, "png", out);
 
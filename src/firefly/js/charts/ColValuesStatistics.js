@@ -1,11 +1,15 @@
 export default class ColValuesStatistics{
-    constructor(name, descr, unit, min, max, numpoints,type) {
+    constructor(name, descr, unit, min, max, numpoints, mean, stdev, p25, median, p75) {
         this.name = name;
         this.descr = descr;
         this.unit = unit;
         this.min = Number(min);
         this.max = Number(max);
         this.numpoints = Number(numpoints);
-        this.type = type;
+        this.mean = Number(mean);
+        this.stdev = Number(stdev);
+        this.p25 = Number(p25);
+        this.median = Number(median);
+        this.p75 = Number(p75);
     }
 };
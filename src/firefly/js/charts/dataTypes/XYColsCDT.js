@@ -5,10 +5,11 @@
 import {flux} from '../../Firefly.js';
 
 import {updateSet, logError} from '../../util/WebUtil.js';
-import {get, omitBy, isEmpty, isString, isUndefined} from 'lodash';
+import {get, omitBy, isEmpty, isString, isUndefined, range} from 'lodash';
 
 import {MetaConst} from '../../data/MetaConst.js';
-import {fetchTable} from '../../rpc/SearchServicesJson.js';
+import {fetchTable, fetchTableColumns} from '../../rpc/SearchServicesJson.js';
+import {getBinaryValue} from '../../tables/BinaryTableReader.js';
 import {getColumn, getTblById, isFullyLoaded} from '../../tables/TableUtil.js';
 import {makeTableFunctionRequest, MAX_ROW} from '../../tables/TableRequestUtil.js';
 
@@ -392,7 +393,8 @@ function fetchXYLargeTable(dispatch, chartId, chartDataElementId) {
 
     req.tbl_id = `xy-${chartId}`;
 
-    fetchTable(req).then((tableModel) => {
+    // the values are only used as numbers, so they are fetched in binary format, without formatting
+    fetchTableColumns(req).then((tableModel) => {
 
         // make sure we only save the data from the latest fetch
         const cde = getChartDataElement(chartId, chartDataElementId);
@@ -404,26 +406,29 @@ function fetchXYLargeTable(dispatch, chartId, chartDataElementId) {
         // when zoomed, we don't know if the unzoomed data are decimated or not
         let decimatedUnzoomed = xyPlotParams.zoom ? undefined : false;
 
-        if (tableModel.tableData && tableModel.tableData.data) {
+        const {columns, columnData} = tableModel.tableData || {};
+        if (columns && columnData) {
             const {tableMeta} = tableModel;
             const decimateKey = tableMeta['decimate_key'];
 
             // use first 4 or 3 columns renamed
             const colNames = decimateKey ? ['x', 'y', 'rowIdx', 'weight'] : ['x', 'y', 'rowIdx'];
+            const nRows = columns.length > 0 ? columnData[columns[0].name].values.length : 0;
 
-            // change row data from [ [val] ] to [ {cname:val} ] and make them numeric
-            const getARow = (row) => {
+            // change column data to [ {cname:val} ] and make them numeric
+            const getARow = (rowIdx) => {
                 return colNames.reduce( (arow, name, cidx) => {
-                    arow[name] = parseFloat(row[cidx]);
+                    const val = getBinaryValue(tableModel, columns[cidx].name, rowIdx);
+                    arow[name] = isUndefined(val) ? NaN : parseFloat(val);
                     return arow;
                 }, {});
             };
-            const getDecimatedARow = (row) => {
-                const arow = getARow(row);
-                arow.decimate_key = row[4]; // 4th column in decimated table is decimate_key
+            const getDecimatedARow = (rowIdx) => {
+                const arow = getARow(rowIdx);
+                arow.decimate_key = getBinaryValue(tableModel, columns[4].name, rowIdx); // 4th column in decimated table is decimate_key
                 return arow;
             };
-            const rows = tableModel.tableData.data.map(decimateKey ? getDecimatedARow : getARow);
+            const rows = range(nRows).map(decimateKey ? getDecimatedARow : getARow);
 
             xyPlotData = omitBy({
                 rows,
@@ -5,6 +5,8 @@
 export const ServerParams = {
         COMMAND : 'cmd',
         DO_JSONP : 'doJsonp',
+        RESPONSE_FORMAT : 'responseFormat',
+        BINARY : 'binary',
         RED_REQUEST : 'red',
         GREEN_REQUEST : 'green',
         BLUE_REQUEST : 'blue',
@@ -11,7 +11,8 @@ import {get, set, omitBy, cloneDeep} from 'lodash';
 import {ServerParams} from '../data/ServerParams.js';
 import {doJsonRequest, DEF_BASE_URL} from '../core/JsonUtils.js';
 import {getBgEmail} from '../core/background/BackgroundUtil.js';
-import {encodeUrl, download, getModuleName} from '../util/WebUtil.js';
+import {encodeUrl, download, getModuleName, fetchUrl} from '../util/WebUtil.js';
+import {readBinaryTable} from '../tables/BinaryTableReader.js';
 
 import Enum from 'enum';
 import {getTblById, getResultSetID, getResultSetRequest} from '../tables/TableUtil.js';
@@ -72,6 +73,42 @@ export function fetchTable(tableRequest, hlRowIdx) {
     });
 }
 
+/**
+ * same as fetchTable, except that the data is sent in binary format.  numeric columns are not formatted;
+ * this is meant for plotting, where the values are used as numbers.
+ * @param {TableRequest} tableRequest is a table request params object
+ * @returns {Promise.<TableModel>} a table model with tableData.columnData instead of tableData.data.  see readBinaryTable.
+ */
+export function fetchTableColumns(tableRequest) {
+
+    const def = {
+        startIdx: 0,
+        pageSize : MAX_ROW
+    };
+
+    tableRequest = setupNewRequest(tableRequest, def);
+
+    const params = {
+        [ServerParams.COMMAND]: ServerParams.TABLE_SEARCH,
+        [ServerParams.REQUEST]: JSON.stringify(tableRequest),
+        [ServerParams.RESPONSE_FORMAT]: ServerParams.BINARY
+    };
+
+    return fetchUrl(DEF_BASE_URL, {method: 'POST', params}, false).then( (response) => {
+        if (!response.ok) {
+            throw new Error(`Error from Server for command ${ServerParams.TABLE_SEARCH}: code: ${response.status}, text: ${response.statusText}`);
+        }
+        const contentType = response.headers.get('content-type') || '';
+        if (contentType.startsWith('application/octet-stream')) {
+            return response.arrayBuffer().then( (buffer) => readBinaryTable(buffer));
+        }
+        // errors are returned as JSON
+        return response.json().then( (result) => {
+            throw new Error(get(result, '0.error', `Unrecognized result: ${result}`));
+        });
+    });
+}
+
 /**
  * a utility function used to query data from the given tableRequest without altering the table.
  * @param {TableRequest} tableRequest is a table request params object
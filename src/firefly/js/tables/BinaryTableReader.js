@@ -0,0 +1,86 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+
+/**
+ * Reads a table page sent with responseFormat=binary.
+ * See edu.caltech.ipac.firefly.server.util.ipactable.BinaryTableUtil for the layout.
+ */
+
+const MAGIC = 'FFTB';
+const VERSION = 1;
+
+const ARRAY_TYPES = {
+    float64: Float64Array,
+    float32: Float32Array,
+    int32: Int32Array
+};
+
+/**
+ * @param {ArrayBuffer} buffer   the response
+ * @returns {TableModel} the same table model as the JSON response, except that tableData has no data.
+ * Instead, tableData.columnData has the values of each column by name, as {values, validity}.
+ * values is a typed array for numeric columns, or an array of strings; validity has a bit per row, set if the value is not null.
+ * Use getBinaryValue to get a value with nulls applied.
+ */
+export function readBinaryTable(buffer) {
+    const view = new DataView(buffer);
+    const magic = String.fromCharCode(view.getUint8(0), view.getUint8(1), view.getUint8(2), view.getUint8(3));
+    const version = view.getInt32(4, true);
+    if (magic !== MAGIC || version !== VERSION) {
+        throw new Error(`Unrecognized binary table: ${magic} version ${version}`);
+    }
+    const rows = view.getInt32(8, true);
+    const headerLength = view.getInt32(12, true);
+    const decoder = new TextDecoder('utf-8');
+    const tableModel = JSON.parse(decoder.decode(new Uint8Array(buffer, 16, headerLength)));
+
+    let offset = padded(16 + headerLength);
+    const columns = tableModel.tableData ? tableModel.tableData.columns : [];
+    const columnData = {};
+    columns.forEach((col) => {
+        const validity = new Uint8Array(buffer, offset, Math.ceil(rows/8));
+        offset += padded(Math.ceil(rows/8));
+
+        let values;
+        if (col.encoding === 'utf8') {
+            const offsets = new Int32Array(buffer, offset, rows+1);
+            offset += padded((rows+1)*4);
+            values = new Array(rows);
+            for (let r = 0; r < rows; r++) {
+                values[r] = decoder.decode(new Uint8Array(buffer, offset + offsets[r], offsets[r+1] - offsets[r]));
+            }
+            offset += padded(offsets[rows]);
+        } else if (col.encoding === 'int64') {
+            // no BigInt64Array in all of the supported browsers; values beyond 2^53 lose precision
+            values = new Float64Array(rows);
+            for (let r = 0; r < rows; r++) {
+                values[r] = view.getUint32(offset + r*8, true) + view.getInt32(offset + r*8 + 4, true) * 4294967296;
+            }
+            offset += padded(rows*8);
+        } else {
+            const ArrayType = ARRAY_TYPES[col.encoding];
+            values = new ArrayType(buffer, offset, rows);
+            offset += padded(rows*ArrayType.BYTES_PER_ELEMENT);
+        }
+        columnData[col.name] = {values, validity};
+    });
+    tableModel.tableData = Object.assign({}, tableModel.tableData, {columnData});
+    return tableModel;
+}
+
+/**
+ * @param {TableModel} tableModel    a table model returned by readBinaryTable
+ * @param {string} colName
+ * @param {number} rowIdx   the index of the row in this page
+ * @returns {number|string} the value, or undefined if it is null
+ */
+export function getBinaryValue(tableModel, colName, rowIdx) {
+    const {values, validity} = tableModel.tableData.columnData[colName] || {};
+    if (!values || !(validity[rowIdx >> 3] & (1 << (rowIdx & 7)))) return undefined;
+    return values[rowIdx];
+}
+
+function padded(size) {
+    return size + (8 - size % 8) % 8;
+}
@@ -0,0 +1,83 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.db;
+
+import edu.caltech.ipac.firefly.ConfigTest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+
+public class BaseDbAdapterTest extends ConfigTest {
+
+	private HsqlDbAdapter adapter = new HsqlDbAdapter();
+	private File dbFile;
+
+	@Before
+	public void setUp() throws IOException {
+		dbFile = new File(Files.createTempDirectory("dbtest").toFile(), "test.hsql");
+	}
+
+	@After
+	public void tearDown() {
+		adapter.close(dbFile, true);
+		dbFile.getParentFile().delete();
+	}
+
+	/**
+	 * a database is not evicted while one of its connections is in use, no matter how long ago it was opened.
+	 */
+	@Test
+	public void testInUseNotEvicted() throws Exception {
+		BaseDbAdapter.EmbeddedDbInstance db = (BaseDbAdapter.EmbeddedDbInstance) adapter.getDbInstance(dbFile);
+		Connection conn = db.getDataSource().getConnection();
+		db.lastAccessed = 0;
+		Assert.assertFalse(db.isIdle());
+		Assert.assertFalse(db.markClosed(false));
+
+		conn.close();
+		conn.close();       // closing twice releases it once
+		db.lastAccessed = 0;
+		Assert.assertTrue(db.isIdle());
+		Assert.assertTrue(db.estimateMemory() > 0);
+	}
+
+	/**
+	 * an instance that was closed fails instead of quietly opening a new connection pool.
+	 */
+	@Test
+	public void testClosedInstanceFails() {
+		BaseDbAdapter.EmbeddedDbInstance db = (BaseDbAdapter.EmbeddedDbInstance) adapter.getDbInstance(dbFile);
+		DataSource ds = db.getDataSource();
+		new JdbcTemplate(ds).execute("create table t (a int)");
+
+		adapter.close(dbFile, false);
+		Assert.assertFalse(db.isOpen());
+		try {
+			db.getDataSource();
+			Assert.fail("a closed instance should not return a data source");
+		} catch (DataAccessResourceFailureException e) {
+			// expected
+		}
+		try {
+			new JdbcTemplate(ds).execute("select count(*) from t");
+			Assert.fail("a data source of a closed instance should not return a connection");
+		} catch (DataAccessResourceFailureException e) {
+			// expected
+		}
+		Assert.assertFalse(db.isOpen());
+
+		BaseDbAdapter.EmbeddedDbInstance reopened = (BaseDbAdapter.EmbeddedDbInstance) adapter.getDbInstance(dbFile);
+		Assert.assertNotSame(db, reopened);
+		Assert.assertEquals(0, new JdbcTemplate(reopened.getDataSource()).queryForInt("select count(*) from t"));
+	}
+}
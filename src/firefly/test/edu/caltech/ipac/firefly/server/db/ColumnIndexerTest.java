@@ -0,0 +1,62 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.db;
+
+import edu.caltech.ipac.firefly.ConfigTest;
+import edu.caltech.ipac.firefly.data.SortInfo;
+import edu.caltech.ipac.firefly.data.TableServerRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+public class ColumnIndexerTest extends ConfigTest {
+
+	@Test
+	public void testColumnsUsed() {
+		TableServerRequest treq = new TableServerRequest("n/a (id not used)");
+		treq.setFilters(Arrays.asList("\"ra\" > 10", "\"dec\" + \"ra\" < 5"));
+		treq.setSortInfo(new SortInfo(SortInfo.Direction.DESC, "mag"));
+
+		Set<String> cols = ColumnIndexer.getColumnsUsed(treq);
+		Assert.assertEquals(Arrays.asList("ra", "dec", "mag"), Arrays.asList(cols.toArray()));
+	}
+
+	/**
+	 * a column is returned once, when it reaches the default threshold of 3
+	 */
+	@Test
+	public void testThreshold() {
+		ColumnIndexer indexer = new ColumnIndexer();
+		Assert.assertTrue(indexer.recordUsage("data", Arrays.asList("ra", "dec")).isEmpty());
+		Assert.assertTrue(indexer.recordUsage("data", Arrays.asList("ra")).isEmpty());
+		Assert.assertEquals(Collections.singletonList("ra"), indexer.recordUsage("data", Arrays.asList("ra", "dec")));
+		Assert.assertEquals(Collections.singletonList("dec"), indexer.recordUsage("data", Arrays.asList("ra", "dec")));
+		Assert.assertTrue(indexer.recordUsage("data", Arrays.asList("ra", "dec")).isEmpty());
+		Assert.assertTrue("not indexed until created", indexer.getIndexedColumns().isEmpty());
+
+		indexer.indexDone("data", "ra", true);
+		Assert.assertEquals(Collections.singletonList("data|ra"), indexer.getIndexedColumns());
+		Assert.assertTrue(indexer.recordUsage("data", Arrays.asList("ra", "dec")).isEmpty());
+	}
+
+	/**
+	 * a column whose index was skipped or failed is returned again once it crosses the threshold again
+	 */
+	@Test
+	public void testRetry() {
+		ColumnIndexer indexer = new ColumnIndexer();
+		for (int i = 0; i < 2; i++) indexer.recordUsage("data", Collections.singletonList("ra"));
+		Assert.assertEquals(Collections.singletonList("ra"), indexer.recordUsage("data", Collections.singletonList("ra")));
+		indexer.indexDone("data", "ra", false);
+		Assert.assertTrue(indexer.getIndexedColumns().isEmpty());
+
+		for (int i = 0; i < 2; i++) {
+			Assert.assertTrue(indexer.recordUsage("data", Collections.singletonList("ra")).isEmpty());
+		}
+		Assert.assertEquals(Collections.singletonList("ra"), indexer.recordUsage("data", Collections.singletonList("ra")));
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.db;
+
+import edu.caltech.ipac.firefly.ConfigTest;
+import edu.caltech.ipac.util.DataGroup;
+import edu.caltech.ipac.util.DataObject;
+import edu.caltech.ipac.util.DataType;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ColumnarTableTest extends ConfigTest {
+
+	private static ColumnarTable table;
+
+	@BeforeClass
+	public static void setUp() {
+		DataType id = new DataType("id", Integer.class);
+		DataType ra = new DataType("ra", Double.class);
+		DataType name = new DataType("name", String.class);
+		DataGroup dg = new DataGroup("test", new DataType[]{id, ra, name});
+		Object[][] rows = {
+				{1, 10.5, "abc"},
+				{2, null, "ABC"},
+				{3, 30.0, "xyz"},
+				{null, 5.0, null},
+				{5, 50.0, "o'k"},
+		};
+		for (Object[] r : rows) {
+			DataObject row = new DataObject(dg);
+			row.setData(r);
+			dg.add(row);
+		}
+		table = ColumnarTable.from(dg);
+	}
+
+	@Test
+	public void testSelect() {
+		Assert.assertArrayEquals(new int[]{2, 4}, table.select(Collections.singletonList("\"id\" > 2")));
+		Assert.assertArrayEquals(new int[]{0, 1}, table.select(Collections.singletonList("\"name\" = 'abc'")));      // ignore case
+		Assert.assertArrayEquals(new int[]{4}, table.select(Collections.singletonList("\"name\" = 'o''k'")));
+		Assert.assertArrayEquals(new int[]{0, 4}, table.select(Arrays.asList("\"ra\" >= 10", "\"id\" in (1, 5)")));
+		Assert.assertArrayEquals(new int[]{2, 4}, table.select(Collections.singletonList("\"name\" not like '%b%'")));     // nulls never match
+		Assert.assertArrayEquals(new int[]{1}, table.select(Collections.singletonList("\"ra\" is null")));
+
+		// cannot be evaluated in memory
+		Assert.assertNull(table.select(Collections.singletonList("\"id\" > 2 or \"ra\" < 1")));
+		Assert.assertNull(table.select(Collections.singletonList("\"id\" > \"ra\"")));
+		Assert.assertNull(table.select(Collections.singletonList("\"unknown\" = 1")));
+	}
+
+	@Test
+	public void testLongIds() {
+		long base = 1L << 60;       // neighbours collapse into one value as doubles
+		DataType id = new DataType("id", Long.class);
+		DataGroup dg = new DataGroup("ids", new DataType[]{id});
+		for (long v : new long[]{base + 1, base + 2, base + 3, base}) {
+			DataObject row = new DataObject(dg);
+			row.setData(new Object[]{v});
+			dg.add(row);
+		}
+		ColumnarTable ids = ColumnarTable.from(dg);
+		Assert.assertArrayEquals(new int[]{1}, ids.select(Collections.singletonList("\"id\" = " + (base + 2))));
+		Assert.assertArrayEquals(new int[]{0, 2}, ids.select(Collections.singletonList("\"id\" in (" + (base + 1) + ", " + (base + 3) + ")")));
+		Assert.assertArrayEquals(new int[]{1, 3}, ids.select(Collections.singletonList("\"id\" not in (" + (base + 1) + ", " + (base + 3) + ")")));
+		Assert.assertArrayEquals(new int[]{0, 3}, ids.select(Collections.singletonList("\"id\" < " + (base + 2))));
+		Assert.assertArrayEquals(new int[]{2}, ids.select(Collections.singletonList("\"id\" >= " + (base + 3))));
+
+		// non-integral literals are still compared as doubles
+		Assert.assertArrayEquals(new int[]{2, 4}, table.select(Collections.singletonList("\"id\" > 2.5")));
+		Assert.assertArrayEquals(new int[]{0}, table.select(Collections.singletonList("\"id\" in (1.0, 1.5)")));
+	}
+
+	@Test
+	public void testSortAndPage() {
+		int[] rows = table.select(null);
+		Assert.assertTrue(table.sort(rows, Collections.singletonList("\"ra\""), true));
+		Assert.assertArrayEquals(new int[]{4, 2, 0, 3, 1}, rows);      // nulls last when descending
+
+		rows = table.select(null);
+		Assert.assertTrue(table.sort(rows, Collections.singletonList("name"), false));
+		Assert.assertArrayEquals(new int[]{3, 0, 1, 4, 2}, rows);      // nulls first, equal values keep their order
+
+		DataGroup page = table.getRows(rows, 1, 2);
+		Assert.assertEquals(2, page.size());
+		Assert.assertEquals("abc", page.get(0).getDataElement("name"));
+		Assert.assertEquals(2, page.get(1).getDataElement("id"));
+		Assert.assertEquals(3, page.getDataDefintion("name").getMaxDataWidth());
+
+		Assert.assertFalse(table.sort(rows, Collections.singletonList("\"unknown\""), false));
+	}
+}
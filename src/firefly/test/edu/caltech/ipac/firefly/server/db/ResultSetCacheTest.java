@@ -0,0 +1,113 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.db;
+
+import edu.caltech.ipac.firefly.ConfigTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ResultSetCacheTest extends ConfigTest {
+
+	/**
+	 * the least recently used table should be dropped once the default limit of 20 tables is exceeded
+	 */
+	@Test
+	public void testLruEviction() {
+		ResultSetCache cache = new ResultSetCache();
+		for (int i = 0; i < 20; i++) {
+			Assert.assertTrue(cache.access("data_" + i, 10, true).isEmpty());
+		}
+		cache.access("data_0", 10, false);      // data_0 is now the most recently used
+
+		List<String> dropped = cache.access("data_20", 10, true);
+		Assert.assertEquals(Arrays.asList("data_1"), dropped);
+		Assert.assertTrue(cache.contains("data_0"));
+		Assert.assertFalse(cache.contains("data_1"));
+
+		Assert.assertEquals(20, cache.getTableCount());
+		Assert.assertEquals(200, cache.getTotalRows());
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(21, cache.getMisses());
+		Assert.assertEquals(1, cache.getEvictions());
+	}
+
+	/**
+	 * the table being accessed is never dropped, even when it alone exceeds the row limit
+	 */
+	@Test
+	public void testRowLimit() {
+		ResultSetCache cache = new ResultSetCache();
+		cache.access("data_a", 10, true);
+		List<String> dropped = cache.access("data_b", Long.MAX_VALUE/2, true);
+		Assert.assertEquals(Arrays.asList("data_a"), dropped);
+		Assert.assertTrue(cache.contains("data_b"));
+	}
+
+	/**
+	 * a pinned table is not dropped, and a table pinned after it was chosen to be dropped is kept
+	 */
+	@Test
+	public void testPinned() {
+		ResultSetCache cache = new ResultSetCache();
+		for (int i = 0; i < 20; i++) {
+			cache.access("data_" + i, 10, true);
+		}
+		try (ResultSetCache.Pin pin = cache.pin("data_0")) {
+			Assert.assertEquals(Arrays.asList("data_1"), cache.access("data_20", 10, true));
+			Assert.assertEquals("data_0", pin.getResultSetID());
+		}
+		List<String> dropped = cache.access("data_21", 10, true);
+		Assert.assertEquals(Arrays.asList("data_0"), dropped);
+
+		ResultSetCache.Pin pin = cache.pin("data_0");
+		Assert.assertFalse("pinned since it was chosen", cache.beginDrop("data_0"));
+		pin.close();
+		pin.close();        // closing twice unpins once
+		Assert.assertTrue(cache.beginDrop("data_0"));
+		cache.endDrop("data_0");
+	}
+
+	/**
+	 * pinning a table that is being dropped waits for the drop to finish
+	 */
+	@Test
+	public void testPinWaitsForDrop() throws Exception {
+		ResultSetCache cache = new ResultSetCache();
+		Assert.assertTrue(cache.beginDrop("data_a"));
+		Thread reader = new Thread(() -> cache.pin("data_a").close());
+		reader.start();
+		reader.join(200);
+		Assert.assertTrue("should wait while data_a is being dropped", reader.isAlive());
+		cache.endDrop("data_a");
+		reader.join(5000);
+		Assert.assertFalse(reader.isAlive());
+	}
+
+	/**
+	 * existing tables are registered as the least recently used ones, only once
+	 */
+	@Test
+	public void testSeed() {
+		ResultSetCache cache = new ResultSetCache();
+		cache.access("data_a", 10, true);
+		Map<String, Long> existing = new LinkedHashMap<>();
+		existing.put("data_a", 10L);
+		for (int i = 0; i < 20; i++) {
+			existing.put("data_" + i, 5L);
+		}
+		cache.seed(existing);
+		cache.seed(existing);
+		Assert.assertTrue(cache.isSeeded());
+		Assert.assertEquals(21, cache.getTableCount());
+		Assert.assertEquals(110, cache.getTotalRows());
+
+		Assert.assertEquals(Arrays.asList("data_0", "data_1"), cache.access("data_b", 1, true));
+		Assert.assertTrue(cache.contains("data_a"));
+	}
+}
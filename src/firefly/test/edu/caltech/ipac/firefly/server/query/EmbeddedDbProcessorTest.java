@@ -0,0 +1,130 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.query;
+
+import edu.caltech.ipac.firefly.ConfigTest;
+import edu.caltech.ipac.firefly.data.SortInfo;
+import edu.caltech.ipac.firefly.data.TableServerRequest;
+import edu.caltech.ipac.firefly.server.db.ColumnarDbAdapter;
+import edu.caltech.ipac.firefly.server.db.DbAdapter;
+import edu.caltech.ipac.firefly.server.db.EmbeddedDbUtil;
+import edu.caltech.ipac.firefly.server.db.ResultSetCache;
+import edu.caltech.ipac.firefly.server.util.ipactable.DataGroupPart;
+import edu.caltech.ipac.util.DataGroup;
+import edu.caltech.ipac.util.DataType;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pages of a search served by ColumnarDbAdapter must be the same as the ones served by HSQL.
+ * Result set tables must be tracked by ResultSetCache.
+ */
+public class EmbeddedDbProcessorTest extends ConfigTest {
+
+	private static final int ROWS = 3000;
+
+	@BeforeClass
+	public static void setUp() {
+		setupServerContext();
+		TestDbProcessor.register(StatisticsProcessor.class);
+	}
+
+	@Test
+	public void testColumnarPages() throws Exception {
+		TableServerRequest base = makeRequest(DbAdapter.COLUMNAR, null, null, 0, 100);
+		new SearchManager().getDataGroup(base);         // creates the database, and loads 'data' in the background
+		File dbFile = new TestDbProcessor().getDbFile(base);
+		waitForCopy(base, dbFile);
+
+		List<List<String>> filters = Arrays.asList(
+				Collections.singletonList("\"mag\" > 15"),
+				Arrays.asList("\"dec\" < 0", "\"name\" like 'OBJ1%'"),
+				Collections.singletonList("\"mag\" IS NULL"));
+		for (List<String> f : filters) {
+			for (SortInfo sort : new SortInfo[]{null, new SortInfo(SortInfo.Direction.DESC, "\"ra\"")}) {
+				for (int start : new int[]{0, 50, ROWS - 10}) {
+					long hits = ColumnarDbAdapter.getHits();
+					TableServerRequest columnar = makeRequest(DbAdapter.COLUMNAR, f, sort, start, 100);
+					DataGroupPart fromMemory = new SearchManager().getDataGroup(columnar);
+					Assert.assertTrue("should be served from memory: " + f + " " + sort, ColumnarDbAdapter.getHits() > hits);
+
+					DataGroupPart fromHsql = new SearchManager().getDataGroup(makeRequest(DbAdapter.HSQL, f, sort, start, 100));
+					assertSamePage(f + " " + sort + " start=" + start, fromHsql, fromMemory);
+				}
+				String resultSetID = new TestDbProcessor().getResultSetID(makeRequest(DbAdapter.COLUMNAR, f, sort, 0, 100));
+				Assert.assertFalse("no result set table is needed", EmbeddedDbUtil.hasTable(base, dbFile, resultSetID));
+			}
+		}
+
+		// selected rows are read by SQL, so the result set table is created then.
+		TableServerRequest columnar = makeRequest(DbAdapter.COLUMNAR, filters.get(0), new SortInfo(SortInfo.Direction.DESC, "\"ra\""), 0, 100);
+		DataGroup selected = EmbeddedDbUtil.getSelectedData(columnar, Arrays.asList(0, 1, 2));
+		DataGroup expected = new SearchManager().getDataGroup(makeRequest(DbAdapter.HSQL, filters.get(0), columnar.getSortInfo(), 0, 3)).getData();
+		Assert.assertEquals(3, selected.size());
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals(expected.get(i).getDataElement("id"), selected.get(i).getDataElement("id"));
+		}
+	}
+
+	/**
+	 * result set tables already in a database are tracked when it is reopened, so they can be dropped later.
+	 */
+	@Test
+	public void testReopenedResultSets() throws Exception {
+		TableServerRequest treq = makeRequest(DbAdapter.HSQL, Collections.singletonList("\"mag\" > 12"), null, 0, 10);
+		int rowCount = new SearchManager().getDataGroup(treq).getRowCount();
+		File dbFile = new TestDbProcessor().getDbFile(treq);
+		String resultSetID = new TestDbProcessor().getResultSetID(treq);
+
+		DbAdapter.getAdapter(treq).close(dbFile, false);
+		ResultSetCache resultSets = EmbeddedDbUtil.getResultSetCache(DbAdapter.getAdapter(treq), dbFile);
+		Assert.assertTrue(resultSets.contains(resultSetID));
+		Assert.assertTrue(resultSets.getTotalRows() >= rowCount);      // other tests may have left result sets too
+	}
+
+	private static TableServerRequest makeRequest(String dbType, List<String> filters, SortInfo sort, int start, int pageSize) {
+		TableServerRequest treq = TestDbProcessor.makeRequest(ROWS);
+		treq.setMeta(TableServerRequest.TBL_FILE_TYPE, dbType);
+		treq.setFilters(filters);
+		treq.setSortInfo(sort);
+		treq.setStartIndex(start);
+		treq.setPageSize(pageSize);
+		return treq;
+	}
+
+	private static void waitForCopy(TableServerRequest treq, File dbFile) throws InterruptedException {
+		ColumnarDbAdapter adapter = (ColumnarDbAdapter) DbAdapter.getAdapter(treq);
+		for (int i = 0; i < 100; i++) {
+			if (adapter.getResultSetPage(treq, dbFile) != null) return;
+			Thread.sleep(100);
+		}
+		Assert.fail("'data' was not loaded into memory");
+	}
+
+	private static void assertSamePage(String desc, DataGroupPart expected, DataGroupPart actual) {
+		Assert.assertEquals(desc, expected.getRowCount(), actual.getRowCount());
+		DataGroup exp = expected.getData();
+		DataGroup act = actual.getData();
+		Assert.assertEquals(desc, exp.size(), act.size());
+		for (DataType dt : exp.getDataDefinitions()) {
+			DataType adt = act.getDataDefintion(dt.getKeyName());
+			Assert.assertNotNull(desc + " column " + dt.getKeyName(), adt);
+			for (int r = 0; r < exp.size(); r++) {
+				Object e = exp.get(r).getDataElement(dt);
+				Object a = act.get(r).getDataElement(adt);
+				if (e instanceof Number && a instanceof Number) {
+					Assert.assertEquals(desc + " " + dt.getKeyName() + " row " + r, ((Number) e).doubleValue(), ((Number) a).doubleValue(), 0);
+				} else {
+					Assert.assertEquals(desc + " " + dt.getKeyName() + " row " + r, e, a);
+				}
+			}
+		}
+	}
+}
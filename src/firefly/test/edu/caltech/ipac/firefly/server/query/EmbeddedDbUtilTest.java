@@ -11,8 +11,10 @@ import edu.caltech.ipac.firefly.data.SortInfo;
 import edu.caltech.ipac.firefly.data.TableServerRequest;
 import edu.caltech.ipac.firefly.server.db.EmbeddedDbUtil;
 import edu.caltech.ipac.firefly.server.db.HsqlDbAdapter;
+import edu.caltech.ipac.firefly.server.db.spring.JdbcFactory;
 import edu.caltech.ipac.firefly.server.query.tables.IpacTableFromSource;
 import edu.caltech.ipac.firefly.server.util.ipactable.DataGroupPart;
+import edu.caltech.ipac.firefly.server.util.ipactable.DataGroupReader;
 import edu.caltech.ipac.firefly.server.util.ipactable.IpacTableParser;
 import edu.caltech.ipac.firefly.util.FileLoader;
 import edu.caltech.ipac.util.DataGroup;
@@ -135,6 +137,44 @@ public class EmbeddedDbUtilTest extends ConfigTest {
 		Assert.assertEquals(202.4680189, selVals.get(5, "RA(deg)"));
 	}
 
+	/**
+	 * ingest the same table row by row from a RowIterator; results, including the column widths and meta
+	 * of the dd and meta tables, should be the same as ingesting the whole DataGroup
+	 */
+	@Test
+	public void testStreamIngest() {
+		try {
+			File streamDbFile = File.createTempFile("TestStreamDb_", ".hsql");
+			streamDbFile.deleteOnExit();
+
+			HsqlDbAdapter dbAdapter = new HsqlDbAdapter();
+			EmbeddedDbUtil.createDbFile(streamDbFile, dbAdapter);
+			try (DataGroupReader.RowIterator rows = DataGroupReader.iterate(testFile, true)) {
+				EmbeddedDbUtil.ingestDataGroup(streamDbFile, rows.getTableDef(), rows, dbAdapter, "data");
+			}
+
+			TableServerRequest req = new TableServerRequest("n/a (id not used)");
+			req.setPageSize(9);
+			req.setInclColumns("\"designation\", \"dec\", \"sigdec\"");
+			DataGroupPart res = EmbeddedDbUtil.execRequestQuery(req, streamDbFile, "data");
+			DataGroup data = res.getData();
+
+			Assert.assertEquals(10, res.getRowCount());
+			Assert.assertEquals(9, data.size());
+			Assert.assertEquals("J132955.35+471336.8", data.get(0).getDataElement("designation"));
+			Assert.assertEquals(0.0476, data.get(8).getDataElement("sigdec"));
+			testMeta(data);
+
+			for (String tbl : new String[]{"data_dd", "data_meta"}) {
+				String sql = "select * from " + tbl + " order by 1";
+				Assert.assertEquals(tbl, JdbcFactory.getSimpleTemplate(dbAdapter.getDbInstance(dbFile)).queryForList(sql),
+									JdbcFactory.getSimpleTemplate(dbAdapter.getDbInstance(streamDbFile)).queryForList(sql));
+			}
+		} catch (Exception e) {
+			Assert.fail("testStreamIngest failed with exception: " + e.getMessage());
+		}
+	}
+
 	private void testMeta(DataGroup data) {
 		// test meta
 		Assert.assertEquals("'ORIGIN value'", data.getAttribute("ORIGIN").getValue());
@@ -0,0 +1,84 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.query;
+
+import edu.caltech.ipac.firefly.ConfigTest;
+import edu.caltech.ipac.firefly.data.SortInfo;
+import edu.caltech.ipac.firefly.data.TableServerRequest;
+import edu.caltech.ipac.firefly.server.util.ipactable.JsonTableUtil;
+import edu.caltech.ipac.util.DataGroup;
+import edu.caltech.ipac.util.DataObject;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * The statistics of a search must be computed on its filtered results, whether or not they were already materialized.
+ */
+public class StatisticsProcessorDbTest extends ConfigTest {
+
+	private static final int ROWS = 5000;
+
+	@BeforeClass
+	public static void setUp() {
+		setupServerContext();
+		TestDbProcessor.register(StatisticsProcessor.class);
+	}
+
+	@Test
+	public void testFilteredStats() throws DataAccessException {
+		TableServerRequest sreq = TestDbProcessor.makeRequest(ROWS);
+		sreq.setFilters(Collections.singletonList("\"mag\" > 15"));
+		sreq.setSortInfo(new SortInfo(SortInfo.Direction.DESC, "\"ra\""));    // this sort is never materialized
+
+		DataGroup stats = getStats(sreq);
+
+		DataGroup data = TestDbProcessor.makeData(ROWS);
+		long count = 0;
+		double minRa = Double.MAX_VALUE, maxRa = -Double.MAX_VALUE, sumMag = 0;
+		for (DataObject row : data) {
+			Float mag = (Float) row.getDataElement("mag");
+			if (mag == null || mag <= 15) continue;
+			double ra = (Double) row.getDataElement("ra");
+			count++;
+			minRa = Math.min(minRa, ra);
+			maxRa = Math.max(maxRa, ra);
+			sumMag += mag;
+		}
+		Assert.assertTrue(count > 0 && count < ROWS / 2);
+
+		DataObject ra = findColumn(stats, "ra");
+		Assert.assertEquals(count, ((Number) ra.getDataElement("numPoints")).longValue());
+		Assert.assertEquals(minRa, (Double) ra.getDataElement("min"), 1e-9);
+		Assert.assertEquals(maxRa, (Double) ra.getDataElement("max"), 1e-9);
+
+		DataObject mag = findColumn(stats, "mag");
+		Assert.assertEquals(count, ((Number) mag.getDataElement("numPoints")).longValue());
+		Assert.assertEquals(sumMag / count, (Double) mag.getDataElement("mean"), 1e-4);
+	}
+
+	@Test
+	public void testUnfilteredStats() throws DataAccessException {
+		DataGroup stats = getStats(TestDbProcessor.makeRequest(ROWS));
+		Assert.assertEquals(ROWS, ((Number) findColumn(stats, "id").getDataElement("numPoints")).longValue());
+		Assert.assertEquals(ROWS - (ROWS + 6) / 7, ((Number) findColumn(stats, "mag").getDataElement("numPoints")).longValue());
+	}
+
+	private static DataGroup getStats(TableServerRequest sreq) throws DataAccessException {
+		TableServerRequest treq = new TableServerRequest("StatisticsProcessor");
+		treq.setParam(TableFunctionProcessor.SEARCH_REQUEST, JsonTableUtil.toJsonTableRequest(sreq).toString());
+		treq.setPageSize(Integer.MAX_VALUE);
+		return new SearchManager().getDataGroup(treq).getData();
+	}
+
+	private static DataObject findColumn(DataGroup stats, String cname) {
+		for (DataObject row : stats) {
+			if (cname.equals(row.getDataElement("columnName"))) return row;
+		}
+		Assert.fail("no statistics for column " + cname);
+		return null;
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.query;
+
+import edu.caltech.ipac.firefly.data.FileInfo;
+import edu.caltech.ipac.firefly.data.TableServerRequest;
+import edu.caltech.ipac.firefly.server.db.DbAdapter;
+import edu.caltech.ipac.firefly.server.db.EmbeddedDbUtil;
+import edu.caltech.ipac.util.DataGroup;
+import edu.caltech.ipac.util.DataObject;
+import edu.caltech.ipac.util.DataType;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+
+/**
+ * An EmbeddedDbProcessor for tests.  Its data table is made of the number of rows given by the 'rows' parameter.
+ * Every 7th row has no mag.
+ */
+@SearchProcessorImpl(id = TestDbProcessor.ID)
+public class TestDbProcessor extends EmbeddedDbProcessor {
+    public static final String ID = "TestDbProcessor";
+
+    /**
+     * make this and the given processors available to SearchManager, whether or not they can be found on the classpath.
+     */
+    public static void register(Class<?>... others) {
+        SearchProcessorFactory.init();
+        if (SearchProcessorFactory.searchProcessors == null) {
+            SearchProcessorFactory.searchProcessors = new LinkedHashMap<>();
+        }
+        SearchProcessorFactory.searchProcessors.put(ID, TestDbProcessor.class);
+        for (Class<?> c : others) {
+            SearchProcessorFactory.searchProcessors.put(c.getAnnotation(SearchProcessorImpl.class).id(), c);
+        }
+    }
+
+    public static TableServerRequest makeRequest(int rows) {
+        TableServerRequest treq = new TableServerRequest(ID);
+        treq.setParam("rows", String.valueOf(rows));
+        return treq;
+    }
+
+    public static DataGroup makeData(int rows) {
+        DataType[] cols = new DataType[]{
+                new DataType("id", Integer.class),
+                new DataType("ra", Double.class),
+                new DataType("dec", Double.class),
+                new DataType("mag", Float.class),
+                new DataType("name", String.class),
+        };
+        DataGroup dg = new DataGroup("test", cols);
+        for (int i = 0; i < rows; i++) {
+            DataObject row = new DataObject(dg);
+            row.setDataElement(cols[0], i);
+            row.setDataElement(cols[1], (i * 37 % 360) + i / 1000.0);
+            row.setDataElement(cols[2], (i * 13 % 180) - 90 + i / 1000.0);
+            row.setDataElement(cols[3], i % 7 == 0 ? null : (float) (10 + i * 11 % 100 / 10.0));
+            row.setDataElement(cols[4], "obj" + (i * 17 % rows));
+            dg.add(row);
+        }
+        return dg;
+    }
+
+    public FileInfo ingestDataIntoDb(TableServerRequest req, File dbFile) throws DataAccessException {
+        DataGroup dg = makeData(req.getIntParam("rows"));
+        return EmbeddedDbUtil.ingestDataGroup(dbFile, dg, DbAdapter.getAdapter(req), "data");
+    }
+}
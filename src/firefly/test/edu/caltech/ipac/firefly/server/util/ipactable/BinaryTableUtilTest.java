@@ -0,0 +1,112 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.util.ipactable;
+
+import edu.caltech.ipac.firefly.data.TableServerRequest;
+import edu.caltech.ipac.util.DataGroup;
+import edu.caltech.ipac.util.DataObject;
+import edu.caltech.ipac.util.DataType;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks the byte layout written by BinaryTableUtil, the same way tables/BinaryTableReader.js reads it.
+ */
+public class BinaryTableUtilTest {
+
+    private static final int ROWS = 11;     // not a multiple of 8, so the validity bitmaps are padded
+
+    @Test
+    public void testLayout() throws Exception {
+        DataType d = new DataType("d", Double.class);
+        DataType f = new DataType("f", Float.class);
+        DataType l = new DataType("l", Long.class);
+        DataType i = new DataType("i", Integer.class);
+        DataType s = new DataType("s", String.class);
+        DataGroup data = new DataGroup("test", new DataType[]{d, f, l, i, s});
+        for (int r = 0; r < ROWS; r++) {
+            DataObject row = new DataObject(data);
+            boolean isNull = r % 4 == 3;
+            row.setDataElement(d, isNull ? null : r * 1.5);
+            row.setDataElement(f, isNull ? null : r * 0.25f);
+            row.setDataElement(l, isNull ? null : (1L << 40) + r);
+            row.setDataElement(i, isNull ? null : -r);
+            row.setDataElement(s, isNull ? null : "row é" + r);
+            data.add(row);
+        }
+        DataGroupPart page = new DataGroupPart(new TableDef(), data, 0, ROWS);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryTableUtil.writeBinaryTableModel(out, page, new TableServerRequest("test"));
+        ByteBuffer buf = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+
+        byte[] magic = new byte[4];
+        buf.get(magic);
+        Assert.assertEquals(BinaryTableUtil.MAGIC, new String(magic, StandardCharsets.US_ASCII));
+        Assert.assertEquals(BinaryTableUtil.VERSION, buf.getInt());
+        Assert.assertEquals(ROWS, buf.getInt());
+        int headerLength = buf.getInt();
+        byte[] header = new byte[headerLength];
+        buf.get(header);
+        JSONObject tableModel = (JSONObject) new JSONParser().parse(new String(header, StandardCharsets.UTF_8));
+        JSONObject tableData = (JSONObject) tableModel.get("tableData");
+        Assert.assertNull("the data is not in the header", tableData.get("data"));
+        JSONArray columns = (JSONArray) tableData.get("columns");
+        Assert.assertEquals(5, columns.size());
+        String[] encodings = {"float64", "float32", "int64", "int32", "utf8"};
+        for (int c = 0; c < encodings.length; c++) {
+            Assert.assertEquals(encodings[c], ((JSONObject) columns.get(c)).get("encoding"));
+        }
+        skipPadding(buf);
+
+        byte[] validity = new byte[(ROWS + 7) / 8];
+        for (int c = 0; c < encodings.length; c++) {
+            buf.get(validity);
+            skipPadding(buf);
+            for (int r = 0; r < ROWS; r++) {
+                boolean isNull = r % 4 == 3;
+                Assert.assertEquals("validity of column " + c + " row " + r, !isNull, (validity[r >> 3] & (1 << (r & 7))) != 0);
+            }
+            if (c < 4) {
+                for (int r = 0; r < ROWS; r++) {
+                    boolean isNull = r % 4 == 3;
+                    switch (c) {
+                        case 0: Assert.assertEquals(isNull ? 0 : r * 1.5, buf.getDouble(), 0); break;
+                        case 1: Assert.assertEquals(isNull ? 0 : r * 0.25f, buf.getFloat(), 0); break;
+                        case 2: Assert.assertEquals(isNull ? 0 : (1L << 40) + r, buf.getLong()); break;
+                        default: Assert.assertEquals(isNull ? 0 : -r, buf.getInt());
+                    }
+                }
+            } else {
+                int[] offsets = new int[ROWS + 1];
+                for (int r = 0; r <= ROWS; r++) offsets[r] = buf.getInt();
+                skipPadding(buf);
+                int start = buf.position();
+                for (int r = 0; r < ROWS; r++) {
+                    byte[] v = new byte[offsets[r + 1] - offsets[r]];
+                    buf.position(start + offsets[r]);
+                    buf.get(v);
+                    Assert.assertEquals(r % 4 == 3 ? "" : "row é" + r, new String(v, StandardCharsets.UTF_8));
+                }
+                buf.position(start + offsets[ROWS]);
+            }
+            skipPadding(buf);
+        }
+        Assert.assertEquals("nothing after the last column", 0, buf.remaining());
+    }
+
+    private static void skipPadding(ByteBuffer buf) {
+        while (buf.position() % 8 != 0) {
+            Assert.assertEquals("padding should be zero", 0, buf.get());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.firefly.server.util.ipactable;
+
+import edu.caltech.ipac.firefly.data.SortInfo;
+import edu.caltech.ipac.firefly.data.TableServerRequest;
+import edu.caltech.ipac.firefly.data.table.SelectionInfo;
+import edu.caltech.ipac.util.DataGroup;
+import edu.caltech.ipac.util.DataObject;
+import edu.caltech.ipac.util.DataType;
+import org.json.simple.parser.JSONParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+
+/**
+ * The table model written to a stream by writeJsonTableModel must be the same as the one from toJsonTableModel.
+ */
+public class JsonTableUtilTest {
+
+    @Test
+    public void testWriteJsonTableModel() throws Exception {
+        String expected = JsonTableUtil.toJsonTableModel(makePage(), makeRequest()).toJSONString();
+
+        StringWriter writer = new StringWriter();
+        JsonTableUtil.writeJsonTableModel(writer, makePage(), makeRequest());
+
+        JSONParser parser = new JSONParser();
+        Assert.assertEquals(parser.parse(expected), parser.parse(writer.toString()));
+    }
+
+    private static TableServerRequest makeRequest() {
+        TableServerRequest request = new TableServerRequest("searchProcID");
+        request.setTblId("tbl-1");
+        request.setMeta("test-meta", "test \"meta\" value");
+        request.setSortInfo(new SortInfo("ra"));
+        request.setFilters(Arrays.asList("ra > 0", "name like 'a%'"));
+        return request;
+    }
+
+    private static DataGroupPart makePage() {
+        DataType ra = new DataType("ra", Double.class);
+        DataType mag = new DataType("mag", Float.class);
+        DataType name = new DataType("name", String.class);
+        ra.setUnits("deg");
+        DataGroup data = new DataGroup("test title", new DataType[]{ra, mag, name});
+        for (int i = 0; i < 25; i++) {
+            DataObject row = new DataObject(data);
+            row.setDataElement(ra, i * 12.345678);
+            row.setDataElement(mag, i % 5 == 0 ? null : i / 3f);
+            row.setDataElement(name, i % 7 == 0 ? "a \"quoted\\\" name, " + i : "n" + i);
+            data.add(row);
+        }
+        TableDef tableDef = new TableDef();
+        tableDef.setAttribute("col.ra.Label", "Right Ascension");
+        tableDef.setAttribute("some.meta", "value");
+        tableDef.setSelectInfo(new SelectionInfo(false, Arrays.asList(1, 3), 25));
+        return new DataGroupPart(tableDef, data, 0, 25);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.util.decimate;
+
+import edu.caltech.ipac.firefly.ConfigTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class XYSamplerTest extends ConfigTest {
+
+	@Test
+	public void testWeights() {
+		int n = 500000;             // large enough to be sampled in parallel
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		Random r = new Random(7);
+		for (int i = 0; i < n; i++) {
+			xs[i] = r.nextGaussian();
+			ys[i] = i % 1000 == 0 ? Double.NaN : r.nextGaussian() * 3;
+		}
+		DecimateKey key = new DecimateKey(-1, -3, 20, 20, .1, .3);
+		double[] limits = {-1, 1, -3, 3};
+
+		Map<String, Integer> expected = new HashMap<>();
+		for (int i = 0; i < n; i++) {
+			if (Double.isNaN(ys[i]) || xs[i] < -1 || xs[i] > 1 || ys[i] < -3 || ys[i] > 3) continue;
+			expected.merge(key.getKey(xs[i], ys[i]), 1, Integer::sum);
+		}
+
+		XYSampler.Samples samples = XYSampler.sample(xs, ys, n, key, limits);
+		Assert.assertEquals(expected.size(), samples.size());
+		for (int i = 0; i < samples.size(); i++) {
+			int row = samples.getRowIdx(i);
+			Assert.assertEquals(expected.get(samples.getKey(i)), Integer.valueOf(samples.getWeight(i)));
+			Assert.assertEquals(samples.getKey(i), key.getKey(xs[row], ys[row]));       // the sample is from its own cell
+		}
+	}
+}
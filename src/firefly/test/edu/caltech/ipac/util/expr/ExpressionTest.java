@@ -0,0 +1,46 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.util.expr;
+
+import edu.caltech.ipac.firefly.ConfigTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class ExpressionTest extends ConfigTest {
+
+	@Test
+	public void testGetValues() {
+		int n = 300000;             // large enough to be evaluated in parallel
+		double[] a = new double[n];
+		double[] b = new double[n];
+		Random r = new Random(11);
+		for (int i = 0; i < n; i++) {
+			a[i] = i % 500 == 0 ? Double.NaN : r.nextGaussian() * 10;
+			b[i] = r.nextInt(5) - 2;
+		}
+		Map<String, double[]> columns = new HashMap<>();
+		columns.put("a", a);
+		columns.put("b", b);
+
+		String[] inputs = {"a", "a+b*2", "-a/b", "sqrt(abs(a))*pi", "log10(a^2+1)-ln(b+3)", "max(a,b)-min(a,b)",
+				"atan2(a,b)", "if(a > b, a, b)", "a >= 0 and b <> 0 or a = b", "floor(a)+ceil(b)+round(a/3)",
+				"cos(a)+sin(b)+tan(a/10)+exp(b)", "3+4"};
+		for (String input : inputs) {
+			Expression expr = new Expression(input, Arrays.asList("a", "b"));
+			Assert.assertTrue(input, expr.isValid());
+			double[] values = expr.getValues(columns, n);
+			for (int i = 0; i < n; i++) {
+				for (String v : expr.getParsedVariables()) {
+					if (columns.containsKey(v)) expr.setVariableValue(v, columns.get(v)[i]);
+				}
+				Assert.assertEquals(input + " at row " + i, expr.getValue(), values[i], 0);
+			}
+		}
+	}
+}
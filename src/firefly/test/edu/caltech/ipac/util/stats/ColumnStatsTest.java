@@ -0,0 +1,67 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.util.stats;
+
+import edu.caltech.ipac.firefly.ConfigTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class ColumnStatsTest extends ConfigTest {
+
+	@Test
+	public void testMergedParts() {
+		int n = 1000000;
+		double[] vals = new double[n];
+		Random r = new Random(5);
+		for (int i = 0; i < n; i++) {
+			vals[i] = i % 100 == 0 ? Double.NaN : 1e9 + r.nextGaussian() * 2;       // large offset to test accuracy of the variance
+		}
+
+		// compute in 4 parts, then merge them
+		ColumnStats stats = new ColumnStats();
+		for (int p = 0; p < 4; p++) {
+			ColumnStats part = new ColumnStats();
+			double[] partVals = Arrays.copyOfRange(vals, p * n / 4, (p + 1) * n / 4);
+			part.addAll(partVals, partVals.length);
+			stats.merge(part);
+		}
+
+		double[] valid = Arrays.stream(vals).filter(v -> !Double.isNaN(v)).sorted().toArray();
+		double mean = Arrays.stream(valid).average().getAsDouble();
+		double var = Arrays.stream(valid).map(v -> (v - mean) * (v - mean)).sum() / (valid.length - 1);
+
+		Assert.assertEquals(valid.length, stats.getCount());
+		Assert.assertEquals(valid[0], stats.getMin(), 0);
+		Assert.assertEquals(valid[valid.length - 1], stats.getMax(), 0);
+		Assert.assertEquals(mean, stats.getMean(), 1e-5);
+		Assert.assertEquals(Math.sqrt(var), stats.getStdDev(), 1e-6);
+
+		// the rank of each estimated quantile should be within 1% of n
+		double[] qs = {.01, .25, .5, .75, .99};
+		double[] estimates = stats.getQuantiles(qs);
+		for (int i = 0; i < qs.length; i++) {
+			int rank = Arrays.binarySearch(valid, estimates[i]);
+			Assert.assertTrue("quantile " + qs[i] + " is not one of the values", rank >= 0);
+			Assert.assertEquals("quantile " + qs[i], qs[i], (double) rank / valid.length, .01);
+		}
+	}
+
+	@Test
+	public void testSmall() {
+		ColumnStats stats = new ColumnStats();
+		Assert.assertTrue(Double.isNaN(stats.getMean()));
+		Assert.assertTrue(Double.isNaN(stats.getQuantile(.5)));
+
+		for (double v : new double[]{3, 1, 2, Double.NaN, 5, 4}) stats.add(v);
+		Assert.assertEquals(5, stats.getCount());
+		Assert.assertEquals(3, stats.getMean(), 0);
+		Assert.assertEquals(Math.sqrt(2.5), stats.getStdDev(), 1e-12);
+		Assert.assertEquals(3, stats.getQuantile(.5), 0);       // exact while all of the values fit in the sketch
+		Assert.assertEquals(1, stats.getQuantile(0), 0);
+		Assert.assertEquals(5, stats.getQuantile(1), 0);
+	}
+}
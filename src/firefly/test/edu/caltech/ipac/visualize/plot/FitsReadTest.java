@@ -2,14 +2,22 @@ package edu.caltech.ipac.visualize.plot;
 
 import edu.caltech.ipac.firefly.util.FileLoader;
 import edu.caltech.ipac.firefly.util.FitsValidation;
+import edu.caltech.ipac.util.DataGroup;
 import nom.tam.fits.*;
+import nom.tam.util.BufferedDataOutputStream;
+import nom.tam.util.BufferedFile;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Created by zhang on 12/9/16.
@@ -104,6 +112,72 @@ public class FitsReadTest extends FitsValidation {
         FitsRead[]  fitsReadArray= FitsRead.createFitsReadArray(threeExtensionFits);
         Assert.assertEquals(fitsReadArray.length, 3);
     }
+    @Test
+    public void testLazyFitsReadArray() throws FitsException, IOException {
+        //reading only the headers, and the pixels on demand, should give the same FitsReads as reading the whole file
+        File file = FileLoader.resolveFile(FitsReadTest.class, threeExtensionFileName);
+        FitsRead[] expected = FitsRead.createFitsReadArray(threeExtensionFits);
+        FitsRead[] lazy = FitsRead.createFitsReadArray(file, false);
+        Assert.assertEquals(expected.length, lazy.length);
+        for (int i = 0; i < lazy.length; i++) {
+            Assert.assertEquals(expected[i].getExtensionNumber(), lazy[i].getExtensionNumber());
+            Assert.assertEquals(expected[i].getImageHeader().crpix2, lazy[i].getImageHeader().crpix2, delta);
+            Assert.assertEquals(expected[i].getImageHeader().data_offset, lazy[i].getImageHeader().data_offset);
+            Assert.assertArrayEquals(expected[i].getDataFloat(), lazy[i].getDataFloat(), 0);
+            validateFits(expected[i].createNewFits(), lazy[i].createNewFits());
+        }
+    }
+
+    @Test
+    public void testLazyReadListener() throws FitsException, IOException {
+        //the listener is told once when the pixels are read, and when they can not be read, without holding the lock
+        File file = File.createTempFile("lazy", ".fits");
+        try {
+            Fits fits = new Fits();
+            fits.addHDU(Fits.makeHDU(new float[20][30]));
+            fits.addHDU(Fits.makeHDU(new float[10][10]));
+            try (BufferedFile out = new BufferedFile(file, "rw")) {
+                fits.write(out);
+            }
+            FitsRead[] lazy = FitsRead.createFitsReadArray(file, false);
+            int[] loaded = new int[1];
+            List<Exception> failed = new ArrayList<>();
+            boolean[] locked = new boolean[1];
+            FitsRead.PixelLoadListener listener = new FitsRead.PixelLoadListener() {
+                public void pixelsLoaded(FitsRead fr) {
+                    loaded[0]++;
+                    locked[0] |= Thread.holdsLock(fr);
+                }
+                public void pixelsFailed(FitsRead fr, Exception e) {
+                    failed.add(e);
+                    locked[0] |= Thread.holdsLock(fr);
+                }
+            };
+            for (FitsRead fr : lazy) fr.setPixelLoadListener(listener);
+
+            lazy[0].getDataFloat();
+            lazy[0].getDataFloat();
+            Assert.assertEquals(1, loaded[0]);
+
+            Assert.assertTrue(file.delete());
+            try {
+                lazy[1].getDataFloat();
+                Assert.fail("the pixels of a deleted file can not be read");
+            } catch (IllegalStateException e) {
+                Assert.assertEquals(1, failed.size());
+            }
+            try {
+                lazy[1].getHDU();
+                Assert.fail("the hdu of a deleted file can not be read");
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals(2, failed.size());
+            }
+            Assert.assertFalse("the listener should be called without the lock", locked[0]);
+        } finally {
+            file.delete();
+        }
+    }
+
     @Test
     public void testFitsRead() throws FitsException, IOException {
 
@@ -131,6 +205,172 @@ public class FitsReadTest extends FitsValidation {
         validateFits(expectedOutCubeFits, newFits);
 
     }
+    @Test
+    public void testCreateFitsImageCubeOnDemand() throws FitsException, IOException {
+        //the planes created on demand should be the same as the planes of the cube read at once
+        File file = FileLoader.resolveFile(FitsReadTest.class, inCubeFitsFileName);
+        FitsImageCube expected = FitsRead.createFitsImageCube(FileLoader.loadFits(FitsReadTest.class, inCubeFitsFileName));
+        FitsImageCube fic = FitsRead.createFitsImageCube(file);
+        Assert.assertArrayEquals(expected.getMapKeys(), fic.getMapKeys());
+        for (Object key : fic.getMapKeys()) {
+            FitsRead[] expectedPlanes = expected.getFitsReadMap().get(key);
+            Assert.assertEquals(expectedPlanes.length, fic.getNumOfPlanes((String) key));
+            for (int z = 0; z < expectedPlanes.length; z++) {
+                FitsRead plane = fic.getFitsRead((String) key, z);
+                Assert.assertEquals(expectedPlanes[z].getPlaneNumber(), plane.getPlaneNumber());
+                Assert.assertArrayEquals(expectedPlanes[z].getDataFloat(), plane.getDataFloat(), 0);
+            }
+        }
+        validateFits(expectedOutCubeFits, fic.getFitsRead((String) fic.getMapKeys()[0], 1).createNewFits());
+    }
+
+    @Test
+    public void testCubeDataGroupOnDemand() throws FitsException, IOException, PixelValueException {
+        //the pixels of a cube read on demand, or from a compressed file, should be the same as the ones of the cube read at once
+        short[][][] data = new short[4][20][30];
+        for (int z = 0; z < data.length; z++) {
+            for (int y = 0; y < data[z].length; y++) {
+                for (int x = 0; x < data[z][y].length; x++) data[z][y][x] = (short) (z * 1000 + y * 30 + x);
+            }
+        }
+        BasicHDU hdu = Fits.makeHDU(data);
+        hdu.getHeader().addValue("BSCALE", 2.0, null);
+        hdu.getHeader().addValue("BZERO", 10.0, null);
+        hdu.getHeader().addValue("CDELT2", -0.01, null);        // the lines are read in reverse order
+        hdu.getHeader().addValue("CRVAL3", 5.0, null);
+        hdu.getHeader().addValue("CDELT3", 0.5, null);
+        Fits fits = new Fits();
+        fits.addHDU(hdu);
+
+        File file = File.createTempFile("cube", ".fits");
+        File gzFile = File.createTempFile("cube", ".fits.gz");
+        try {
+            try (BufferedFile out = new BufferedFile(file, "rw")) {
+                fits.write(out);
+            }
+            try (BufferedDataOutputStream out = new BufferedDataOutputStream(new GZIPOutputStream(new FileOutputStream(gzFile)))) {
+                fits.write(out);
+            }
+            FitsImageCube expected = FitsRead.createFitsImageCube(new Fits(file));
+            String key = (String) expected.getMapKeys()[0];
+            for (File f : new File[] {file, gzFile}) {
+                FitsImageCube fic = FitsRead.createFitsImageCube(f);
+                for (ImagePt pt : new ImagePt[] {new ImagePt(0.5, 0.5), new ImagePt(12.5, 7.5), new ImagePt(29.5, 19.5)}) {
+                    DataGroup expectedDg = expected.getDataGroup(key, pt);
+                    DataGroup dg = fic.getDataGroup(key, pt);
+                    Assert.assertEquals(4, dg.size());
+                    for (int z = 0; z < dg.size(); z++) {
+                        Assert.assertArrayEquals(f.getName() + " " + pt + " plane " + z,
+                                                 expectedDg.get(z).getData(), dg.get(z).getData());
+                    }
+                }
+            }
+        } finally {
+            file.delete();
+            gzFile.delete();
+        }
+    }
+
+    @Test
+    public void testStretch() throws FitsException {
+        //the stretch of a range split across threads, by lookup table for 16 bit images, should be the same as
+        //stretching each pixel on its own
+        int naxis1 = 640;
+        int naxis2 = 480;
+        short[][] shorts = new short[naxis2][naxis1];
+        float[][] floats = new float[naxis2][naxis1];
+        for (int y = 0; y < naxis2; y++) {
+            for (int x = 0; x < naxis1; x++) {
+                shorts[y][x] = (short) ((x * 97 + y * 131) % 30000 - 2000);
+                floats[y][x] = (x + y) % 101 == 0 ? Float.NaN : (float) (Math.sin(x / 37.0) * Math.cos(y / 23.0) * 12000 + 8000.25);
+            }
+        }
+        RangeValues[] rangeValues = {
+                new RangeValues(RangeValues.ABSOLUTE, 100, RangeValues.ABSOLUTE, 20000, 50, 2, RangeValues.STRETCH_LINEAR, 25, 600, 120, 0.5, 1.0),
+                new RangeValues(RangeValues.ABSOLUTE, 100, RangeValues.ABSOLUTE, 20000, 50, 2, RangeValues.STRETCH_LINEAR, 25, 600, 120, 0.7, 1.4),
+                new RangeValues(RangeValues.ABSOLUTE, 100, RangeValues.ABSOLUTE, 20000, 50, 2, RangeValues.STRETCH_LOG, 25, 600, 120, 0.4, 0.8),
+                new RangeValues(RangeValues.ABSOLUTE, 100, RangeValues.ABSOLUTE, 20000, 50, 2, RangeValues.STRETCH_ASINH, 25, 600, 120, 0.5, 1.0),
+                new RangeValues(RangeValues.ABSOLUTE, 100, RangeValues.ABSOLUTE, 20000, 50, 2, RangeValues.STRETCH_POWERLAW_GAMMA, 25, 600, 120, 0.6, 1.2),
+        };
+        int startPixel = 17;
+        int lastPixel = 590;
+        int startLine = 9;
+        int lastLine = 470;
+        int width = lastPixel - startPixel + 1;
+        int lines = lastLine - startLine + 1;
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (Object data : new Object[] {shorts, floats}) {
+                Fits fits = new Fits();
+                fits.addHDU(Fits.makeHDU(data));
+                FitsRead fr = FitsRead.createFitsReadArray(fits)[0];
+                float[][] raw = data == shorts ? toFloat(shorts) : floats;
+                for (RangeValues rv : rangeValues) {
+                    byte[] expected = new byte[width * lines];
+                    for (int y = startLine; y <= lastLine; y++) {
+                        for (int x = startPixel; x <= lastPixel; x++) {
+                            expected[(y - startLine) * width + x - startPixel] = stretchPixel(rv, raw[y][x], 100, 20000);
+                        }
+                    }
+                    for (ForkJoinPool p : new ForkJoinPool[] {null, pool}) {
+                        byte[] pixelData = new byte[width * lines];
+                        fr.doStretch(rv, pixelData, false, startPixel, lastPixel, startLine, lastLine, p);
+                        Assert.assertArrayEquals("bitpix " + fr.getImageHeader().bitpix + " " + rv + (p == null ? "" : " in parallel"),
+                                                 expected, pixelData);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static float[][] toFloat(short[][] data) {
+        float[][] floats = new float[data.length][data[0].length];
+        for (int y = 0; y < data.length; y++) {
+            for (int x = 0; x < data[y].length; x++) floats[y][x] = data[y][x];
+        }
+        return floats;
+    }
+
+    /**
+     * the stretch of one pixel, for an image without BSCALE and BZERO and a range of absolute values
+     */
+    private static byte stretchPixel(RangeValues rv, float raw, double slow, double shigh) {
+        if (rv.getStretchAlgorithm() == RangeValues.STRETCH_ASINH) {
+            double beta = rv.getBetaValue();
+            return (byte) (255 * asinh((raw - slow) / beta) / asinh((shigh - slow) / beta));
+        }
+        if (Float.isNaN(raw)) return (byte) 255;
+
+        double sdiff = shigh - slow;
+        byte pixel;
+        switch (rv.getStretchAlgorithm()) {
+            case RangeValues.STRETCH_LINEAR:
+                pixel = (byte) Math.min(Math.max((raw - slow) * 254 / sdiff, 0), 254);
+                break;
+            case RangeValues.STRETCH_POWERLAW_GAMMA:
+                double invGamma = 1.0 / rv.getGammaValue();
+                pixel = (byte) (255 * (Math.pow(raw - slow, invGamma) / Math.pow(sdiff, invGamma)));
+                break;
+            case RangeValues.STRETCH_LOG:
+                // the number of steps of the log scale below the value
+                int step = 0;
+                while (step < 254 && (Math.pow(10., (step + 1) / 254.0) - 1.) / 9. * sdiff + slow < raw) step++;
+                pixel = (byte) step;
+                break;
+            default:
+                throw new IllegalArgumentException("no reference for " + rv);
+        }
+        return rv.computeBiasAndContrast(pixel);
+    }
+
+    private static double asinh(double x) {
+        double y = Math.log(Math.abs(x) + Math.sqrt(x * x + 1));
+        return x < 0 ? -y : y;
+    }
+
     @Test
     public void testCreateFitsReadRotatedFromNorth(){
        //TODO
@@ -0,0 +1,162 @@
+package edu.caltech.ipac.visualize.plot;
+
+import nom.tam.fits.BasicHDU;
+import nom.tam.fits.Fits;
+import nom.tam.fits.FitsException;
+import nom.tam.fits.Header;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.caltech.ipac.visualize.plot.projection.Projection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Geom computes the tie points and the rows of the output on several threads.  The output must be the same, bit for bit,
+ * as the output computed on the calling thread only.  The images are made here, so that the projections
+ * that had static state (CAR, CEA and SFL) and a coordinate conversion are both covered.
+ */
+public class GeomParallelTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @AfterClass
+    public static void tearDown() {
+        POOL.shutdown();
+    }
+
+    @Test
+    public void testCarToGalacticTan() throws FitsException, IOException, GeomException {
+        WorldPt center = Plot.convert(new WorldPt(10, 20), CoordinateSys.GALACTIC);
+        compare("RA---CAR", "DEC--CAR", 10, 20, 0,
+                "GLON-TAN", "GLAT-TAN", center.getLon(), center.getLat(), 30);
+    }
+
+    @Test
+    public void testTanToCar() throws FitsException, IOException, GeomException {
+        compare("RA---TAN", "DEC--TAN", 10, 20, 0,
+                "RA---CAR", "DEC--CAR", 10.1, 20.1, 0);
+    }
+
+    @Test
+    public void testTanTan() throws FitsException, IOException, GeomException {
+        compare("RA---TAN", "DEC--TAN", 10, 20, 0,
+                "RA---TAN", "DEC--TAN", 10.1, 20.1, 0);
+    }
+
+    @Test
+    public void testCarTan() throws FitsException, IOException, GeomException {
+        compare("RA---CAR", "DEC--CAR", 10, 20, 0,
+                "RA---TAN", "DEC--TAN", 10.1, 20.1, 0);
+    }
+
+    @Test
+    public void testCeaAndSfl() throws FitsException, IOException, GeomException {
+        compare("RA---SFL", "DEC--SFL", 10, 20, 0,
+                "RA---CEA", "DEC--CEA", 10.1, 20.1, 0);
+    }
+
+    /**
+     * Projections of the same type with different reference points, used at the same time, must not change each other.
+     */
+    @Test
+    public void testConcurrentProjections() throws Exception {
+        for (String type : new String[] {"CAR", "CEA", "SFL"}) {
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                double crval2 = -40 + t * 25;
+                Projection proj = new ImageHeader(makeFits(new float[10][10], "RA---" + type, "DEC--" + type,
+                                                           t * 30, crval2, 0, 0.01).getHDU(0).getHeader())
+                                          .createProjection(CoordinateSys.EQ_J2000);
+                double lon = t * 30 + 0.02;
+                double lat = crval2 + 0.03;
+                ProjectionPt expectedPt = proj.getImageCoords(lon, lat);
+                WorldPt expectedWpt = proj.getWorldCoords(3, 4);
+                tasks.add(() -> {
+                    for (int i = 0; i < 200000; i++) {
+                        ProjectionPt pt = proj.getImageCoords(lon, lat);
+                        WorldPt wpt = proj.getWorldCoords(3, 4);
+                        if (pt.getFsamp() != expectedPt.getFsamp() || pt.getFline() != expectedPt.getFline() ||
+                                wpt.getX() != expectedWpt.getX() || wpt.getY() != expectedWpt.getY()) {
+                            return false;
+                        }
+                    }
+                    return true;
+                });
+            }
+            for (Future<Boolean> f : POOL.invokeAll(tasks)) {
+                Assert.assertTrue(type + " projections used at the same time should not change each other", f.get());
+            }
+        }
+    }
+
+    private void compare(String ctype1, String ctype2, double crval1, double crval2, double crota2,
+                         String refCtype1, String refCtype2, double refCrval1, double refCrval2, double refCrota2)
+            throws FitsException, IOException, GeomException {
+
+        for (int tieSkip : new int[] {2, 3, 10}) {
+            for (boolean interp : new boolean[] {false, true}) {
+                float[] sequential = reproject(null, tieSkip, interp, ctype1, ctype2, crval1, crval2, crota2,
+                                               refCtype1, refCtype2, refCrval1, refCrval2, refCrota2);
+                float[] parallel = reproject(POOL, tieSkip, interp, ctype1, ctype2, crval1, crval2, crota2,
+                                             refCtype1, refCtype2, refCrval1, refCrval2, refCrota2);
+                Assert.assertEquals(sequential.length, parallel.length);
+                int finite = 0;
+                for (int i = 0; i < sequential.length; i++) {
+                    Assert.assertEquals("tie_skip=" + tieSkip + " interp=" + interp + " pixel " + i,
+                                        Float.floatToRawIntBits(sequential[i]), Float.floatToRawIntBits(parallel[i]));
+                    if (!Float.isNaN(sequential[i])) finite++;
+                }
+                Assert.assertTrue("the images should overlap", finite > sequential.length / 4);
+            }
+        }
+    }
+
+    private float[] reproject(ForkJoinPool pool, int tieSkip, boolean interp,
+                              String ctype1, String ctype2, double crval1, double crval2, double crota2,
+                              String refCtype1, String refCtype2, double refCrval1, double refCrval2, double refCrota2)
+            throws FitsException, IOException, GeomException {
+
+        float[][] data = new float[150][200];
+        for (int y = 0; y < data.length; y++) {
+            for (int x = 0; x < data[y].length; x++) {
+                data[y][x] = (x * 7 + y * 13) % 17 == 0 ? Float.NaN : (float) (Math.sin(x / 9.0) * Math.cos(y / 7.0) * 100 + x);
+            }
+        }
+        Fits inFits = makeFits(data, ctype1, ctype2, crval1, crval2, crota2, 0.01);
+        Fits refFits = makeFits(new float[170][180], refCtype1, refCtype2, refCrval1, refCrval2, refCrota2, 0.012);
+
+        Geom geom = new Geom();
+        geom.pool = pool;
+        geom.tie_skip = tieSkip;
+        geom.interp_flag = interp;
+        geom.open_in(FitsRead.createFitsReadArray(inFits)[0]);
+        Fits outFits = geom.do_geom(refFits);
+        return FitsRead.createFitsReadArray(outFits)[0].getDataFloat();
+    }
+
+    private static Fits makeFits(float[][] data, String ctype1, String ctype2,
+                                 double crval1, double crval2, double crota2, double cdelt) throws FitsException {
+        BasicHDU hdu = Fits.makeHDU(data);
+        Header header = hdu.getHeader();
+        header.addValue("CTYPE1", ctype1, null);
+        header.addValue("CTYPE2", ctype2, null);
+        header.addValue("CRVAL1", crval1, null);
+        header.addValue("CRVAL2", crval2, null);
+        header.addValue("CRPIX1", data[0].length / 2.0, null);
+        header.addValue("CRPIX2", data.length / 2.0, null);
+        header.addValue("CDELT1", -cdelt, null);
+        header.addValue("CDELT2", cdelt, null);
+        header.addValue("CROTA2", crota2, null);
+        header.addValue("EQUINOX", 2000.0, null);
+        Fits fits = new Fits();
+        fits.addHDU(hdu);
+        return fits;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.visualize.plot.output;
+
+import edu.caltech.ipac.firefly.ConfigTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+public class IndexedPngEncoderTest extends ConfigTest {
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		BufferedImage image = makeImage(301, 157);
+		for (IndexedPngEncoder.Filter filter : IndexedPngEncoder.Filter.values()) {
+			for (int level : new int[] {0, 4, 9}) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				new IndexedPngEncoder(level, filter).write(image, out);
+				BufferedImage read = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+				assertSamePixels(image, read);
+			}
+		}
+	}
+
+	/**
+	 * property values that are not valid fall back to the defaults
+	 */
+	@Test
+	public void testDefaults() {
+		Assert.assertEquals(IndexedPngEncoder.Filter.PAETH, IndexedPngEncoder.toFilter(" paeth "));
+		Assert.assertEquals(IndexedPngEncoder.Filter.UP, IndexedPngEncoder.toFilter("bogus"));
+		Assert.assertEquals(IndexedPngEncoder.Filter.UP, IndexedPngEncoder.toFilter(null));
+		Assert.assertEquals(9, IndexedPngEncoder.toLevel(9));
+		Assert.assertEquals(4, IndexedPngEncoder.toLevel(12));
+		Assert.assertEquals(4, IndexedPngEncoder.toLevel(-2));
+	}
+
+	@Test
+	public void testToIndexedImage() {
+		BufferedImage indexed = makeImage(64, 32);
+		IndexColorModel cm = (IndexColorModel) indexed.getColorModel();
+		BufferedImage rgb = new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < 32; y++) {
+			for (int x = 0; x < 64; x++) {
+				int idx = indexed.getRaster().getSample(x, y, 0);
+				rgb.setRGB(x, y, cm.getAlpha(idx) == 255 ? cm.getRGB(idx) : cm.getRGB(0));
+			}
+		}
+		BufferedImage converted = IndexedPngEncoder.toIndexedImage(rgb, cm);
+		Assert.assertNotNull(converted);
+		assertSamePixels(rgb, converted);
+
+		rgb.setRGB(5, 5, 0x123457);       // not in the color model
+		Assert.assertNull(IndexedPngEncoder.toIndexedImage(rgb, cm));
+	}
+
+	/**
+	 * a gray ramp with a transparent last entry, like the color models of plots
+	 */
+	private static BufferedImage makeImage(int width, int height) {
+		byte[] r = new byte[256], g = new byte[256], b = new byte[256], a = new byte[256];
+		for (int i = 0; i < 256; i++) {
+			r[i] = g[i] = (byte) i;
+			b[i] = (byte) (255 - i);
+			a[i] = (byte) (i == 255 ? 0 : 255);
+		}
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, new IndexColorModel(8, 256, r, g, b, a));
+		Random rand = new Random(3);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.getRaster().setSample(x, y, 0, (x + y + rand.nextInt(8)) % 256);
+			}
+		}
+		return image;
+	}
+
+	private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+		Assert.assertEquals(expected.getWidth(), actual.getWidth());
+		Assert.assertEquals(expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				Assert.assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+			}
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * License information at https://github.com/Caltech-IPAC/firefly/blob/master/License.txt
+ */
+package edu.caltech.ipac.visualize.plot.output;
+
+import edu.caltech.ipac.firefly.ConfigTest;
+import edu.caltech.ipac.firefly.visualize.Band;
+import edu.caltech.ipac.util.FileUtil;
+import edu.caltech.ipac.visualize.plot.ActiveFitsReadGroup;
+import edu.caltech.ipac.visualize.plot.FitsRead;
+import edu.caltech.ipac.visualize.plot.ImagePlot;
+import nom.tam.fits.BasicHDU;
+import nom.tam.fits.Fits;
+import nom.tam.fits.Header;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tiles written in parallel must be the same, byte for byte, as the tiles written on the calling thread only.
+ */
+public class PlotOutputTest extends ConfigTest {
+
+	private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+	@AfterClass
+	public static void tearDown() {
+		POOL.shutdown();
+	}
+
+	@Test
+	public void testParallelTiles() throws Exception {
+		File seqDir = Files.createTempDirectory("tiles-seq").toFile();
+		File parDir = Files.createTempDirectory("tiles-par").toFile();
+		try {
+			List<PlotOutput.TileFileInfo> sequential = writeTiles(null, seqDir);
+			List<PlotOutput.TileFileInfo> parallel = writeTiles(POOL, parDir);
+			Assert.assertTrue("there should be several tiles", sequential.size() > 4);
+			Assert.assertEquals(sequential.size(), parallel.size());
+			for (int i = 0; i < sequential.size(); i++) {
+				PlotOutput.TileFileInfo seq = sequential.get(i);
+				PlotOutput.TileFileInfo par = parallel.get(i);
+				Assert.assertEquals(seq.getFile().getName(), par.getFile().getName());
+				Assert.assertEquals(seq.isCreated(), par.isCreated());
+				if (seq.isCreated()) {
+					Assert.assertArrayEquals(seq.getFile().getName(),
+							Files.readAllBytes(seq.getFile().toPath()), Files.readAllBytes(par.getFile().toPath()));
+				}
+			}
+		} finally {
+			FileUtil.deleteDirectory(seqDir);
+			FileUtil.deleteDirectory(parDir);
+		}
+	}
+
+	private static List<PlotOutput.TileFileInfo> writeTiles(ForkJoinPool pool, File dir) throws Exception {
+		float[][] data = new float[700][900];
+		for (int y = 0; y < data.length; y++) {
+			for (int x = 0; x < data[y].length; x++) {
+				data[y][x] = (float) (Math.sin(x / 29.0) * Math.cos(y / 17.0) * 100 + x);
+			}
+		}
+		BasicHDU hdu = Fits.makeHDU(data);
+		Header header = hdu.getHeader();
+		header.addValue("CTYPE1", "RA---TAN", null);
+		header.addValue("CTYPE2", "DEC--TAN", null);
+		header.addValue("CRVAL1", 10.0, null);
+		header.addValue("CRVAL2", 20.0, null);
+		header.addValue("CRPIX1", 450.0, null);
+		header.addValue("CRPIX2", 350.0, null);
+		header.addValue("CDELT1", -0.001, null);
+		header.addValue("CDELT2", 0.001, null);
+		Fits fits = new Fits();
+		fits.addHDU(hdu);
+
+		ActiveFitsReadGroup frGroup = new ActiveFitsReadGroup();
+		frGroup.setFitsRead(Band.NO_BAND, FitsRead.createFitsReadArray(fits)[0]);
+		ImagePlot plot = new ImagePlot(null, frGroup, 1F, false, Band.NO_BAND, 0, FitsRead.getDefaultFutureStretch());
+		PlotOutput po = new PlotOutput(plot, frGroup);
+		po.pool = pool;
+		return po.writeTiles(dir, "tile", PlotOutput.PNG, false, 256, PlotOutput.CREATE_ALL);
+	}
+}